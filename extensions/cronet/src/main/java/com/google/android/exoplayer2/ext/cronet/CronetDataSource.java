@@ -125,6 +125,7 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
   private final Clock clock;
 
   @Nullable private Predicate<String> contentTypePredicate;
+  private int requestPriority;
 
   // Accessed by the calling thread only.
   private boolean opened;
@@ -375,6 +376,7 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     this.handleSetCookieRequests = handleSetCookieRequests;
     requestProperties = new RequestProperties();
     operation = new ConditionVariable();
+    requestPriority = C.PRIORITY_PLAYBACK;
   }
 
   /**
@@ -388,6 +390,21 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     this.contentTypePredicate = contentTypePredicate;
   }
 
+  /**
+   * Sets the priority of subsequent requests, as one of the priorities used by {@link
+   * com.google.android.exoplayer2.util.PriorityTaskManager}, such as {@link C#PRIORITY_PLAYBACK} or
+   * {@link C#PRIORITY_DOWNLOAD}. The default is {@link C#PRIORITY_PLAYBACK}.
+   *
+   * <p>Requests with {@link C#PRIORITY_PLAYBACK} use Cronet's default request priority. Requests
+   * with a lower priority, such as prefetching and downloads, use lower Cronet request priorities,
+   * so that they don't compete with playback for bandwidth.
+   *
+   * @param requestPriority The priority of subsequent requests.
+   */
+  public void setRequestPriority(int requestPriority) {
+    this.requestPriority = requestPriority;
+  }
+
   // HttpDataSource implementation.
 
   @Override
@@ -742,6 +759,9 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     // if (!dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)) {
     //   requestBuilder.addHeader("Accept-Encoding", "identity");
     // }
+    if (requestPriority != C.PRIORITY_PLAYBACK) {
+      requestBuilder.setPriority(getCronetRequestPriority(requestPriority));
+    }
     // Set the method and (if non-empty) the body.
     requestBuilder.setHttpMethod(dataSpec.getHttpMethodString());
     if (dataSpec.httpBody != null) {
@@ -815,6 +835,19 @@ public class CronetDataSource extends BaseDataSource implements HttpDataSource {
     return readBuffer;
   }
 
+  /** Maps a {@link C#PRIORITY_PLAYBACK PriorityTaskManager priority} to a Cronet priority. */
+  /* package */ static int getCronetRequestPriority(int requestPriority) {
+    if (requestPriority > C.PRIORITY_PLAYBACK) {
+      return UrlRequest.Builder.REQUEST_PRIORITY_HIGHEST;
+    } else if (requestPriority == C.PRIORITY_PLAYBACK) {
+      return UrlRequest.Builder.REQUEST_PRIORITY_MEDIUM;
+    } else if (requestPriority > C.PRIORITY_DOWNLOAD) {
+      return UrlRequest.Builder.REQUEST_PRIORITY_LOW;
+    } else {
+      return UrlRequest.Builder.REQUEST_PRIORITY_LOWEST;
+    }
+  }
+
   private static boolean isCompressed(UrlResponseInfo info) {
     for (Map.Entry<String, String> entry : info.getAllHeadersAsList()) {
       if (entry.getKey().equalsIgnoreCase("Content-Encoding")) {
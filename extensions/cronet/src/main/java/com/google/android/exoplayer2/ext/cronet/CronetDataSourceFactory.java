@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.ext.cronet;
 import static com.google.android.exoplayer2.ExoPlayerLibraryInfo.DEFAULT_USER_AGENT;
 
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.DefaultHttpDataSourceFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource.BaseFactory;
@@ -51,6 +52,8 @@ public final class CronetDataSourceFactory extends BaseFactory {
   private final boolean resetTimeoutOnRedirects;
   private final HttpDataSource.Factory fallbackFactory;
 
+  private int requestPriority;
+
   /**
    * Creates an instance.
    *
@@ -338,6 +341,21 @@ public final class CronetDataSourceFactory extends BaseFactory {
     this.readTimeoutMs = readTimeoutMs;
     this.resetTimeoutOnRedirects = resetTimeoutOnRedirects;
     this.fallbackFactory = fallbackFactory;
+    requestPriority = C.PRIORITY_PLAYBACK;
+  }
+
+  /**
+   * Sets the priority of the requests made by the created data sources. See {@link
+   * CronetDataSource#setRequestPriority(int)}. Not applied to data sources created by the fallback
+   * factory.
+   *
+   * @param requestPriority The request priority, such as {@link C#PRIORITY_PLAYBACK} or {@link
+   *     C#PRIORITY_DOWNLOAD}.
+   * @return This factory.
+   */
+  public CronetDataSourceFactory setRequestPriority(int requestPriority) {
+    this.requestPriority = requestPriority;
+    return this;
   }
 
   @Override
@@ -358,6 +376,7 @@ public final class CronetDataSourceFactory extends BaseFactory {
     if (transferListener != null) {
       dataSource.addTransferListener(transferListener);
     }
+    dataSource.setRequestPriority(requestPriority);
     return dataSource;
   }
 
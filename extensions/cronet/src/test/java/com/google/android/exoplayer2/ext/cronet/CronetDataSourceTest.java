@@ -258,6 +258,23 @@ public final class CronetDataSourceTest {
     verify(mockUrlRequestBuilder).addHeader("Range", "bytes=1000-5999");
   }
 
+  @Test
+  public void requestWithDefaultPriority_doesNotSetPriority() throws HttpDataSourceException {
+    mockResponseStartSuccess();
+
+    dataSourceUnderTest.open(testDataSpec);
+    verify(mockUrlRequestBuilder, never()).setPriority(ArgumentMatchers.anyInt());
+  }
+
+  @Test
+  public void requestWithDownloadPriority_setsLowestPriority() throws HttpDataSourceException {
+    mockResponseStartSuccess();
+
+    dataSourceUnderTest.setRequestPriority(C.PRIORITY_DOWNLOAD);
+    dataSourceUnderTest.open(testDataSpec);
+    verify(mockUrlRequestBuilder).setPriority(UrlRequest.Builder.REQUEST_PRIORITY_LOWEST);
+  }
+
   @Test
   public void requestHeadersSet() throws HttpDataSourceException {
     Map<String, String> headersSet = new HashMap<>();
@@ -0,0 +1,208 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.ext.flac;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.max;
+import static org.junit.Assert.fail;
+
+import android.content.Context;
+import android.os.SystemClock;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.decoder.Decoder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.decoder.SimpleOutputBuffer;
+import com.google.android.exoplayer2.extractor.mkv.MatroskaExtractor;
+import com.google.android.exoplayer2.extractor.ogg.OggExtractor;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Log;
+import java.nio.ByteBuffer;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/**
+ * Compares the output and throughput of sequential and parallel decoding with the native Flac
+ * decoder, for Flac in Matroska and in Ogg, and measures the throughput of parsing Flac in Ogg.
+ * Throughput for each decode thread count and for parsing is written to the log.
+ */
+@RunWith(AndroidJUnit4.class)
+public class FlacDecoderBenchmarkTest {
+
+  private static final String TAG = "FlacDecoderBenchmark";
+  private static final String BEAR_FLAC_24BIT = "media/mka/bear-flac-24bit.mka";
+  private static final String BEAR_FLAC_OGG = "media/ogg/bear_flac.ogg";
+  private static final int NUM_BUFFERS = 16;
+  private static final int PASS_COUNT = 20;
+  private static final int[] PARALLEL_DECODER_THREAD_COUNTS = new int[] {2, 4};
+
+  @Before
+  public void setUp() {
+    if (!FlacLibrary.isAvailable()) {
+      fail("Flac library not available.");
+    }
+  }
+
+  @Test
+  public void decode_matroskaWithParallelDecoding_outputsSameDataAsSequentialDecoding()
+      throws Exception {
+    FakeExtractorOutput extractorOutput =
+        TestUtil.extractAllSamplesFromFile(
+            new MatroskaExtractor(), ApplicationProvider.getApplicationContext(), BEAR_FLAC_24BIT);
+
+    assertParallelDecodingOutputsSameDataAsSequentialDecoding(
+        extractorOutput.trackOutputs.valueAt(0));
+  }
+
+  @Test
+  public void decode_oggWithParallelDecoding_outputsSameDataAsSequentialDecoding()
+      throws Exception {
+    FakeExtractorOutput extractorOutput =
+        TestUtil.extractAllSamplesFromFile(
+            new OggExtractor(), ApplicationProvider.getApplicationContext(), BEAR_FLAC_OGG);
+
+    assertParallelDecodingOutputsSameDataAsSequentialDecoding(
+        extractorOutput.trackOutputs.valueAt(0));
+  }
+
+  @Test
+  public void extract_ogg_outputsSameSamplesOnEachPass() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    long inputBytes = TestUtil.getByteArray(context, BEAR_FLAC_OGG).length;
+    int sampleCount = C.LENGTH_UNSET;
+    long startTimeMs = SystemClock.elapsedRealtime();
+    for (int pass = 0; pass < PASS_COUNT; pass++) {
+      FakeExtractorOutput extractorOutput =
+          TestUtil.extractAllSamplesFromFile(new OggExtractor(), context, BEAR_FLAC_OGG);
+      int passSampleCount = extractorOutput.trackOutputs.valueAt(0).getSampleCount();
+      if (sampleCount != C.LENGTH_UNSET) {
+        assertThat(passSampleCount).isEqualTo(sampleCount);
+      }
+      sampleCount = passSampleCount;
+    }
+    long elapsedTimeMs = SystemClock.elapsedRealtime() - startTimeMs;
+    Log.i(
+        TAG,
+        "oggExtraction, elapsedTimeMs="
+            + elapsedTimeMs
+            + ", inputBytesPerSecond="
+            + (inputBytes * PASS_COUNT * 1000 / max(1, elapsedTimeMs)));
+    assertThat(sampleCount).isGreaterThan(0);
+  }
+
+  /**
+   * Decodes the samples in {@code trackOutput} sequentially and with each of {@link
+   * #PARALLEL_DECODER_THREAD_COUNTS} decode threads, and asserts that the output is the same.
+   */
+  private static void assertParallelDecodingOutputsSameDataAsSequentialDecoding(
+      FakeTrackOutput trackOutput) throws Exception {
+    Format format = Assertions.checkNotNull(trackOutput.lastFormat);
+
+    long sequentialChecksum =
+        decodeAndLogThroughput(
+            new FlacDecoder(
+                NUM_BUFFERS, NUM_BUFFERS, format.maxInputSize, format.initializationData),
+            trackOutput,
+            /* decoderThreadCount= */ 1);
+    for (int decoderThreadCount : PARALLEL_DECODER_THREAD_COUNTS) {
+      long parallelChecksum =
+          decodeAndLogThroughput(
+              new ParallelFlacDecoder(
+                  NUM_BUFFERS,
+                  NUM_BUFFERS,
+                  format.maxInputSize,
+                  format.initializationData,
+                  decoderThreadCount),
+              trackOutput,
+              decoderThreadCount);
+      assertThat(parallelChecksum).isEqualTo(sequentialChecksum);
+    }
+  }
+
+  /**
+   * Decodes all samples in {@code trackOutput} {@link #PASS_COUNT} times, logs the throughput and
+   * releases the decoder.
+   *
+   * @return A checksum of the decoded data of a single pass, which depends on the output order.
+   */
+  private static long decodeAndLogThroughput(
+      Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException> decoder,
+      FakeTrackOutput trackOutput,
+      int decoderThreadCount)
+      throws Exception {
+    long checksum = 0;
+    long outputBytes = 0;
+    long startTimeMs = SystemClock.elapsedRealtime();
+    try {
+      for (int pass = 0; pass < PASS_COUNT; pass++) {
+        checksum = 0;
+        int sampleIndex = 0;
+        boolean inputEnded = false;
+        boolean outputEnded = false;
+        while (!outputEnded) {
+          @Nullable DecoderInputBuffer inputBuffer;
+          while (!inputEnded && (inputBuffer = decoder.dequeueInputBuffer()) != null) {
+            if (sampleIndex == trackOutput.getSampleCount()) {
+              inputBuffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+              inputEnded = true;
+            } else {
+              byte[] sampleData = trackOutput.getSampleData(sampleIndex);
+              inputBuffer.ensureSpaceForWrite(sampleData.length);
+              Assertions.checkNotNull(inputBuffer.data).put(sampleData);
+              inputBuffer.timeUs = trackOutput.getSampleTimeUs(sampleIndex);
+              inputBuffer.flip();
+              sampleIndex++;
+            }
+            decoder.queueInputBuffer(inputBuffer);
+          }
+          @Nullable SimpleOutputBuffer outputBuffer;
+          while ((outputBuffer = decoder.dequeueOutputBuffer()) != null) {
+            if (outputBuffer.isEndOfStream()) {
+              outputEnded = true;
+            } else {
+              ByteBuffer data = Assertions.checkNotNull(outputBuffer.data);
+              outputBytes += data.remaining();
+              while (data.hasRemaining()) {
+                checksum = checksum * 31 + data.get();
+              }
+            }
+            outputBuffer.release();
+          }
+        }
+        decoder.flush();
+      }
+    } finally {
+      decoder.release();
+    }
+    long elapsedTimeMs = SystemClock.elapsedRealtime() - startTimeMs;
+    Log.i(
+        TAG,
+        "decoderThreadCount="
+            + decoderThreadCount
+            + ", elapsedTimeMs="
+            + elapsedTimeMs
+            + ", outputBytesPerSecond="
+            + (outputBytes * 1000 / max(1, elapsedTimeMs)));
+    return checksum;
+  }
+}
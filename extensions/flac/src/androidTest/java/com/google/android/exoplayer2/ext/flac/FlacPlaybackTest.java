@@ -64,7 +64,22 @@ public class FlacPlaybackTest {
     playAndAssertAudioSinkInput(BEAR_FLAC_24BIT);
   }
 
+  @Test
+  public void test16BitPlayback_withParallelDecoding() throws Exception {
+    playAndAssertAudioSinkInput(BEAR_FLAC_16BIT, /* decoderThreadCount= */ 4);
+  }
+
+  @Test
+  public void test24BitPlayback_withParallelDecoding() throws Exception {
+    playAndAssertAudioSinkInput(BEAR_FLAC_24BIT, /* decoderThreadCount= */ 4);
+  }
+
   private static void playAndAssertAudioSinkInput(String fileName) throws Exception {
+    playAndAssertAudioSinkInput(fileName, /* decoderThreadCount= */ 1);
+  }
+
+  private static void playAndAssertAudioSinkInput(String fileName, int decoderThreadCount)
+      throws Exception {
     CapturingAudioSink audioSink =
         new CapturingAudioSink(
             new DefaultAudioSink(/* audioCapabilities= */ null, new AudioProcessor[0]));
@@ -73,7 +88,8 @@ public class FlacPlaybackTest {
         new TestPlaybackRunnable(
             Uri.parse("asset:///media/" + fileName),
             ApplicationProvider.getApplicationContext(),
-            audioSink);
+            audioSink,
+            decoderThreadCount);
     Thread thread = new Thread(testPlaybackRunnable);
     thread.start();
     thread.join();
@@ -92,14 +108,17 @@ public class FlacPlaybackTest {
     private final Context context;
     private final Uri uri;
     private final AudioSink audioSink;
+    private final int decoderThreadCount;
 
     @Nullable private ExoPlayer player;
     @Nullable private ExoPlaybackException playbackException;
 
-    public TestPlaybackRunnable(Uri uri, Context context, AudioSink audioSink) {
+    public TestPlaybackRunnable(
+        Uri uri, Context context, AudioSink audioSink, int decoderThreadCount) {
       this.uri = uri;
       this.context = context;
       this.audioSink = audioSink;
+      this.decoderThreadCount = decoderThreadCount;
     }
 
     @Override
@@ -107,6 +126,7 @@ public class FlacPlaybackTest {
       Looper.prepare();
       LibflacAudioRenderer audioRenderer =
           new LibflacAudioRenderer(/* eventHandler= */ null, /* eventListener= */ null, audioSink);
+      audioRenderer.experimentalSetDecoderThreadCount(decoderThreadCount);
       player = new ExoPlayer.Builder(context, audioRenderer).build();
       player.addListener(this);
       MediaSource mediaSource =
@@ -23,19 +23,28 @@ import com.google.android.exoplayer2.audio.AudioProcessor;
 import com.google.android.exoplayer2.audio.AudioRendererEventListener;
 import com.google.android.exoplayer2.audio.AudioSink;
 import com.google.android.exoplayer2.audio.DecoderAudioRenderer;
+import com.google.android.exoplayer2.decoder.Decoder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.decoder.SimpleOutputBuffer;
 import com.google.android.exoplayer2.drm.ExoMediaCrypto;
 import com.google.android.exoplayer2.extractor.FlacStreamMetadata;
+import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.FlacConstants;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 
 /** Decodes and renders audio using the native Flac decoder. */
-public final class LibflacAudioRenderer extends DecoderAudioRenderer<FlacDecoder> {
+public final class LibflacAudioRenderer
+    extends DecoderAudioRenderer<
+        Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException>> {
 
   private static final String TAG = "LibflacAudioRenderer";
   private static final int NUM_BUFFERS = 16;
 
+  private int decoderThreadCount;
+  @Nullable private FlacStreamMetadata streamMetadata;
+
   public LibflacAudioRenderer() {
     this(/* eventHandler= */ null, /* eventListener= */ null);
   }
@@ -53,6 +62,7 @@ public final class LibflacAudioRenderer extends DecoderAudioRenderer<FlacDecoder
       @Nullable AudioRendererEventListener eventListener,
       AudioProcessor... audioProcessors) {
     super(eventHandler, eventListener, audioProcessors);
+    decoderThreadCount = 1;
   }
 
   /**
@@ -71,6 +81,25 @@ public final class LibflacAudioRenderer extends DecoderAudioRenderer<FlacDecoder
         eventHandler,
         eventListener,
         audioSink);
+    decoderThreadCount = 1;
+  }
+
+  /**
+   * Sets the number of threads used to decode FLAC frames. The default value is 1, which decodes
+   * frames sequentially.
+   *
+   * <p>FLAC frames can be decoded independently of each other, so using more than one thread can
+   * help devices with slow CPU cores to keep up with high resolution streams. Decoded frames are
+   * always output in order.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param decoderThreadCount The number of decode threads.
+   */
+  public void experimentalSetDecoderThreadCount(int decoderThreadCount) {
+    Assertions.checkArgument(decoderThreadCount > 0);
+    this.decoderThreadCount = decoderThreadCount;
   }
 
   @Override
@@ -111,18 +140,34 @@ public final class LibflacAudioRenderer extends DecoderAudioRenderer<FlacDecoder
   }
 
   @Override
-  protected FlacDecoder createDecoder(Format format, @Nullable ExoMediaCrypto mediaCrypto)
-      throws FlacDecoderException {
+  protected Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException> createDecoder(
+      Format format, @Nullable ExoMediaCrypto mediaCrypto) throws FlacDecoderException {
     TraceUtil.beginSection("createFlacDecoder");
-    FlacDecoder decoder =
-        new FlacDecoder(NUM_BUFFERS, NUM_BUFFERS, format.maxInputSize, format.initializationData);
+    Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException> decoder;
+    if (decoderThreadCount > 1) {
+      ParallelFlacDecoder parallelFlacDecoder =
+          new ParallelFlacDecoder(
+              NUM_BUFFERS,
+              NUM_BUFFERS,
+              format.maxInputSize,
+              format.initializationData,
+              decoderThreadCount);
+      streamMetadata = parallelFlacDecoder.getStreamMetadata();
+      decoder = parallelFlacDecoder;
+    } else {
+      FlacDecoder flacDecoder =
+          new FlacDecoder(NUM_BUFFERS, NUM_BUFFERS, format.maxInputSize, format.initializationData);
+      streamMetadata = flacDecoder.getStreamMetadata();
+      decoder = flacDecoder;
+    }
     TraceUtil.endSection();
     return decoder;
   }
 
   @Override
-  protected Format getOutputFormat(FlacDecoder decoder) {
-    return getOutputFormat(decoder.getStreamMetadata());
+  protected Format getOutputFormat(
+      Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException> decoder) {
+    return getOutputFormat(Assertions.checkNotNull(streamMetadata));
   }
 
   private static Format getOutputFormat(FlacStreamMetadata streamMetadata) {
@@ -0,0 +1,409 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.ext.flac;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.decoder.Decoder;
+import com.google.android.exoplayer2.decoder.DecoderInputBuffer;
+import com.google.android.exoplayer2.decoder.SimpleOutputBuffer;
+import com.google.android.exoplayer2.extractor.FlacStreamMetadata;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.util.ArrayDeque;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Flac decoder that decodes frames on multiple threads.
+ *
+ * <p>Each FLAC frame can be decoded independently once the stream metadata is known, so each
+ * decode thread has its own native decoder and takes the next queued frame when it becomes free.
+ * Output buffers are made available in the order in which the frames were queued.
+ */
+/* package */ final class ParallelFlacDecoder
+    implements Decoder<DecoderInputBuffer, SimpleOutputBuffer, FlacDecoderException> {
+
+  private final FlacStreamMetadata streamMetadata;
+  private final FlacDecoderJni[] decoderJnis;
+  private final Thread[] decodeThreads;
+
+  private final Object lock;
+  private final ArrayDeque<DecoderInputBuffer> queuedInputBuffers;
+  private final ArrayDeque<FlacOutputBuffer> pendingOutputBuffers;
+  private final ArrayDeque<FlacOutputBuffer> queuedOutputBuffers;
+  private final DecoderInputBuffer[] availableInputBuffers;
+  private final FlacOutputBuffer[] availableOutputBuffers;
+
+  private int availableInputBufferCount;
+  private int availableOutputBufferCount;
+  @Nullable private DecoderInputBuffer dequeuedInputBuffer;
+
+  @Nullable private FlacDecoderException exception;
+  private int flushCount;
+  private boolean released;
+  private int skippedOutputBufferCount;
+
+  /**
+   * Creates a parallel Flac decoder.
+   *
+   * @param numInputBuffers The number of input buffers.
+   * @param numOutputBuffers The number of output buffers. Frames are only decoded in parallel if
+   *     there is more than one output buffer available.
+   * @param maxInputBufferSize The maximum required input buffer size if known, or {@link
+   *     Format#NO_VALUE} otherwise.
+   * @param initializationData Codec-specific initialization data. It should contain only one entry
+   *     which is the flac file header.
+   * @param threadCount The number of decode threads.
+   * @throws FlacDecoderException Thrown if an exception occurs when initializing the decoder.
+   */
+  public ParallelFlacDecoder(
+      int numInputBuffers,
+      int numOutputBuffers,
+      int maxInputBufferSize,
+      List<byte[]> initializationData,
+      int threadCount)
+      throws FlacDecoderException {
+    Assertions.checkArgument(threadCount > 0);
+    if (initializationData.size() != 1) {
+      throw new FlacDecoderException("Initialization data must be of length 1");
+    }
+    decoderJnis = new FlacDecoderJni[threadCount];
+    @Nullable FlacStreamMetadata streamMetadata = null;
+    try {
+      for (int i = 0; i < threadCount; i++) {
+        decoderJnis[i] = new FlacDecoderJni();
+        decoderJnis[i].setData(ByteBuffer.wrap(initializationData.get(0)));
+        streamMetadata = decoderJnis[i].decodeStreamMetadata();
+      }
+    } catch (ParserException e) {
+      releaseDecoderJnis(decoderJnis);
+      throw new FlacDecoderException("Failed to decode StreamInfo", e);
+    } catch (FlacDecoderException e) {
+      releaseDecoderJnis(decoderJnis);
+      throw e;
+    } catch (IOException e) {
+      // Never happens.
+      throw new IllegalStateException(e);
+    }
+    this.streamMetadata = Assertions.checkNotNull(streamMetadata);
+
+    lock = new Object();
+    queuedInputBuffers = new ArrayDeque<>();
+    pendingOutputBuffers = new ArrayDeque<>();
+    queuedOutputBuffers = new ArrayDeque<>();
+    availableInputBuffers = new DecoderInputBuffer[numInputBuffers];
+    availableInputBufferCount = numInputBuffers;
+    int initialInputBufferSize =
+        maxInputBufferSize != Format.NO_VALUE ? maxInputBufferSize : streamMetadata.maxFrameSize;
+    for (int i = 0; i < numInputBuffers; i++) {
+      availableInputBuffers[i] =
+          new DecoderInputBuffer(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_NORMAL);
+      availableInputBuffers[i].ensureSpaceForWrite(initialInputBufferSize);
+    }
+    availableOutputBuffers = new FlacOutputBuffer[numOutputBuffers];
+    availableOutputBufferCount = numOutputBuffers;
+    for (int i = 0; i < numOutputBuffers; i++) {
+      availableOutputBuffers[i] = new FlacOutputBuffer(this::releaseOutputBuffer);
+    }
+
+    decodeThreads = new Thread[threadCount];
+    for (int i = 0; i < threadCount; i++) {
+      FlacDecoderJni decoderJni = decoderJnis[i];
+      decodeThreads[i] =
+          new Thread("ExoPlayer:ParallelFlacDecoder:" + i) {
+            @Override
+            public void run() {
+              ParallelFlacDecoder.this.run(decoderJni);
+            }
+          };
+      decodeThreads[i].start();
+    }
+  }
+
+  @Override
+  public String getName() {
+    return "libflac";
+  }
+
+  @Override
+  @Nullable
+  public DecoderInputBuffer dequeueInputBuffer() throws FlacDecoderException {
+    synchronized (lock) {
+      maybeThrowException();
+      Assertions.checkState(dequeuedInputBuffer == null);
+      dequeuedInputBuffer =
+          availableInputBufferCount == 0
+              ? null
+              : availableInputBuffers[--availableInputBufferCount];
+      return dequeuedInputBuffer;
+    }
+  }
+
+  @Override
+  public void queueInputBuffer(DecoderInputBuffer inputBuffer) throws FlacDecoderException {
+    synchronized (lock) {
+      maybeThrowException();
+      Assertions.checkArgument(inputBuffer == dequeuedInputBuffer);
+      queuedInputBuffers.addLast(inputBuffer);
+      maybeNotifyDecodeLoops();
+      dequeuedInputBuffer = null;
+    }
+  }
+
+  @Override
+  @Nullable
+  public SimpleOutputBuffer dequeueOutputBuffer() throws FlacDecoderException {
+    synchronized (lock) {
+      maybeThrowException();
+      if (queuedOutputBuffers.isEmpty()) {
+        return null;
+      }
+      return queuedOutputBuffers.removeFirst();
+    }
+  }
+
+  @Override
+  public void flush() {
+    synchronized (lock) {
+      flushCount++;
+      skippedOutputBufferCount = 0;
+      // An error from a frame queued before the flush doesn't affect the frames queued after it.
+      exception = null;
+      if (dequeuedInputBuffer != null) {
+        releaseInputBufferInternal(dequeuedInputBuffer);
+        dequeuedInputBuffer = null;
+      }
+      while (!queuedInputBuffers.isEmpty()) {
+        releaseInputBufferInternal(queuedInputBuffers.removeFirst());
+      }
+      // Buffers that are still being decoded are released by their decode thread when it finishes.
+      while (!pendingOutputBuffers.isEmpty()) {
+        FlacOutputBuffer outputBuffer = pendingOutputBuffers.removeFirst();
+        if (outputBuffer.decoded) {
+          releaseOutputBufferInternal(outputBuffer);
+        }
+      }
+      while (!queuedOutputBuffers.isEmpty()) {
+        releaseOutputBufferInternal(queuedOutputBuffers.removeFirst());
+      }
+      maybeNotifyDecodeLoops();
+    }
+  }
+
+  @Override
+  public void release() {
+    synchronized (lock) {
+      released = true;
+      lock.notifyAll();
+    }
+    try {
+      for (Thread decodeThread : decodeThreads) {
+        decodeThread.join();
+      }
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+    }
+    releaseDecoderJnis(decoderJnis);
+  }
+
+  /** Returns the {@link FlacStreamMetadata} decoded from the initialization data. */
+  public FlacStreamMetadata getStreamMetadata() {
+    return streamMetadata;
+  }
+
+  private void releaseOutputBuffer(SimpleOutputBuffer outputBuffer) {
+    synchronized (lock) {
+      releaseOutputBufferInternal((FlacOutputBuffer) outputBuffer);
+      maybeNotifyDecodeLoops();
+    }
+  }
+
+  private static void releaseDecoderJnis(@NullableType FlacDecoderJni[] decoderJnis) {
+    for (FlacDecoderJni decoderJni : decoderJnis) {
+      if (decoderJni != null) {
+        decoderJni.release();
+      }
+    }
+  }
+
+  private void maybeThrowException() throws FlacDecoderException {
+    if (exception != null) {
+      throw exception;
+    }
+  }
+
+  /**
+   * Notifies the decode loops if there exists a queued input buffer and an available output buffer
+   * to decode into.
+   *
+   * <p>Should only be called whilst synchronized on the lock object.
+   */
+  private void maybeNotifyDecodeLoops() {
+    if (canDecodeBuffer()) {
+      lock.notifyAll();
+    }
+  }
+
+  private void run(FlacDecoderJni decoderJni) {
+    int decoderFlushCount = 0;
+    try {
+      while (true) {
+        DecoderInputBuffer inputBuffer;
+        FlacOutputBuffer outputBuffer;
+        boolean resetDecoder;
+
+        // Wait until we have an input buffer to decode, and an output buffer to decode into.
+        synchronized (lock) {
+          while (!released && !canDecodeBuffer()) {
+            lock.wait();
+          }
+          if (released) {
+            return;
+          }
+          inputBuffer = queuedInputBuffers.removeFirst();
+          outputBuffer = availableOutputBuffers[--availableOutputBufferCount];
+          outputBuffer.flushCount = flushCount;
+          pendingOutputBuffers.addLast(outputBuffer);
+          resetDecoder = decoderFlushCount != flushCount;
+          decoderFlushCount = flushCount;
+        }
+
+        @Nullable FlacDecoderException exception = null;
+        if (inputBuffer.isEndOfStream()) {
+          outputBuffer.addFlag(C.BUFFER_FLAG_END_OF_STREAM);
+        } else {
+          if (inputBuffer.isDecodeOnly()) {
+            outputBuffer.addFlag(C.BUFFER_FLAG_DECODE_ONLY);
+          }
+          try {
+            exception = decode(decoderJni, inputBuffer, outputBuffer, resetDecoder);
+          } catch (RuntimeException | OutOfMemoryError e) {
+            // See SimpleDecoder.
+            exception = new FlacDecoderException("Unexpected decode error", e);
+          }
+        }
+
+        if (exception != null) {
+          // Reset the native decoder before the next frame, as it may be in an inconsistent state.
+          decoderFlushCount = C.INDEX_UNSET;
+        }
+
+        synchronized (lock) {
+          releaseInputBufferInternal(inputBuffer);
+          if (outputBuffer.flushCount != flushCount) {
+            // The decoder was flushed while the frame was being decoded. The buffer and any error
+            // belong to the frames before the flush.
+            releaseOutputBufferInternal(outputBuffer);
+          } else if (exception != null) {
+            pendingOutputBuffers.remove(outputBuffer);
+            releaseOutputBufferInternal(outputBuffer);
+            if (this.exception == null) {
+              this.exception = exception;
+            }
+          } else {
+            outputBuffer.decoded = true;
+            queueDecodedOutputBuffers();
+          }
+          maybeNotifyDecodeLoops();
+        }
+      }
+    } catch (InterruptedException e) {
+      // Not expected.
+      throw new IllegalStateException(e);
+    }
+  }
+
+  /**
+   * Moves decoded buffers from the head of {@link #pendingOutputBuffers} to the output queue, so
+   * that they are output in the order in which their frames were queued.
+   *
+   * <p>Should only be called whilst synchronized on the lock object.
+   */
+  private void queueDecodedOutputBuffers() {
+    @Nullable FlacOutputBuffer outputBuffer;
+    while ((outputBuffer = pendingOutputBuffers.peekFirst()) != null && outputBuffer.decoded) {
+      pendingOutputBuffers.removeFirst();
+      if (outputBuffer.isDecodeOnly()) {
+        skippedOutputBufferCount++;
+        releaseOutputBufferInternal(outputBuffer);
+      } else {
+        outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
+        skippedOutputBufferCount = 0;
+        queuedOutputBuffers.addLast(outputBuffer);
+      }
+    }
+  }
+
+  @Nullable
+  private FlacDecoderException decode(
+      FlacDecoderJni decoderJni,
+      DecoderInputBuffer inputBuffer,
+      SimpleOutputBuffer outputBuffer,
+      boolean reset) {
+    if (reset) {
+      decoderJni.flush();
+    }
+    decoderJni.setData(Util.castNonNull(inputBuffer.data));
+    ByteBuffer outputData =
+        outputBuffer.init(inputBuffer.timeUs, streamMetadata.getMaxDecodedFrameSize());
+    try {
+      decoderJni.decodeSample(outputData);
+    } catch (FlacDecoderJni.FlacFrameDecodeException e) {
+      return new FlacDecoderException("Frame decoding failed", e);
+    } catch (IOException e) {
+      // Never happens.
+      throw new IllegalStateException(e);
+    }
+    return null;
+  }
+
+  private boolean canDecodeBuffer() {
+    return !queuedInputBuffers.isEmpty() && availableOutputBufferCount > 0;
+  }
+
+  private void releaseInputBufferInternal(DecoderInputBuffer inputBuffer) {
+    inputBuffer.clear();
+    availableInputBuffers[availableInputBufferCount++] = inputBuffer;
+  }
+
+  private void releaseOutputBufferInternal(FlacOutputBuffer outputBuffer) {
+    outputBuffer.clear();
+    availableOutputBuffers[availableOutputBufferCount++] = outputBuffer;
+  }
+
+  private static final class FlacOutputBuffer extends SimpleOutputBuffer {
+
+    /** The flush count of the decoder when decoding into this buffer started. */
+    public int flushCount;
+    /** Whether decoding into this buffer has finished. */
+    public boolean decoded;
+
+    public FlacOutputBuffer(Owner<SimpleOutputBuffer> owner) {
+      super(owner);
+    }
+
+    @Override
+    public void clear() {
+      super.clear();
+      decoded = false;
+    }
+  }
+}
@@ -29,22 +29,27 @@ import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.base.Predicate;
+import com.google.common.util.concurrent.SettableFuture;
 import java.io.EOFException;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InterruptedIOException;
+import java.nio.ByteBuffer;
 import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import okhttp3.CacheControl;
 import okhttp3.Call;
+import okhttp3.Callback;
 import okhttp3.HttpUrl;
 import okhttp3.MediaType;
 import okhttp3.Request;
 import okhttp3.RequestBody;
 import okhttp3.Response;
 import okhttp3.ResponseBody;
+import okio.BufferedSource;
 
 /**
  * An {@link HttpDataSource} that delegates to Square's {@link Call.Factory}.
@@ -69,9 +74,11 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
   @Nullable private final RequestProperties defaultRequestProperties;
 
   @Nullable private Predicate<String> contentTypePredicate;
+  private int requestPriority;
   @Nullable private DataSpec dataSpec;
   @Nullable private Response response;
   @Nullable private InputStream responseByteStream;
+  @Nullable private BufferedSource responseSource;
   private boolean opened;
 
   private long bytesToSkip;
@@ -122,6 +129,7 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     this.cacheControl = cacheControl;
     this.defaultRequestProperties = defaultRequestProperties;
     this.requestProperties = new RequestProperties();
+    this.requestPriority = C.PRIORITY_PLAYBACK;
   }
 
   /**
@@ -179,6 +187,7 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     this.cacheControl = cacheControl;
     this.defaultRequestProperties = defaultRequestProperties;
     this.requestProperties = new RequestProperties();
+    this.requestPriority = C.PRIORITY_PLAYBACK;
   }
 
   /**
@@ -192,6 +201,24 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     this.contentTypePredicate = contentTypePredicate;
   }
 
+  /**
+   * Sets the priority of subsequent requests, as one of the priorities used by {@link
+   * com.google.android.exoplayer2.util.PriorityTaskManager}, such as {@link C#PRIORITY_PLAYBACK} or
+   * {@link C#PRIORITY_DOWNLOAD}. The default is {@link C#PRIORITY_PLAYBACK}.
+   *
+   * <p>Requests with {@link C#PRIORITY_PLAYBACK} or higher are executed immediately. Requests with
+   * a lower priority, such as prefetching and downloads, are queued on the {@link
+   * okhttp3.Dispatcher} of the {@link Call.Factory}, so that its limits on the number of requests
+   * in flight apply until their response headers are received. The limits don't apply while the
+   * response body is read, so transfers of lower priority requests aren't throttled in favor of
+   * playback.
+   *
+   * @param requestPriority The priority of subsequent requests.
+   */
+  public void setRequestPriority(int requestPriority) {
+    this.requestPriority = requestPriority;
+  }
+
   @Override
   @Nullable
   public Uri getUri() {
@@ -237,10 +264,11 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     Response response;
     ResponseBody responseBody;
     try {
-      this.response = callFactory.newCall(request).execute();
+      this.response = executeCall(callFactory.newCall(request));
       response = this.response;
       responseBody = Assertions.checkNotNull(response.body());
-      responseByteStream = responseBody.byteStream();
+      responseSource = responseBody.source();
+      responseByteStream = responseSource.inputStream();
     } catch (IOException e) {
       throw new HttpDataSourceException(
           "Unable to connect", e, dataSpec, HttpDataSourceException.TYPE_OPEN);
@@ -306,6 +334,29 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     }
   }
 
+  /**
+   * Reads up to {@code buffer.remaining()} bytes of data directly into {@code buffer}, avoiding the
+   * intermediate copy made by {@link #read(byte[], int, int)}.
+   *
+   * <p>This method blocks until at least one byte of data can be read, the end of the opened range
+   * is detected, or an exception is thrown.
+   *
+   * @param buffer The buffer into which the read data should be stored. Data is written starting at
+   *     its {@link ByteBuffer#position()}, which is advanced by the number of bytes read.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+   *     range is reached.
+   * @throws HttpDataSourceException If an error occurs reading from the source.
+   */
+  public int read(ByteBuffer buffer) throws HttpDataSourceException {
+    try {
+      skipInternal();
+      return readInternal(buffer);
+    } catch (IOException e) {
+      throw new HttpDataSourceException(
+          e, Assertions.checkNotNull(dataSpec), HttpDataSourceException.TYPE_READ);
+    }
+  }
+
   @Override
   public void close() throws HttpDataSourceException {
     if (opened) {
@@ -400,6 +451,46 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     return builder.build();
   }
 
+  /**
+   * Executes the call, queueing it on the call factory's {@link okhttp3.Dispatcher} if the request
+   * priority is lower than {@link C#PRIORITY_PLAYBACK}.
+   */
+  private Response executeCall(Call call) throws IOException {
+    if (requestPriority >= C.PRIORITY_PLAYBACK) {
+      return call.execute();
+    }
+    SettableFuture<Response> future = SettableFuture.create();
+    call.enqueue(
+        new Callback() {
+          @Override
+          public void onFailure(Call call, IOException e) {
+            future.setException(e);
+          }
+
+          @Override
+          public void onResponse(Call call, Response response) {
+            if (!future.set(response)) {
+              // The caller stopped waiting for the response.
+              response.close();
+            }
+          }
+        });
+    try {
+      return future.get();
+    } catch (InterruptedException e) {
+      future.cancel(/* mayInterruptIfRunning= */ false);
+      call.cancel();
+      Thread.currentThread().interrupt();
+      throw new InterruptedIOException();
+    } catch (ExecutionException e) {
+      @Nullable Throwable cause = e.getCause();
+      if (cause instanceof IOException) {
+        throw (IOException) cause;
+      }
+      throw new IOException(cause);
+    }
+  }
+
   /**
    * Skips any bytes that need skipping. Else does nothing.
    * <p>
@@ -467,6 +558,46 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
     return read;
   }
 
+  /**
+   * Reads up to {@code buffer.remaining()} bytes of data into {@code buffer}.
+   *
+   * @param buffer The buffer into which the read data should be stored.
+   * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the end of the opened
+   *     range is reached.
+   * @throws IOException If an error occurs reading from the source.
+   */
+  private int readInternal(ByteBuffer buffer) throws IOException {
+    if (!buffer.hasRemaining()) {
+      return 0;
+    }
+    int limit = buffer.limit();
+    if (bytesToRead != C.LENGTH_UNSET) {
+      long bytesRemaining = bytesToRead - bytesRead;
+      if (bytesRemaining == 0) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      buffer.limit(buffer.position() + (int) min(buffer.remaining(), bytesRemaining));
+    }
+
+    int read;
+    try {
+      read = castNonNull(responseSource).read(buffer);
+    } finally {
+      buffer.limit(limit);
+    }
+    if (read == -1) {
+      if (bytesToRead != C.LENGTH_UNSET) {
+        // End of stream reached having not read sufficient data.
+        throw new EOFException();
+      }
+      return C.RESULT_END_OF_INPUT;
+    }
+
+    bytesRead += read;
+    bytesTransferred(read);
+    return read;
+  }
+
   /**
    * Closes the current connection quietly, if there is one.
    */
@@ -476,6 +607,7 @@ public class OkHttpDataSource extends BaseDataSource implements HttpDataSource {
       response = null;
     }
     responseByteStream = null;
+    responseSource = null;
   }
 
 }
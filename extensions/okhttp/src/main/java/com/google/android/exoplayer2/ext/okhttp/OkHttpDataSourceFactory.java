@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.ext.okhttp;
 import static com.google.android.exoplayer2.ExoPlayerLibraryInfo.DEFAULT_USER_AGENT;
 
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.android.exoplayer2.upstream.HttpDataSource.BaseFactory;
 import com.google.android.exoplayer2.upstream.HttpDataSource.Factory;
@@ -35,6 +36,8 @@ public final class OkHttpDataSourceFactory extends BaseFactory {
   @Nullable private final TransferListener listener;
   @Nullable private final CacheControl cacheControl;
 
+  private int requestPriority;
+
   /**
    * Creates an instance.
    *
@@ -100,6 +103,20 @@ public final class OkHttpDataSourceFactory extends BaseFactory {
     this.userAgent = userAgent;
     this.listener = listener;
     this.cacheControl = cacheControl;
+    requestPriority = C.PRIORITY_PLAYBACK;
+  }
+
+  /**
+   * Sets the priority of the requests made by the created data sources. See {@link
+   * OkHttpDataSource#setRequestPriority(int)}.
+   *
+   * @param requestPriority The request priority, such as {@link C#PRIORITY_PLAYBACK} or {@link
+   *     C#PRIORITY_DOWNLOAD}.
+   * @return This factory.
+   */
+  public OkHttpDataSourceFactory setRequestPriority(int requestPriority) {
+    this.requestPriority = requestPriority;
+    return this;
   }
 
   @Override
@@ -114,6 +131,7 @@ public final class OkHttpDataSourceFactory extends BaseFactory {
     if (listener != null) {
       dataSource.addTransferListener(listener);
     }
+    dataSource.setRequestPriority(requestPriority);
     return dataSource;
   }
 }
@@ -21,15 +21,21 @@ import static java.util.concurrent.TimeUnit.SECONDS;
 import static org.junit.Assert.assertThrows;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource;
 import com.google.common.base.Charsets;
+import java.net.SocketTimeoutException;
+import java.nio.ByteBuffer;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
 import okhttp3.Headers;
 import okhttp3.OkHttpClient;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
 import org.junit.Test;
 import org.junit.runner.RunWith;
 
@@ -122,4 +128,73 @@ public class OkHttpDataSourceTest {
     assertThat(exception.responseCode).isEqualTo(404);
     assertThat(exception.responseBody).isEqualTo("failure msg".getBytes(Charsets.UTF_8));
   }
+
+  @Test
+  public void readByteBuffer_withRangeIgnoredByServer_readsRequestedRange() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    OkHttpDataSource dataSource = new OkHttpDataSource(new OkHttpClient());
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/test-path").toString())
+            .setPosition(10)
+            .setLength(50)
+            .build();
+
+    dataSource.open(dataSpec);
+    ByteBuffer buffer = ByteBuffer.allocateDirect(data.length);
+    int bytesRead;
+    while ((bytesRead = dataSource.read(buffer)) != C.RESULT_END_OF_INPUT) {
+      assertThat(bytesRead).isGreaterThan(0);
+    }
+    dataSource.close();
+
+    buffer.flip();
+    byte[] readData = new byte[buffer.remaining()];
+    buffer.get(readData);
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 10, 60));
+  }
+
+  @Test
+  public void open_withLowRequestPriority_readsResponseFromDispatcher() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 100);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    OkHttpDataSource dataSource =
+        new OkHttpDataSourceFactory(new OkHttpClient())
+            .setRequestPriority(C.PRIORITY_DOWNLOAD)
+            .createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+  }
+
+  @Test
+  public void open_withLowRequestPriorityAndFailedCall_throwsCallException() throws Exception {
+    MockWebServer mockWebServer = new MockWebServer();
+    OkHttpClient okHttpClient =
+        new OkHttpClient.Builder()
+            .addInterceptor(
+                chain -> {
+                  throw new SocketTimeoutException();
+                })
+            .build();
+    OkHttpDataSource dataSource =
+        new OkHttpDataSourceFactory(okHttpClient)
+            .setRequestPriority(C.PRIORITY_DOWNLOAD)
+            .createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/test-path").toString()).build();
+
+    HttpDataSource.HttpDataSourceException exception =
+        assertThrows(HttpDataSource.HttpDataSourceException.class, () -> dataSource.open(dataSpec));
+
+    assertThat(exception).hasCauseThat().isInstanceOf(SocketTimeoutException.class);
+  }
 }
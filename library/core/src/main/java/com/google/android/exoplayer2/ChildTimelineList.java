@@ -0,0 +1,632 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.util.Util;
+
+/**
+ * An immutable list of the child timelines of a concatenated timeline, each identified by a unique
+ * child uid.
+ *
+ * <p>The children are stored in a balanced tree that keeps the window and period counts of each
+ * subtree, so translating between window, period and child indices, and finding the index of a
+ * child uid, takes O(log n) time. Adding, removing, moving and updating children returns a new list
+ * in O(log n) time per child. The new list shares most of its structure with the original one,
+ * which remains valid, so a concatenated timeline can be created for each modification of a large
+ * playlist without copying it.
+ */
+public final class ChildTimelineList {
+
+  /** An empty list. */
+  public static final ChildTimelineList EMPTY =
+      new ChildTimelineList(/* root= */ null, /* uidMap= */ null);
+
+  /** The difference between the order labels of children appended to either end of the list. */
+  private static final long LABEL_SPACING = 1L << 32;
+
+  @Nullable private final Node root;
+  @Nullable private final UidMapNode uidMap;
+
+  private ChildTimelineList(@Nullable Node root, @Nullable UidMapNode uidMap) {
+    this.root = root;
+    this.uidMap = uidMap;
+  }
+
+  /** Returns the number of children. */
+  public int size() {
+    return root == null ? 0 : root.size;
+  }
+
+  /** Returns whether the list is empty. */
+  public boolean isEmpty() {
+    return root == null;
+  }
+
+  /** Returns the total number of windows of all children. */
+  public int getWindowCount() {
+    return root == null ? 0 : root.subtreeWindowCount;
+  }
+
+  /** Returns the total number of periods of all children. */
+  public int getPeriodCount() {
+    return root == null ? 0 : root.subtreePeriodCount;
+  }
+
+  /** Returns the timeline of the child at {@code index}. */
+  public Timeline getTimeline(int index) {
+    return getNode(index).timeline;
+  }
+
+  /** Returns the uid of the child at {@code index}. */
+  public Object getUid(int index) {
+    return getNode(index).uid;
+  }
+
+  /** Returns the index of the first window of the child at {@code index}. */
+  public int getFirstWindowIndex(int index) {
+    checkIndex(index, size());
+    @Nullable Node node = root;
+    int firstWindowIndex = 0;
+    while (node != null) {
+      int leftSize = getSize(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else {
+        firstWindowIndex += getSubtreeWindowCount(node.left);
+        if (index == leftSize) {
+          break;
+        }
+        firstWindowIndex += node.windowCount;
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+    return firstWindowIndex;
+  }
+
+  /** Returns the index of the first period of the child at {@code index}. */
+  public int getFirstPeriodIndex(int index) {
+    checkIndex(index, size());
+    @Nullable Node node = root;
+    int firstPeriodIndex = 0;
+    while (node != null) {
+      int leftSize = getSize(node.left);
+      if (index < leftSize) {
+        node = node.left;
+      } else {
+        firstPeriodIndex += getSubtreePeriodCount(node.left);
+        if (index == leftSize) {
+          break;
+        }
+        firstPeriodIndex += node.periodCount;
+        index -= leftSize + 1;
+        node = node.right;
+      }
+    }
+    return firstPeriodIndex;
+  }
+
+  /**
+   * Returns the index of the child containing the window at {@code windowIndex} in the
+   * concatenation of all child timelines.
+   */
+  public int getIndexOfWindow(int windowIndex) {
+    checkIndex(windowIndex, getWindowCount());
+    Node node = checkNotNull(root);
+    int index = 0;
+    while (true) {
+      int leftWindowCount = getSubtreeWindowCount(node.left);
+      if (windowIndex < leftWindowCount) {
+        node = checkNotNull(node.left);
+      } else if (windowIndex < leftWindowCount + node.windowCount) {
+        return index + getSize(node.left);
+      } else {
+        windowIndex -= leftWindowCount + node.windowCount;
+        index += getSize(node.left) + 1;
+        node = checkNotNull(node.right);
+      }
+    }
+  }
+
+  /**
+   * Returns the index of the child containing the period at {@code periodIndex} in the
+   * concatenation of all child timelines.
+   */
+  public int getIndexOfPeriod(int periodIndex) {
+    checkIndex(periodIndex, getPeriodCount());
+    Node node = checkNotNull(root);
+    int index = 0;
+    while (true) {
+      int leftPeriodCount = getSubtreePeriodCount(node.left);
+      if (periodIndex < leftPeriodCount) {
+        node = checkNotNull(node.left);
+      } else if (periodIndex < leftPeriodCount + node.periodCount) {
+        return index + getSize(node.left);
+      } else {
+        periodIndex -= leftPeriodCount + node.periodCount;
+        index += getSize(node.left) + 1;
+        node = checkNotNull(node.right);
+      }
+    }
+  }
+
+  /** Returns the index of the child with {@code uid}, or {@link C#INDEX_UNSET} if not found. */
+  public int getIndexOfUid(Object uid) {
+    @Nullable UidEntry entry = UidMapNode.get(uidMap, uid, uid.hashCode(), /* shift= */ 0);
+    if (entry == null) {
+      return C.INDEX_UNSET;
+    }
+    long label = entry.label;
+    @Nullable Node node = root;
+    int index = 0;
+    while (node != null) {
+      if (label < node.label) {
+        node = node.left;
+      } else if (label > node.label) {
+        index += getSize(node.left) + 1;
+        node = node.right;
+      } else {
+        return index + getSize(node.left);
+      }
+    }
+    throw new IllegalStateException();
+  }
+
+  /**
+   * Returns a copy of the list with a child added to the end.
+   *
+   * @param uid The uid of the child, which must not be in the list already.
+   * @param timeline The timeline of the child.
+   * @return The new list.
+   */
+  public ChildTimelineList add(Object uid, Timeline timeline) {
+    return add(size(), uid, timeline);
+  }
+
+  /**
+   * Returns a copy of the list with a child inserted at {@code index}.
+   *
+   * @param index The index at which the child is inserted.
+   * @param uid The uid of the child, which must not be in the list already.
+   * @param timeline The timeline of the child.
+   * @return The new list.
+   */
+  public ChildTimelineList add(int index, Object uid, Timeline timeline) {
+    checkArgument(index >= 0 && index <= size());
+    checkArgument(getIndexOfUid(uid) == C.INDEX_UNSET);
+    long label;
+    if (root == null) {
+      label = 0;
+    } else if (index == size()) {
+      long lastLabel = getNode(index - 1).label;
+      if (lastLabel > Long.MAX_VALUE - LABEL_SPACING) {
+        return relabel().add(index, uid, timeline);
+      }
+      label = lastLabel + LABEL_SPACING;
+    } else if (index == 0) {
+      long firstLabel = getNode(0).label;
+      if (firstLabel < Long.MIN_VALUE + LABEL_SPACING) {
+        return relabel().add(index, uid, timeline);
+      }
+      label = firstLabel - LABEL_SPACING;
+    } else {
+      long previousLabel = getNode(index - 1).label;
+      long nextLabel = getNode(index).label;
+      if (nextLabel - previousLabel < 2) {
+        return relabel().add(index, uid, timeline);
+      }
+      label = previousLabel + (nextLabel - previousLabel) / 2;
+    }
+    Node newNode = new Node(label, uid, timeline, /* left= */ null, /* right= */ null);
+    int hash = uid.hashCode();
+    return new ChildTimelineList(
+        insert(root, newNode),
+        UidMapNode.put(uidMap, new UidEntry(uid, hash, label), hash, /* shift= */ 0));
+  }
+
+  /**
+   * Returns a copy of the list with the child at {@code index} removed.
+   *
+   * @param index The index of the child to remove.
+   * @return The new list.
+   */
+  public ChildTimelineList remove(int index) {
+    Node node = getNode(index);
+    return new ChildTimelineList(
+        remove(checkNotNull(root), node.label),
+        UidMapNode.remove(checkNotNull(uidMap), node.uid, node.uid.hashCode(), /* shift= */ 0));
+  }
+
+  /**
+   * Returns a copy of the list with a range of children moved to a new position, in the same way
+   * as {@link Util#moveItems}.
+   *
+   * @param fromIndex The index of the first child to move.
+   * @param toIndex The index after the last child to move.
+   * @param newFromIndex The new index of the first moved child.
+   * @return The new list.
+   */
+  public ChildTimelineList move(int fromIndex, int toIndex, int newFromIndex) {
+    int size = size();
+    checkArgument(fromIndex >= 0 && fromIndex <= toIndex && toIndex <= size && newFromIndex >= 0);
+    newFromIndex = min(newFromIndex, size - (toIndex - fromIndex));
+    if (fromIndex == toIndex || fromIndex == newFromIndex) {
+      return this;
+    }
+    int moveCount = toIndex - fromIndex;
+    Object[] uids = new Object[moveCount];
+    Timeline[] timelines = new Timeline[moveCount];
+    ChildTimelineList list = this;
+    for (int i = moveCount - 1; i >= 0; i--) {
+      Node node = list.getNode(fromIndex + i);
+      uids[i] = node.uid;
+      timelines[i] = node.timeline;
+      list = list.remove(fromIndex + i);
+    }
+    for (int i = 0; i < moveCount; i++) {
+      list = list.add(newFromIndex + i, uids[i], timelines[i]);
+    }
+    return list;
+  }
+
+  /**
+   * Returns a copy of the list with the timeline of the child at {@code index} replaced.
+   *
+   * @param index The index of the child to update.
+   * @param timeline The new timeline of the child.
+   * @return The new list.
+   */
+  public ChildTimelineList set(int index, Timeline timeline) {
+    checkIndex(index, size());
+    return new ChildTimelineList(replace(checkNotNull(root), index, timeline), uidMap);
+  }
+
+  private Node getNode(int index) {
+    checkIndex(index, size());
+    Node node = checkNotNull(root);
+    while (true) {
+      int leftSize = getSize(node.left);
+      if (index < leftSize) {
+        node = checkNotNull(node.left);
+      } else if (index == leftSize) {
+        return node;
+      } else {
+        index -= leftSize + 1;
+        node = checkNotNull(node.right);
+      }
+    }
+  }
+
+  /**
+   * Returns a copy of the list with evenly spaced order labels. Called when there's no room for a
+   * new label, which only happens after dozens of insertions at the same position.
+   */
+  private ChildTimelineList relabel() {
+    int size = size();
+    long spacing = Long.MAX_VALUE / (size + 1);
+    long label = Long.MIN_VALUE / 2;
+    @Nullable Node newRoot = null;
+    @Nullable UidMapNode newUidMap = null;
+    for (int i = 0; i < size; i++) {
+      Node node = getNode(i);
+      label += spacing;
+      newRoot = insert(newRoot, new Node(label, node.uid, node.timeline, null, null));
+      int hash = node.uid.hashCode();
+      newUidMap = UidMapNode.put(newUidMap, new UidEntry(node.uid, hash, label), hash, 0);
+    }
+    return new ChildTimelineList(newRoot, newUidMap);
+  }
+
+  // Persistent treap operations, ordered by label. Nodes are never modified, so each operation
+  // copies the nodes on the path it changes.
+
+  private static Node insert(@Nullable Node node, Node newNode) {
+    if (node == null) {
+      return newNode;
+    }
+    if (newNode.priority > node.priority) {
+      NodePair pair = split(node, newNode.label);
+      return newNode.withChildren(pair.left, pair.right);
+    } else if (newNode.label < node.label) {
+      return node.withChildren(insert(node.left, newNode), node.right);
+    } else {
+      return node.withChildren(node.left, insert(node.right, newNode));
+    }
+  }
+
+  @Nullable
+  private static Node remove(Node node, long label) {
+    if (label < node.label) {
+      return node.withChildren(remove(checkNotNull(node.left), label), node.right);
+    } else if (label > node.label) {
+      return node.withChildren(node.left, remove(checkNotNull(node.right), label));
+    } else {
+      return merge(node.left, node.right);
+    }
+  }
+
+  private static Node replace(Node node, int index, Timeline timeline) {
+    int leftSize = getSize(node.left);
+    if (index < leftSize) {
+      return node.withChildren(replace(checkNotNull(node.left), index, timeline), node.right);
+    } else if (index > leftSize) {
+      return node.withChildren(
+          node.left, replace(checkNotNull(node.right), index - leftSize - 1, timeline));
+    } else {
+      return new Node(node.label, node.uid, timeline, node.left, node.right);
+    }
+  }
+
+  /** Splits a subtree into the nodes with labels less than and greater than {@code label}. */
+  private static NodePair split(@Nullable Node node, long label) {
+    if (node == null) {
+      return new NodePair(null, null);
+    } else if (node.label < label) {
+      NodePair pair = split(node.right, label);
+      return new NodePair(node.withChildren(node.left, pair.left), pair.right);
+    } else {
+      NodePair pair = split(node.left, label);
+      return new NodePair(pair.left, node.withChildren(pair.right, node.right));
+    }
+  }
+
+  /** Merges two subtrees, where all labels in {@code left} are less than those in {@code right}. */
+  @Nullable
+  private static Node merge(@Nullable Node left, @Nullable Node right) {
+    if (left == null) {
+      return right;
+    } else if (right == null) {
+      return left;
+    } else if (left.priority > right.priority) {
+      return left.withChildren(left.left, merge(left.right, right));
+    } else {
+      return right.withChildren(merge(left, right.left), right.right);
+    }
+  }
+
+  private static int getSize(@Nullable Node node) {
+    return node == null ? 0 : node.size;
+  }
+
+  private static int getSubtreeWindowCount(@Nullable Node node) {
+    return node == null ? 0 : node.subtreeWindowCount;
+  }
+
+  private static int getSubtreePeriodCount(@Nullable Node node) {
+    return node == null ? 0 : node.subtreePeriodCount;
+  }
+
+  private static void checkIndex(int index, int size) {
+    if (index < 0 || index >= size) {
+      throw new IndexOutOfBoundsException();
+    }
+  }
+
+  private static final class Node {
+
+    public final long label;
+    public final int priority;
+    public final Object uid;
+    public final Timeline timeline;
+    public final int windowCount;
+    public final int periodCount;
+    @Nullable public final Node left;
+    @Nullable public final Node right;
+    public final int size;
+    public final int subtreeWindowCount;
+    public final int subtreePeriodCount;
+
+    public Node(
+        long label,
+        Object uid,
+        Timeline timeline,
+        @Nullable Node left,
+        @Nullable Node right) {
+      this.label = label;
+      this.uid = uid;
+      this.timeline = timeline;
+      this.left = left;
+      this.right = right;
+      priority = getPriority(label);
+      windowCount = timeline.getWindowCount();
+      periodCount = timeline.getPeriodCount();
+      size = getSize(left) + 1 + getSize(right);
+      subtreeWindowCount =
+          getSubtreeWindowCount(left) + windowCount + getSubtreeWindowCount(right);
+      subtreePeriodCount =
+          getSubtreePeriodCount(left) + periodCount + getSubtreePeriodCount(right);
+    }
+
+    public Node withChildren(@Nullable Node left, @Nullable Node right) {
+      return new Node(label, uid, timeline, left, right);
+    }
+
+    /** Returns a pseudo-random priority derived from the label, so that the tree is balanced. */
+    private static int getPriority(long label) {
+      long hash = label * 0x9E3779B97F4A7C15L;
+      hash = (hash ^ (hash >>> 30)) * 0xBF58476D1CE4E5B9L;
+      hash = (hash ^ (hash >>> 27)) * 0x94D049BB133111EBL;
+      return (int) (hash ^ (hash >>> 31));
+    }
+  }
+
+  private static final class NodePair {
+
+    @Nullable public final Node left;
+    @Nullable public final Node right;
+
+    public NodePair(@Nullable Node left, @Nullable Node right) {
+      this.left = left;
+      this.right = right;
+    }
+  }
+
+  private static final class UidEntry {
+
+    public final Object uid;
+    public final int hash;
+    public final long label;
+
+    public UidEntry(Object uid, int hash, long label) {
+      this.uid = uid;
+      this.hash = hash;
+      this.label = label;
+    }
+  }
+
+  /**
+   * A node of a persistent hash trie mapping child uids to labels. Each level consumes 5 bits of
+   * the hash. Entries whose hashes are equal are stored in a list node below the last level.
+   */
+  private static final class UidMapNode {
+
+    private static final int BITS_PER_LEVEL = 5;
+    private static final int MAX_SHIFT = 30;
+
+    /** The bitmap of occupied slots, or 0 for a list node. */
+    private final int bitmap;
+    /** The {@link UidEntry} or {@link UidMapNode} of each occupied slot. */
+    private final Object[] slots;
+
+    private UidMapNode(int bitmap, Object[] slots) {
+      this.bitmap = bitmap;
+      this.slots = slots;
+    }
+
+    @Nullable
+    public static UidEntry get(@Nullable UidMapNode node, Object uid, int hash, int shift) {
+      while (node != null) {
+        if (shift > MAX_SHIFT) {
+          for (Object slot : node.slots) {
+            if (((UidEntry) slot).uid.equals(uid)) {
+              return (UidEntry) slot;
+            }
+          }
+          return null;
+        }
+        int bit = getBit(hash, shift);
+        if ((node.bitmap & bit) == 0) {
+          return null;
+        }
+        Object slot = node.slots[Integer.bitCount(node.bitmap & (bit - 1))];
+        if (slot instanceof UidEntry) {
+          return ((UidEntry) slot).uid.equals(uid) ? (UidEntry) slot : null;
+        }
+        node = (UidMapNode) slot;
+        shift += BITS_PER_LEVEL;
+      }
+      return null;
+    }
+
+    public static UidMapNode put(@Nullable UidMapNode node, UidEntry entry, int hash, int shift) {
+      if (shift > MAX_SHIFT) {
+        Object[] slots = node == null ? new Object[0] : node.slots;
+        for (int i = 0; i < slots.length; i++) {
+          if (((UidEntry) slots[i]).uid.equals(entry.uid)) {
+            return new UidMapNode(/* bitmap= */ 0, replaceSlot(slots, i, entry));
+          }
+        }
+        return new UidMapNode(/* bitmap= */ 0, insertSlot(slots, slots.length, entry));
+      }
+      int bit = getBit(hash, shift);
+      if (node == null) {
+        return new UidMapNode(bit, new Object[] {entry});
+      }
+      int position = Integer.bitCount(node.bitmap & (bit - 1));
+      if ((node.bitmap & bit) == 0) {
+        return new UidMapNode(node.bitmap | bit, insertSlot(node.slots, position, entry));
+      }
+      Object slot = node.slots[position];
+      Object newSlot;
+      if (slot instanceof UidMapNode) {
+        newSlot = put((UidMapNode) slot, entry, hash, shift + BITS_PER_LEVEL);
+      } else if (((UidEntry) slot).uid.equals(entry.uid)) {
+        newSlot = entry;
+      } else {
+        UidEntry existingEntry = (UidEntry) slot;
+        UidMapNode childNode =
+            put(/* node= */ null, existingEntry, existingEntry.hash, shift + BITS_PER_LEVEL);
+        newSlot = put(childNode, entry, hash, shift + BITS_PER_LEVEL);
+      }
+      return new UidMapNode(node.bitmap, replaceSlot(node.slots, position, newSlot));
+    }
+
+    @Nullable
+    public static UidMapNode remove(UidMapNode node, Object uid, int hash, int shift) {
+      if (shift > MAX_SHIFT) {
+        for (int i = 0; i < node.slots.length; i++) {
+          if (((UidEntry) node.slots[i]).uid.equals(uid)) {
+            return node.slots.length == 1
+                ? null
+                : new UidMapNode(/* bitmap= */ 0, removeSlot(node.slots, i));
+          }
+        }
+        return node;
+      }
+      int bit = getBit(hash, shift);
+      if ((node.bitmap & bit) == 0) {
+        return node;
+      }
+      int position = Integer.bitCount(node.bitmap & (bit - 1));
+      Object slot = node.slots[position];
+      @Nullable Object newSlot;
+      if (slot instanceof UidMapNode) {
+        newSlot = remove((UidMapNode) slot, uid, hash, shift + BITS_PER_LEVEL);
+      } else if (((UidEntry) slot).uid.equals(uid)) {
+        newSlot = null;
+      } else {
+        return node;
+      }
+      if (newSlot != null) {
+        return new UidMapNode(node.bitmap, replaceSlot(node.slots, position, newSlot));
+      } else if (node.bitmap == bit) {
+        return null;
+      } else {
+        return new UidMapNode(node.bitmap & ~bit, removeSlot(node.slots, position));
+      }
+    }
+
+    private static int getBit(int hash, int shift) {
+      return 1 << ((hash >>> shift) & ((1 << BITS_PER_LEVEL) - 1));
+    }
+
+    private static Object[] insertSlot(Object[] slots, int position, Object slot) {
+      Object[] newSlots = new Object[slots.length + 1];
+      System.arraycopy(slots, 0, newSlots, 0, position);
+      newSlots[position] = slot;
+      System.arraycopy(slots, position, newSlots, position + 1, slots.length - position);
+      return newSlots;
+    }
+
+    private static Object[] replaceSlot(Object[] slots, int position, Object slot) {
+      Object[] newSlots = slots.clone();
+      newSlots[position] = slot;
+      return newSlots;
+    }
+
+    private static Object[] removeSlot(Object[] slots, int position) {
+      Object[] newSlots = new Object[slots.length - 1];
+      System.arraycopy(slots, 0, newSlots, 0, position);
+      System.arraycopy(slots, position + 1, newSlots, position, newSlots.length - position);
+      return newSlots;
+    }
+  }
+}
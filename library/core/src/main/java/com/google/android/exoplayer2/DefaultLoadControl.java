@@ -107,6 +107,7 @@ public class DefaultLoadControl implements LoadControl {
     private boolean prioritizeTimeOverSizeThresholds;
     private int backBufferDurationMs;
     private boolean retainBackBufferFromKeyframe;
+    @Nullable private SharedLoadBudget.Participant sharedLoadBudgetParticipant;
     private boolean buildCalled;
 
     /** Constructs a new instance. */
@@ -219,6 +220,23 @@ public class DefaultLoadControl implements LoadControl {
       return this;
     }
 
+    /**
+     * Sets the {@link SharedLoadBudget.Participant} through which the load control shares a buffer
+     * budget with other players. The target buffer size is limited to the participant's share of
+     * the budget, and the participant is active whilst the player is prepared.
+     *
+     * @param sharedLoadBudgetParticipant The {@link SharedLoadBudget.Participant}, or null if the
+     *     load control doesn't share a budget.
+     * @return This builder, for convenience.
+     * @throws IllegalStateException If {@link #build()} has already been called.
+     */
+    public Builder setSharedLoadBudgetParticipant(
+        @Nullable SharedLoadBudget.Participant sharedLoadBudgetParticipant) {
+      Assertions.checkState(!buildCalled);
+      this.sharedLoadBudgetParticipant = sharedLoadBudgetParticipant;
+      return this;
+    }
+
     /** @deprecated use {@link #build} instead. */
     @Deprecated
     public DefaultLoadControl createDefaultLoadControl() {
@@ -241,7 +259,8 @@ public class DefaultLoadControl implements LoadControl {
           targetBufferBytes,
           prioritizeTimeOverSizeThresholds,
           backBufferDurationMs,
-          retainBackBufferFromKeyframe);
+          retainBackBufferFromKeyframe,
+          sharedLoadBudgetParticipant);
     }
   }
 
@@ -255,8 +274,10 @@ public class DefaultLoadControl implements LoadControl {
   private final boolean prioritizeTimeOverSizeThresholds;
   private final long backBufferDurationUs;
   private final boolean retainBackBufferFromKeyframe;
+  @Nullable private final SharedLoadBudget.Participant sharedLoadBudgetParticipant;
 
   private int targetBufferBytes;
+  private int allocatorTargetBufferBytes;
   private boolean isBuffering;
 
   /** Constructs a new instance, using the {@code DEFAULT_*} constants defined in this class. */
@@ -312,6 +333,30 @@ public class DefaultLoadControl implements LoadControl {
       boolean prioritizeTimeOverSizeThresholds,
       int backBufferDurationMs,
       boolean retainBackBufferFromKeyframe) {
+    this(
+        allocator,
+        minBufferMs,
+        maxBufferMs,
+        bufferForPlaybackMs,
+        bufferForPlaybackAfterRebufferMs,
+        targetBufferBytes,
+        prioritizeTimeOverSizeThresholds,
+        backBufferDurationMs,
+        retainBackBufferFromKeyframe,
+        /* sharedLoadBudgetParticipant= */ null);
+  }
+
+  protected DefaultLoadControl(
+      DefaultAllocator allocator,
+      int minBufferMs,
+      int maxBufferMs,
+      int bufferForPlaybackMs,
+      int bufferForPlaybackAfterRebufferMs,
+      int targetBufferBytes,
+      boolean prioritizeTimeOverSizeThresholds,
+      int backBufferDurationMs,
+      boolean retainBackBufferFromKeyframe,
+      @Nullable SharedLoadBudget.Participant sharedLoadBudgetParticipant) {
     assertGreaterOrEqual(bufferForPlaybackMs, 0, "bufferForPlaybackMs", "0");
     assertGreaterOrEqual(
         bufferForPlaybackAfterRebufferMs, 0, "bufferForPlaybackAfterRebufferMs", "0");
@@ -337,11 +382,15 @@ public class DefaultLoadControl implements LoadControl {
     this.prioritizeTimeOverSizeThresholds = prioritizeTimeOverSizeThresholds;
     this.backBufferDurationUs = C.msToUs(backBufferDurationMs);
     this.retainBackBufferFromKeyframe = retainBackBufferFromKeyframe;
+    this.sharedLoadBudgetParticipant = sharedLoadBudgetParticipant;
   }
 
   @Override
   public void onPrepared() {
     reset(false);
+    if (sharedLoadBudgetParticipant != null) {
+      sharedLoadBudgetParticipant.setActive(true);
+    }
   }
 
   @Override
@@ -351,17 +400,23 @@ public class DefaultLoadControl implements LoadControl {
         targetBufferBytesOverwrite == C.LENGTH_UNSET
             ? calculateTargetBufferBytes(renderers, trackSelections)
             : targetBufferBytesOverwrite;
-    allocator.setTargetBufferSize(targetBufferBytes);
+    updateAllocatorTargetBufferSize();
   }
 
   @Override
   public void onStopped() {
     reset(true);
+    if (sharedLoadBudgetParticipant != null) {
+      sharedLoadBudgetParticipant.setActive(false);
+    }
   }
 
   @Override
   public void onReleased() {
     reset(true);
+    if (sharedLoadBudgetParticipant != null) {
+      sharedLoadBudgetParticipant.setActive(false);
+    }
   }
 
   @Override
@@ -382,7 +437,12 @@ public class DefaultLoadControl implements LoadControl {
   @Override
   public boolean shouldContinueLoading(
       long playbackPositionUs, long bufferedDurationUs, float playbackSpeed) {
-    boolean targetBufferSizeReached = allocator.getTotalBytesAllocated() >= targetBufferBytes;
+    if (sharedLoadBudgetParticipant != null) {
+      // The share of the budget changes as other players are prepared and stopped.
+      updateAllocatorTargetBufferSize();
+    }
+    boolean targetBufferSizeReached =
+        allocator.getTotalBytesAllocated() >= getEffectiveTargetBufferBytes();
     long minBufferUs = this.minBufferUs;
     if (playbackSpeed > 1) {
       // The playback speed is faster than real time, so scale up the minimum required media
@@ -414,7 +474,7 @@ public class DefaultLoadControl implements LoadControl {
     return minBufferDurationUs <= 0
         || bufferedDurationUs >= minBufferDurationUs
         || (!prioritizeTimeOverSizeThresholds
-            && allocator.getTotalBytesAllocated() >= targetBufferBytes);
+            && allocator.getTotalBytesAllocated() >= getEffectiveTargetBufferBytes());
   }
 
   /**
@@ -436,6 +496,24 @@ public class DefaultLoadControl implements LoadControl {
     return max(DEFAULT_MIN_BUFFER_SIZE, targetBufferSize);
   }
 
+  /**
+   * Returns the target buffer size, limited to the share of the shared load budget if there is
+   * one.
+   */
+  private int getEffectiveTargetBufferBytes() {
+    return sharedLoadBudgetParticipant != null
+        ? min(targetBufferBytes, sharedLoadBudgetParticipant.getTargetBufferBytes())
+        : targetBufferBytes;
+  }
+
+  private void updateAllocatorTargetBufferSize() {
+    int targetBufferBytes = getEffectiveTargetBufferBytes();
+    if (targetBufferBytes != allocatorTargetBufferBytes) {
+      allocatorTargetBufferBytes = targetBufferBytes;
+      allocator.setTargetBufferSize(targetBufferBytes);
+    }
+  }
+
   private void reset(boolean resetAllocator) {
     targetBufferBytes =
         targetBufferBytesOverwrite == C.LENGTH_UNSET
@@ -444,6 +522,8 @@ public class DefaultLoadControl implements LoadControl {
     isBuffering = false;
     if (resetAllocator) {
       allocator.reset();
+      // The allocator may have reset its target buffer size.
+      allocatorTargetBufferBytes = C.LENGTH_UNSET;
     }
   }
 
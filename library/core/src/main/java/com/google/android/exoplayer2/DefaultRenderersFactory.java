@@ -28,6 +28,7 @@ import com.google.android.exoplayer2.audio.AudioSink;
 import com.google.android.exoplayer2.audio.DefaultAudioSink;
 import com.google.android.exoplayer2.audio.DefaultAudioSink.DefaultAudioProcessorChain;
 import com.google.android.exoplayer2.audio.MediaCodecAudioRenderer;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecRenderer;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.metadata.MetadataOutput;
@@ -94,6 +95,9 @@ public class DefaultRenderersFactory implements RenderersFactory {
   private MediaCodecSelector mediaCodecSelector;
   private @MediaCodecRenderer.MediaCodecOperationMode int audioMediaCodecOperationMode;
   private @MediaCodecRenderer.MediaCodecOperationMode int videoMediaCodecOperationMode;
+  @Nullable private MediaCodecPool mediaCodecPool;
+  private int audioBypassMaxAccessUnitCount;
+  private long audioBypassMaxBatchDurationUs;
   private boolean enableFloatOutput;
   private boolean enableAudioTrackPlaybackParams;
   private boolean enableOffload;
@@ -106,6 +110,8 @@ public class DefaultRenderersFactory implements RenderersFactory {
     mediaCodecSelector = MediaCodecSelector.DEFAULT;
     audioMediaCodecOperationMode = MediaCodecRenderer.OPERATION_MODE_SYNCHRONOUS;
     videoMediaCodecOperationMode = MediaCodecRenderer.OPERATION_MODE_SYNCHRONOUS;
+    audioBypassMaxAccessUnitCount = C.LENGTH_UNSET;
+    audioBypassMaxBatchDurationUs = C.TIME_UNSET;
   }
 
   /**
@@ -196,6 +202,43 @@ public class DefaultRenderersFactory implements RenderersFactory {
     return this;
   }
 
+  /**
+   * Sets a {@link MediaCodecPool} for use by {@link MediaCodecAudioRenderer} and {@link
+   * MediaCodecVideoRenderer} instances, so that released codecs can be reused. The same pool can
+   * be set on the factories of several players.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param mediaCodecPool The {@link MediaCodecPool}, or {@code null} to not pool codecs, which is
+   *     the default.
+   * @return This factory, for convenience.
+   */
+  public DefaultRenderersFactory experimentalSetMediaCodecPool(
+      @Nullable MediaCodecPool mediaCodecPool) {
+    this.mediaCodecPool = mediaCodecPool;
+    return this;
+  }
+
+  /**
+   * Sets the size of the batches of access units that {@link MediaCodecAudioRenderer} instances
+   * output together when playing audio without a codec, for example when passing AC-3 through to
+   * an audio receiver or playing PCM, to reduce the per access unit overhead.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param maxAccessUnitCount The maximum number of access units in a batch. Must be positive.
+   * @param maxBatchDurationUs The maximum duration between the timestamps of the first and last
+   *     access units in a batch, in microseconds, or {@link C#TIME_UNSET} for no limit.
+   * @return This factory, for convenience.
+   * @see MediaCodecRenderer#experimentalSetBypassBatchSize(int, long)
+   */
+  public DefaultRenderersFactory experimentalSetAudioBypassBatchSize(
+      int maxAccessUnitCount, long maxBatchDurationUs) {
+    audioBypassMaxAccessUnitCount = maxAccessUnitCount;
+    audioBypassMaxBatchDurationUs = maxBatchDurationUs;
+    return this;
+  }
+
   /**
    * Sets whether to enable fallback to lower-priority decoders if decoder initialization fails.
    * This may result in using a decoder that is less efficient or slower than the primary decoder.
@@ -373,6 +416,7 @@ public class DefaultRenderersFactory implements RenderersFactory {
             eventListener,
             MAX_DROPPED_VIDEO_FRAME_COUNT_TO_NOTIFY);
     videoRenderer.experimentalSetMediaCodecOperationMode(videoMediaCodecOperationMode);
+    videoRenderer.experimentalSetMediaCodecPool(mediaCodecPool);
     out.add(videoRenderer);
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
@@ -470,6 +514,11 @@ public class DefaultRenderersFactory implements RenderersFactory {
             eventListener,
             audioSink);
     audioRenderer.experimentalSetMediaCodecOperationMode(audioMediaCodecOperationMode);
+    audioRenderer.experimentalSetMediaCodecPool(mediaCodecPool);
+    if (audioBypassMaxAccessUnitCount != C.LENGTH_UNSET) {
+      audioRenderer.experimentalSetBypassBatchSize(
+          audioBypassMaxAccessUnitCount, audioBypassMaxBatchDurationUs);
+    }
     out.add(audioRenderer);
 
     if (extensionRendererMode == EXTENSION_RENDERER_MODE_OFF) {
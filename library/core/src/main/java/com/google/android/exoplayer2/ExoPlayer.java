@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.source.LoopingMediaSource;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSourceFactory;
 import com.google.android.exoplayer2.source.MergingMediaSource;
+import com.google.android.exoplayer2.source.PreloadingMediaSourceFactory;
 import com.google.android.exoplayer2.source.ProgressiveMediaSource;
 import com.google.android.exoplayer2.source.ShuffleOrder;
 import com.google.android.exoplayer2.source.SingleSampleMediaSource;
@@ -154,6 +155,7 @@ public interface ExoPlayer extends Player {
 
     private long releaseTimeoutMs;
     private boolean throwWhenStuckBuffering;
+    private int playlistPreparationRange;
 
     /**
      * Creates a builder with a list of {@link Renderer Renderers}.
@@ -216,6 +218,7 @@ public interface ExoPlayer extends Player {
       seekParameters = SeekParameters.DEFAULT;
       clock = Clock.DEFAULT;
       throwWhenStuckBuffering = true;
+      playlistPreparationRange = C.LENGTH_UNSET;
     }
 
     /**
@@ -245,6 +248,23 @@ public interface ExoPlayer extends Player {
       return this;
     }
 
+    /**
+     * Sets the number of playlist items before and after the playing one that are prepared. Items
+     * outside of this range are represented by placeholder timelines, and the media sources of
+     * items set with {@link MediaItem MediaItems} are only created once they come within range or
+     * playback reaches them.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param preparationRange The number of items before and after the playing one that are
+     *     prepared, or {@link C#LENGTH_UNSET} to prepare all items.
+     * @return This builder.
+     */
+    public Builder experimentalSetPlaylistPreparationRange(int preparationRange) {
+      this.playlistPreparationRange = preparationRange;
+      return this;
+    }
+
     /**
      * Sets the {@link TrackSelector} that will be used by the player.
      *
@@ -415,6 +435,9 @@ public interface ExoPlayer extends Player {
       if (!throwWhenStuckBuffering) {
         player.experimentalDisableThrowWhenStuckBuffering();
       }
+      if (playlistPreparationRange != C.LENGTH_UNSET) {
+        player.experimentalSetPlaylistPreparationRange(playlistPreparationRange);
+      }
 
       return player;
     }
@@ -637,4 +660,26 @@ public interface ExoPlayer extends Player {
    * @param offloadSchedulingEnabled Whether to enable offload scheduling.
    */
   void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled);
+
+  /**
+   * Sets the {@link MediaItem MediaItems} to preload, in order of priority, so that switching to
+   * one of them doesn't wait for its manifest, initialization data and first media samples to load.
+   *
+   * <p>The player prepares the media sources of up to {@link
+   * PreloadingMediaSourceFactory#DEFAULT_MAX_PRELOAD_COUNT} items and buffers the first {@link
+   * PreloadingMediaSourceFactory#DEFAULT_PRELOAD_DURATION_MS} of each, as long as the preloaded
+   * items hold less than {@link PreloadingMediaSourceFactory#DEFAULT_MAX_PRELOAD_BYTES}. Preloaded
+   * media is allocated from the player's {@link LoadControl#getAllocator() allocator}, so it counts
+   * towards the target buffer size of the load control and the current item buffers correspondingly
+   * less. When a preloaded item is later set or added with {@link #setMediaItems(List)} or a
+   * similar method, the player uses the preloaded source and, if playback starts at the item's
+   * default position, its buffered media. Previously preloaded items that aren't in {@code
+   * mediaItems} are released.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release.
+   *
+   * @param mediaItems The {@link MediaItem MediaItems} to preload, or an empty list to release all
+   *     preloaded items.
+   */
+  void experimentalSetPreloadMediaItems(List<MediaItem> mediaItems);
 }
@@ -31,6 +31,7 @@ import com.google.android.exoplayer2.analytics.AnalyticsCollector;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.MediaSourceFactory;
+import com.google.android.exoplayer2.source.PreloadingMediaSourceFactory;
 import com.google.android.exoplayer2.source.ShuffleOrder;
 import com.google.android.exoplayer2.source.TrackGroupArray;
 import com.google.android.exoplayer2.source.ads.AdsMediaSource;
@@ -38,6 +39,7 @@ import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
 import com.google.android.exoplayer2.trackselection.TrackSelector;
 import com.google.android.exoplayer2.trackselection.TrackSelectorResult;
+import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.upstream.BandwidthMeter;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
@@ -75,9 +77,9 @@ import java.util.concurrent.TimeoutException;
   private final CopyOnWriteArrayList<ListenerHolder> listeners;
   private final Timeline.Period period;
   private final ArrayDeque<Runnable> pendingListenerNotifications;
-  private final List<MediaSourceHolderSnapshot> mediaSourceHolderSnapshots;
   private final boolean useLazyPreparation;
   private final MediaSourceFactory mediaSourceFactory;
+  private final Allocator allocator;
   @Nullable private final AnalyticsCollector analyticsCollector;
   private final Looper applicationLooper;
   private final BandwidthMeter bandwidthMeter;
@@ -91,8 +93,12 @@ import java.util.concurrent.TimeoutException;
   private boolean foregroundMode;
   private SeekParameters seekParameters;
   private ShuffleOrder shuffleOrder;
+  private ChildTimelineList childTimelines;
   private boolean pauseAtEndOfMediaItems;
   private boolean hasAdsMediaSource;
+  private int playlistPreparationRange;
+  @Nullable private PreloadingMediaSourceFactory preloadingMediaSourceFactory;
+  private ListenerHolder[] listenerSnapshot;
 
   // Playback information when there is no pending seek/set source operation.
   private PlaybackInfo playbackInfo;
@@ -139,6 +145,7 @@ import java.util.concurrent.TimeoutException;
     this.renderers = checkNotNull(renderers);
     this.trackSelector = checkNotNull(trackSelector);
     this.mediaSourceFactory = mediaSourceFactory;
+    this.allocator = loadControl.getAllocator();
     this.bandwidthMeter = bandwidthMeter;
     this.analyticsCollector = analyticsCollector;
     this.useLazyPreparation = useLazyPreparation;
@@ -147,8 +154,10 @@ import java.util.concurrent.TimeoutException;
     this.applicationLooper = applicationLooper;
     repeatMode = Player.REPEAT_MODE_OFF;
     listeners = new CopyOnWriteArrayList<>();
-    mediaSourceHolderSnapshots = new ArrayList<>();
+    listenerSnapshot = new ListenerHolder[0];
     shuffleOrder = new ShuffleOrder.DefaultShuffleOrder(/* length= */ 0);
+    childTimelines = ChildTimelineList.EMPTY;
+    playlistPreparationRange = C.LENGTH_UNSET;
     emptyTrackSelectorResult =
         new TrackSelectorResult(
             new RendererConfiguration[renderers.length],
@@ -209,11 +218,49 @@ import java.util.concurrent.TimeoutException;
     internalPlayer.experimentalDisableThrowWhenStuckBuffering();
   }
 
+  /**
+   * Sets the number of playlist items before and after the playing one that are prepared, or
+   * {@link C#LENGTH_UNSET} to prepare all items in the playlist.
+   *
+   * <p>If set, items outside of this range are represented by placeholder timelines, and the media
+   * sources of items added with {@link #setMediaItems} or {@link #addMediaItems} are only created
+   * once the items come within range or playback reaches them. They're created on the application
+   * thread with the player's {@link MediaSourceFactory}. Items that move out of range are released
+   * once they are no longer buffered. Items with an ad tag URI are still created immediately.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the player is used.
+   *
+   * @param preparationRange The number of items before and after the playing one that are
+   *     prepared, or {@link C#LENGTH_UNSET} to prepare all items.
+   * @throws IllegalStateException If the player isn't {@link Player#STATE_IDLE idle}.
+   */
+  public void experimentalSetPlaylistPreparationRange(int preparationRange) {
+    Assertions.checkArgument(preparationRange == C.LENGTH_UNSET || preparationRange >= 0);
+    // The playlist is only prepared on the playback thread while the player isn't idle.
+    Assertions.checkState(playbackInfo.playbackState == Player.STATE_IDLE);
+    playlistPreparationRange = preparationRange;
+    internalPlayer.experimentalSetPlaylistPreparationRange(preparationRange);
+  }
+
   @Override
   public void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled) {
     internalPlayer.experimentalSetOffloadSchedulingEnabled(offloadSchedulingEnabled);
   }
 
+  @Override
+  public void experimentalSetPreloadMediaItems(List<MediaItem> mediaItems) {
+    if (preloadingMediaSourceFactory == null) {
+      preloadingMediaSourceFactory =
+          new PreloadingMediaSourceFactory(
+              mediaSourceFactory,
+              internalPlayer.getPlaybackLooper(),
+              allocator,
+              bandwidthMeter.getTransferListener());
+    }
+    preloadingMediaSourceFactory.preload(mediaItems);
+  }
+
   @Override
   @Nullable
   public AudioComponent getAudioComponent() {
@@ -257,7 +304,9 @@ import java.util.concurrent.TimeoutException;
   @Override
   public void addListener(Player.EventListener listener) {
     Assertions.checkNotNull(listener);
-    listeners.addIfAbsent(new ListenerHolder(listener));
+    if (listeners.addIfAbsent(new ListenerHolder(listener))) {
+      listenerSnapshot = listeners.toArray(new ListenerHolder[0]);
+    }
   }
 
   @Override
@@ -268,6 +317,7 @@ import java.util.concurrent.TimeoutException;
         listeners.remove(listenerHolder);
       }
     }
+    listenerSnapshot = listeners.toArray(new ListenerHolder[0]);
   }
 
   @Override
@@ -350,7 +400,15 @@ import java.util.concurrent.TimeoutException;
   @Override
   public void setMediaItems(
       List<MediaItem> mediaItems, int startWindowIndex, long startPositionMs) {
-    setMediaSources(createMediaSources(mediaItems), startWindowIndex, startPositionMs);
+    if (shouldDeferMediaSourceCreation(mediaItems)) {
+      setMediaSourceHoldersInternal(
+          createDeferredMediaSourceHolders(mediaItems),
+          startWindowIndex,
+          startPositionMs,
+          /* resetToDefaultPosition= */ false);
+    } else {
+      setMediaSources(createMediaSources(mediaItems), startWindowIndex, startPositionMs);
+    }
   }
 
   @Override
@@ -392,12 +450,17 @@ import java.util.concurrent.TimeoutException;
 
   @Override
   public void addMediaItems(List<MediaItem> mediaItems) {
-    addMediaItems(/* index= */ mediaSourceHolderSnapshots.size(), mediaItems);
+    addMediaItems(/* index= */ childTimelines.size(), mediaItems);
   }
 
   @Override
   public void addMediaItems(int index, List<MediaItem> mediaItems) {
-    addMediaSources(index, createMediaSources(mediaItems));
+    if (shouldDeferMediaSourceCreation(mediaItems)) {
+      Assertions.checkArgument(index >= 0);
+      addMediaSourceHoldersInternal(index, createDeferredMediaSourceHolders(mediaItems));
+    } else {
+      addMediaSources(index, createMediaSources(mediaItems));
+    }
   }
 
   @Override
@@ -412,16 +475,21 @@ import java.util.concurrent.TimeoutException;
 
   @Override
   public void addMediaSources(List<MediaSource> mediaSources) {
-    addMediaSources(/* index= */ mediaSourceHolderSnapshots.size(), mediaSources);
+    addMediaSources(/* index= */ childTimelines.size(), mediaSources);
   }
 
   @Override
   public void addMediaSources(int index, List<MediaSource> mediaSources) {
     Assertions.checkArgument(index >= 0);
     validateMediaSources(mediaSources, /* mediaSourceReplacement= */ false);
+    addMediaSourceHoldersInternal(index, createMediaSourceHolders(mediaSources));
+  }
+
+  private void addMediaSourceHoldersInternal(
+      int index, List<MediaSourceList.MediaSourceHolder> holders) {
     Timeline oldTimeline = getCurrentTimeline();
     pendingOperationAcks++;
-    List<MediaSourceList.MediaSourceHolder> holders = addMediaSourceHolders(index, mediaSources);
+    addMediaSourceHolders(index, holders);
     Timeline newTimeline = createMaskingTimeline();
     PlaybackInfo newPlaybackInfo =
         maskTimelineAndPosition(
@@ -455,12 +523,12 @@ import java.util.concurrent.TimeoutException;
     Assertions.checkArgument(
         fromIndex >= 0
             && fromIndex <= toIndex
-            && toIndex <= mediaSourceHolderSnapshots.size()
+            && toIndex <= childTimelines.size()
             && newFromIndex >= 0);
     Timeline oldTimeline = getCurrentTimeline();
     pendingOperationAcks++;
-    newFromIndex = min(newFromIndex, mediaSourceHolderSnapshots.size() - (toIndex - fromIndex));
-    Util.moveItems(mediaSourceHolderSnapshots, fromIndex, toIndex, newFromIndex);
+    newFromIndex = min(newFromIndex, childTimelines.size() - (toIndex - fromIndex));
+    childTimelines = childTimelines.move(fromIndex, toIndex, newFromIndex);
     Timeline newTimeline = createMaskingTimeline();
     PlaybackInfo newPlaybackInfo =
         maskTimelineAndPosition(
@@ -479,7 +547,7 @@ import java.util.concurrent.TimeoutException;
 
   @Override
   public void clearMediaItems() {
-    removeMediaItems(/* fromIndex= */ 0, /* toIndex= */ mediaSourceHolderSnapshots.size());
+    removeMediaItems(/* fromIndex= */ 0, /* toIndex= */ childTimelines.size());
   }
 
   @Override
@@ -680,8 +748,7 @@ import java.util.concurrent.TimeoutException;
     PlaybackInfo playbackInfo;
     if (reset) {
       playbackInfo =
-          removeMediaItemsInternal(
-              /* fromIndex= */ 0, /* toIndex= */ mediaSourceHolderSnapshots.size());
+          removeMediaItemsInternal(/* fromIndex= */ 0, /* toIndex= */ childTimelines.size());
       playbackInfo = playbackInfo.copyWithPlaybackError(null);
     } else {
       playbackInfo = this.playbackInfo.copyWithLoadingMediaPeriodId(this.playbackInfo.periodId);
@@ -705,6 +772,10 @@ import java.util.concurrent.TimeoutException;
     Log.i(TAG, "Release " + Integer.toHexString(System.identityHashCode(this)) + " ["
         + ExoPlayerLibraryInfo.VERSION_SLASHY + "] [" + Util.DEVICE_DEBUG_INFO + "] ["
         + ExoPlayerLibraryInfo.registeredModules() + "]");
+    if (preloadingMediaSourceFactory != null) {
+      // Releases the preloaded items on the playback thread before it's released.
+      preloadingMediaSourceFactory.release();
+    }
     if (!internalPlayer.release()) {
       notifyListeners(
           listener ->
@@ -875,14 +946,33 @@ import java.util.concurrent.TimeoutException;
     }
   }
 
+  private MediaSourceFactory getMediaSourceFactory() {
+    return preloadingMediaSourceFactory != null ? preloadingMediaSourceFactory : mediaSourceFactory;
+  }
+
   private List<MediaSource> createMediaSources(List<MediaItem> mediaItems) {
     List<MediaSource> mediaSources = new ArrayList<>();
     for (int i = 0; i < mediaItems.size(); i++) {
-      mediaSources.add(mediaSourceFactory.createMediaSource(mediaItems.get(i)));
+      mediaSources.add(getMediaSourceFactory().createMediaSource(mediaItems.get(i)));
     }
     return mediaSources;
   }
 
+  private boolean shouldDeferMediaSourceCreation(List<MediaItem> mediaItems) {
+    if (playlistPreparationRange == C.LENGTH_UNSET || hasAdsMediaSource) {
+      return false;
+    }
+    for (int i = 0; i < mediaItems.size(); i++) {
+      @Nullable
+      MediaItem.PlaybackProperties playbackProperties = mediaItems.get(i).playbackProperties;
+      if (playbackProperties != null && playbackProperties.adTagUri != null) {
+        // Create ads media sources immediately so that they can be validated.
+        return false;
+      }
+    }
+    return true;
+  }
+
   private void handlePlaybackInfo(ExoPlayerImplInternal.PlaybackInfoUpdate playbackInfoUpdate) {
     pendingOperationAcks -= playbackInfoUpdate.operationAcks;
     if (playbackInfoUpdate.positionDiscontinuity) {
@@ -902,11 +992,9 @@ import java.util.concurrent.TimeoutException;
         maskingPeriodIndex = 0;
       }
       if (!newTimeline.isEmpty()) {
-        List<Timeline> timelines = ((PlaylistTimeline) newTimeline).getChildTimelines();
-        checkState(timelines.size() == mediaSourceHolderSnapshots.size());
-        for (int i = 0; i < timelines.size(); i++) {
-          mediaSourceHolderSnapshots.get(i).timeline = timelines.get(i);
-        }
+        ChildTimelineList newChildTimelines = ((PlaylistTimeline) newTimeline).getChildTimelines();
+        checkState(newChildTimelines.size() == childTimelines.size());
+        childTimelines = newChildTimelines;
       }
       boolean positionDiscontinuity = hasPendingDiscontinuity;
       hasPendingDiscontinuity = false;
@@ -950,7 +1038,7 @@ import java.util.concurrent.TimeoutException;
         new PlaybackInfoUpdate(
             playbackInfo,
             previousPlaybackInfo,
-            listeners,
+            listenerSnapshot,
             trackSelector,
             positionDiscontinuity,
             positionDiscontinuityReason,
@@ -1014,15 +1102,25 @@ import java.util.concurrent.TimeoutException;
       long startPositionMs,
       boolean resetToDefaultPosition) {
     validateMediaSources(mediaSources, /* mediaSourceReplacement= */ true);
+    setMediaSourceHoldersInternal(
+        createMediaSourceHolders(mediaSources),
+        startWindowIndex,
+        startPositionMs,
+        resetToDefaultPosition);
+  }
+
+  private void setMediaSourceHoldersInternal(
+      List<MediaSourceList.MediaSourceHolder> holders,
+      int startWindowIndex,
+      long startPositionMs,
+      boolean resetToDefaultPosition) {
     int currentWindowIndex = getCurrentWindowIndexInternal();
     long currentPositionMs = getCurrentPosition();
     pendingOperationAcks++;
-    if (!mediaSourceHolderSnapshots.isEmpty()) {
-      removeMediaSourceHolders(
-          /* fromIndex= */ 0, /* toIndexExclusive= */ mediaSourceHolderSnapshots.size());
+    if (!childTimelines.isEmpty()) {
+      removeMediaSourceHolders(/* fromIndex= */ 0, /* toIndexExclusive= */ childTimelines.size());
     }
-    List<MediaSourceList.MediaSourceHolder> holders =
-        addMediaSourceHolders(/* index= */ 0, mediaSources);
+    addMediaSourceHolders(/* index= */ 0, holders);
     Timeline timeline = createMaskingTimeline();
     if (!timeline.isEmpty() && startWindowIndex >= timeline.getWindowCount()) {
       throw new IllegalSeekPositionException(timeline, startWindowIndex, startPositionMs);
@@ -1063,28 +1161,42 @@ import java.util.concurrent.TimeoutException;
         /* seekProcessed= */ false);
   }
 
-  private List<MediaSourceList.MediaSourceHolder> addMediaSourceHolders(
-      int index, List<MediaSource> mediaSources) {
+  private List<MediaSourceList.MediaSourceHolder> createMediaSourceHolders(
+      List<MediaSource> mediaSources) {
     List<MediaSourceList.MediaSourceHolder> holders = new ArrayList<>();
     for (int i = 0; i < mediaSources.size(); i++) {
-      MediaSourceList.MediaSourceHolder holder =
-          new MediaSourceList.MediaSourceHolder(mediaSources.get(i), useLazyPreparation);
-      holders.add(holder);
-      mediaSourceHolderSnapshots.add(
-          i + index, new MediaSourceHolderSnapshot(holder.uid, holder.mediaSource.getTimeline()));
+      holders.add(new MediaSourceList.MediaSourceHolder(mediaSources.get(i), useLazyPreparation));
+    }
+    return holders;
+  }
+
+  private List<MediaSourceList.MediaSourceHolder> createDeferredMediaSourceHolders(
+      List<MediaItem> mediaItems) {
+    List<MediaSourceList.MediaSourceHolder> holders = new ArrayList<>();
+    for (int i = 0; i < mediaItems.size(); i++) {
+      holders.add(
+          new MediaSourceList.MediaSourceHolder(
+              mediaItems.get(i), getMediaSourceFactory(), useLazyPreparation));
+    }
+    return holders;
+  }
+
+  private void addMediaSourceHolders(int index, List<MediaSourceList.MediaSourceHolder> holders) {
+    for (int i = 0; i < holders.size(); i++) {
+      MediaSourceList.MediaSourceHolder holder = holders.get(i);
+      childTimelines = childTimelines.add(i + index, holder.uid, holder.getTimeline());
     }
     shuffleOrder =
         shuffleOrder.cloneAndInsert(
             /* insertionIndex= */ index, /* insertionCount= */ holders.size());
-    return holders;
   }
 
   private PlaybackInfo removeMediaItemsInternal(int fromIndex, int toIndex) {
     Assertions.checkArgument(
-        fromIndex >= 0 && toIndex >= fromIndex && toIndex <= mediaSourceHolderSnapshots.size());
+        fromIndex >= 0 && toIndex >= fromIndex && toIndex <= childTimelines.size());
     int currentWindowIndex = getCurrentWindowIndex();
     Timeline oldTimeline = getCurrentTimeline();
-    int currentMediaSourceCount = mediaSourceHolderSnapshots.size();
+    int currentMediaSourceCount = childTimelines.size();
     pendingOperationAcks++;
     removeMediaSourceHolders(fromIndex, /* toIndexExclusive= */ toIndex);
     Timeline newTimeline = createMaskingTimeline();
@@ -1109,10 +1221,10 @@ import java.util.concurrent.TimeoutException;
 
   private void removeMediaSourceHolders(int fromIndex, int toIndexExclusive) {
     for (int i = toIndexExclusive - 1; i >= fromIndex; i--) {
-      mediaSourceHolderSnapshots.remove(i);
+      childTimelines = childTimelines.remove(i);
     }
     shuffleOrder = shuffleOrder.cloneAndRemove(fromIndex, toIndexExclusive);
-    if (mediaSourceHolderSnapshots.isEmpty()) {
+    if (childTimelines.isEmpty()) {
       hasAdsMediaSource = false;
     }
   }
@@ -1133,7 +1245,7 @@ import java.util.concurrent.TimeoutException;
       throw new IllegalStateException();
     }
     int sizeAfterModification =
-        mediaSources.size() + (mediaSourceReplacement ? 0 : mediaSourceHolderSnapshots.size());
+        mediaSources.size() + (mediaSourceReplacement ? 0 : childTimelines.size());
     for (int i = 0; i < mediaSources.size(); i++) {
       MediaSource mediaSource = checkNotNull(mediaSources.get(i));
       if (mediaSource instanceof AdsMediaSource) {
@@ -1148,7 +1260,7 @@ import java.util.concurrent.TimeoutException;
   }
 
   private Timeline createMaskingTimeline() {
-    return new PlaylistTimeline(mediaSourceHolderSnapshots, shuffleOrder);
+    return new PlaylistTimeline(childTimelines, shuffleOrder);
   }
 
   private PlaybackInfo maskTimelineAndPosition(
@@ -1307,7 +1419,8 @@ import java.util.concurrent.TimeoutException;
   }
 
   private void notifyListeners(ListenerInvocation listenerInvocation) {
-    CopyOnWriteArrayList<ListenerHolder> listenerSnapshot = new CopyOnWriteArrayList<>(listeners);
+    // The snapshot is replaced rather than modified when listeners change, so it can be shared.
+    ListenerHolder[] listenerSnapshot = this.listenerSnapshot;
     notifyListeners(() -> invokeAll(listenerSnapshot, listenerInvocation));
   }
 
@@ -1333,7 +1446,7 @@ import java.util.concurrent.TimeoutException;
   private static final class PlaybackInfoUpdate implements Runnable {
 
     private final PlaybackInfo playbackInfo;
-    private final CopyOnWriteArrayList<ListenerHolder> listenerSnapshot;
+    private final ListenerHolder[] listenerSnapshot;
     private final TrackSelector trackSelector;
     private final boolean positionDiscontinuity;
     @DiscontinuityReason private final int positionDiscontinuityReason;
@@ -1357,7 +1470,7 @@ import java.util.concurrent.TimeoutException;
     public PlaybackInfoUpdate(
         PlaybackInfo playbackInfo,
         PlaybackInfo previousPlaybackInfo,
-        CopyOnWriteArrayList<ListenerHolder> listeners,
+        ListenerHolder[] listenerSnapshot,
         TrackSelector trackSelector,
         boolean positionDiscontinuity,
         @DiscontinuityReason int positionDiscontinuityReason,
@@ -1368,7 +1481,7 @@ import java.util.concurrent.TimeoutException;
         @PlayWhenReadyChangeReason int playWhenReadyChangeReason,
         boolean seekProcessed) {
       this.playbackInfo = playbackInfo;
-      this.listenerSnapshot = new CopyOnWriteArrayList<>(listeners);
+      this.listenerSnapshot = listenerSnapshot;
       this.trackSelector = trackSelector;
       this.positionDiscontinuity = positionDiscontinuity;
       this.positionDiscontinuityReason = positionDiscontinuityReason;
@@ -1485,32 +1598,9 @@ import java.util.concurrent.TimeoutException;
     }
   }
 
-  private static void invokeAll(
-      CopyOnWriteArrayList<ListenerHolder> listeners, ListenerInvocation listenerInvocation) {
+  private static void invokeAll(ListenerHolder[] listeners, ListenerInvocation listenerInvocation) {
     for (ListenerHolder listenerHolder : listeners) {
       listenerHolder.invoke(listenerInvocation);
     }
   }
-
-  private static final class MediaSourceHolderSnapshot implements MediaSourceInfoHolder {
-
-    private final Object uid;
-
-    private Timeline timeline;
-
-    public MediaSourceHolderSnapshot(Object uid, Timeline timeline) {
-      this.uid = uid;
-      this.timeline = timeline;
-    }
-
-    @Override
-    public Object getUid() {
-      return uid;
-    }
-
-    @Override
-    public Timeline getTimeline() {
-      return timeline;
-    }
-  }
 }
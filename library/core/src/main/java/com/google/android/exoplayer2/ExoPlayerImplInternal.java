@@ -33,6 +33,7 @@ import com.google.android.exoplayer2.Player.PlayWhenReadyChangeReason;
 import com.google.android.exoplayer2.Player.PlaybackSuppressionReason;
 import com.google.android.exoplayer2.Player.RepeatMode;
 import com.google.android.exoplayer2.analytics.AnalyticsCollector;
+import com.google.android.exoplayer2.source.MaskingMediaSource;
 import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.SampleStream;
@@ -46,6 +47,8 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.HandlerWrapper;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MetricsRegistry;
+import com.google.android.exoplayer2.util.TraceRecorder;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.base.Supplier;
@@ -142,6 +145,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private static final int MSG_PLAYLIST_UPDATE_REQUESTED = 22;
   private static final int MSG_SET_PAUSE_AT_END_OF_WINDOW = 23;
   private static final int MSG_SET_OFFLOAD_SCHEDULING_ENABLED = 24;
+  private static final int MSG_SET_PLAYLIST_PREPARATION_RANGE = 25;
+  private static final int MSG_SET_MEDIA_SOURCE = 26;
 
   private static final int ACTIVE_INTERVAL_MS = 10;
   private static final int IDLE_INTERVAL_MS = 1000;
@@ -155,6 +160,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
    */
   private static final long MIN_RENDERER_SLEEP_DURATION_MS = 2000;
 
+  private static final MetricsRegistry.Histogram DO_SOME_WORK_DURATION_US =
+      MetricsRegistry.DEFAULT.getHistogram("player.doSomeWorkDurationUs");
+  private static final MetricsRegistry.Histogram TOTAL_BUFFERED_DURATION_MS =
+      MetricsRegistry.DEFAULT.getHistogram("player.totalBufferedDurationMs");
+  private static final MetricsRegistry.Counter REBUFFER_COUNT =
+      MetricsRegistry.DEFAULT.getCounter("player.rebufferCount");
+
   private final Renderer[] renderers;
   private final RendererCapabilities[] rendererCapabilities;
   private final TrackSelector trackSelector;
@@ -162,6 +174,7 @@ import java.util.concurrent.atomic.AtomicBoolean;
   private final LoadControl loadControl;
   private final BandwidthMeter bandwidthMeter;
   private final HandlerWrapper handler;
+  private final Handler applicationHandler;
   private final HandlerThread internalPlaybackThread;
   private final Looper playbackLooper;
   private final Timeline.Window window;
@@ -245,9 +258,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
 
     deliverPendingMessageAtStartPositionRequired = true;
 
-    Handler eventHandler = new Handler(applicationLooper);
-    queue = new MediaPeriodQueue(analyticsCollector, eventHandler);
-    mediaSourceList = new MediaSourceList(/* listener= */ this, analyticsCollector, eventHandler);
+    applicationHandler = new Handler(applicationLooper);
+    queue = new MediaPeriodQueue(analyticsCollector, applicationHandler);
+    mediaSourceList =
+        new MediaSourceList(/* listener= */ this, analyticsCollector, applicationHandler);
 
     // Note: The documentation for Process.THREAD_PRIORITY_AUDIO that states "Applications can
     // not normally change to this priority" is incorrect.
@@ -265,6 +279,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
     throwWhenStuckBuffering = false;
   }
 
+  public void experimentalSetPlaylistPreparationRange(int preparationRange) {
+    handler
+        .obtainMessage(MSG_SET_PLAYLIST_PREPARATION_RANGE, preparationRange, /* unused */ 0)
+        .sendToTarget();
+  }
+
   public void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled) {
     handler
         .obtainMessage(
@@ -415,6 +435,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handler.sendEmptyMessage(MSG_PLAYLIST_UPDATE_REQUESTED);
   }
 
+  @Override
+  public void onMediaSourceRequested(MediaSourceList.MediaSourceHolder holder) {
+    // The media source factory is only used on the application thread.
+    applicationHandler.post(
+        () ->
+            handler
+                .obtainMessage(
+                    MSG_SET_MEDIA_SOURCE,
+                    new MediaSourceCreatedMessage(holder, holder.createMediaSource()))
+                .sendToTarget());
+  }
+
   // MediaPeriod.Callback implementation.
 
   @Override
@@ -525,6 +557,12 @@ import java.util.concurrent.atomic.AtomicBoolean;
         case MSG_SET_OFFLOAD_SCHEDULING_ENABLED:
           setOffloadSchedulingEnabledInternal(msg.arg1 == 1);
           break;
+        case MSG_SET_PLAYLIST_PREPARATION_RANGE:
+          mediaSourceList.setPreparationRange(/* preparationRange= */ msg.arg1);
+          break;
+        case MSG_SET_MEDIA_SOURCE:
+          setMediaSourceInternal((MediaSourceCreatedMessage) msg.obj);
+          break;
         case MSG_RELEASE:
           releaseInternal();
           // Return immediately to not send playback info updates after release.
@@ -681,6 +719,15 @@ import java.util.concurrent.atomic.AtomicBoolean;
     handleMediaSourceListInfoRefreshed(timeline);
   }
 
+  private void setMediaSourceInternal(MediaSourceCreatedMessage mediaSourceCreatedMessage) {
+    mediaSourceList.setMediaSource(
+        mediaSourceCreatedMessage.holder, mediaSourceCreatedMessage.mediaSource);
+    if (playbackInfo.playbackState == Player.STATE_BUFFERING) {
+      // Create the loading period, if it was waiting for the media source.
+      handler.sendEmptyMessage(MSG_DO_SOME_WORK);
+    }
+  }
+
   private void moveMediaItemsInternal(MoveMediaItemsMessage moveMediaItemsMessage)
       throws ExoPlaybackException {
     playbackInfoUpdate.incrementPendingOperationAcks(/* operationAcks= */ 1);
@@ -872,6 +919,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
 
     TraceUtil.beginSection("doSomeWork");
+    boolean recordMetrics = MetricsRegistry.DEFAULT.isEnabled();
+    boolean recordTrace = TraceRecorder.DEFAULT.isEnabled();
+    long operationStartTimeNs = recordMetrics || recordTrace ? System.nanoTime() : 0;
 
     updatePlaybackPositions();
 
@@ -889,7 +939,11 @@ import java.util.concurrent.atomic.AtomicBoolean;
         // TODO: Each renderer should return the maximum delay before which it wishes to be called
         // again. The minimum of these values should then be used as the delay before the next
         // invocation of this method.
+        long renderStartTimeNs = recordTrace ? System.nanoTime() : 0;
         renderer.render(rendererPositionUs, rendererPositionElapsedRealtimeUs);
+        if (recordTrace) {
+          TraceRecorder.DEFAULT.recordSpan("renderer", renderer.getName(), renderStartTimeNs);
+        }
         renderersEnded = renderersEnded && renderer.isEnded();
         // Determine whether the renderer allows playback to continue. Playback can continue if the
         // renderer is ready or ended. Also continue playback if the renderer is reading ahead into
@@ -938,6 +992,9 @@ import java.util.concurrent.atomic.AtomicBoolean;
     } else if (playbackInfo.playbackState == Player.STATE_READY
         && !(enabledRendererCount == 0 ? isTimelineReady() : renderersAllowPlayback)) {
       rebuffering = shouldPlayWhenReady();
+      if (recordMetrics && rebuffering) {
+        REBUFFER_COUNT.increment();
+      }
       setState(Player.STATE_BUFFERING);
       stopRenderers();
     }
@@ -973,6 +1030,13 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
     requestForRendererSleep = false; // A sleep request is only valid for the current doSomeWork.
 
+    if (recordMetrics) {
+      DO_SOME_WORK_DURATION_US.record((System.nanoTime() - operationStartTimeNs) / 1000);
+      TOTAL_BUFFERED_DURATION_MS.record(C.usToMs(playbackInfo.totalBufferedDurationUs));
+    }
+    if (recordTrace) {
+      TraceRecorder.DEFAULT.recordSpan("player", "doSomeWork", operationStartTimeNs);
+    }
     TraceUtil.endSection();
   }
 
@@ -1741,6 +1805,10 @@ import java.util.concurrent.atomic.AtomicBoolean;
     maybeUpdateReadingPeriod();
     maybeUpdateReadingRenderers();
     maybeUpdatePlayingPeriod();
+    @Nullable MediaPeriodHolder playingPeriodHolder = queue.getPlayingPeriod();
+    if (playingPeriodHolder != null) {
+      mediaSourceList.setPlayingPeriodUid(playingPeriodHolder.uid);
+    }
   }
 
   private void maybeUpdateLoadingPeriod() throws ExoPlaybackException {
@@ -1748,7 +1816,8 @@ import java.util.concurrent.atomic.AtomicBoolean;
     if (queue.shouldLoadNextMediaPeriod()) {
       @Nullable
       MediaPeriodInfo info = queue.getNextMediaPeriodInfo(rendererPositionUs, playbackInfo);
-      if (info != null) {
+      // If the media source of the period hasn't been created yet, wait until it has been.
+      if (info != null && mediaSourceList.canCreatePeriod(info.id.periodUid)) {
         MediaPeriodHolder mediaPeriodHolder =
             queue.enqueueNextMediaPeriodHolder(
                 rendererCapabilities,
@@ -2696,6 +2765,18 @@ import java.util.concurrent.atomic.AtomicBoolean;
     }
   }
 
+  private static final class MediaSourceCreatedMessage {
+
+    public final MediaSourceList.MediaSourceHolder holder;
+    public final MaskingMediaSource mediaSource;
+
+    public MediaSourceCreatedMessage(
+        MediaSourceList.MediaSourceHolder holder, MaskingMediaSource mediaSource) {
+      this.holder = holder;
+      this.mediaSource = mediaSource;
+    }
+  }
+
   private static class MoveMediaItemsMessage {
 
     public final int fromIndex;
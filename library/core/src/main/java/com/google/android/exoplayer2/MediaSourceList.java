@@ -15,6 +15,7 @@
  */
 package com.google.android.exoplayer2;
 
+import static java.lang.Math.abs;
 import static java.lang.Math.max;
 import static java.lang.Math.min;
 
@@ -29,6 +30,7 @@ import com.google.android.exoplayer2.source.MediaLoadData;
 import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.source.MediaSourceFactory;
 import com.google.android.exoplayer2.source.ShuffleOrder;
 import com.google.android.exoplayer2.source.ShuffleOrder.DefaultShuffleOrder;
 import com.google.android.exoplayer2.upstream.Allocator;
@@ -51,6 +53,13 @@ import java.util.Set;
  * during playback. It is valid for the same {@link MediaSource} instance to be present more than
  * once in the playlist.
  *
+ * <p>By default all media sources in the playlist are prepared. If a {@link
+ * #setPreparationRange(int) preparation range} is set, only the media sources around the one of the
+ * playing period are prepared. The media sources of {@link MediaSourceHolder}s created from a
+ * {@link MediaItem} are only created once they come within range or a period is created in them.
+ * They're requested from the {@link MediaSourceListInfoRefreshListener}, which creates them on the
+ * application thread.
+ *
  * <p>With the exception of the constructor, all methods are called on the playback thread.
  */
 /* package */ final class MediaSourceList {
@@ -65,6 +74,16 @@ import java.util.Set;
      * <p>Called on the playback thread.
      */
     void onPlaylistUpdateRequested();
+
+    /**
+     * Called when the media source of a {@link MediaSourceHolder} that was created from a {@link
+     * MediaItem} is needed. The source must be created with {@link
+     * MediaSourceHolder#createMediaSource()} on the application thread, and then be passed to
+     * {@link #setMediaSource(MediaSourceHolder, MaskingMediaSource)} on the playback thread.
+     *
+     * <p>Called on the playback thread.
+     */
+    void onMediaSourceRequested(MediaSourceHolder holder);
   }
 
   private static final String TAG = "MediaSourceList";
@@ -78,8 +97,11 @@ import java.util.Set;
   private final HashMap<MediaSourceList.MediaSourceHolder, MediaSourceAndListener> childSources;
   private final Set<MediaSourceHolder> enabledMediaSourceHolders;
 
+  private ChildTimelineList childTimelines;
   private ShuffleOrder shuffleOrder;
   private boolean isPrepared;
+  private int preparationRange;
+  @Nullable private MediaSourceHolder playingMediaSourceHolder;
 
   @Nullable private TransferListener mediaTransferListener;
 
@@ -99,6 +121,8 @@ import java.util.Set;
       Handler analyticsCollectorHandler) {
     mediaSourceListInfoListener = listener;
     shuffleOrder = new DefaultShuffleOrder(0);
+    childTimelines = ChildTimelineList.EMPTY;
+    preparationRange = C.LENGTH_UNSET;
     mediaSourceByMediaPeriod = new IdentityHashMap<>();
     mediaSourceByUid = new HashMap<>();
     mediaSourceHolders = new ArrayList<>();
@@ -112,6 +136,23 @@ import java.util.Set;
     }
   }
 
+  /**
+   * Sets the number of media sources before and after the one of the {@link
+   * #setPlayingPeriodUid(Object) playing period} that are prepared, or {@link C#LENGTH_UNSET} to
+   * prepare all media sources in the playlist.
+   *
+   * <p>Media sources that move out of this range are released once they have no active periods.
+   * Must be called before the playlist is prepared.
+   *
+   * @param preparationRange The number of media sources before and after the one of the playing
+   *     period that are prepared, or {@link C#LENGTH_UNSET} to prepare all media sources.
+   */
+  public void setPreparationRange(int preparationRange) {
+    Assertions.checkState(!isPrepared);
+    Assertions.checkArgument(preparationRange == C.LENGTH_UNSET || preparationRange >= 0);
+    this.preparationRange = preparationRange;
+  }
+
   /**
    * Sets the media sources replacing any sources previously contained in the playlist.
    *
@@ -139,22 +180,11 @@ import java.util.Set;
       this.shuffleOrder = shuffleOrder;
       for (int insertionIndex = index; insertionIndex < index + holders.size(); insertionIndex++) {
         MediaSourceHolder holder = holders.get(insertionIndex - index);
-        if (insertionIndex > 0) {
-          MediaSourceHolder previousHolder = mediaSourceHolders.get(insertionIndex - 1);
-          Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
-          holder.reset(
-              /* firstWindowIndexInChild= */ previousHolder.firstWindowIndexInChild
-                  + previousTimeline.getWindowCount());
-        } else {
-          holder.reset(/* firstWindowIndexInChild= */ 0);
-        }
-        Timeline newTimeline = holder.mediaSource.getTimeline();
-        correctOffsets(
-            /* startIndex= */ insertionIndex,
-            /* windowOffsetUpdate= */ newTimeline.getWindowCount());
+        holder.reset();
+        childTimelines = childTimelines.add(insertionIndex, holder.uid, holder.getTimeline());
         mediaSourceHolders.add(insertionIndex, holder);
         mediaSourceByUid.put(holder.uid, holder);
-        if (isPrepared) {
+        if (isPrepared && preparationRange == C.LENGTH_UNSET) {
           prepareChildSource(holder);
           if (mediaSourceByMediaPeriod.isEmpty()) {
             enabledMediaSourceHolders.add(holder);
@@ -163,6 +193,9 @@ import java.util.Set;
           }
         }
       }
+      if (isPrepared) {
+        updatePreparedMediaSources();
+      }
     }
     return createTimeline();
   }
@@ -187,6 +220,9 @@ import java.util.Set;
     Assertions.checkArgument(fromIndex >= 0 && fromIndex <= toIndex && toIndex <= getSize());
     this.shuffleOrder = shuffleOrder;
     removeMediaSourcesInternal(fromIndex, toIndex);
+    if (isPrepared) {
+      updatePreparedMediaSources();
+    }
     return createTimeline();
   }
 
@@ -231,15 +267,10 @@ import java.util.Set;
     if (fromIndex == toIndex || fromIndex == newFromIndex) {
       return createTimeline();
     }
-    int startIndex = min(fromIndex, newFromIndex);
-    int newEndIndex = newFromIndex + (toIndex - fromIndex) - 1;
-    int endIndex = max(newEndIndex, toIndex - 1);
-    int windowOffset = mediaSourceHolders.get(startIndex).firstWindowIndexInChild;
     Util.moveItems(mediaSourceHolders, fromIndex, toIndex, newFromIndex);
-    for (int i = startIndex; i <= endIndex; i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.firstWindowIndexInChild = windowOffset;
-      windowOffset += holder.mediaSource.getTimeline().getWindowCount();
+    childTimelines = childTimelines.move(fromIndex, toIndex, newFromIndex);
+    if (isPrepared) {
+      updatePreparedMediaSources();
     }
     return createTimeline();
   }
@@ -282,14 +313,80 @@ import java.util.Set;
   public void prepare(@Nullable TransferListener mediaTransferListener) {
     Assertions.checkState(!isPrepared);
     this.mediaTransferListener = mediaTransferListener;
-    for (int i = 0; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
-      prepareChildSource(mediaSourceHolder);
-      enabledMediaSourceHolders.add(mediaSourceHolder);
+    if (preparationRange == C.LENGTH_UNSET) {
+      for (int i = 0; i < mediaSourceHolders.size(); i++) {
+        MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
+        prepareChildSource(mediaSourceHolder);
+        enabledMediaSourceHolders.add(mediaSourceHolder);
+      }
     }
+    // Otherwise, media sources are prepared once the first period is created.
     isPrepared = true;
   }
 
+  /**
+   * Sets the uid of the playing period. If a preparation range is set, prepares the media sources
+   * in range of the one of the playing period, and releases those that are out of range and have
+   * no active periods.
+   *
+   * @param periodUid The uid of the playing period.
+   */
+  public void setPlayingPeriodUid(Object periodUid) {
+    @Nullable
+    MediaSourceHolder holder = mediaSourceByUid.get(getMediaSourceHolderUid(periodUid));
+    if (holder == null || holder == playingMediaSourceHolder) {
+      return;
+    }
+    playingMediaSourceHolder = holder;
+    updatePreparedMediaSources();
+  }
+
+  /**
+   * Returns whether a period with the given uid can be created. This is the case unless its media
+   * source is created from a {@link MediaItem} and hasn't been created yet, in which case the media
+   * source is requested.
+   *
+   * @param periodUid The uid of the period.
+   * @return Whether the period can be created.
+   */
+  public boolean canCreatePeriod(Object periodUid) {
+    MediaSourceHolder holder =
+        Assertions.checkNotNull(mediaSourceByUid.get(getMediaSourceHolderUid(periodUid)));
+    if (holder.mediaSource != null) {
+      return true;
+    }
+    maybeRequestMediaSource(holder);
+    return false;
+  }
+
+  /**
+   * Sets the media source of a {@link MediaSourceHolder} that was created from a {@link MediaItem},
+   * after it has been {@link MediaSourceListInfoRefreshListener#onMediaSourceRequested requested}.
+   *
+   * @param holder The {@link MediaSourceHolder}.
+   * @param mediaSource The {@link MaskingMediaSource} created by {@link
+   *     MediaSourceHolder#createMediaSource()}.
+   */
+  public void setMediaSource(MediaSourceHolder holder, MaskingMediaSource mediaSource) {
+    if (holder.mediaSource != null) {
+      return;
+    }
+    holder.mediaSource = mediaSource;
+    int childIndex = childTimelines.getIndexOfUid(holder.uid);
+    if (childIndex == C.INDEX_UNSET) {
+      // The holder has been removed from the playlist.
+      return;
+    }
+    if (childTimelines.getTimeline(childIndex) != mediaSource.getTimeline()) {
+      // The timeline of the media source replaces the placeholder timeline.
+      childTimelines = childTimelines.set(childIndex, mediaSource.getTimeline());
+      mediaSourceListInfoListener.onPlaylistUpdateRequested();
+    }
+    if (isPrepared) {
+      updatePreparedMediaSources();
+    }
+  }
+
   /**
    * Returns a new {@link MediaPeriod} identified by {@code periodId}.
    *
@@ -297,6 +394,7 @@ import java.util.Set;
    * @param allocator An {@link Allocator} from which to obtain media buffer allocations.
    * @param startPositionUs The expected start position, in microseconds.
    * @return A new {@link MediaPeriod}.
+   * @throws IllegalStateException If the period {@link #canCreatePeriod(Object) can't be created}.
    */
   public MediaPeriod createPeriod(
       MediaSource.MediaPeriodId id, Allocator allocator, long startPositionUs) {
@@ -304,10 +402,16 @@ import java.util.Set;
     MediaSource.MediaPeriodId childMediaPeriodId =
         id.copyWithPeriodUid(getChildPeriodUid(id.periodUid));
     MediaSourceHolder holder = Assertions.checkNotNull(mediaSourceByUid.get(mediaSourceHolderUid));
+    Assertions.checkState(holder.mediaSource != null);
+    if (!childSources.containsKey(holder)) {
+      // The media source is out of the preparation range, for example because it follows the
+      // playing one in shuffle order, or because no period is playing yet.
+      prepareChildSource(holder);
+    }
     enableMediaSource(holder);
     holder.activeMediaPeriodIds.add(childMediaPeriodId);
     MediaPeriod mediaPeriod =
-        holder.mediaSource.createPeriod(childMediaPeriodId, allocator, startPositionUs);
+        holder.getMediaSource().createPeriod(childMediaPeriodId, allocator, startPositionUs);
     mediaSourceByMediaPeriod.put(mediaPeriod, holder);
     disableUnusedMediaSources();
     return mediaPeriod;
@@ -321,7 +425,7 @@ import java.util.Set;
   public void releasePeriod(MediaPeriod mediaPeriod) {
     MediaSourceHolder holder =
         Assertions.checkNotNull(mediaSourceByMediaPeriod.remove(mediaPeriod));
-    holder.mediaSource.releasePeriod(mediaPeriod);
+    holder.getMediaSource().releasePeriod(mediaPeriod);
     holder.activeMediaPeriodIds.remove(((MaskingMediaPeriod) mediaPeriod).id);
     if (!mediaSourceByMediaPeriod.isEmpty()) {
       disableUnusedMediaSources();
@@ -342,21 +446,27 @@ import java.util.Set;
     }
     childSources.clear();
     enabledMediaSourceHolders.clear();
+    playingMediaSourceHolder = null;
     isPrepared = false;
   }
 
+  /**
+   * Returns the index of the first window of a {@link MediaSourceHolder} in the playlist timeline.
+   * For holders that have been removed, returns the index they had when they were removed.
+   */
+  public int getFirstWindowIndexInChild(MediaSourceHolder mediaSourceHolder) {
+    int childIndex = childTimelines.getIndexOfUid(mediaSourceHolder.uid);
+    return childIndex == C.INDEX_UNSET
+        ? mediaSourceHolder.removedFirstWindowIndexInChild
+        : childTimelines.getFirstWindowIndex(childIndex);
+  }
+
   /** Creates a timeline reflecting the current state of the playlist. */
   public Timeline createTimeline() {
-    if (mediaSourceHolders.isEmpty()) {
+    if (childTimelines.isEmpty()) {
       return Timeline.EMPTY;
     }
-    int windowOffset = 0;
-    for (int i = 0; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
-      mediaSourceHolder.firstWindowIndexInChild = windowOffset;
-      windowOffset += mediaSourceHolder.mediaSource.getTimeline().getWindowCount();
-    }
-    return new PlaylistTimeline(mediaSourceHolders, shuffleOrder);
+    return new PlaylistTimeline(childTimelines, shuffleOrder);
   }
 
   // Internal methods.
@@ -391,9 +501,8 @@ import java.util.Set;
     for (int index = toIndex - 1; index >= fromIndex; index--) {
       MediaSourceHolder holder = mediaSourceHolders.remove(index);
       mediaSourceByUid.remove(holder.uid);
-      Timeline oldTimeline = holder.mediaSource.getTimeline();
-      correctOffsets(
-          /* startIndex= */ index, /* windowOffsetUpdate= */ -oldTimeline.getWindowCount());
+      holder.removedFirstWindowIndexInChild = childTimelines.getFirstWindowIndex(index);
+      childTimelines = childTimelines.remove(index);
       holder.isRemoved = true;
       if (isPrepared) {
         maybeReleaseChildSource(holder);
@@ -401,13 +510,6 @@ import java.util.Set;
     }
   }
 
-  private void correctOffsets(int startIndex, int windowOffsetUpdate) {
-    for (int i = startIndex; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder mediaSourceHolder = mediaSourceHolders.get(i);
-      mediaSourceHolder.firstWindowIndexInChild += windowOffsetUpdate;
-    }
-  }
-
   // Internal methods to manage child sources.
 
   @Nullable
@@ -425,15 +527,82 @@ import java.util.Set;
     return null;
   }
 
-  private static int getWindowIndexForChildWindowIndex(
+  private int getWindowIndexForChildWindowIndex(
       MediaSourceHolder mediaSourceHolder, int windowIndex) {
-    return windowIndex + mediaSourceHolder.firstWindowIndexInChild;
+    return windowIndex + getFirstWindowIndexInChild(mediaSourceHolder);
+  }
+
+  private boolean isInPreparationRange(int index) {
+    if (preparationRange == C.LENGTH_UNSET) {
+      return true;
+    }
+    int playingIndex =
+        playingMediaSourceHolder != null
+            ? childTimelines.getIndexOfUid(playingMediaSourceHolder.uid)
+            : C.INDEX_UNSET;
+    return playingIndex != C.INDEX_UNSET && abs(index - playingIndex) <= preparationRange;
+  }
+
+  /**
+   * Prepares the media sources in range of the one of the playing period, and releases the ones
+   * that are out of range and have no active periods.
+   */
+  private void updatePreparedMediaSources() {
+    if (preparationRange == C.LENGTH_UNSET || playingMediaSourceHolder == null) {
+      return;
+    }
+    int playingIndex = childTimelines.getIndexOfUid(playingMediaSourceHolder.uid);
+    if (playingIndex == C.INDEX_UNSET) {
+      // The playing media source has been removed. Wait until another period is playing.
+      return;
+    }
+    Iterator<Map.Entry<MediaSourceHolder, MediaSourceAndListener>> iterator =
+        childSources.entrySet().iterator();
+    while (iterator.hasNext()) {
+      Map.Entry<MediaSourceHolder, MediaSourceAndListener> childSource = iterator.next();
+      MediaSourceHolder preparedHolder = childSource.getKey();
+      if (!preparedHolder.isRemoved
+          && preparedHolder.activeMediaPeriodIds.isEmpty()
+          && !isInPreparationRange(childTimelines.getIndexOfUid(preparedHolder.uid))) {
+        iterator.remove();
+        releaseChildSource(preparedHolder, childSource.getValue());
+      }
+    }
+    int fromIndex = max(0, playingIndex - preparationRange);
+    int toIndex =
+        playingIndex + min(preparationRange, mediaSourceHolders.size() - 1 - playingIndex);
+    for (int i = fromIndex; i <= toIndex; i++) {
+      MediaSourceHolder holderInRange = mediaSourceHolders.get(i);
+      if (!childSources.containsKey(holderInRange)) {
+        prepareChildSource(holderInRange);
+        // The media source has no active periods yet.
+        disableChildSource(holderInRange);
+      }
+    }
+  }
+
+  private void maybeRequestMediaSource(MediaSourceHolder holder) {
+    if (!holder.isMediaSourceRequested) {
+      holder.isMediaSourceRequested = true;
+      mediaSourceListInfoListener.onMediaSourceRequested(holder);
+    }
   }
 
   private void prepareChildSource(MediaSourceHolder holder) {
-    MediaSource mediaSource = holder.mediaSource;
+    @Nullable MediaSource mediaSource = holder.mediaSource;
+    if (mediaSource == null) {
+      // The media source is prepared once it has been created.
+      maybeRequestMediaSource(holder);
+      return;
+    }
     MediaSource.MediaSourceCaller caller =
-        (source, timeline) -> mediaSourceListInfoListener.onPlaylistUpdateRequested();
+        (source, timeline) -> {
+          int childIndex = childTimelines.getIndexOfUid(holder.uid);
+          if (childIndex != C.INDEX_UNSET) {
+            childTimelines = childTimelines.set(childIndex, timeline);
+          }
+          mediaSourceListInfoListener.onPlaylistUpdateRequested();
+        };
     ForwardingEventListener eventListener = new ForwardingEventListener(holder);
     childSources.put(holder, new MediaSourceAndListener(mediaSource, caller, eventListener));
     mediaSource.addEventListener(Util.createHandlerForCurrentOrMainLooper(), eventListener);
@@ -442,16 +611,26 @@ import java.util.Set;
   }
 
   private void maybeReleaseChildSource(MediaSourceHolder mediaSourceHolder) {
-    // Release if the source has been removed from the playlist and no periods are still active.
-    if (mediaSourceHolder.isRemoved && mediaSourceHolder.activeMediaPeriodIds.isEmpty()) {
-      MediaSourceAndListener removedChild =
-          Assertions.checkNotNull(childSources.remove(mediaSourceHolder));
-      removedChild.mediaSource.releaseSource(removedChild.caller);
-      removedChild.mediaSource.removeEventListener(removedChild.eventListener);
-      enabledMediaSourceHolders.remove(mediaSourceHolder);
+    // Release if the source has been removed from the playlist or is out of the preparation range,
+    // and no periods are still active.
+    if (mediaSourceHolder.activeMediaPeriodIds.isEmpty()
+        && (mediaSourceHolder.isRemoved
+            || !isInPreparationRange(childTimelines.getIndexOfUid(mediaSourceHolder.uid)))) {
+      // The source may not be prepared if it was out of the preparation range.
+      @Nullable MediaSourceAndListener removedChild = childSources.remove(mediaSourceHolder);
+      if (removedChild != null) {
+        releaseChildSource(mediaSourceHolder, removedChild);
+      }
     }
   }
 
+  private void releaseChildSource(
+      MediaSourceHolder mediaSourceHolder, MediaSourceAndListener childSource) {
+    childSource.mediaSource.releaseSource(childSource.caller);
+    childSource.mediaSource.removeEventListener(childSource.eventListener);
+    enabledMediaSourceHolders.remove(mediaSourceHolder);
+  }
+
   /** Return uid of media source holder from period uid of concatenated source. */
   private static Object getMediaSourceHolderUid(Object periodUid) {
     return PlaylistTimeline.getChildTimelineUidFromConcatenatedUid(periodUid);
@@ -469,21 +648,68 @@ import java.util.Set;
   /** Data class to hold playlist media sources together with meta data needed to process them. */
   /* package */ static final class MediaSourceHolder implements MediaSourceInfoHolder {
 
-    public final MaskingMediaSource mediaSource;
     public final Object uid;
     public final List<MediaSource.MediaPeriodId> activeMediaPeriodIds;
 
-    public int firstWindowIndexInChild;
+    /** The index of the first window of the source when it was removed from the playlist. */
+    public int removedFirstWindowIndexInChild;
+
     public boolean isRemoved;
 
+    @Nullable private final MediaItem mediaItem;
+    @Nullable private final MediaSourceFactory mediaSourceFactory;
+    @Nullable private final Timeline placeholderTimeline;
+    private final boolean useLazyPreparation;
+    @Nullable private MaskingMediaSource mediaSource;
+    private boolean isMediaSourceRequested;
+
     public MediaSourceHolder(MediaSource mediaSource, boolean useLazyPreparation) {
       this.mediaSource = new MaskingMediaSource(mediaSource, useLazyPreparation);
+      this.useLazyPreparation = useLazyPreparation;
+      this.mediaItem = null;
+      this.mediaSourceFactory = null;
+      this.placeholderTimeline = null;
+      this.activeMediaPeriodIds = new ArrayList<>();
+      this.uid = new Object();
+    }
+
+    /**
+     * Creates a holder whose {@link MediaSource} is only created for {@code mediaItem} once it's
+     * needed. Until then, {@link #getTimeline()} returns a placeholder timeline.
+     */
+    public MediaSourceHolder(
+        MediaItem mediaItem, MediaSourceFactory mediaSourceFactory, boolean useLazyPreparation) {
+      this.mediaItem = mediaItem;
+      this.mediaSourceFactory = mediaSourceFactory;
+      this.useLazyPreparation = useLazyPreparation;
+      this.placeholderTimeline = MaskingMediaSource.createPlaceholderTimeline(mediaItem);
       this.activeMediaPeriodIds = new ArrayList<>();
       this.uid = new Object();
     }
 
-    public void reset(int firstWindowIndexInChild) {
-      this.firstWindowIndexInChild = firstWindowIndexInChild;
+    /**
+     * Returns the {@link MaskingMediaSource} of the holder.
+     *
+     * @throws NullPointerException If the media source hasn't been created yet.
+     */
+    public MaskingMediaSource getMediaSource() {
+      return Assertions.checkNotNull(mediaSource);
+    }
+
+    /**
+     * Creates a {@link MaskingMediaSource} for the {@link MediaItem} of a holder that was created
+     * from one. Must be called on the application thread, as the {@link MediaSourceFactory} may
+     * not be thread-safe.
+     */
+    public MaskingMediaSource createMediaSource() {
+      return new MaskingMediaSource(
+          Assertions.checkNotNull(mediaSourceFactory)
+              .createMediaSource(Assertions.checkNotNull(mediaItem)),
+          useLazyPreparation);
+    }
+
+    public void reset() {
+      this.removedFirstWindowIndexInChild = 0;
       this.isRemoved = false;
       this.activeMediaPeriodIds.clear();
     }
@@ -495,7 +721,9 @@ import java.util.Set;
 
     @Override
     public Timeline getTimeline() {
-      return mediaSource.getTimeline();
+      return mediaSource != null
+          ? mediaSource.getTimeline()
+          : Assertions.checkNotNull(placeholderTimeline);
     }
   }
 
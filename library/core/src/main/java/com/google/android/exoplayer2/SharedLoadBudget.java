@@ -0,0 +1,234 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.os.Handler;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * A buffer and bandwidth budget shared by several players that play at the same time, such as the
+ * views of a multiview stream.
+ *
+ * <p>Each player is represented by a {@link Participant} with a weight, which can be changed at
+ * any time, for example to give the focused view a larger share. A participant is active whilst
+ * its player is prepared. Active participants share the {@link #getTotalTargetBufferBytes() total
+ * target buffer size} and the available bandwidth in proportion to their weights.
+ *
+ * <p>To share the buffer budget, pass the participant of each player to {@link
+ * DefaultLoadControl.Builder#setSharedLoadBudgetParticipant(Participant)}. The target buffer size
+ * of the load control is then limited to the participant's share. To share the bandwidth, build
+ * each player with the {@link BandwidthMeter} returned by {@link
+ * Participant#createBandwidthMeter(BandwidthMeter)} for a bandwidth meter that's shared by all the
+ * players. Adaptive track selections then only use the participant's share of the estimated
+ * bandwidth, which is allocated across the player's own tracks as usual.
+ */
+public final class SharedLoadBudget {
+
+  /** A player that shares the budget. */
+  public final class Participant {
+
+    @GuardedBy("SharedLoadBudget.this")
+    private float weight;
+
+    @GuardedBy("SharedLoadBudget.this")
+    private boolean active;
+
+    private volatile int targetBufferBytes;
+    private volatile float bandwidthFraction;
+
+    private Participant(float weight) {
+      this.weight = weight;
+    }
+
+    /**
+     * Sets the weight of the participant, relative to the weights of the other participants.
+     *
+     * @param weight The weight. Must be positive.
+     */
+    public void setWeight(float weight) {
+      checkArgument(weight > 0);
+      synchronized (SharedLoadBudget.this) {
+        this.weight = weight;
+        updateShares();
+      }
+    }
+
+    /** Returns the weight of the participant. */
+    public float getWeight() {
+      synchronized (SharedLoadBudget.this) {
+        return weight;
+      }
+    }
+
+    /**
+     * Returns the participant's share of the total target buffer size, in bytes. If the participant
+     * isn't active, this is the share it would have if it became active.
+     */
+    public int getTargetBufferBytes() {
+      return targetBufferBytes;
+    }
+
+    /**
+     * Returns the participant's share of the available bandwidth, as a fraction between 0 and 1.
+     * If the participant isn't active, this is the share it would have if it became active.
+     */
+    public float getBandwidthFraction() {
+      return bandwidthFraction;
+    }
+
+    /**
+     * Returns a {@link BandwidthMeter} whose estimate is the participant's share of the estimate
+     * of {@code bandwidthMeter}. Transfers are reported to {@code bandwidthMeter}, so it should be
+     * shared by all the participants.
+     *
+     * @param bandwidthMeter The shared {@link BandwidthMeter}.
+     * @return The participant's view of the shared {@link BandwidthMeter}.
+     */
+    public BandwidthMeter createBandwidthMeter(BandwidthMeter bandwidthMeter) {
+      return new ParticipantBandwidthMeter(bandwidthMeter, this);
+    }
+
+    /**
+     * Sets whether the participant is active, which is the case whilst its player is prepared.
+     * Only active participants take a share of the budget.
+     */
+    /* package */ void setActive(boolean active) {
+      synchronized (SharedLoadBudget.this) {
+        if (this.active != active) {
+          this.active = active;
+          updateShares();
+        }
+      }
+    }
+  }
+
+  /** The default total target buffer size, in bytes. */
+  public static final int DEFAULT_TOTAL_TARGET_BUFFER_BYTES =
+      2 * DefaultLoadControl.DEFAULT_MUXED_BUFFER_SIZE;
+
+  private final int totalTargetBufferBytes;
+
+  @GuardedBy("this")
+  private final List<Participant> participants;
+
+  /** Creates an instance with {@link #DEFAULT_TOTAL_TARGET_BUFFER_BYTES}. */
+  public SharedLoadBudget() {
+    this(DEFAULT_TOTAL_TARGET_BUFFER_BYTES);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param totalTargetBufferBytes The total target buffer size shared by the active participants,
+   *     in bytes.
+   */
+  public SharedLoadBudget(int totalTargetBufferBytes) {
+    checkArgument(totalTargetBufferBytes > 0);
+    this.totalTargetBufferBytes = totalTargetBufferBytes;
+    participants = new ArrayList<>();
+  }
+
+  /** Returns the total target buffer size shared by the active participants, in bytes. */
+  public int getTotalTargetBufferBytes() {
+    return totalTargetBufferBytes;
+  }
+
+  /**
+   * Creates a participant. The participant only takes a share of the budget once its player is
+   * prepared.
+   *
+   * @param weight The weight of the participant, relative to the weights of the other
+   *     participants. Must be positive.
+   * @return The participant.
+   */
+  public synchronized Participant createParticipant(float weight) {
+    checkArgument(weight > 0);
+    Participant participant = new Participant(weight);
+    participants.add(participant);
+    updateShares();
+    return participant;
+  }
+
+  /**
+   * Removes a participant, after which it no longer takes a share of the budget.
+   *
+   * @param participant The participant to remove.
+   */
+  public synchronized void removeParticipant(Participant participant) {
+    if (participants.remove(participant)) {
+      participant.active = false;
+      updateShares();
+    }
+  }
+
+  @GuardedBy("this")
+  private void updateShares() {
+    float activeWeight = 0;
+    for (int i = 0; i < participants.size(); i++) {
+      Participant participant = participants.get(i);
+      if (participant.active) {
+        activeWeight += participant.weight;
+      }
+    }
+    for (int i = 0; i < participants.size(); i++) {
+      Participant participant = participants.get(i);
+      float totalWeight = participant.active ? activeWeight : activeWeight + participant.weight;
+      float fraction = participant.weight / totalWeight;
+      participant.bandwidthFraction = fraction;
+      participant.targetBufferBytes = (int) (totalTargetBufferBytes * fraction);
+    }
+  }
+
+  /** A {@link BandwidthMeter} that scales the estimate of another by a participant's share. */
+  private static final class ParticipantBandwidthMeter implements BandwidthMeter {
+
+    private final BandwidthMeter bandwidthMeter;
+    private final Participant participant;
+
+    public ParticipantBandwidthMeter(BandwidthMeter bandwidthMeter, Participant participant) {
+      this.bandwidthMeter = bandwidthMeter;
+      this.participant = participant;
+    }
+
+    @Override
+    public long getBitrateEstimate() {
+      return (long) (bandwidthMeter.getBitrateEstimate() * participant.getBandwidthFraction());
+    }
+
+    @Override
+    @Nullable
+    public TransferListener getTransferListener() {
+      return bandwidthMeter.getTransferListener();
+    }
+
+    @Override
+    public void addEventListener(Handler eventHandler, EventListener eventListener) {
+      bandwidthMeter.addEventListener(eventHandler, eventListener);
+    }
+
+    @Override
+    public void removeEventListener(EventListener eventListener) {
+      bandwidthMeter.removeEventListener(eventListener);
+    }
+  }
+}
@@ -112,6 +112,7 @@ public class SimpleExoPlayer extends BasePlayer
     private SeekParameters seekParameters;
     private boolean pauseAtEndOfMediaItems;
     private boolean throwWhenStuckBuffering;
+    private int playlistPreparationRange;
     private boolean buildCalled;
 
     /**
@@ -240,6 +241,7 @@ public class SimpleExoPlayer extends BasePlayer
       seekParameters = SeekParameters.DEFAULT;
       clock = Clock.DEFAULT;
       throwWhenStuckBuffering = true;
+      playlistPreparationRange = C.LENGTH_UNSET;
     }
 
     /**
@@ -487,6 +489,23 @@ public class SimpleExoPlayer extends BasePlayer
       return this;
     }
 
+    /**
+     * Sets the number of playlist items before and after the playing one that are prepared. Items
+     * outside of this range are represented by placeholder timelines, and the media sources of
+     * items set with {@link MediaItem MediaItems} are only created once they come within range or
+     * playback reaches them.
+     *
+     * <p>This method is experimental, and will be renamed or removed in a future release.
+     *
+     * @param preparationRange The number of items before and after the playing one that are
+     *     prepared, or {@link C#LENGTH_UNSET} to prepare all items.
+     * @return This builder.
+     */
+    public Builder experimentalSetPlaylistPreparationRange(int preparationRange) {
+      this.playlistPreparationRange = preparationRange;
+      return this;
+    }
+
     /**
      * Sets the {@link Clock} that will be used by the player. Should only be set for testing
      * purposes.
@@ -655,6 +674,9 @@ public class SimpleExoPlayer extends BasePlayer
     if (!builder.throwWhenStuckBuffering) {
       player.experimentalDisableThrowWhenStuckBuffering();
     }
+    if (builder.playlistPreparationRange != C.LENGTH_UNSET) {
+      player.experimentalSetPlaylistPreparationRange(builder.playlistPreparationRange);
+    }
 
     sendRendererMessage(C.TRACK_TYPE_AUDIO, Renderer.MSG_SET_AUDIO_ATTRIBUTES, audioAttributes);
     sendRendererMessage(C.TRACK_TYPE_VIDEO, Renderer.MSG_SET_SCALING_MODE, videoScalingMode);
@@ -667,6 +689,12 @@ public class SimpleExoPlayer extends BasePlayer
     player.experimentalSetOffloadSchedulingEnabled(offloadSchedulingEnabled);
   }
 
+  @Override
+  public void experimentalSetPreloadMediaItems(List<MediaItem> mediaItems) {
+    verifyApplicationThread();
+    player.experimentalSetPreloadMediaItems(mediaItems);
+  }
+
   @Override
   @Nullable
   public AudioComponent getAudioComponent() {
@@ -73,12 +73,24 @@ public class AnalyticsCollector
         VideoListener,
         AudioListener {
 
-  private final CopyOnWriteArraySet<AnalyticsListener> listeners;
+  // Frequently called callbacks for which no events are generated unless at least one listener
+  // overrides the corresponding AnalyticsListener method.
+  private static final int CALLBACK_LOAD_STARTED = 1;
+  private static final int CALLBACK_LOAD_COMPLETED = 1 << 1;
+  private static final int CALLBACK_BANDWIDTH_ESTIMATE = 1 << 2;
+  private static final int CALLBACK_AUDIO_POSITION_ADVANCING = 1 << 3;
+  private static final int CALLBACK_DROPPED_VIDEO_FRAMES = 1 << 4;
+  private static final int CALLBACK_VIDEO_FRAME_PROCESSING_OFFSET = 1 << 5;
+
+  private final CopyOnWriteArraySet<AnalyticsListener> listenerSet;
   private final Clock clock;
   private final Period period;
   private final Window window;
   private final MediaPeriodQueueTracker mediaPeriodQueueTracker;
 
+  // Updated on the thread adding or removing listeners, and read on the threads reporting events.
+  private volatile AnalyticsListener[] listeners;
+  private volatile int overriddenCallbacks;
   private @MonotonicNonNull Player player;
   private boolean isSeeking;
 
@@ -89,7 +101,8 @@ public class AnalyticsCollector
    */
   public AnalyticsCollector(Clock clock) {
     this.clock = checkNotNull(clock);
-    listeners = new CopyOnWriteArraySet<>();
+    listenerSet = new CopyOnWriteArraySet<>();
+    listeners = new AnalyticsListener[0];
     period = new Period();
     window = new Window();
     mediaPeriodQueueTracker = new MediaPeriodQueueTracker(period);
@@ -102,7 +115,9 @@ public class AnalyticsCollector
    */
   public void addListener(AnalyticsListener listener) {
     Assertions.checkNotNull(listener);
-    listeners.add(listener);
+    if (listenerSet.add(listener)) {
+      updateListeners();
+    }
   }
 
   /**
@@ -111,7 +126,9 @@ public class AnalyticsCollector
    * @param listener The listener to remove.
    */
   public void removeListener(AnalyticsListener listener) {
-    listeners.remove(listener);
+    if (listenerSet.remove(listener)) {
+      updateListeners();
+    }
   }
 
   /**
@@ -207,6 +224,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onAudioPositionAdvancing(long playoutStartSystemTimeMs) {
+    if ((overriddenCallbacks & CALLBACK_AUDIO_POSITION_ADVANCING) == 0) {
+      return;
+    }
     EventTime eventTime = generateReadingMediaPeriodEventTime();
     for (AnalyticsListener listener : listeners) {
       listener.onAudioPositionAdvancing(eventTime, playoutStartSystemTimeMs);
@@ -302,6 +322,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onDroppedFrames(int count, long elapsedMs) {
+    if ((overriddenCallbacks & CALLBACK_DROPPED_VIDEO_FRAMES) == 0) {
+      return;
+    }
     EventTime eventTime = generatePlayingMediaPeriodEventTime();
     for (AnalyticsListener listener : listeners) {
       listener.onDroppedVideoFrames(eventTime, count, elapsedMs);
@@ -328,6 +351,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onVideoFrameProcessingOffset(long totalProcessingOffsetUs, int frameCount) {
+    if ((overriddenCallbacks & CALLBACK_VIDEO_FRAME_PROCESSING_OFFSET) == 0) {
+      return;
+    }
     EventTime eventTime = generatePlayingMediaPeriodEventTime();
     for (AnalyticsListener listener : listeners) {
       listener.onVideoFrameProcessingOffset(eventTime, totalProcessingOffsetUs, frameCount);
@@ -367,6 +393,9 @@ public class AnalyticsCollector
       @Nullable MediaPeriodId mediaPeriodId,
       LoadEventInfo loadEventInfo,
       MediaLoadData mediaLoadData) {
+    if ((overriddenCallbacks & CALLBACK_LOAD_STARTED) == 0) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     for (AnalyticsListener listener : listeners) {
       listener.onLoadStarted(eventTime, loadEventInfo, mediaLoadData);
@@ -379,6 +408,9 @@ public class AnalyticsCollector
       @Nullable MediaPeriodId mediaPeriodId,
       LoadEventInfo loadEventInfo,
       MediaLoadData mediaLoadData) {
+    if ((overriddenCallbacks & CALLBACK_LOAD_COMPLETED) == 0) {
+      return;
+    }
     EventTime eventTime = generateMediaPeriodEventTime(windowIndex, mediaPeriodId);
     for (AnalyticsListener listener : listeners) {
       listener.onLoadCompleted(eventTime, loadEventInfo, mediaLoadData);
@@ -573,6 +605,9 @@ public class AnalyticsCollector
 
   @Override
   public final void onBandwidthSample(int elapsedMs, long bytes, long bitrate) {
+    if ((overriddenCallbacks & CALLBACK_BANDWIDTH_ESTIMATE) == 0) {
+      return;
+    }
     EventTime eventTime = generateLoadingMediaPeriodEventTime();
     for (AnalyticsListener listener : listeners) {
       listener.onBandwidthEstimate(eventTime, elapsedMs, bytes, bitrate);
@@ -676,6 +711,19 @@ public class AnalyticsCollector
         player.getTotalBufferedDuration());
   }
 
+  private synchronized void updateListeners() {
+    AnalyticsListener[] newListeners = listenerSet.toArray(new AnalyticsListener[0]);
+    int newOverriddenCallbacks = 0;
+    for (AnalyticsListener listener : newListeners) {
+      newOverriddenCallbacks |= getOverriddenCallbacks(listener);
+    }
+    // Publish the union of the old and new callbacks until the new listeners are visible, so that
+    // no listener misses a callback it overrides.
+    overriddenCallbacks |= newOverriddenCallbacks;
+    listeners = newListeners;
+    overriddenCallbacks = newOverriddenCallbacks;
+  }
+
   private EventTime generateEventTime(@Nullable MediaPeriodId mediaPeriodId) {
     checkNotNull(player);
     @Nullable
@@ -726,6 +774,55 @@ public class AnalyticsCollector
         windowIsInTimeline ? timeline : Timeline.EMPTY, windowIndex, /* mediaPeriodId= */ null);
   }
 
+  /** Returns the {@code CALLBACK_*} flags of the optional callbacks overridden by a listener. */
+  private static int getOverriddenCallbacks(AnalyticsListener listener) {
+    Class<?> listenerClass = listener.getClass();
+    int callbacks = 0;
+    if (overridesMethod(
+        listenerClass,
+        "onLoadStarted",
+        EventTime.class,
+        LoadEventInfo.class,
+        MediaLoadData.class)) {
+      callbacks |= CALLBACK_LOAD_STARTED;
+    }
+    if (overridesMethod(
+        listenerClass,
+        "onLoadCompleted",
+        EventTime.class,
+        LoadEventInfo.class,
+        MediaLoadData.class)) {
+      callbacks |= CALLBACK_LOAD_COMPLETED;
+    }
+    if (overridesMethod(
+        listenerClass, "onBandwidthEstimate", EventTime.class, int.class, long.class, long.class)) {
+      callbacks |= CALLBACK_BANDWIDTH_ESTIMATE;
+    }
+    if (overridesMethod(listenerClass, "onAudioPositionAdvancing", EventTime.class, long.class)) {
+      callbacks |= CALLBACK_AUDIO_POSITION_ADVANCING;
+    }
+    if (overridesMethod(
+        listenerClass, "onDroppedVideoFrames", EventTime.class, int.class, long.class)) {
+      callbacks |= CALLBACK_DROPPED_VIDEO_FRAMES;
+    }
+    if (overridesMethod(
+        listenerClass, "onVideoFrameProcessingOffset", EventTime.class, long.class, int.class)) {
+      callbacks |= CALLBACK_VIDEO_FRAME_PROCESSING_OFFSET;
+    }
+    return callbacks;
+  }
+
+  private static boolean overridesMethod(
+      Class<?> listenerClass, String methodName, Class<?>... parameterTypes) {
+    try {
+      return listenerClass.getMethod(methodName, parameterTypes).getDeclaringClass()
+          != AnalyticsListener.class;
+    } catch (NoSuchMethodException e) {
+      // The method may have been renamed by code shrinking, so assume that it's overridden.
+      return true;
+    }
+  }
+
   /** Keeps track of the active media periods and currently playing and reading media period. */
   private static final class MediaPeriodQueueTracker {
 
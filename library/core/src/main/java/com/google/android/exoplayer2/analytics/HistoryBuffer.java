@@ -0,0 +1,96 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A ring buffer of history entries that drops its oldest entry for every new entry once it has
+ * reached its maximum size.
+ */
+/* package */ final class HistoryBuffer<T> {
+
+  private static final int INITIAL_CAPACITY = 8;
+
+  private final int maxSize;
+
+  private @NullableType Object[] entries;
+  private int startIndex;
+  private int size;
+
+  /**
+   * Creates an empty history.
+   *
+   * @param maxSize The maximum number of entries, or {@link C#LENGTH_UNSET} if the history is
+   *     unbounded.
+   */
+  public HistoryBuffer(int maxSize) {
+    Assertions.checkArgument(maxSize > 0 || maxSize == C.LENGTH_UNSET);
+    this.maxSize = maxSize;
+    int initialCapacity =
+        maxSize == C.LENGTH_UNSET ? INITIAL_CAPACITY : min(maxSize, INITIAL_CAPACITY);
+    entries = new Object[initialCapacity];
+  }
+
+  /** Returns the number of entries in the history. */
+  public int size() {
+    return size;
+  }
+
+  /** Adds an entry, dropping the oldest entry if the history has reached its maximum size. */
+  public void add(T entry) {
+    if (size == maxSize) {
+      entries[startIndex] = entry;
+      startIndex = (startIndex + 1) % entries.length;
+      return;
+    }
+    if (size == entries.length) {
+      int capacity = size * 2;
+      if (maxSize != C.LENGTH_UNSET) {
+        capacity = min(capacity, maxSize);
+      }
+      entries = toArray(capacity);
+      startIndex = 0;
+    }
+    entries[(startIndex + size) % entries.length] = entry;
+    size++;
+  }
+
+  /** Returns an unmodifiable copy of the entries, from oldest to newest. */
+  @SuppressWarnings("unchecked")
+  public List<T> toList() {
+    List<T> list = new ArrayList<>(size);
+    for (int i = 0; i < size; i++) {
+      list.add((T) entries[(startIndex + i) % entries.length]);
+    }
+    return Collections.unmodifiableList(list);
+  }
+
+  private @NullableType Object[] toArray(int capacity) {
+    @NullableType Object[] array = new Object[capacity];
+    int firstPartLength = min(size, entries.length - startIndex);
+    System.arraycopy(entries, startIndex, array, 0, firstPartLength);
+    System.arraycopy(entries, 0, array, firstPartLength, size - firstPartLength);
+    return array;
+  }
+}
@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static java.lang.Math.min;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.AbstractList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.RandomAccess;
+
+/**
+ * History of media times at realtimes, stored in primitive arrays.
+ *
+ * <p>Once the history has reached its maximum size, it's downsampled by dropping every second
+ * entry, so that it keeps covering the whole playback at a lower resolution.
+ */
+/* package */ final class MediaTimeHistory {
+
+  private static final int INITIAL_CAPACITY = 16;
+
+  private final int maxSize;
+
+  private long[] realtimesMs;
+  private long[] mediaTimesMs;
+  private int size;
+
+  /**
+   * Creates an empty history.
+   *
+   * @param maxSize The maximum number of entries, or {@link C#LENGTH_UNSET} if the history is
+   *     unbounded.
+   */
+  public MediaTimeHistory(int maxSize) {
+    Assertions.checkArgument(maxSize > 0 || maxSize == C.LENGTH_UNSET);
+    this.maxSize = maxSize;
+    int initialCapacity =
+        maxSize == C.LENGTH_UNSET ? INITIAL_CAPACITY : min(maxSize, INITIAL_CAPACITY);
+    realtimesMs = new long[initialCapacity];
+    mediaTimesMs = new long[initialCapacity];
+  }
+
+  private MediaTimeHistory(MediaTimeHistory other) {
+    maxSize = other.maxSize;
+    realtimesMs = Arrays.copyOf(other.realtimesMs, other.realtimesMs.length);
+    mediaTimesMs = Arrays.copyOf(other.mediaTimesMs, other.mediaTimesMs.length);
+    size = other.size;
+  }
+
+  /** Returns whether the history is empty. */
+  public boolean isEmpty() {
+    return size == 0;
+  }
+
+  /** Returns the realtime of the last entry, in milliseconds. Must not be called if empty. */
+  public long getLastRealtimeMs() {
+    Assertions.checkState(size > 0);
+    return realtimesMs[size - 1];
+  }
+
+  /** Returns the media time of the last entry, in milliseconds. Must not be called if empty. */
+  public long getLastMediaTimeMs() {
+    Assertions.checkState(size > 0);
+    return mediaTimesMs[size - 1];
+  }
+
+  /**
+   * Adds an entry, downsampling the history first if it has reached its maximum size.
+   *
+   * @param realtimeMs The realtime as returned by {@code SystemClock.elapsedRealtime()}.
+   * @param mediaTimeMs The media time at this realtime, in milliseconds.
+   */
+  public void add(long realtimeMs, long mediaTimeMs) {
+    if (size == maxSize) {
+      downsample();
+    }
+    if (size == realtimesMs.length) {
+      int capacity = size * 2;
+      if (maxSize != C.LENGTH_UNSET) {
+        capacity = min(capacity, maxSize);
+      }
+      realtimesMs = Arrays.copyOf(realtimesMs, capacity);
+      mediaTimesMs = Arrays.copyOf(mediaTimesMs, capacity);
+    }
+    realtimesMs[size] = realtimeMs;
+    mediaTimesMs[size] = mediaTimeMs;
+    size++;
+  }
+
+  /** Returns a copy of the history that isn't affected by further changes to this history. */
+  public MediaTimeHistory copy() {
+    return new MediaTimeHistory(this);
+  }
+
+  /**
+   * Returns the history as an unmodifiable list of long[2] arrays with [0] being the realtime and
+   * [1] being the media time, in milliseconds. The list isn't affected by further changes to this
+   * history.
+   */
+  public List<long[]> toList() {
+    return new ListView(Arrays.copyOf(realtimesMs, size), Arrays.copyOf(mediaTimesMs, size));
+  }
+
+  /**
+   * Drops every second entry, keeping the first and the last one. Histories of at most two entries
+   * drop their first entry instead, so that at least one entry is always dropped.
+   */
+  private void downsample() {
+    if (size <= 2) {
+      System.arraycopy(realtimesMs, /* srcPos= */ 1, realtimesMs, /* destPos= */ 0, size - 1);
+      System.arraycopy(mediaTimesMs, /* srcPos= */ 1, mediaTimesMs, /* destPos= */ 0, size - 1);
+      size--;
+      return;
+    }
+    int lastIndex = size - 1;
+    int newSize = 0;
+    for (int i = 0; i < lastIndex; i += 2) {
+      realtimesMs[newSize] = realtimesMs[i];
+      mediaTimesMs[newSize] = mediaTimesMs[i];
+      newSize++;
+    }
+    realtimesMs[newSize] = realtimesMs[lastIndex];
+    mediaTimesMs[newSize] = mediaTimesMs[lastIndex];
+    size = newSize + 1;
+  }
+
+  private static final class ListView extends AbstractList<long[]> implements RandomAccess {
+
+    private final long[] realtimesMs;
+    private final long[] mediaTimesMs;
+
+    public ListView(long[] realtimesMs, long[] mediaTimesMs) {
+      this.realtimesMs = realtimesMs;
+      this.mediaTimesMs = mediaTimesMs;
+    }
+
+    @Override
+    public long[] get(int index) {
+      return new long[] {realtimesMs[index], mediaTimesMs[index]};
+    }
+
+    @Override
+    public int size() {
+      return realtimesMs.length;
+    }
+  }
+}
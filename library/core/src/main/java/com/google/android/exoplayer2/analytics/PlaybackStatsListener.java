@@ -40,7 +40,6 @@ import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
-import java.util.ArrayList;
 import java.util.Arrays;
 import java.util.Collections;
 import java.util.HashMap;
@@ -76,7 +75,7 @@ public final class PlaybackStatsListener
   private final Map<String, PlaybackStatsTracker> playbackStatsTrackers;
   private final Map<String, EventTime> sessionStartEventTimes;
   @Nullable private final Callback callback;
-  private final boolean keepHistory;
+  private final int maxHistorySize;
   private final Period period;
 
   private PlaybackStats finishedPlaybackStats;
@@ -96,8 +95,25 @@ public final class PlaybackStatsListener
    * @param callback An optional callback for finished {@link PlaybackStats}.
    */
   public PlaybackStatsListener(boolean keepHistory, @Nullable Callback callback) {
+    this(/* maxHistorySize= */ keepHistory ? C.LENGTH_UNSET : 0, callback);
+  }
+
+  /**
+   * Creates listener for playback stats.
+   *
+   * <p>Once a history has reached {@code maxHistorySize} entries, the oldest entries of the
+   * playback state, format and error histories are dropped, and the {@link
+   * PlaybackStats#mediaTimeHistory} is downsampled so that it keeps covering the whole playback.
+   *
+   * @param maxHistorySize The maximum number of entries of each history in the reported {@link
+   *     PlaybackStats}, {@link C#LENGTH_UNSET} to keep the full history of events, or 0 to keep no
+   *     history and only report aggregated values.
+   * @param callback An optional callback for finished {@link PlaybackStats}.
+   */
+  public PlaybackStatsListener(int maxHistorySize, @Nullable Callback callback) {
+    Assertions.checkArgument(maxHistorySize >= 0 || maxHistorySize == C.LENGTH_UNSET);
     this.callback = callback;
-    this.keepHistory = keepHistory;
+    this.maxHistorySize = maxHistorySize;
     sessionManager = new DefaultPlaybackSessionManager();
     playbackStatsTrackers = new HashMap<>();
     sessionStartEventTimes = new HashMap<>();
@@ -171,7 +187,7 @@ public final class PlaybackStatsListener
 
   @Override
   public void onSessionCreated(EventTime eventTime, String session) {
-    PlaybackStatsTracker tracker = new PlaybackStatsTracker(keepHistory, eventTime);
+    PlaybackStatsTracker tracker = new PlaybackStatsTracker(maxHistorySize, eventTime);
     if (onSeekStartedCalled) {
       tracker.onSeekStarted(eventTime, /* belongsToPlayback= */ true);
     }
@@ -459,14 +475,13 @@ public final class PlaybackStatsListener
   private static final class PlaybackStatsTracker {
 
     // Final stats.
-    private final boolean keepHistory;
     private final long[] playbackStateDurationsMs;
-    private final List<EventTimeAndPlaybackState> playbackStateHistory;
-    private final List<long[]> mediaTimeHistory;
-    private final List<EventTimeAndFormat> videoFormatHistory;
-    private final List<EventTimeAndFormat> audioFormatHistory;
-    private final List<EventTimeAndException> fatalErrorHistory;
-    private final List<EventTimeAndException> nonFatalErrorHistory;
+    @Nullable private final HistoryBuffer<EventTimeAndPlaybackState> playbackStateHistory;
+    @Nullable private final MediaTimeHistory mediaTimeHistory;
+    @Nullable private final HistoryBuffer<EventTimeAndFormat> videoFormatHistory;
+    @Nullable private final HistoryBuffer<EventTimeAndFormat> audioFormatHistory;
+    @Nullable private final HistoryBuffer<EventTimeAndException> fatalErrorHistory;
+    @Nullable private final HistoryBuffer<EventTimeAndException> nonFatalErrorHistory;
     private final boolean isAd;
 
     private long firstReportedTimeMs;
@@ -516,18 +531,19 @@ public final class PlaybackStatsListener
     /**
      * Creates a tracker for playback stats.
      *
-     * @param keepHistory Whether to keep a full history of events.
+     * @param maxHistorySize The maximum number of entries of each history, {@link C#LENGTH_UNSET}
+     *     to keep a full history of events, or 0 to keep no history.
      * @param startTime The {@link EventTime} at which the playback stats start.
      */
-    public PlaybackStatsTracker(boolean keepHistory, EventTime startTime) {
-      this.keepHistory = keepHistory;
+    public PlaybackStatsTracker(int maxHistorySize, EventTime startTime) {
+      boolean keepHistory = maxHistorySize != 0;
       playbackStateDurationsMs = new long[PlaybackStats.PLAYBACK_STATE_COUNT];
-      playbackStateHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
-      mediaTimeHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
-      videoFormatHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
-      audioFormatHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
-      fatalErrorHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
-      nonFatalErrorHistory = keepHistory ? new ArrayList<>() : Collections.emptyList();
+      playbackStateHistory = keepHistory ? new HistoryBuffer<>(maxHistorySize) : null;
+      mediaTimeHistory = keepHistory ? new MediaTimeHistory(maxHistorySize) : null;
+      videoFormatHistory = keepHistory ? new HistoryBuffer<>(maxHistorySize) : null;
+      audioFormatHistory = keepHistory ? new HistoryBuffer<>(maxHistorySize) : null;
+      fatalErrorHistory = keepHistory ? new HistoryBuffer<>(maxHistorySize) : null;
+      nonFatalErrorHistory = keepHistory ? new HistoryBuffer<>(maxHistorySize) : null;
       currentPlaybackState = PlaybackStats.PLAYBACK_STATE_NOT_STARTED;
       currentPlaybackStateStartTimeMs = startTime.realtimeMs;
       playerPlaybackState = Player.STATE_IDLE;
@@ -624,7 +640,7 @@ public final class PlaybackStatsListener
      */
     public void onFatalError(EventTime eventTime, Exception error) {
       fatalErrorCount++;
-      if (keepHistory) {
+      if (fatalErrorHistory != null) {
         fatalErrorHistory.add(new EventTimeAndException(eventTime, error));
       }
       hasFatalError = true;
@@ -779,7 +795,7 @@ public final class PlaybackStatsListener
      */
     public void onNonFatalError(EventTime eventTime, Exception error) {
       nonFatalErrorCount++;
-      if (keepHistory) {
+      if (nonFatalErrorHistory != null) {
         nonFatalErrorHistory.add(new EventTimeAndException(eventTime, error));
       }
     }
@@ -791,7 +807,7 @@ public final class PlaybackStatsListener
      */
     public PlaybackStats build(boolean isFinal) {
       long[] playbackStateDurationsMs = this.playbackStateDurationsMs;
-      List<long[]> mediaTimeHistory = this.mediaTimeHistory;
+      @Nullable MediaTimeHistory mediaTimeHistory = this.mediaTimeHistory;
       if (!isFinal) {
         long buildTimeMs = SystemClock.elapsedRealtime();
         playbackStateDurationsMs =
@@ -801,9 +817,10 @@ public final class PlaybackStatsListener
         maybeUpdateMaxRebufferTimeMs(buildTimeMs);
         maybeRecordVideoFormatTime(buildTimeMs);
         maybeRecordAudioFormatTime(buildTimeMs);
-        mediaTimeHistory = new ArrayList<>(this.mediaTimeHistory);
-        if (keepHistory && currentPlaybackState == PlaybackStats.PLAYBACK_STATE_PLAYING) {
-          mediaTimeHistory.add(guessMediaTimeBasedOnElapsedRealtime(buildTimeMs));
+        if (mediaTimeHistory != null
+            && currentPlaybackState == PlaybackStats.PLAYBACK_STATE_PLAYING) {
+          mediaTimeHistory = mediaTimeHistory.copy();
+          mediaTimeHistory.add(buildTimeMs, guessMediaTimeBasedOnElapsedRealtime(buildTimeMs));
         }
       }
       boolean isJoinTimeInvalid = this.isJoinTimeInvalid || !hasBeenReady;
@@ -813,15 +830,11 @@ public final class PlaybackStatsListener
               : playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_JOINING_FOREGROUND];
       boolean hasBackgroundJoin =
           playbackStateDurationsMs[PlaybackStats.PLAYBACK_STATE_JOINING_BACKGROUND] > 0;
-      List<EventTimeAndFormat> videoHistory =
-          isFinal ? videoFormatHistory : new ArrayList<>(videoFormatHistory);
-      List<EventTimeAndFormat> audioHistory =
-          isFinal ? audioFormatHistory : new ArrayList<>(audioFormatHistory);
       return new PlaybackStats(
           /* playbackCount= */ 1,
           playbackStateDurationsMs,
-          isFinal ? playbackStateHistory : new ArrayList<>(playbackStateHistory),
-          mediaTimeHistory,
+          toList(playbackStateHistory),
+          mediaTimeHistory != null ? mediaTimeHistory.toList() : Collections.emptyList(),
           firstReportedTimeMs,
           /* foregroundPlaybackCount= */ isForeground ? 1 : 0,
           /* abandonedBeforeReadyCount= */ hasBeenReady ? 0 : 1,
@@ -835,8 +848,8 @@ public final class PlaybackStatsListener
           rebufferCount,
           maxRebufferTimeMs,
           /* adPlaybackCount= */ isAd ? 1 : 0,
-          videoHistory,
-          audioHistory,
+          toList(videoFormatHistory),
+          toList(audioFormatHistory),
           videoFormatHeightTimeMs,
           videoFormatHeightTimeProduct,
           videoFormatBitrateTimeMs,
@@ -856,8 +869,8 @@ public final class PlaybackStatsListener
           /* fatalErrorPlaybackCount= */ fatalErrorCount > 0 ? 1 : 0,
           fatalErrorCount,
           nonFatalErrorCount,
-          fatalErrorHistory,
-          nonFatalErrorHistory);
+          toList(fatalErrorHistory),
+          toList(nonFatalErrorHistory));
     }
 
     private void maybeUpdatePlaybackState(EventTime eventTime, boolean belongsToPlayback) {
@@ -900,7 +913,7 @@ public final class PlaybackStatsListener
 
       currentPlaybackState = newPlaybackState;
       currentPlaybackStateStartTimeMs = eventTime.realtimeMs;
-      if (keepHistory) {
+      if (playbackStateHistory != null) {
         playbackStateHistory.add(new EventTimeAndPlaybackState(eventTime, currentPlaybackState));
       }
     }
@@ -964,7 +977,7 @@ public final class PlaybackStatsListener
     }
 
     private void maybeUpdateMediaTimeHistory(long realtimeMs, long mediaTimeMs) {
-      if (!keepHistory) {
+      if (mediaTimeHistory == null) {
         return;
       }
       if (currentPlaybackState != PlaybackStats.PLAYBACK_STATE_PLAYING) {
@@ -972,26 +985,30 @@ public final class PlaybackStatsListener
           return;
         }
         if (!mediaTimeHistory.isEmpty()) {
-          long previousMediaTimeMs = mediaTimeHistory.get(mediaTimeHistory.size() - 1)[1];
+          long previousMediaTimeMs = mediaTimeHistory.getLastMediaTimeMs();
           if (previousMediaTimeMs != mediaTimeMs) {
-            mediaTimeHistory.add(new long[] {realtimeMs, previousMediaTimeMs});
+            mediaTimeHistory.add(realtimeMs, previousMediaTimeMs);
           }
         }
       }
       mediaTimeHistory.add(
+          realtimeMs,
           mediaTimeMs == C.TIME_UNSET
               ? guessMediaTimeBasedOnElapsedRealtime(realtimeMs)
-              : new long[] {realtimeMs, mediaTimeMs});
+              : mediaTimeMs);
     }
 
-    private long[] guessMediaTimeBasedOnElapsedRealtime(long realtimeMs) {
-      long[] previousKnownMediaTimeHistory = mediaTimeHistory.get(mediaTimeHistory.size() - 1);
-      long previousRealtimeMs = previousKnownMediaTimeHistory[0];
-      long previousMediaTimeMs = previousKnownMediaTimeHistory[1];
+    private long guessMediaTimeBasedOnElapsedRealtime(long realtimeMs) {
+      MediaTimeHistory mediaTimeHistory = Assertions.checkNotNull(this.mediaTimeHistory);
+      long previousRealtimeMs = mediaTimeHistory.getLastRealtimeMs();
+      long previousMediaTimeMs = mediaTimeHistory.getLastMediaTimeMs();
       long elapsedMediaTimeEstimateMs =
           (long) ((realtimeMs - previousRealtimeMs) * currentPlaybackSpeed);
-      long mediaTimeEstimateMs = previousMediaTimeMs + elapsedMediaTimeEstimateMs;
-      return new long[] {realtimeMs, mediaTimeEstimateMs};
+      return previousMediaTimeMs + elapsedMediaTimeEstimateMs;
+    }
+
+    private static <T> List<T> toList(@Nullable HistoryBuffer<T> history) {
+      return history != null ? history.toList() : Collections.emptyList();
     }
 
     private void maybeUpdateVideoFormat(EventTime eventTime, @Nullable Format newFormat) {
@@ -1008,7 +1025,7 @@ public final class PlaybackStatsListener
         }
       }
       currentVideoFormat = newFormat;
-      if (keepHistory) {
+      if (videoFormatHistory != null) {
         videoFormatHistory.add(new EventTimeAndFormat(eventTime, currentVideoFormat));
       }
     }
@@ -1024,7 +1041,7 @@ public final class PlaybackStatsListener
         initialAudioFormatBitrate = newFormat.bitrate;
       }
       currentAudioFormat = newFormat;
-      if (keepHistory) {
+      if (audioFormatHistory != null) {
         audioFormatHistory.add(new EventTimeAndFormat(eventTime, currentAudioFormat));
       }
     }
@@ -36,6 +36,7 @@ import com.google.android.exoplayer2.PlaybackParameters;
 import com.google.android.exoplayer2.audio.AudioProcessor.UnhandledAudioFormatException;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MetricsRegistry;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
 import java.lang.annotation.Documented;
@@ -258,6 +259,11 @@ public final class DefaultAudioSink implements AudioSink {
 
   private static final String TAG = "AudioTrack";
 
+  private static final MetricsRegistry.Histogram PENDING_BUFFER_DURATION_MS =
+      MetricsRegistry.DEFAULT.getHistogram("audioSink.pendingBufferDurationMs");
+  private static final MetricsRegistry.Counter UNDERRUN_COUNT =
+      MetricsRegistry.DEFAULT.getCounter("audioSink.underrunCount");
+
   /**
    * Whether to enable a workaround for an issue where an audio effect does not keep its session
    * active across releasing/initializing a new audio track, on platform builds where
@@ -952,6 +958,10 @@ public final class DefaultAudioSink implements AudioSink {
       }
       outputBuffer = null;
     }
+    if (MetricsRegistry.DEFAULT.isEnabled()) {
+      PENDING_BUFFER_DURATION_MS.record(
+          audioTrackPositionTracker.getPendingBufferDurationMs(getWrittenFrames()));
+    }
   }
 
   @Override
@@ -1803,6 +1813,9 @@ public final class DefaultAudioSink implements AudioSink {
 
     @Override
     public void onUnderrun(int bufferSize, long bufferSizeMs) {
+      if (MetricsRegistry.DEFAULT.isEnabled()) {
+        UNDERRUN_COUNT.increment();
+      }
       if (listener != null) {
         long elapsedSinceLastFeedMs = SystemClock.elapsedRealtime() - lastFeedElapsedRealtimeMs;
         listener.onUnderrun(bufferSize, bufferSizeMs, elapsedSinceLastFeedMs);
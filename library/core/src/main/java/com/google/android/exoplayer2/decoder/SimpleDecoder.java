@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.decoder;
 
 import androidx.annotation.CallSuper;
 import androidx.annotation.Nullable;
+import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.util.Assertions;
 import java.util.ArrayDeque;
@@ -41,6 +42,8 @@ public abstract class SimpleDecoder<
   private int availableInputBufferCount;
   private int availableOutputBufferCount;
   private I dequeuedInputBuffer;
+  @Nullable private O decodingOutputBuffer;
+  private boolean waitingForOutputBuffer;
 
   private E exception;
   private boolean flushed;
@@ -125,6 +128,28 @@ public abstract class SimpleDecoder<
     }
   }
 
+  /**
+   * Blocks until an output buffer can be dequeued, and dequeues it. For use in tests that need to
+   * wait for the decode thread without polling.
+   *
+   * <p>Must only be called if an output buffer is expected, for example after an end of stream
+   * input buffer has been queued and before its output buffer has been dequeued.
+   *
+   * @return The dequeued output buffer.
+   * @throws E If the decoder failed.
+   * @throws InterruptedException If the thread was interrupted whilst waiting.
+   */
+  @VisibleForTesting
+  public final O dequeueOutputBufferBlocking() throws E, InterruptedException {
+    synchronized (lock) {
+      while (queuedOutputBuffers.isEmpty() && exception == null) {
+        lock.wait();
+      }
+      maybeThrowException();
+      return queuedOutputBuffers.removeFirst();
+    }
+  }
+
   /**
    * Releases an output buffer back to the decoder.
    *
@@ -153,6 +178,7 @@ public abstract class SimpleDecoder<
       while (!queuedOutputBuffers.isEmpty()) {
         queuedOutputBuffers.removeFirst().release();
       }
+      maybeNotifyDecodeLoop();
     }
   }
 
@@ -161,7 +187,7 @@ public abstract class SimpleDecoder<
   public void release() {
     synchronized (lock) {
       released = true;
-      lock.notify();
+      lock.notifyAll();
     }
     try {
       decodeThread.join();
@@ -183,13 +209,15 @@ public abstract class SimpleDecoder<
 
   /**
    * Notifies the decode loop if there exists a queued input buffer and an available output buffer
-   * to decode into.
+   * to decode into, or if the decode thread is waiting in {@link
+   * #queueIntermediateOutputBuffer(OutputBuffer)}.
    * <p>
    * Should only be called whilst synchronized on the lock object.
    */
   private void maybeNotifyDecodeLoop() {
-    if (canDecodeBuffer()) {
-      lock.notify();
+    if (canDecodeBuffer() || waitingForOutputBuffer) {
+      // Notify all, as a thread may also be waiting in dequeueOutputBufferBlocking.
+      lock.notifyAll();
     }
   }
 
@@ -219,6 +247,7 @@ public abstract class SimpleDecoder<
       }
       inputBuffer = queuedInputBuffers.removeFirst();
       outputBuffer = availableOutputBuffers[--availableOutputBufferCount];
+      decodingOutputBuffer = outputBuffer;
       resetDecoder = flushed;
       flushed = false;
     }
@@ -245,21 +274,23 @@ public abstract class SimpleDecoder<
       if (exception != null) {
         synchronized (lock) {
           this.exception = exception;
+          decodingOutputBuffer = null;
+          lock.notifyAll();
         }
         return false;
       }
     }
 
     synchronized (lock) {
-      if (flushed) {
-        outputBuffer.release();
-      } else if (outputBuffer.isDecodeOnly()) {
-        skippedOutputBufferCount++;
-        outputBuffer.release();
-      } else {
-        outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
-        skippedOutputBufferCount = 0;
-        queuedOutputBuffers.addLast(outputBuffer);
+      // The output buffer may have been replaced by queueIntermediateOutputBuffer.
+      @Nullable O decodingOutputBuffer = this.decodingOutputBuffer;
+      this.decodingOutputBuffer = null;
+      if (decodingOutputBuffer != null) {
+        if (flushed) {
+          decodingOutputBuffer.release();
+        } else {
+          queueOutputBufferInternal(decodingOutputBuffer);
+        }
       }
       // Make the input buffer available again.
       releaseInputBufferInternal(inputBuffer);
@@ -268,10 +299,66 @@ public abstract class SimpleDecoder<
     return true;
   }
 
+  /**
+   * Queues an output buffer holding the output decoded so far from the input buffer being decoded,
+   * and returns a new output buffer into which decoding of the same input buffer can continue. For
+   * use by decoders that output several buffers from a single input buffer. Blocks until an output
+   * buffer is available.
+   *
+   * <p>Must only be called on the decode thread from {@link #decode(DecoderInputBuffer,
+   * OutputBuffer, boolean)}, passing the output buffer passed to that method or the one returned by
+   * the previous call to this method.
+   *
+   * @param outputBuffer The output buffer to queue.
+   * @return The output buffer into which decoding should continue, which has no flags set, or null
+   *     if the decoder was flushed or released. If null is returned, decoding of the input buffer
+   *     should be abandoned and {@link #decode(DecoderInputBuffer, OutputBuffer, boolean)} should
+   *     return as soon as possible.
+   */
+  @Nullable
+  protected final O queueIntermediateOutputBuffer(O outputBuffer) {
+    synchronized (lock) {
+      Assertions.checkState(outputBuffer == decodingOutputBuffer);
+      if (flushed || released) {
+        return null;
+      }
+      queueOutputBufferInternal(outputBuffer);
+      decodingOutputBuffer = null;
+      waitingForOutputBuffer = true;
+      try {
+        while (!flushed && !released && availableOutputBufferCount == 0) {
+          lock.wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        return null;
+      } finally {
+        waitingForOutputBuffer = false;
+      }
+      if (flushed || released) {
+        return null;
+      }
+      decodingOutputBuffer = availableOutputBuffers[--availableOutputBufferCount];
+      return decodingOutputBuffer;
+    }
+  }
+
   private boolean canDecodeBuffer() {
     return !queuedInputBuffers.isEmpty() && availableOutputBufferCount > 0;
   }
 
+  private void queueOutputBufferInternal(O outputBuffer) {
+    if (outputBuffer.isDecodeOnly()) {
+      skippedOutputBufferCount++;
+      outputBuffer.release();
+    } else {
+      outputBuffer.skippedOutputBufferCount = skippedOutputBufferCount;
+      skippedOutputBufferCount = 0;
+      queuedOutputBuffers.addLast(outputBuffer);
+      lock.notifyAll();
+    }
+  }
+
   private void releaseInputBufferInternal(I inputBuffer) {
     inputBuffer.clear();
     availableInputBuffers[availableInputBufferCount++] = inputBuffer;
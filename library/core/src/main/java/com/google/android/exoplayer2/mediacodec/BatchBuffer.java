@@ -40,6 +40,7 @@ import java.nio.ByteBuffer;
   private long firstAccessUnitTimeUs;
   private int accessUnitCount;
   private int maxAccessUnitCount;
+  private long maxDurationUs;
 
   public BatchBuffer() {
     super(DecoderInputBuffer.BUFFER_REPLACEMENT_MODE_DIRECT);
@@ -59,11 +60,29 @@ import java.nio.ByteBuffer;
     return maxAccessUnitCount;
   }
 
+  /**
+   * Sets the maximum duration between the timestamps of the first and last access units in the
+   * buffer before it's full, in microseconds, or {@link C#TIME_UNSET} for no limit.
+   */
+  public void setMaxDurationUs(long maxDurationUs) {
+    Assertions.checkArgument(maxDurationUs == C.TIME_UNSET || maxDurationUs >= 0);
+    this.maxDurationUs = maxDurationUs;
+  }
+
+  /**
+   * Gets the maximum duration between the timestamps of the first and last access units in the
+   * buffer before it's full, in microseconds, or {@link C#TIME_UNSET} if there is no limit.
+   */
+  public long getMaxDurationUs() {
+    return maxDurationUs;
+  }
+
   /** Resets the state of this object to what it was after construction. */
   @Override
   public void clear() {
     flush();
     maxAccessUnitCount = DEFAULT_BATCH_SIZE_ACCESS_UNITS;
+    maxDurationUs = C.TIME_UNSET;
   }
 
   /** Clear all access units from the BatchBuffer to empty it. */
@@ -114,6 +133,9 @@ import java.nio.ByteBuffer;
   public boolean isFull() {
     return accessUnitCount >= maxAccessUnitCount
         || (data != null && data.position() >= BATCH_SIZE_BYTES)
+        || (maxDurationUs != C.TIME_UNSET
+            && accessUnitCount > 0
+            && timeUs - firstAccessUnitTimeUs >= maxDurationUs)
         || hasPendingAccessUnit;
   }
 
@@ -0,0 +1,366 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkState;
+
+import android.media.MediaCodec;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import androidx.annotation.RequiresApi;
+import androidx.annotation.VisibleForTesting;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * A pool of {@link MediaCodec} instances that can be shared by the {@link MediaCodecRenderer
+ * renderers} of one or more players, to avoid the cost of creating a new codec each time a
+ * renderer initializes one.
+ *
+ * <p>When a renderer releases a codec, the codec is reset to its uninitialized state and parked in
+ * the pool. The next renderer that initializes a codec with the same name and secure flag takes
+ * the parked codec and configures it, instead of creating a new one. Parking requires API level
+ * &ge; 21. On earlier API levels released codecs are always released.
+ *
+ * <p>The number of codecs in use and parked with the same name is bounded by {@link
+ * MediaCodecInfo#getMaxSupportedInstances()}, where known. The total number of parked codecs is
+ * bounded by the maximum passed to the constructor, and codecs that are parked for longer than
+ * the keep-alive time are released the next time the pool is used. If creating a codec fails, for
+ * example because the device has run out of codec resources, all the parked codecs are released
+ * and creation is retried once.
+ *
+ * <p>Users of the pool, such as {@link MediaCodecRenderer renderers}, can {@link #registerUser()
+ * register} whilst they may park and acquire codecs. All the parked codecs are released when the
+ * last registered user is unregistered, so that they aren't kept once all the players using the
+ * pool have been stopped or released. {@link #evictAll()} can be called to release the parked
+ * codecs at any other time, for example when the app is moved to the background.
+ *
+ * <p>The same instance can be used from multiple threads.
+ */
+public final class MediaCodecPool {
+
+  /** The default maximum number of parked codecs. */
+  public static final int DEFAULT_MAX_PARKED_CODEC_COUNT = 2;
+  /** The default time for which a codec is kept parked, in milliseconds. */
+  public static final long DEFAULT_KEEP_ALIVE_MS = 30_000;
+
+  private static final String TAG = "MediaCodecPool";
+
+  private final int maxParkedCodecCount;
+  private final long keepAliveMs;
+  private final Clock clock;
+
+  @GuardedBy("this")
+  private final ArrayDeque<ParkedCodec> parkedCodecs;
+
+  @GuardedBy("this")
+  private final HashMap<CodecKey, Integer> activeCodecCounts;
+
+  @GuardedBy("this")
+  private int userCount;
+
+  /**
+   * Creates an instance with {@link #DEFAULT_MAX_PARKED_CODEC_COUNT} and {@link
+   * #DEFAULT_KEEP_ALIVE_MS}.
+   */
+  public MediaCodecPool() {
+    this(DEFAULT_MAX_PARKED_CODEC_COUNT, DEFAULT_KEEP_ALIVE_MS);
+  }
+
+  /**
+   * Creates an instance.
+   *
+   * @param maxParkedCodecCount The maximum number of parked codecs. If zero, released codecs are
+   *     never parked.
+   * @param keepAliveMs The time for which a codec is kept parked, in milliseconds.
+   */
+  public MediaCodecPool(int maxParkedCodecCount, long keepAliveMs) {
+    this(maxParkedCodecCount, keepAliveMs, Clock.DEFAULT);
+  }
+
+  @VisibleForTesting
+  /* package */ MediaCodecPool(int maxParkedCodecCount, long keepAliveMs, Clock clock) {
+    checkArgument(maxParkedCodecCount >= 0 && keepAliveMs >= 0);
+    this.maxParkedCodecCount = maxParkedCodecCount;
+    this.keepAliveMs = keepAliveMs;
+    this.clock = clock;
+    parkedCodecs = new ArrayDeque<>();
+    activeCodecCounts = new HashMap<>();
+  }
+
+  /** Returns the number of parked codecs. */
+  public synchronized int getParkedCodecCount() {
+    return parkedCodecs.size();
+  }
+
+  /**
+   * Returns an unconfigured codec for the given {@link MediaCodecInfo}, which is either a parked
+   * codec or a newly created one. The codec must be returned to the pool by calling {@link
+   * #park(MediaCodecInfo, MediaCodec)} or {@link #release(MediaCodecInfo, MediaCodec)}.
+   *
+   * @param codecInfo The {@link MediaCodecInfo} of the codec.
+   * @return The codec.
+   * @throws IOException If the codec could not be created.
+   */
+  public MediaCodec acquire(MediaCodecInfo codecInfo) throws IOException {
+    CodecKey key = new CodecKey(codecInfo);
+    List<MediaCodec> codecsToRelease = new ArrayList<>();
+    @Nullable MediaCodec codec = null;
+    synchronized (this) {
+      removeExpiredCodecs(codecsToRelease);
+      Iterator<ParkedCodec> iterator = parkedCodecs.descendingIterator();
+      while (iterator.hasNext()) {
+        ParkedCodec parkedCodec = iterator.next();
+        if (parkedCodec.key.equals(key)) {
+          iterator.remove();
+          codec = parkedCodec.codec;
+          break;
+        }
+      }
+      incrementActiveCodecCount(key);
+    }
+    releaseCodecs(codecsToRelease);
+    if (codec != null) {
+      return codec;
+    }
+    try {
+      return createCodec(codecInfo.name);
+    } catch (IOException | RuntimeException e) {
+      decrementActiveCodecCount(key);
+      throw e;
+    }
+  }
+
+  /**
+   * Returns a codec that was acquired from the pool, and parks it for reuse if possible. The
+   * codec may have been configured and started, but must no longer be used by the caller.
+   *
+   * @param codecInfo The {@link MediaCodecInfo} passed to {@link #acquire(MediaCodecInfo)}.
+   * @param codec The codec.
+   */
+  public void park(MediaCodecInfo codecInfo, MediaCodec codec) {
+    CodecKey key = new CodecKey(codecInfo);
+    decrementActiveCodecCount(key);
+    if (Util.SDK_INT < 21 || maxParkedCodecCount == 0 || !resetCodec(codec)) {
+      codec.release();
+      return;
+    }
+    int maxSupportedInstances = codecInfo.getMaxSupportedInstances();
+    List<MediaCodec> codecsToRelease = new ArrayList<>();
+    synchronized (this) {
+      removeExpiredCodecs(codecsToRelease);
+      if (maxSupportedInstances == MediaCodecInfo.MAX_SUPPORTED_INSTANCES_UNKNOWN
+          || getInstanceCount(key) < maxSupportedInstances) {
+        parkedCodecs.addLast(new ParkedCodec(key, codec, clock.elapsedRealtime()));
+        while (parkedCodecs.size() > maxParkedCodecCount) {
+          codecsToRelease.add(parkedCodecs.removeFirst().codec);
+        }
+      } else {
+        codecsToRelease.add(codec);
+      }
+    }
+    releaseCodecs(codecsToRelease);
+  }
+
+  /**
+   * Returns a codec that was acquired from the pool, and releases it.
+   *
+   * @param codecInfo The {@link MediaCodecInfo} passed to {@link #acquire(MediaCodecInfo)}.
+   * @param codec The codec.
+   */
+  public void release(MediaCodecInfo codecInfo, MediaCodec codec) {
+    decrementActiveCodecCount(new CodecKey(codecInfo));
+    codec.release();
+  }
+
+  /** Releases all the parked codecs. */
+  public void evictAll() {
+    List<MediaCodec> codecsToRelease = new ArrayList<>();
+    synchronized (this) {
+      removeAllCodecs(codecsToRelease);
+    }
+    releaseCodecs(codecsToRelease);
+  }
+
+  /**
+   * Registers a user of the pool. Must be balanced by a call to {@link #unregisterUser()}.
+   * {@link MediaCodecRenderer} registers when it first acquires a codec, and unregisters when it's
+   * reset.
+   */
+  public synchronized void registerUser() {
+    userCount++;
+  }
+
+  /**
+   * Unregisters a user that was registered by {@link #registerUser()}. If it was the last
+   * registered user, all the parked codecs are released. Otherwise the parked codecs whose
+   * keep-alive time has elapsed are released.
+   */
+  public void unregisterUser() {
+    List<MediaCodec> codecsToRelease = new ArrayList<>();
+    synchronized (this) {
+      checkState(userCount > 0);
+      userCount--;
+      if (userCount == 0) {
+        removeAllCodecs(codecsToRelease);
+      } else {
+        removeExpiredCodecs(codecsToRelease);
+      }
+    }
+    releaseCodecs(codecsToRelease);
+  }
+
+  private MediaCodec createCodec(String name) throws IOException {
+    try {
+      return MediaCodec.createByCodecName(name);
+    } catch (IOException | RuntimeException e) {
+      if (getParkedCodecCount() == 0) {
+        throw e;
+      }
+      // Parked codecs may hold the resources needed to create a new one.
+      Log.w(TAG, "Failed to create codec. Releasing parked codecs and retrying.", e);
+      evictAll();
+      return MediaCodec.createByCodecName(name);
+    }
+  }
+
+  @GuardedBy("this")
+  private void removeAllCodecs(List<MediaCodec> codecsToRelease) {
+    for (ParkedCodec parkedCodec : parkedCodecs) {
+      codecsToRelease.add(parkedCodec.codec);
+    }
+    parkedCodecs.clear();
+  }
+
+  @GuardedBy("this")
+  private void removeExpiredCodecs(List<MediaCodec> codecsToRelease) {
+    long nowMs = clock.elapsedRealtime();
+    @Nullable ParkedCodec oldestParkedCodec;
+    while ((oldestParkedCodec = parkedCodecs.peekFirst()) != null
+        && nowMs - oldestParkedCodec.parkedTimeMs > keepAliveMs) {
+      codecsToRelease.add(parkedCodecs.removeFirst().codec);
+    }
+  }
+
+  @GuardedBy("this")
+  private int getInstanceCount(CodecKey key) {
+    int instanceCount = 0;
+    for (ParkedCodec parkedCodec : parkedCodecs) {
+      if (parkedCodec.key.name.equals(key.name)) {
+        instanceCount++;
+      }
+    }
+    for (Map.Entry<CodecKey, Integer> entry : activeCodecCounts.entrySet()) {
+      if (entry.getKey().name.equals(key.name)) {
+        instanceCount += entry.getValue();
+      }
+    }
+    return instanceCount;
+  }
+
+  @GuardedBy("this")
+  private void incrementActiveCodecCount(CodecKey key) {
+    @Nullable Integer activeCodecCount = activeCodecCounts.get(key);
+    activeCodecCounts.put(key, activeCodecCount == null ? 1 : activeCodecCount + 1);
+  }
+
+  private synchronized void decrementActiveCodecCount(CodecKey key) {
+    @Nullable Integer activeCodecCount = activeCodecCounts.get(key);
+    if (activeCodecCount == null || activeCodecCount <= 1) {
+      activeCodecCounts.remove(key);
+    } else {
+      activeCodecCounts.put(key, activeCodecCount - 1);
+    }
+  }
+
+  private static void releaseCodecs(List<MediaCodec> codecs) {
+    for (int i = 0; i < codecs.size(); i++) {
+      codecs.get(i).release();
+    }
+  }
+
+  /**
+   * Resets a codec to its uninitialized state, returning whether the reset succeeded. Must only be
+   * called on API level &ge; 21.
+   */
+  private static boolean resetCodec(MediaCodec codec) {
+    try {
+      resetCodecV21(codec);
+      return true;
+    } catch (RuntimeException e) {
+      Log.w(TAG, "Failed to reset codec. Releasing it instead.", e);
+      return false;
+    }
+  }
+
+  @RequiresApi(21)
+  private static void resetCodecV21(MediaCodec codec) {
+    codec.reset();
+    // Remove any callback set by an asynchronous adapter, whose thread has been quit.
+    codec.setCallback(null);
+  }
+
+  /** The attributes that determine whether a parked codec can be reused. */
+  private static final class CodecKey {
+
+    public final String name;
+    public final boolean secure;
+
+    public CodecKey(MediaCodecInfo codecInfo) {
+      name = codecInfo.name;
+      secure = codecInfo.secure;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      CodecKey other = (CodecKey) obj;
+      return name.equals(other.name) && secure == other.secure;
+    }
+
+    @Override
+    public int hashCode() {
+      return 31 * name.hashCode() + (secure ? 1 : 0);
+    }
+  }
+
+  private static final class ParkedCodec {
+
+    public final CodecKey key;
+    public final MediaCodec codec;
+    public final long parkedTimeMs;
+
+    public ParkedCodec(CodecKey key, MediaCodec codec, long parkedTimeMs) {
+      this.key = key;
+      this.codec = codec;
+      this.parkedTimeMs = parkedTimeMs;
+    }
+  }
+}
@@ -48,9 +48,11 @@ import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MetricsRegistry;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.NalUnitUtil;
 import com.google.android.exoplayer2.util.TimedValueQueue;
+import com.google.android.exoplayer2.util.TraceRecorder;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.lang.annotation.Documented;
@@ -344,6 +346,9 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
 
   private static final int ADAPTATION_WORKAROUND_SLICE_WIDTH_HEIGHT = 32;
 
+  private static final MetricsRegistry.Histogram CODEC_QUEUED_BUFFER_COUNT =
+      MetricsRegistry.DEFAULT.getHistogram("codec.queuedBufferCount");
+
   private final MediaCodecSelector mediaCodecSelector;
   private final boolean enableDecoderFallback;
   private final float assumedMinimumCodecOperatingRate;
@@ -401,6 +406,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   @DrainAction private int codecDrainAction;
   private boolean codecReceivedBuffers;
   private boolean codecReceivedEos;
+  private int codecQueuedInputBufferCount;
+  private int codecDequeuedOutputBufferCount;
   private boolean codecHasOutputMediaFormat;
   private long largestQueuedPresentationTimeUs;
   private long lastBufferInStreamPresentationTimeUs;
@@ -409,6 +416,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
   private boolean waitingForFirstSampleInFormat;
   private boolean pendingOutputEndOfStream;
   @MediaCodecOperationMode private int mediaCodecOperationMode;
+  @Nullable private MediaCodecPool codecPool;
+  private boolean registeredWithCodecPool;
+  private int bypassMaxAccessUnitCount;
+  private long bypassMaxBatchDurationUs;
   @Nullable private ExoPlaybackException pendingPlaybackException;
   protected DecoderCounters decoderCounters;
   private long outputStreamStartPositionUs;
@@ -442,6 +453,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     outputBufferInfo = new MediaCodec.BufferInfo();
     operatingRate = 1f;
     mediaCodecOperationMode = OPERATION_MODE_SYNCHRONOUS;
+    bypassMaxAccessUnitCount = C.LENGTH_UNSET;
+    bypassMaxBatchDurationUs = C.TIME_UNSET;
     pendingOutputStreamStartPositionsUs = new long[MAX_PENDING_OUTPUT_STREAM_OFFSET_COUNT];
     pendingOutputStreamOffsetsUs = new long[MAX_PENDING_OUTPUT_STREAM_OFFSET_COUNT];
     pendingOutputStreamSwitchTimesUs = new long[MAX_PENDING_OUTPUT_STREAM_OFFSET_COUNT];
@@ -476,6 +489,43 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     mediaCodecOperationMode = mode;
   }
 
+  /**
+   * Sets a {@link MediaCodecPool} from which codecs are acquired, and to which they're returned
+   * for reuse when released. The same pool can be set on the renderers of several players.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param codecPool The {@link MediaCodecPool}, or {@code null} to create and release codecs
+   *     directly, which is the default.
+   */
+  public void experimentalSetMediaCodecPool(@Nullable MediaCodecPool codecPool) {
+    this.codecPool = codecPool;
+  }
+
+  /**
+   * Sets the size of the batches of access units that are output together when rendering without
+   * a codec, for all formats that are rendered without a codec. A batch is complete once it
+   * contains {@code maxAccessUnitCount} access units, or once the timestamps of its first and last
+   * access units are {@code maxBatchDurationUs} apart.
+   *
+   * <p>By default, access units of AAC, MP3 and Opus are batched in groups of up to 32, and other
+   * formats aren't batched.
+   *
+   * <p>This method is experimental, and will be renamed or removed in a future release. It should
+   * only be called before the renderer is used.
+   *
+   * @param maxAccessUnitCount The maximum number of access units in a batch. Must be positive.
+   * @param maxBatchDurationUs The maximum duration between the timestamps of the first and last
+   *     access units in a batch, in microseconds, or {@link C#TIME_UNSET} for no limit.
+   */
+  public void experimentalSetBypassBatchSize(int maxAccessUnitCount, long maxBatchDurationUs) {
+    Assertions.checkArgument(maxAccessUnitCount > 0);
+    Assertions.checkArgument(maxBatchDurationUs == C.TIME_UNSET || maxBatchDurationUs >= 0);
+    bypassMaxAccessUnitCount = maxAccessUnitCount;
+    bypassMaxBatchDurationUs = maxBatchDurationUs;
+  }
+
   @Override
   @AdaptiveSupport
   public final int supportsMixedMimeTypeAdaptation() {
@@ -766,6 +816,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       releaseCodec();
     } finally {
       setSourceDrmSession(null);
+      if (registeredWithCodecPool) {
+        registeredWithCodecPool = false;
+        Assertions.checkNotNull(codecPool).unregisterUser();
+      }
     }
   }
 
@@ -782,7 +836,11 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
       if (codec != null) {
         decoderCounters.decoderReleaseCount++;
-        codec.release();
+        if (codecPool != null && codecInfo != null) {
+          codecPool.park(codecInfo, codec);
+        } else {
+          codec.release();
+        }
       }
     } finally {
       codec = null;
@@ -909,6 +967,8 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     codecHotswapDeadlineMs = C.TIME_UNSET;
     codecReceivedEos = false;
     codecReceivedBuffers = false;
+    codecQueuedInputBufferCount = 0;
+    codecDequeuedOutputBufferCount = 0;
     codecNeedsAdaptationWorkaroundBuffer = false;
     shouldSkipAdaptationWorkaroundOutputBuffer = false;
     isDecodeOnlyOutputBuffer = false;
@@ -1078,7 +1138,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     disableBypass(); // In case of transition between 2 bypass formats.
 
     String mimeType = format.sampleMimeType;
-    if (!MimeTypes.AUDIO_AAC.equals(mimeType)
+    if (bypassMaxAccessUnitCount != C.LENGTH_UNSET) {
+      bypassBatchBuffer.setMaxAccessUnitCount(bypassMaxAccessUnitCount);
+      bypassBatchBuffer.setMaxDurationUs(bypassMaxBatchDurationUs);
+    } else if (!MimeTypes.AUDIO_AAC.equals(mimeType)
         && !MimeTypes.AUDIO_MPEG.equals(mimeType)
         && !MimeTypes.AUDIO_OPUS.equals(mimeType)) {
       // TODO(b/154746451): Batching provokes frame drops in non offload.
@@ -1107,7 +1170,15 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     try {
       codecInitializingTimestamp = SystemClock.elapsedRealtime();
       TraceUtil.beginSection("createCodec:" + codecName);
-      codec = MediaCodec.createByCodecName(codecName);
+      if (codecPool != null && !registeredWithCodecPool) {
+        // Keep the pool's parked codecs until this renderer is reset.
+        codecPool.registerUser();
+        registeredWithCodecPool = true;
+      }
+      codec =
+          codecPool != null
+              ? codecPool.acquire(codecInfo)
+              : MediaCodec.createByCodecName(codecName);
       if (mediaCodecOperationMode == OPERATION_MODE_ASYNCHRONOUS_DEDICATED_THREAD
           && Util.SDK_INT >= 23) {
         codecAdapter = new AsynchronousMediaCodecAdapter(codec, getTrackType());
@@ -1136,7 +1207,11 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
       }
       if (codec != null) {
         resetCodecBuffers();
-        codec.release();
+        if (codecPool != null) {
+          codecPool.release(codecInfo, codec);
+        } else {
+          codec.release();
+        }
       }
       throw e;
     }
@@ -1405,6 +1480,19 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     codecReceivedBuffers = true;
     codecReconfigurationState = RECONFIGURATION_STATE_NONE;
     decoderCounters.inputBufferCount++;
+    // Only count buffers that are dequeued again. The adaptation workaround buffer, which only
+    // carries codec configuration, is queued above without being counted, and tunneled codecs
+    // render their output without it being dequeued.
+    if (!isTunneling()) {
+      codecQueuedInputBufferCount++;
+      if (MetricsRegistry.DEFAULT.isEnabled()) {
+        CODEC_QUEUED_BUFFER_COUNT.record(
+            codecQueuedInputBufferCount - codecDequeuedOutputBufferCount);
+      }
+    }
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("codec", "queueInputBuffer", presentationTimeUs);
+    }
     return true;
   }
 
@@ -1782,6 +1870,7 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
 
       this.outputIndex = outputIndex;
       outputBuffer = getOutputBuffer(outputIndex);
+      codecDequeuedOutputBufferCount++;
 
       // The dequeued buffer is a media buffer. Do some initial setup.
       // It will be processed by calling processOutputBuffer (possibly multiple times).
@@ -2036,6 +2125,10 @@ public abstract class MediaCodecRenderer extends BaseRenderer {
     maybeInitCodecOrBypass();
   }
 
+  private boolean isTunneling() {
+    return getConfiguration().tunnelingAudioSessionId != C.AUDIO_SESSION_ID_UNSET;
+  }
+
   private boolean isDecodeOnlyBuffer(long presentationTimeUs) {
     // We avoid using decodeOnlyPresentationTimestamps.remove(presentationTimeUs) because it would
     // box presentationTimeUs, creating a Long object that would need to be garbage collected.
@@ -15,9 +15,6 @@
  */
 package com.google.android.exoplayer2.source;
 
-import static java.lang.Math.max;
-import static java.lang.Math.min;
-
 import android.net.Uri;
 import android.os.Handler;
 import android.os.Message;
@@ -25,6 +22,7 @@ import androidx.annotation.GuardedBy;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.AbstractConcatenatedTimeline;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.ChildTimelineList;
 import com.google.android.exoplayer2.MediaItem;
 import com.google.android.exoplayer2.Timeline;
 import com.google.android.exoplayer2.source.ConcatenatingMediaSource.MediaSourceHolder;
@@ -84,6 +82,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   private boolean timelineUpdateScheduled;
   private Set<HandlerAndRunnable> nextTimelineUpdateOnCompletionActions;
   private ShuffleOrder shuffleOrder;
+  private ChildTimelineList childTimelines;
 
   /**
    * @param mediaSources The {@link MediaSource}s to concatenate. It is valid for the same
@@ -139,6 +138,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     this.mediaSourceByUid = new HashMap<>();
     this.mediaSourcesPublic = new ArrayList<>();
     this.mediaSourceHolders = new ArrayList<>();
+    this.childTimelines = ChildTimelineList.EMPTY;
     this.nextTimelineUpdateOnCompletionActions = new HashSet<>();
     this.pendingOnCompletionActions = new HashSet<>();
     this.enabledMediaSourceHolders = new HashSet<>();
@@ -156,7 +156,12 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
                 .cloneAndInsert(
                     /* insertionIndex= */ 0, /* insertionCount= */ mediaSourcesPublic.size())
             : this.shuffleOrder;
-    return new ConcatenatedTimeline(mediaSourcesPublic, shuffleOrder, isAtomic);
+    ChildTimelineList childTimelines = ChildTimelineList.EMPTY;
+    for (MediaSourceHolder mediaSourceHolder : mediaSourcesPublic) {
+      childTimelines =
+          childTimelines.add(mediaSourceHolder.uid, mediaSourceHolder.mediaSource.getTimeline());
+    }
+    return new ConcatenatedTimeline(childTimelines, shuffleOrder, isAtomic);
   }
 
   @Override
@@ -514,6 +519,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   protected synchronized void releaseSourceInternal() {
     super.releaseSourceInternal();
     mediaSourceHolders.clear();
+    childTimelines = ChildTimelineList.EMPTY;
     enabledMediaSourceHolders.clear();
     mediaSourceByUid.clear();
     shuffleOrder = shuffleOrder.cloneAndClear();
@@ -551,7 +557,10 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   @Override
   protected int getWindowIndexForChildWindowIndex(
       MediaSourceHolder mediaSourceHolder, int windowIndex) {
-    return windowIndex + mediaSourceHolder.firstWindowIndexInChild;
+    int childIndex = childTimelines.getIndexOfUid(mediaSourceHolder.uid);
+    return childIndex == C.INDEX_UNSET
+        ? windowIndex + mediaSourceHolder.removedFirstWindowIndexInChild
+        : windowIndex + childTimelines.getFirstWindowIndex(childIndex);
   }
 
   // Internal methods. Called from any thread.
@@ -734,7 +743,7 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     timelineUpdateScheduled = false;
     Set<HandlerAndRunnable> onCompletionActions = nextTimelineUpdateOnCompletionActions;
     nextTimelineUpdateOnCompletionActions = new HashSet<>();
-    refreshSourceInfo(new ConcatenatedTimeline(mediaSourceHolders, shuffleOrder, isAtomic));
+    refreshSourceInfo(new ConcatenatedTimeline(childTimelines, shuffleOrder, isAtomic));
     getPlaybackThreadHandlerOnPlaybackThread()
         .obtainMessage(MSG_ON_COMPLETION, onCompletionActions)
         .sendToTarget();
@@ -763,16 +772,10 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   }
 
   private void addMediaSourceInternal(int newIndex, MediaSourceHolder newMediaSourceHolder) {
-    if (newIndex > 0) {
-      MediaSourceHolder previousHolder = mediaSourceHolders.get(newIndex - 1);
-      Timeline previousTimeline = previousHolder.mediaSource.getTimeline();
-      newMediaSourceHolder.reset(
-          newIndex, previousHolder.firstWindowIndexInChild + previousTimeline.getWindowCount());
-    } else {
-      newMediaSourceHolder.reset(newIndex, /* firstWindowIndexInChild= */ 0);
-    }
-    Timeline newTimeline = newMediaSourceHolder.mediaSource.getTimeline();
-    correctOffsets(newIndex, /* childIndexUpdate= */ 1, newTimeline.getWindowCount());
+    newMediaSourceHolder.reset();
+    childTimelines =
+        childTimelines.add(
+            newIndex, newMediaSourceHolder.uid, newMediaSourceHolder.mediaSource.getTimeline());
     mediaSourceHolders.add(newIndex, newMediaSourceHolder);
     mediaSourceByUid.put(newMediaSourceHolder.uid, newMediaSourceHolder);
     prepareChildSource(newMediaSourceHolder, newMediaSourceHolder.mediaSource);
@@ -784,15 +787,9 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   }
 
   private void updateMediaSourceInternal(MediaSourceHolder mediaSourceHolder, Timeline timeline) {
-    if (mediaSourceHolder.childIndex + 1 < mediaSourceHolders.size()) {
-      MediaSourceHolder nextHolder = mediaSourceHolders.get(mediaSourceHolder.childIndex + 1);
-      int windowOffsetUpdate =
-          timeline.getWindowCount()
-              - (nextHolder.firstWindowIndexInChild - mediaSourceHolder.firstWindowIndexInChild);
-      if (windowOffsetUpdate != 0) {
-        correctOffsets(
-            mediaSourceHolder.childIndex + 1, /* childIndexUpdate= */ 0, windowOffsetUpdate);
-      }
+    int childIndex = childTimelines.getIndexOfUid(mediaSourceHolder.uid);
+    if (childIndex != C.INDEX_UNSET) {
+      childTimelines = childTimelines.set(childIndex, timeline);
     }
     scheduleTimelineUpdate();
   }
@@ -800,33 +797,17 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   private void removeMediaSourceInternal(int index) {
     MediaSourceHolder holder = mediaSourceHolders.remove(index);
     mediaSourceByUid.remove(holder.uid);
-    Timeline oldTimeline = holder.mediaSource.getTimeline();
-    correctOffsets(index, /* childIndexUpdate= */ -1, -oldTimeline.getWindowCount());
+    holder.removedFirstWindowIndexInChild = childTimelines.getFirstWindowIndex(index);
+    childTimelines = childTimelines.remove(index);
     holder.isRemoved = true;
     maybeReleaseChildSource(holder);
   }
 
   private void moveMediaSourceInternal(int currentIndex, int newIndex) {
-    int startIndex = min(currentIndex, newIndex);
-    int endIndex = max(currentIndex, newIndex);
-    int windowOffset = mediaSourceHolders.get(startIndex).firstWindowIndexInChild;
     mediaSourceHolders.add(newIndex, mediaSourceHolders.remove(currentIndex));
-    for (int i = startIndex; i <= endIndex; i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.childIndex = i;
-      holder.firstWindowIndexInChild = windowOffset;
-      windowOffset += holder.mediaSource.getTimeline().getWindowCount();
-    }
-  }
-
-  private void correctOffsets(int startIndex, int childIndexUpdate, int windowOffsetUpdate) {
-    // TODO: Replace window index with uid in reporting to get rid of this inefficient method and
-    // the childIndex and firstWindowIndexInChild variables.
-    for (int i = startIndex; i < mediaSourceHolders.size(); i++) {
-      MediaSourceHolder holder = mediaSourceHolders.get(i);
-      holder.childIndex += childIndexUpdate;
-      holder.firstWindowIndexInChild += windowOffsetUpdate;
-    }
+    childTimelines =
+        childTimelines.move(
+            /* fromIndex= */ currentIndex, /* toIndex= */ currentIndex + 1, newIndex);
   }
 
   private void maybeReleaseChildSource(MediaSourceHolder mediaSourceHolder) {
@@ -874,8 +855,9 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
     public final Object uid;
     public final List<MediaPeriodId> activeMediaPeriodIds;
 
-    public int childIndex;
-    public int firstWindowIndexInChild;
+    /** The index of the first window of the source when it was removed from the playlist. */
+    public int removedFirstWindowIndexInChild;
+
     public boolean isRemoved;
 
     public MediaSourceHolder(MediaSource mediaSource, boolean useLazyPreparation) {
@@ -884,9 +866,8 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
       this.uid = new Object();
     }
 
-    public void reset(int childIndex, int firstWindowIndexInChild) {
-      this.childIndex = childIndex;
-      this.firstWindowIndexInChild = firstWindowIndexInChild;
+    public void reset() {
+      this.removedFirstWindowIndexInChild = 0;
       this.isRemoved = false;
       this.activeMediaPeriodIds.clear();
     }
@@ -909,85 +890,57 @@ public final class ConcatenatingMediaSource extends CompositeMediaSource<MediaSo
   /** Timeline exposing concatenated timelines of playlist media sources. */
   private static final class ConcatenatedTimeline extends AbstractConcatenatedTimeline {
 
-    private final int windowCount;
-    private final int periodCount;
-    private final int[] firstPeriodInChildIndices;
-    private final int[] firstWindowInChildIndices;
-    private final Timeline[] timelines;
-    private final Object[] uids;
-    private final HashMap<Object, Integer> childIndexByUid;
+    private final ChildTimelineList childTimelines;
 
     public ConcatenatedTimeline(
-        Collection<MediaSourceHolder> mediaSourceHolders,
-        ShuffleOrder shuffleOrder,
-        boolean isAtomic) {
+        ChildTimelineList childTimelines, ShuffleOrder shuffleOrder, boolean isAtomic) {
       super(isAtomic, shuffleOrder);
-      int childCount = mediaSourceHolders.size();
-      firstPeriodInChildIndices = new int[childCount];
-      firstWindowInChildIndices = new int[childCount];
-      timelines = new Timeline[childCount];
-      uids = new Object[childCount];
-      childIndexByUid = new HashMap<>();
-      int index = 0;
-      int windowCount = 0;
-      int periodCount = 0;
-      for (MediaSourceHolder mediaSourceHolder : mediaSourceHolders) {
-        timelines[index] = mediaSourceHolder.mediaSource.getTimeline();
-        firstWindowInChildIndices[index] = windowCount;
-        firstPeriodInChildIndices[index] = periodCount;
-        windowCount += timelines[index].getWindowCount();
-        periodCount += timelines[index].getPeriodCount();
-        uids[index] = mediaSourceHolder.uid;
-        childIndexByUid.put(uids[index], index++);
-      }
-      this.windowCount = windowCount;
-      this.periodCount = periodCount;
+      this.childTimelines = childTimelines;
     }
 
     @Override
     protected int getChildIndexByPeriodIndex(int periodIndex) {
-      return Util.binarySearchFloor(firstPeriodInChildIndices, periodIndex + 1, false, false);
+      return childTimelines.getIndexOfPeriod(periodIndex);
     }
 
     @Override
     protected int getChildIndexByWindowIndex(int windowIndex) {
-      return Util.binarySearchFloor(firstWindowInChildIndices, windowIndex + 1, false, false);
+      return childTimelines.getIndexOfWindow(windowIndex);
     }
 
     @Override
     protected int getChildIndexByChildUid(Object childUid) {
-      @Nullable Integer index = childIndexByUid.get(childUid);
-      return index == null ? C.INDEX_UNSET : index;
+      return childTimelines.getIndexOfUid(childUid);
     }
 
     @Override
     protected Timeline getTimelineByChildIndex(int childIndex) {
-      return timelines[childIndex];
+      return childTimelines.getTimeline(childIndex);
     }
 
     @Override
     protected int getFirstPeriodIndexByChildIndex(int childIndex) {
-      return firstPeriodInChildIndices[childIndex];
+      return childTimelines.getFirstPeriodIndex(childIndex);
     }
 
     @Override
     protected int getFirstWindowIndexByChildIndex(int childIndex) {
-      return firstWindowInChildIndices[childIndex];
+      return childTimelines.getFirstWindowIndex(childIndex);
     }
 
     @Override
     protected Object getChildUidByChildIndex(int childIndex) {
-      return uids[childIndex];
+      return childTimelines.getUid(childIndex);
     }
 
     @Override
     public int getWindowCount() {
-      return windowCount;
+      return childTimelines.getWindowCount();
     }
 
     @Override
     public int getPeriodCount() {
-      return periodCount;
+      return childTimelines.getPeriodCount();
     }
   }
 
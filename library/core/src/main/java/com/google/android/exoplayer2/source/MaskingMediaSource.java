@@ -71,6 +71,17 @@ public final class MaskingMediaSource extends CompositeMediaSource<Void> {
     }
   }
 
+  /**
+   * Returns the placeholder {@link Timeline} used by a masking media source for the given {@link
+   * MediaItem} until its source is prepared.
+   *
+   * @param mediaItem A {@link MediaItem}.
+   * @return The placeholder {@link Timeline}.
+   */
+  public static Timeline createPlaceholderTimeline(MediaItem mediaItem) {
+    return MaskingTimeline.createWithPlaceholderTimeline(mediaItem);
+  }
+
   /** Returns the {@link Timeline}. */
   public Timeline getTimeline() {
     return timeline;
@@ -0,0 +1,891 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import android.os.Handler;
+import android.os.Looper;
+import android.util.Pair;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.SeekParameters;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.offline.StreamKey;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.trackselection.TrackSelection;
+import com.google.android.exoplayer2.upstream.Allocation;
+import com.google.android.exoplayer2.upstream.Allocator;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * A {@link MediaSourceFactory} that preloads the media sources of upcoming {@link MediaItem
+ * MediaItems}, so that a player can switch to them without waiting for their manifests,
+ * initialization data and first media samples to load.
+ *
+ * <p>The items to preload are set with {@link #preload(List)}. For each item, the factory creates a
+ * media source using the wrapped factory, prepares it, creates a period at the default start
+ * position of its first window and buffers up to the {@link #setPreloadDurationMs(long) preload
+ * duration} of its first video and audio track groups. Items are buffered in order, and buffering
+ * stops whilst the preloaded items hold more than {@link #setMaxPreloadBytes(int)} bytes. HLS items
+ * are only prepared, which loads their playlists and the first chunk needed to determine their
+ * tracks, but no further media. HLS periods discard their buffered media when the player's first
+ * selection of the primary track group differs from an earlier selection, so media buffered for a
+ * preload selection would rarely be played.
+ *
+ * <p>{@link #createMediaSource(MediaItem)} hands out the preloaded source of an item that's equal
+ * to the requested one, and removes it from the factory. If the player then creates a period at the
+ * preloaded position, it receives the preloaded period together with its buffered media, and the
+ * preloaded sample streams are retained for the player's selections of the same track groups. For
+ * any other position, the preloaded period is released and a new one is created. Sources that are
+ * handed out but never prepared by the player are released by {@link #release()}.
+ *
+ * <p>Preloaded sources are prepared on the playback {@link Looper} passed to the constructor, so
+ * the factory must only be used by the player that uses this looper. Preloaded media is allocated
+ * from the allocator passed to the constructor, which should be the allocator of the player's
+ * {@link com.google.android.exoplayer2.LoadControl}, so that it counts towards the player's buffer
+ * once the player switches to the preloaded item. Until then, the preloaded media also counts
+ * towards the load control's target buffer size, so the current item buffers correspondingly less.
+ * {@link #setMaxPreloadBytes(int)} should therefore be kept to a small fraction of that target.
+ */
+public final class PreloadingMediaSourceFactory implements MediaSourceFactory {
+
+  /** The default maximum number of items that are preloaded. */
+  public static final int DEFAULT_MAX_PRELOAD_COUNT = 3;
+  /** The default duration of media that's buffered for each preloaded item, in milliseconds. */
+  public static final long DEFAULT_PRELOAD_DURATION_MS = 5_000;
+  /**
+   * The default maximum number of bytes that are held by the preloaded items. This is an eighth of
+   * the smallest default target buffer size of {@link DefaultLoadControl}.
+   */
+  public static final int DEFAULT_MAX_PRELOAD_BYTES =
+      DefaultLoadControl.DEFAULT_MIN_BUFFER_SIZE / 8;
+
+  /**
+   * The interval at which an item that's being prepared is checked for preparation errors, in
+   * milliseconds.
+   */
+  private static final long PREPARATION_ERROR_CHECK_INTERVAL_MS = 1_000;
+
+  private final MediaSourceFactory mediaSourceFactory;
+  private final Handler handler;
+  private final Allocator allocator;
+  @Nullable private final TransferListener transferListener;
+  private final Runnable updatePreloadsRunnable;
+  private final Timeline.Window window;
+  private final Timeline.Period period;
+
+  @GuardedBy("this")
+  private final List<PreloadMediaSource> preloadMediaSources;
+
+  @GuardedBy("this")
+  private final List<PreloadMediaSource> handedOutMediaSources;
+
+  private volatile int maxPreloadCount;
+  private volatile long preloadDurationUs;
+  private volatile int maxPreloadBytes;
+  private volatile boolean waitingForReleasedBytes;
+
+  /**
+   * Creates an instance.
+   *
+   * @param mediaSourceFactory The {@link MediaSourceFactory} that creates the media sources.
+   * @param playbackLooper The playback {@link Looper} of the player that uses this factory.
+   * @param allocator The {@link Allocator} from which preloaded media is allocated.
+   * @param transferListener An optional {@link TransferListener} that's notified of the data
+   *     transfers of preloaded items, such as the transfer listener of the player's {@link
+   *     com.google.android.exoplayer2.upstream.BandwidthMeter}.
+   */
+  public PreloadingMediaSourceFactory(
+      MediaSourceFactory mediaSourceFactory,
+      Looper playbackLooper,
+      Allocator allocator,
+      @Nullable TransferListener transferListener) {
+    this.mediaSourceFactory = mediaSourceFactory;
+    this.allocator = allocator;
+    this.transferListener = transferListener;
+    handler = new Handler(playbackLooper);
+    updatePreloadsRunnable = this::updatePreloads;
+    window = new Timeline.Window();
+    period = new Timeline.Period();
+    preloadMediaSources = new ArrayList<>();
+    handedOutMediaSources = new ArrayList<>();
+    maxPreloadCount = DEFAULT_MAX_PRELOAD_COUNT;
+    preloadDurationUs = C.msToUs(DEFAULT_PRELOAD_DURATION_MS);
+    maxPreloadBytes = DEFAULT_MAX_PRELOAD_BYTES;
+  }
+
+  /**
+   * Sets the maximum number of items that are preloaded. The default value is {@link
+   * #DEFAULT_MAX_PRELOAD_COUNT}.
+   *
+   * @param maxPreloadCount The maximum number of items that are preloaded.
+   * @return This factory, for convenience.
+   */
+  public PreloadingMediaSourceFactory setMaxPreloadCount(int maxPreloadCount) {
+    checkArgument(maxPreloadCount >= 0);
+    this.maxPreloadCount = maxPreloadCount;
+    return this;
+  }
+
+  /**
+   * Sets the duration of media that's buffered for each preloaded item. The default value is
+   * {@link #DEFAULT_PRELOAD_DURATION_MS}.
+   *
+   * @param preloadDurationMs The duration of media that's buffered for each item, in milliseconds.
+   * @return This factory, for convenience.
+   */
+  public PreloadingMediaSourceFactory setPreloadDurationMs(long preloadDurationMs) {
+    checkArgument(preloadDurationMs >= 0);
+    this.preloadDurationUs = C.msToUs(preloadDurationMs);
+    return this;
+  }
+
+  /**
+   * Sets the maximum number of bytes that are held by the preloaded items. Once they hold more,
+   * preloaded items stop buffering until an item is handed out or released. The default value is
+   * {@link #DEFAULT_MAX_PRELOAD_BYTES}.
+   *
+   * <p>The preloaded bytes are allocated from the player's allocator, so they reduce the media the
+   * player buffers for the current item before its load control's target buffer size is reached. A
+   * larger value makes switching to a preloaded item smoother at the cost of buffering less of the
+   * current one.
+   *
+   * @param maxPreloadBytes The maximum number of bytes that are held by the preloaded items.
+   * @return This factory, for convenience.
+   */
+  public PreloadingMediaSourceFactory setMaxPreloadBytes(int maxPreloadBytes) {
+    checkArgument(maxPreloadBytes >= 0);
+    this.maxPreloadBytes = maxPreloadBytes;
+    return this;
+  }
+
+  /**
+   * Sets the items to preload, in order of priority. Only the first {@link
+   * #setMaxPreloadCount(int) maximum number} of items are preloaded. Items that are already
+   * preloaded keep their preloaded media, and preloaded items that aren't in the list are released.
+   *
+   * <p>This method may be called from any thread.
+   *
+   * @param mediaItems The {@link MediaItem MediaItems} to preload.
+   */
+  public void preload(List<MediaItem> mediaItems) {
+    List<PreloadMediaSource> releasedMediaSources;
+    synchronized (this) {
+      List<PreloadMediaSource> newMediaSources = new ArrayList<>();
+      int count = Math.min(mediaItems.size(), maxPreloadCount);
+      for (int i = 0; i < count; i++) {
+        MediaItem mediaItem = mediaItems.get(i);
+        @Nullable PreloadMediaSource mediaSource = removePreloadMediaSource(mediaItem);
+        if (mediaSource == null) {
+          mediaSource =
+              new PreloadMediaSource(mediaItem, mediaSourceFactory.createMediaSource(mediaItem));
+        }
+        newMediaSources.add(mediaSource);
+      }
+      releasedMediaSources = new ArrayList<>(preloadMediaSources);
+      preloadMediaSources.clear();
+      preloadMediaSources.addAll(newMediaSources);
+    }
+    handler.post(
+        () -> {
+          for (int i = 0; i < releasedMediaSources.size(); i++) {
+            releasedMediaSources.get(i).releasePreload();
+          }
+          List<PreloadMediaSource> mediaSources = getPreloadMediaSources();
+          for (int i = 0; i < mediaSources.size(); i++) {
+            mediaSources.get(i).startPreload();
+          }
+          updatePreloads();
+        });
+  }
+
+  /**
+   * Releases all preloaded items, including those that have been handed out by {@link
+   * #createMediaSource(MediaItem)} but not prepared by the player yet.
+   *
+   * <p>This method may be called from any thread.
+   */
+  public void release() {
+    List<PreloadMediaSource> releasedMediaSources;
+    synchronized (this) {
+      releasedMediaSources = new ArrayList<>(handedOutMediaSources);
+      handedOutMediaSources.clear();
+    }
+    preload(/* mediaItems= */ new ArrayList<>());
+    handler.post(
+        () -> {
+          for (int i = 0; i < releasedMediaSources.size(); i++) {
+            releasedMediaSources.get(i).releasePreload();
+          }
+        });
+  }
+
+  // MediaSourceFactory implementation.
+
+  @Override
+  public MediaSourceFactory setDrmSessionManager(@Nullable DrmSessionManager drmSessionManager) {
+    mediaSourceFactory.setDrmSessionManager(drmSessionManager);
+    return this;
+  }
+
+  @Override
+  public MediaSourceFactory setDrmHttpDataSourceFactory(
+      @Nullable HttpDataSource.Factory drmHttpDataSourceFactory) {
+    mediaSourceFactory.setDrmHttpDataSourceFactory(drmHttpDataSourceFactory);
+    return this;
+  }
+
+  @Override
+  public MediaSourceFactory setDrmUserAgent(@Nullable String userAgent) {
+    mediaSourceFactory.setDrmUserAgent(userAgent);
+    return this;
+  }
+
+  @Override
+  public MediaSourceFactory setLoadErrorHandlingPolicy(
+      @Nullable LoadErrorHandlingPolicy loadErrorHandlingPolicy) {
+    mediaSourceFactory.setLoadErrorHandlingPolicy(loadErrorHandlingPolicy);
+    return this;
+  }
+
+  @Override
+  @C.ContentType
+  public int[] getSupportedTypes() {
+    return mediaSourceFactory.getSupportedTypes();
+  }
+
+  @Override
+  public MediaSource createMediaSource(MediaItem mediaItem) {
+    @Nullable PreloadMediaSource mediaSource;
+    synchronized (this) {
+      mediaSource = removePreloadMediaSource(mediaItem);
+      if (mediaSource != null) {
+        // Keep track of the source until the player prepares it, so that it's released if the
+        // player never does.
+        handedOutMediaSources.add(mediaSource);
+      }
+    }
+    if (mediaSource == null) {
+      return mediaSourceFactory.createMediaSource(mediaItem);
+    }
+    // Let the next item use the bytes of the item that's been handed out.
+    handler.post(updatePreloadsRunnable);
+    return mediaSource;
+  }
+
+  // Internal methods.
+
+  @GuardedBy("this")
+  @Nullable
+  private PreloadMediaSource removePreloadMediaSource(MediaItem mediaItem) {
+    for (int i = 0; i < preloadMediaSources.size(); i++) {
+      if (preloadMediaSources.get(i).mediaItem.equals(mediaItem)) {
+        return preloadMediaSources.remove(i);
+      }
+    }
+    return null;
+  }
+
+  private synchronized List<PreloadMediaSource> getPreloadMediaSources() {
+    return new ArrayList<>(preloadMediaSources);
+  }
+
+  private synchronized void onHandedOutMediaSourcePrepared(PreloadMediaSource mediaSource) {
+    handedOutMediaSources.remove(mediaSource);
+  }
+
+  private void updatePreloads() {
+    handler.removeCallbacks(updatePreloadsRunnable);
+    List<PreloadMediaSource> mediaSources = getPreloadMediaSources();
+    long preloadedBytes = 0;
+    for (int i = 0; i < mediaSources.size(); i++) {
+      preloadedBytes += mediaSources.get(i).getPreloadedBytes();
+    }
+    for (int i = 0; i < mediaSources.size(); i++) {
+      PreloadMediaSource mediaSource = mediaSources.get(i);
+      if (mediaSource.isPreloadComplete()) {
+        continue;
+      }
+      // Only buffer the first incomplete item, so that items complete in order of priority.
+      if (preloadedBytes >= maxPreloadBytes) {
+        // Continue once bytes are released, or an item is handed out or released.
+        waitingForReleasedBytes = true;
+      } else {
+        waitingForReleasedBytes = false;
+        mediaSource.continuePreload();
+        if (!mediaSource.isPreloadPrepared()) {
+          // Preparation errors aren't reported through callbacks, so check for them periodically.
+          handler.postDelayed(updatePreloadsRunnable, PREPARATION_ERROR_CHECK_INTERVAL_MS);
+        }
+      }
+      return;
+    }
+  }
+
+  private void onPreloadedBytesReleased() {
+    if (waitingForReleasedBytes) {
+      waitingForReleasedBytes = false;
+      handler.post(updatePreloadsRunnable);
+    }
+  }
+
+  /**
+   * A media source that preloads a period of the wrapped source, and hands it to the player if the
+   * player creates a period at the same position.
+   */
+  private final class PreloadMediaSource extends CompositeMediaSource<Void> {
+
+    public final MediaItem mediaItem;
+
+    private final MediaSource mediaSource;
+    private final MediaSourceCaller preloadCaller;
+    private final PreloadAllocator preloadAllocator;
+    private final boolean selectsPreloadTracks;
+
+    private boolean isPreloadCallerPrepared;
+    private boolean isPlayerPrepared;
+    private boolean preloadFailed;
+    @Nullable private PreloadMediaPeriod preloadMediaPeriod;
+    @Nullable private MediaPeriodId handedOverMediaPeriodId;
+    @Nullable private MediaPeriodId playerMediaPeriodId;
+
+    public PreloadMediaSource(MediaItem mediaItem, MediaSource mediaSource) {
+      this.mediaItem = mediaItem;
+      this.mediaSource = mediaSource;
+      preloadCaller = (source, timeline) -> onPreloadSourceInfoRefreshed(timeline);
+      preloadAllocator =
+          new PreloadAllocator(
+              allocator,
+              /* releaseListener= */ PreloadingMediaSourceFactory.this::onPreloadedBytesReleased);
+      @Nullable MediaItem.PlaybackProperties playbackProperties = mediaItem.playbackProperties;
+      int contentType =
+          playbackProperties == null
+              ? C.TYPE_OTHER
+              : Util.inferContentTypeForUriAndMimeType(
+                  playbackProperties.uri, playbackProperties.mimeType);
+      // HLS periods reset their sample queues if the player selects other tracks than the preload.
+      selectsPreloadTracks = contentType != C.TYPE_HLS;
+    }
+
+    /** Prepares the wrapped source for preloading, if it's not already prepared. */
+    public void startPreload() {
+      if (isPreloadCallerPrepared || isPlayerPrepared || preloadFailed) {
+        return;
+      }
+      isPreloadCallerPrepared = true;
+      mediaSource.prepareSource(preloadCaller, transferListener);
+    }
+
+    /** Releases the preloaded period and the wrapped source, if the player hasn't prepared it. */
+    public void releasePreload() {
+      releasePreloadMediaPeriod();
+      if (isPreloadCallerPrepared) {
+        isPreloadCallerPrepared = false;
+        mediaSource.releaseSource(preloadCaller);
+      }
+    }
+
+    /** Returns the number of bytes held by the preloaded period. */
+    public long getPreloadedBytes() {
+      return preloadAllocator.getTotalBytesAllocated();
+    }
+
+    /** Returns whether preloading is complete, or has failed. */
+    public boolean isPreloadComplete() {
+      return preloadFailed
+          || (preloadMediaPeriod != null && preloadMediaPeriod.isPreloadComplete());
+    }
+
+    /** Returns whether the preloaded period has been prepared, or preloading has failed. */
+    public boolean isPreloadPrepared() {
+      return preloadFailed || (preloadMediaPeriod != null && preloadMediaPeriod.isPrepared());
+    }
+
+    /** Continues preloading, or checks for preparation errors if no period has been created. */
+    public void continuePreload() {
+      if (preloadMediaPeriod != null) {
+        preloadMediaPeriod.continuePreload();
+        return;
+      } else if (!isPreloadCallerPrepared) {
+        return;
+      }
+      try {
+        mediaSource.maybeThrowSourceInfoRefreshError();
+      } catch (IOException e) {
+        // Stop preloading. The player will surface the error if it switches to this item.
+        preloadFailed = true;
+        releasePreload();
+      }
+    }
+
+    // MediaSource implementation.
+
+    @Override
+    @Nullable
+    public Timeline getInitialTimeline() {
+      return mediaSource.getInitialTimeline();
+    }
+
+    @Override
+    public boolean isSingleWindow() {
+      return mediaSource.isSingleWindow();
+    }
+
+    /**
+     * @deprecated Use {@link #getMediaItem()} and {@link MediaItem.PlaybackProperties#tag} instead.
+     */
+    @SuppressWarnings("deprecation")
+    @Deprecated
+    @Override
+    @Nullable
+    public Object getTag() {
+      return mediaSource.getTag();
+    }
+
+    @Override
+    public MediaItem getMediaItem() {
+      return mediaSource.getMediaItem();
+    }
+
+    @Override
+    protected void prepareSourceInternal(@Nullable TransferListener mediaTransferListener) {
+      super.prepareSourceInternal(mediaTransferListener);
+      isPlayerPrepared = true;
+      onHandedOutMediaSourcePrepared(/* mediaSource= */ this);
+      prepareChildSource(/* id= */ null, mediaSource);
+      if (isPreloadCallerPrepared) {
+        // The player's caller keeps the wrapped source prepared. Enable it explicitly, as preparing
+        // an already prepared source only enables the caller once the timeline is known.
+        enableChildSource(/* id= */ null);
+        isPreloadCallerPrepared = false;
+        mediaSource.releaseSource(preloadCaller);
+      }
+    }
+
+    @Override
+    protected void onChildSourceInfoRefreshed(
+        Void id, MediaSource mediaSource, Timeline timeline) {
+      refreshSourceInfo(timeline);
+    }
+
+    @Override
+    public MediaPeriod createPeriod(MediaPeriodId id, Allocator allocator, long startPositionUs) {
+      @Nullable PreloadMediaPeriod preloadMediaPeriod = this.preloadMediaPeriod;
+      if (preloadMediaPeriod != null && preloadMediaPeriod.canHandOver(id, startPositionUs)) {
+        this.preloadMediaPeriod = null;
+        handedOverMediaPeriodId = preloadMediaPeriod.id;
+        playerMediaPeriodId = id;
+        return preloadMediaPeriod;
+      }
+      releasePreloadMediaPeriod();
+      return mediaSource.createPeriod(id, allocator, startPositionUs);
+    }
+
+    @Override
+    public void releasePeriod(MediaPeriod mediaPeriod) {
+      if (mediaPeriod instanceof PreloadMediaPeriod) {
+        handedOverMediaPeriodId = null;
+        playerMediaPeriodId = null;
+        mediaSource.releasePeriod(((PreloadMediaPeriod) mediaPeriod).mediaPeriod);
+      } else {
+        mediaSource.releasePeriod(mediaPeriod);
+      }
+    }
+
+    @Override
+    protected void releaseSourceInternal() {
+      releasePreloadMediaPeriod();
+      super.releaseSourceInternal();
+      isPlayerPrepared = false;
+    }
+
+    @Override
+    @Nullable
+    protected MediaPeriodId getMediaPeriodIdForChildMediaPeriodId(
+        Void id, MediaPeriodId mediaPeriodId) {
+      // Events of a handed over period are reported for the id the player created it with.
+      return playerMediaPeriodId != null && mediaPeriodId.equals(handedOverMediaPeriodId)
+          ? playerMediaPeriodId
+          : mediaPeriodId;
+    }
+
+    // Internal methods.
+
+    private void onPreloadSourceInfoRefreshed(Timeline timeline) {
+      if (preloadMediaPeriod != null || isPlayerPrepared || timeline.isEmpty()) {
+        return;
+      }
+      timeline.getWindow(/* windowIndex= */ 0, window);
+      if (window.isPlaceholder) {
+        return;
+      }
+      // Use the same start position as the player uses for the default position of the item.
+      Pair<Object, Long> periodPosition =
+          timeline.getPeriodPosition(
+              window, period, /* windowIndex= */ 0, window.getDefaultPositionUs());
+      MediaPeriodId id = new MediaPeriodId(periodPosition.first);
+      long startPositionUs = periodPosition.second;
+      preloadMediaPeriod =
+          new PreloadMediaPeriod(
+              mediaSource.createPeriod(id, preloadAllocator, startPositionUs),
+              id,
+              startPositionUs,
+              selectsPreloadTracks);
+      preloadMediaPeriod.startPreload();
+    }
+
+    private void releasePreloadMediaPeriod() {
+      if (preloadMediaPeriod != null) {
+        mediaSource.releasePeriod(preloadMediaPeriod.mediaPeriod);
+        preloadMediaPeriod = null;
+      }
+    }
+  }
+
+  /**
+   * A media period that buffers the first video and audio track groups of the wrapped period until
+   * it's handed to the player, and then forwards all calls to the wrapped period.
+   */
+  private final class PreloadMediaPeriod implements MediaPeriod, MediaPeriod.Callback {
+
+    public final MediaPeriod mediaPeriod;
+    public final MediaPeriodId id;
+
+    private final long startPositionUs;
+    private final boolean selectsPreloadTracks;
+
+    @Nullable private Callback callback;
+    private boolean prepared;
+    private boolean preloadFailed;
+    @Nullable private TrackSelection[] preloadSelections;
+    @Nullable private SampleStream[] preloadStreams;
+
+    public PreloadMediaPeriod(
+        MediaPeriod mediaPeriod,
+        MediaPeriodId id,
+        long startPositionUs,
+        boolean selectsPreloadTracks) {
+      this.mediaPeriod = mediaPeriod;
+      this.id = id;
+      this.startPositionUs = startPositionUs;
+      this.selectsPreloadTracks = selectsPreloadTracks;
+    }
+
+    public void startPreload() {
+      mediaPeriod.prepare(/* callback= */ this, startPositionUs);
+    }
+
+    public boolean isPrepared() {
+      return prepared;
+    }
+
+    public boolean isPreloadComplete() {
+      if (preloadFailed) {
+        return true;
+      } else if (!prepared) {
+        return false;
+      } else if (preloadStreams == null || preloadStreams.length == 0) {
+        return true;
+      }
+      long bufferedPositionUs = mediaPeriod.getBufferedPositionUs();
+      return bufferedPositionUs == C.TIME_END_OF_SOURCE
+          || bufferedPositionUs - startPositionUs >= preloadDurationUs;
+    }
+
+    public void continuePreload() {
+      try {
+        if (!prepared) {
+          mediaPeriod.maybeThrowPrepareError();
+          return;
+        }
+        if (preloadStreams != null) {
+          for (SampleStream sampleStream : preloadStreams) {
+            if (sampleStream != null) {
+              sampleStream.maybeThrowError();
+            }
+          }
+        }
+      } catch (IOException e) {
+        // Stop preloading. The period isn't handed over, so that the player retries the load.
+        preloadFailed = true;
+        return;
+      }
+      mediaPeriod.continueLoading(startPositionUs);
+    }
+
+    public boolean canHandOver(MediaPeriodId id, long startPositionUs) {
+      return !preloadFailed
+          && !id.isAd()
+          && id.periodUid.equals(this.id.periodUid)
+          && startPositionUs == this.startPositionUs;
+    }
+
+    // MediaPeriod implementation.
+
+    @Override
+    public void prepare(Callback callback, long positionUs) {
+      this.callback = callback;
+      if (prepared) {
+        callback.onPrepared(/* mediaPeriod= */ this);
+      }
+    }
+
+    @Override
+    public void maybeThrowPrepareError() throws IOException {
+      mediaPeriod.maybeThrowPrepareError();
+    }
+
+    @Override
+    public TrackGroupArray getTrackGroups() {
+      return mediaPeriod.getTrackGroups();
+    }
+
+    @Override
+    public List<StreamKey> getStreamKeys(List<TrackSelection> trackSelections) {
+      return mediaPeriod.getStreamKeys(trackSelections);
+    }
+
+    @Override
+    public long selectTracks(
+        @NullableType TrackSelection[] selections,
+        boolean[] mayRetainStreamFlags,
+        @NullableType SampleStream[] streams,
+        boolean[] streamResetFlags,
+        long positionUs) {
+      @Nullable SampleStream[] preloadStreams = this.preloadStreams;
+      @Nullable TrackSelection[] preloadSelections = this.preloadSelections;
+      if (preloadStreams == null || preloadSelections == null) {
+        return mediaPeriod.selectTracks(
+            selections, mayRetainStreamFlags, streams, streamResetFlags, positionUs);
+      }
+      this.preloadStreams = null;
+      this.preloadSelections = null;
+      // Retain the preloaded streams for the selections of the same track groups.
+      boolean[] retainStreamFlags = Arrays.copyOf(mayRetainStreamFlags, selections.length);
+      for (int i = 0; i < selections.length; i++) {
+        @Nullable TrackSelection selection = selections[i];
+        if (selection == null || streams[i] != null) {
+          continue;
+        }
+        for (int j = 0; j < preloadStreams.length; j++) {
+          if (preloadStreams[j] != null
+              && preloadSelections[j].getTrackGroup() == selection.getTrackGroup()) {
+            streams[i] = preloadStreams[j];
+            retainStreamFlags[i] = true;
+            preloadStreams[j] = null;
+            break;
+          }
+        }
+      }
+      // Release the preloaded streams that aren't retained.
+      mediaPeriod.selectTracks(
+          new TrackSelection[preloadStreams.length],
+          new boolean[preloadStreams.length],
+          preloadStreams,
+          new boolean[preloadStreams.length],
+          positionUs);
+      long selectPositionUs =
+          mediaPeriod.selectTracks(
+              selections, retainStreamFlags, streams, streamResetFlags, positionUs);
+      for (int i = 0; i < selections.length; i++) {
+        if (retainStreamFlags[i] && !mayRetainStreamFlags[i] && streams[i] != null) {
+          // The stream is new to the caller.
+          streamResetFlags[i] = true;
+        }
+      }
+      return selectPositionUs;
+    }
+
+    @Override
+    public void discardBuffer(long positionUs, boolean toKeyframe) {
+      mediaPeriod.discardBuffer(positionUs, toKeyframe);
+    }
+
+    @Override
+    public long readDiscontinuity() {
+      return mediaPeriod.readDiscontinuity();
+    }
+
+    @Override
+    public long seekToUs(long positionUs) {
+      return mediaPeriod.seekToUs(positionUs);
+    }
+
+    @Override
+    public long getAdjustedSeekPositionUs(long positionUs, SeekParameters seekParameters) {
+      return mediaPeriod.getAdjustedSeekPositionUs(positionUs, seekParameters);
+    }
+
+    @Override
+    public long getBufferedPositionUs() {
+      return mediaPeriod.getBufferedPositionUs();
+    }
+
+    @Override
+    public long getNextLoadPositionUs() {
+      return mediaPeriod.getNextLoadPositionUs();
+    }
+
+    @Override
+    public void reevaluateBuffer(long positionUs) {
+      mediaPeriod.reevaluateBuffer(positionUs);
+    }
+
+    @Override
+    public boolean continueLoading(long positionUs) {
+      return mediaPeriod.continueLoading(positionUs);
+    }
+
+    @Override
+    public boolean isLoading() {
+      return mediaPeriod.isLoading();
+    }
+
+    // MediaPeriod.Callback implementation.
+
+    @Override
+    public void onPrepared(MediaPeriod mediaPeriod) {
+      prepared = true;
+      if (callback != null) {
+        callback.onPrepared(/* mediaPeriod= */ this);
+      } else {
+        if (selectsPreloadTracks) {
+          selectPreloadTracks();
+        }
+        handler.post(updatePreloadsRunnable);
+      }
+    }
+
+    @Override
+    public void onContinueLoadingRequested(MediaPeriod source) {
+      if (callback != null) {
+        callback.onContinueLoadingRequested(/* source= */ this);
+      } else {
+        handler.post(updatePreloadsRunnable);
+      }
+    }
+
+    private void selectPreloadTracks() {
+      TrackGroupArray trackGroups = mediaPeriod.getTrackGroups();
+      List<TrackSelection> selections = new ArrayList<>();
+      boolean selectedVideo = false;
+      boolean selectedAudio = false;
+      for (int i = 0; i < trackGroups.length; i++) {
+        TrackGroup trackGroup = trackGroups.get(i);
+        int trackType = MimeTypes.getTrackType(trackGroup.getFormat(0).sampleMimeType);
+        if (trackType == C.TRACK_TYPE_VIDEO && !selectedVideo) {
+          selectedVideo = true;
+        } else if (trackType == C.TRACK_TYPE_AUDIO && !selectedAudio) {
+          selectedAudio = true;
+        } else {
+          continue;
+        }
+        selections.add(new FixedTrackSelection(trackGroup, getLowestBitrateTrackIndex(trackGroup)));
+      }
+      int selectionCount = selections.size();
+      preloadSelections = selections.toArray(new TrackSelection[selectionCount]);
+      preloadStreams = new SampleStream[selectionCount];
+      if (selectionCount > 0) {
+        mediaPeriod.selectTracks(
+            preloadSelections,
+            new boolean[selectionCount],
+            preloadStreams,
+            new boolean[selectionCount],
+            startPositionUs);
+      }
+    }
+  }
+
+  private static int getLowestBitrateTrackIndex(TrackGroup trackGroup) {
+    int lowestBitrateTrackIndex = 0;
+    for (int i = 1; i < trackGroup.length; i++) {
+      int bitrate = trackGroup.getFormat(i).bitrate;
+      if (bitrate != Format.NO_VALUE
+          && bitrate < trackGroup.getFormat(lowestBitrateTrackIndex).bitrate) {
+        lowestBitrateTrackIndex = i;
+      }
+    }
+    return lowestBitrateTrackIndex;
+  }
+
+  /**
+   * An {@link Allocator} that counts the bytes that are allocated through it, and notifies a
+   * listener when bytes are released.
+   */
+  private static final class PreloadAllocator implements Allocator {
+
+    private final Allocator allocator;
+    private final Runnable releaseListener;
+
+    @GuardedBy("this")
+    private int allocatedBytes;
+
+    public PreloadAllocator(Allocator allocator, Runnable releaseListener) {
+      this.allocator = allocator;
+      this.releaseListener = releaseListener;
+    }
+
+    @Override
+    public synchronized Allocation allocate() {
+      allocatedBytes += allocator.getIndividualAllocationLength();
+      return allocator.allocate();
+    }
+
+    @Override
+    public synchronized void release(Allocation allocation) {
+      allocatedBytes -= allocator.getIndividualAllocationLength();
+      allocator.release(allocation);
+      releaseListener.run();
+    }
+
+    @Override
+    public synchronized void release(Allocation[] allocations) {
+      allocatedBytes -= allocations.length * allocator.getIndividualAllocationLength();
+      allocator.release(allocations);
+      releaseListener.run();
+    }
+
+    @Override
+    public void trim() {
+      allocator.trim();
+    }
+
+    @Override
+    public synchronized int getTotalBytesAllocated() {
+      return allocatedBytes;
+    }
+
+    @Override
+    public int getIndividualAllocationLength() {
+      return allocator.getIndividualAllocationLength();
+    }
+  }
+}
@@ -37,6 +37,7 @@ import com.google.android.exoplayer2.upstream.DataReader;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.android.exoplayer2.util.TraceRecorder;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import org.checkerframework.checker.nullness.compatqual.NullableType;
@@ -581,6 +582,9 @@ public class SampleQueue implements TrackOutput {
 
     long absoluteOffset = sampleDataQueue.getTotalBytesWritten() - size - offset;
     commitSample(timeUs, flags, absoluteOffset, size, cryptoData);
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("sampleQueue", "sampleMetadata", /* value= */ size);
+    }
   }
 
   /**
@@ -0,0 +1,113 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Index of the cues of a {@link Subtitle}, by the segments between its event times.
+ *
+ * <p>The cues of a subtitle can only change at its event times, so the cues displayed at any time
+ * in a segment are the same. The index finds the segment containing a time with a binary search,
+ * and returns the same unmodifiable list for every time in the segment.
+ *
+ * <p>The segment before the first event time and the segment after the last event time are
+ * included. This class is not thread safe.
+ */
+public final class CueSegmentIndex {
+
+  /** Computes the cues displayed at a given time. */
+  public interface CueResolver {
+
+    /**
+     * Returns the cues displayed at {@code timeUs}. Called at most once for each segment, with a
+     * time inside that segment.
+     *
+     * @param timeUs The time, in microseconds.
+     * @return The cues displayed at {@code timeUs}.
+     */
+    List<Cue> resolveCues(long timeUs);
+  }
+
+  private final long[] eventTimesUs;
+  private final @NullableType List<Cue>[] segmentCues;
+  private final CueResolver cueResolver;
+
+  /**
+   * Creates an instance that resolves the cues of each segment when they are first requested.
+   *
+   * @param eventTimesUs The event times, in microseconds, sorted in ascending order and without
+   *     duplicates.
+   * @param cueResolver The {@link CueResolver} that computes the cues of each segment.
+   */
+  @SuppressWarnings({"unchecked", "nullness:assignment.type.incompatible"})
+  public CueSegmentIndex(long[] eventTimesUs, CueResolver cueResolver) {
+    for (int i = 1; i < eventTimesUs.length; i++) {
+      checkArgument(eventTimesUs[i - 1] < eventTimesUs[i]);
+    }
+    this.eventTimesUs = eventTimesUs;
+    this.cueResolver = cueResolver;
+    segmentCues = new List[eventTimesUs.length + 1];
+  }
+
+  /**
+   * Creates an instance from the cues of each segment.
+   *
+   * @param eventTimesUs The event times, in microseconds, sorted in ascending order and without
+   *     duplicates.
+   * @param cues The cues displayed from each event time until the next one. Must have the same
+   *     number of elements as {@code eventTimesUs}. No cues are displayed before the first event
+   *     time.
+   */
+  public CueSegmentIndex(long[] eventTimesUs, List<? extends List<Cue>> cues) {
+    this(eventTimesUs, timeUs -> Collections.emptyList());
+    checkArgument(cues.size() == eventTimesUs.length);
+    segmentCues[0] = Collections.emptyList();
+    for (int i = 0; i < cues.size(); i++) {
+      segmentCues[i + 1] = Collections.unmodifiableList(new ArrayList<>(cues.get(i)));
+    }
+  }
+
+  /**
+   * Returns the cues displayed at {@code timeUs}.
+   *
+   * @param timeUs The time, in microseconds.
+   * @return An unmodifiable list of the cues displayed at {@code timeUs}.
+   */
+  public List<Cue> getCues(long timeUs) {
+    // Segment 0 is before the first event time, segment i + 1 starts at eventTimesUs[i].
+    int segmentIndex =
+        Util.binarySearchFloor(
+                eventTimesUs, timeUs, /* inclusive= */ true, /* stayInBounds= */ false)
+            + 1;
+    @NullableType List<Cue> cues = segmentCues[segmentIndex];
+    if (cues == null) {
+      List<Cue> resolvedCues = cueResolver.resolveCues(timeUs);
+      cues =
+          resolvedCues.isEmpty()
+              ? Collections.emptyList()
+              : Collections.unmodifiableList(new ArrayList<>(resolvedCues));
+      segmentCues[segmentIndex] = cues;
+    }
+    return cues;
+  }
+}
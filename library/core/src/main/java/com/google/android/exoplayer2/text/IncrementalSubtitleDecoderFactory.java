@@ -0,0 +1,80 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.text.ttml.TtmlDecoder;
+import com.google.android.exoplayer2.text.webvtt.WebvttDecoder;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.MimeTypes;
+
+/**
+ * A {@link SubtitleDecoderFactory} that creates WebVTT and TTML decoders that output the subtitle
+ * in chunks as it's decoded, so that the first cues of large sidecar files are displayed without
+ * waiting for the whole file to be decoded. Other formats are delegated to another factory.
+ *
+ * <p>The chunks of a subtitle are output in order of time, and the decoder only decodes the next
+ * chunk once the {@link TextRenderer} has released a previous one, which bounds the memory used by
+ * decoded cues. Chunks that end before the playback position, for example after a seek, are not
+ * output.
+ */
+public final class IncrementalSubtitleDecoderFactory implements SubtitleDecoderFactory {
+
+  /** The default minimum duration of each chunk, in microseconds. */
+  public static final long DEFAULT_CHUNK_DURATION_US = 60 * C.MICROS_PER_SECOND;
+
+  private final long chunkDurationUs;
+  private final SubtitleDecoderFactory fallbackFactory;
+
+  /** Creates an instance using {@link #DEFAULT_CHUNK_DURATION_US}. */
+  public IncrementalSubtitleDecoderFactory() {
+    this(DEFAULT_CHUNK_DURATION_US, SubtitleDecoderFactory.DEFAULT);
+  }
+
+  /**
+   * @param chunkDurationUs The minimum duration of each chunk, in microseconds.
+   * @param fallbackFactory The factory used for formats other than WebVTT and TTML.
+   */
+  public IncrementalSubtitleDecoderFactory(
+      long chunkDurationUs, SubtitleDecoderFactory fallbackFactory) {
+    Assertions.checkArgument(chunkDurationUs > 0);
+    this.chunkDurationUs = chunkDurationUs;
+    this.fallbackFactory = fallbackFactory;
+  }
+
+  @Override
+  public boolean supportsFormat(Format format) {
+    return isIncrementalFormat(format) || fallbackFactory.supportsFormat(format);
+  }
+
+  @Override
+  public SubtitleDecoder createDecoder(Format format) {
+    @Nullable String mimeType = format.sampleMimeType;
+    if (MimeTypes.TEXT_VTT.equals(mimeType)) {
+      return new WebvttDecoder(chunkDurationUs);
+    } else if (MimeTypes.APPLICATION_TTML.equals(mimeType)) {
+      return new TtmlDecoder(chunkDurationUs);
+    }
+    return fallbackFactory.createDecoder(format);
+  }
+
+  private static boolean isIncrementalFormat(Format format) {
+    return MimeTypes.TEXT_VTT.equals(format.sampleMimeType)
+        || MimeTypes.APPLICATION_TTML.equals(format.sampleMimeType);
+  }
+}
@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.text;
 
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
 import com.google.android.exoplayer2.decoder.SimpleDecoder;
 import com.google.android.exoplayer2.util.Assertions;
 import java.nio.ByteBuffer;
@@ -30,12 +31,20 @@ public abstract class SimpleSubtitleDecoder extends
 
   private final String name;
 
+  private volatile long positionUs;
+
+  // The output buffer of the current chunk. Only accessed on the decode thread.
+  @Nullable private SubtitleOutputBuffer chunkOutputBuffer;
+  private long chunkTimeUs;
+  private long chunkSubsampleOffsetUs;
+
   /** @param name The name of the decoder. */
   @SuppressWarnings("nullness:method.invocation.invalid")
   protected SimpleSubtitleDecoder(String name) {
     super(new SubtitleInputBuffer[2], new SubtitleOutputBuffer[2]);
     this.name = name;
     setInitialInputBufferSize(1024);
+    positionUs = C.TIME_UNSET;
   }
 
   @Override
@@ -45,7 +54,7 @@ public abstract class SimpleSubtitleDecoder extends
 
   @Override
   public void setPositionUs(long timeUs) {
-    // Do nothing
+    positionUs = timeUs;
   }
 
   @Override
@@ -68,18 +77,64 @@ public abstract class SimpleSubtitleDecoder extends
   @Nullable
   protected final SubtitleDecoderException decode(
       SubtitleInputBuffer inputBuffer, SubtitleOutputBuffer outputBuffer, boolean reset) {
+    chunkOutputBuffer = outputBuffer;
+    chunkTimeUs = inputBuffer.timeUs;
+    chunkSubsampleOffsetUs =
+        inputBuffer.subsampleOffsetUs == Format.OFFSET_SAMPLE_RELATIVE
+            ? inputBuffer.timeUs
+            : inputBuffer.subsampleOffsetUs;
     try {
       ByteBuffer inputData = Assertions.checkNotNull(inputBuffer.data);
       Subtitle subtitle = decode(inputData.array(), inputData.limit(), reset);
-      outputBuffer.setContent(inputBuffer.timeUs, subtitle, inputBuffer.subsampleOffsetUs);
-      // Clear BUFFER_FLAG_DECODE_ONLY (see [Internal: b/27893809]).
-      outputBuffer.clearFlag(C.BUFFER_FLAG_DECODE_ONLY);
+      @Nullable SubtitleOutputBuffer chunkOutputBuffer = this.chunkOutputBuffer;
+      if (chunkOutputBuffer != null) {
+        setChunkContent(chunkOutputBuffer, subtitle);
+      }
       return null;
     } catch (SubtitleDecoderException e) {
       return e;
+    } finally {
+      chunkOutputBuffer = null;
     }
   }
 
+  /**
+   * Outputs a chunk of the subtitle being decoded, so that it can be displayed before the rest of
+   * the data is decoded. May be called from {@link #decode(byte[], int, boolean)} by decoders that
+   * are able to split their output by time. Blocks until the next chunk can be decoded.
+   *
+   * <p>Each chunk is displayed from the end time of the previous one, or from the time of the input
+   * buffer for the first chunk, until the end time of the chunk. Cues that are displayed at the end
+   * time of a chunk must also be included in the next chunk. The {@link Subtitle} returned by
+   * {@link #decode(byte[], int, boolean)} is the last chunk.
+   *
+   * @param subtitle The chunk.
+   * @param endTimeUs The time at which the chunk stops being displayed, in microseconds, in the time
+   *     base of the subtitle.
+   * @return Whether decoding should continue. If false, the decoder has been flushed or released
+   *     and {@link #decode(byte[], int, boolean)} should return as soon as possible. Its result
+   *     will be discarded.
+   */
+  protected final boolean outputChunk(Subtitle subtitle, long endTimeUs) {
+    SubtitleOutputBuffer outputBuffer = Assertions.checkStateNotNull(chunkOutputBuffer);
+    long nextChunkTimeUs = endTimeUs + chunkSubsampleOffsetUs;
+    if (nextChunkTimeUs <= positionUs) {
+      // The chunk ends before the playback position (e.g. after a seek), so it's not displayed.
+      chunkTimeUs = nextChunkTimeUs;
+      return true;
+    }
+    setChunkContent(outputBuffer, subtitle);
+    chunkOutputBuffer = queueIntermediateOutputBuffer(outputBuffer);
+    chunkTimeUs = nextChunkTimeUs;
+    return chunkOutputBuffer != null;
+  }
+
+  private void setChunkContent(SubtitleOutputBuffer outputBuffer, Subtitle subtitle) {
+    outputBuffer.setContent(chunkTimeUs, subtitle, chunkSubsampleOffsetUs);
+    // Clear BUFFER_FLAG_DECODE_ONLY (see [Internal: b/27893809]).
+    outputBuffer.clearFlag(C.BUFFER_FLAG_DECODE_ONLY);
+  }
+
   /**
    * Decodes data into a {@link Subtitle}.
    *
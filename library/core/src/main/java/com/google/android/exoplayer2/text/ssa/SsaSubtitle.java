@@ -17,10 +17,11 @@ package com.google.android.exoplayer2.text.ssa;
 
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueSegmentIndex;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
-import java.util.Collections;
+import com.google.common.primitives.Longs;
 import java.util.List;
 
 /**
@@ -28,44 +29,38 @@ import java.util.List;
  */
 /* package */ final class SsaSubtitle implements Subtitle {
 
-  private final List<List<Cue>> cues;
-  private final List<Long> cueTimesUs;
+  private final long[] cueTimesUs;
+  private final CueSegmentIndex cueSegmentIndex;
 
   /**
    * @param cues The cues in the subtitle.
    * @param cueTimesUs The cue times, in microseconds.
    */
   public SsaSubtitle(List<List<Cue>> cues, List<Long> cueTimesUs) {
-    this.cues = cues;
-    this.cueTimesUs = cueTimesUs;
+    this.cueTimesUs = Longs.toArray(cueTimesUs);
+    cueSegmentIndex = new CueSegmentIndex(this.cueTimesUs, cues);
   }
 
   @Override
   public int getNextEventTimeIndex(long timeUs) {
     int index = Util.binarySearchCeil(cueTimesUs, timeUs, false, false);
-    return index < cueTimesUs.size() ? index : C.INDEX_UNSET;
+    return index < cueTimesUs.length ? index : C.INDEX_UNSET;
   }
 
   @Override
   public int getEventTimeCount() {
-    return cueTimesUs.size();
+    return cueTimesUs.length;
   }
 
   @Override
   public long getEventTime(int index) {
     Assertions.checkArgument(index >= 0);
-    Assertions.checkArgument(index < cueTimesUs.size());
-    return cueTimesUs.get(index);
+    Assertions.checkArgument(index < cueTimesUs.length);
+    return cueTimesUs[index];
   }
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    int index = Util.binarySearchFloor(cueTimesUs, timeUs, true, false);
-    if (index == -1) {
-      // timeUs is earlier than the start of the first cue.
-      return Collections.emptyList();
-    } else {
-      return cues.get(index);
-    }
+    return cueSegmentIndex.getCues(timeUs);
   }
 }
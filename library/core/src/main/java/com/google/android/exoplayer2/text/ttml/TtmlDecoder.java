@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.text.ttml;
 
 import android.text.Layout;
+import android.text.TextUtils;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
@@ -31,7 +32,9 @@ import com.google.android.exoplayer2.util.XmlPullParserUtil;
 import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.util.ArrayDeque;
+import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.List;
 import java.util.Map;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
@@ -94,10 +97,27 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
   private static final CellResolution DEFAULT_CELL_RESOLUTION =
       new CellResolution(/* columns= */ 32, /* rows= */ 15);
 
+  private final long chunkDurationUs;
   private final XmlPullParserFactory xmlParserFactory;
 
   public TtmlDecoder() {
+    this(/* chunkDurationUs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Creates an instance that can output the subtitle in chunks, so that the first cues of a large
+   * document can be displayed before the whole document is decoded. A chunk is output when a
+   * paragraph starts at least {@code chunkDurationUs} after the start of the current chunk.
+   * Paragraphs are assumed to be in order of start time, which is the case for documents produced
+   * by live captioning. A paragraph that starts before the current chunk is displayed from the
+   * start of the chunk.
+   *
+   * @param chunkDurationUs The minimum duration of each chunk, in microseconds, or {@link
+   *     C#TIME_UNSET} to output the subtitle once the whole document is decoded.
+   */
+  public TtmlDecoder(long chunkDurationUs) {
     super("TtmlDecoder");
+    this.chunkDurationUs = chunkDurationUs;
     try {
       xmlParserFactory = XmlPullParserFactory.newInstance();
       xmlParserFactory.setNamespaceAware(true);
@@ -114,6 +134,7 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
       Map<String, TtmlStyle> globalStyles = new HashMap<>();
       Map<String, TtmlRegion> regionMap = new HashMap<>();
       Map<String, String> imageMap = new HashMap<>();
+      Map<String, TtmlStyle> chainedStyles = new HashMap<>();
       regionMap.put(TtmlNode.ANONYMOUS_REGION_ID, new TtmlRegion(TtmlNode.ANONYMOUS_REGION_ID));
       ByteArrayInputStream inputStream = new ByteArrayInputStream(bytes, 0, length);
       xmlParser.setInput(inputStream, null);
@@ -124,6 +145,13 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
       FrameAndTickRate frameAndTickRate = DEFAULT_FRAME_AND_TICK_RATE;
       CellResolution cellResolution = DEFAULT_CELL_RESOLUTION;
       @Nullable TtsExtent ttsExtent = null;
+      // When outputting chunks, paragraphs aren't added to the tree but to the pending cue nodes,
+      // which hold the paragraphs of the current chunk.
+      boolean outputChunks = chunkDurationUs != C.TIME_UNSET;
+      @Nullable TtmlNode rootNode = null;
+      @Nullable TtmlNode currentCueNode = null;
+      List<TtmlNode> pendingCueNodes = new ArrayList<>();
+      long chunkStartTimeUs = C.TIME_UNSET;
       while (eventType != XmlPullParser.END_DOCUMENT) {
         @Nullable TtmlNode parent = nodeStack.peek();
         if (unsupportedNodeDepth == 0) {
@@ -141,9 +169,20 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
               parseHeader(xmlParser, globalStyles, cellResolution, ttsExtent, regionMap, imageMap);
             } else {
               try {
-                TtmlNode node = parseNode(xmlParser, parent, regionMap, frameAndTickRate);
+                TtmlNode node =
+                    parseNode(
+                        xmlParser,
+                        parent,
+                        regionMap,
+                        globalStyles,
+                        chainedStyles,
+                        frameAndTickRate);
                 nodeStack.push(node);
-                if (parent != null) {
+                if (parent == null) {
+                  rootNode = node;
+                } else if (outputChunks && currentCueNode == null && isCueNode(node)) {
+                  currentCueNode = node;
+                } else {
                   parent.addChild(node);
                 }
               } catch (SubtitleDecoderException e) {
@@ -153,14 +192,56 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
               }
             }
           } else if (eventType == XmlPullParser.TEXT) {
-            Assertions.checkNotNull(parent).addChild(TtmlNode.buildTextNode(xmlParser.getText()));
+            // Text outside paragraphs isn't displayed, so it's not kept when outputting chunks.
+            if (!outputChunks || currentCueNode != null) {
+              Assertions.checkNotNull(parent).addChild(TtmlNode.buildTextNode(xmlParser.getText()));
+            }
           } else if (eventType == XmlPullParser.END_TAG) {
             if (xmlParser.getName().equals(TtmlNode.TAG_TT)) {
               ttmlSubtitle =
-                  new TtmlSubtitle(
-                      Assertions.checkNotNull(nodeStack.peek()), globalStyles, regionMap, imageMap);
+                  outputChunks
+                      ? createChunkSubtitle(
+                          Assertions.checkNotNull(rootNode),
+                          pendingCueNodes,
+                          globalStyles,
+                          regionMap,
+                          imageMap)
+                      : new TtmlSubtitle(
+                          Assertions.checkNotNull(nodeStack.peek()),
+                          globalStyles,
+                          regionMap,
+                          imageMap);
+            }
+            TtmlNode node = nodeStack.pop();
+            if (node == currentCueNode) {
+              currentCueNode = null;
+              if (chunkStartTimeUs == C.TIME_UNSET) {
+                chunkStartTimeUs = node.startTimeUs;
+              } else if (node.startTimeUs != C.TIME_UNSET
+                  && node.startTimeUs >= chunkStartTimeUs + chunkDurationUs) {
+                long chunkEndTimeUs = node.startTimeUs;
+                TtmlSubtitle chunkSubtitle =
+                    createChunkSubtitle(
+                        Assertions.checkNotNull(rootNode),
+                        pendingCueNodes,
+                        globalStyles,
+                        regionMap,
+                        imageMap);
+                if (!outputChunk(chunkSubtitle, chunkEndTimeUs)) {
+                  return chunkSubtitle;
+                }
+                // Paragraphs that are still displayed at the end of the chunk are carried over to
+                // the next one.
+                for (int i = pendingCueNodes.size() - 1; i >= 0; i--) {
+                  long endTimeUs = pendingCueNodes.get(i).endTimeUs;
+                  if (endTimeUs != C.TIME_UNSET && endTimeUs <= chunkEndTimeUs) {
+                    pendingCueNodes.remove(i);
+                  }
+                }
+                chunkStartTimeUs = chunkEndTimeUs;
+              }
+              pendingCueNodes.add(node);
             }
-            nodeStack.pop();
           }
         } else {
           if (eventType == XmlPullParser.START_TAG) {
@@ -184,6 +265,59 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
     }
   }
 
+  /**
+   * Returns whether {@code node} holds content that is displayed, and is a unit of content when
+   * outputting chunks.
+   */
+  private static boolean isCueNode(TtmlNode node) {
+    return TtmlNode.TAG_P.equals(node.tag)
+        || (TtmlNode.TAG_DIV.equals(node.tag) && node.imageId != null);
+  }
+
+  /**
+   * Creates the {@link TtmlSubtitle} of a chunk. The cue nodes are added to copies of their
+   * ancestors, so that the tree of the chunk isn't modified while later chunks are decoded.
+   */
+  private static TtmlSubtitle createChunkSubtitle(
+      TtmlNode rootNode,
+      List<TtmlNode> cueNodes,
+      Map<String, TtmlStyle> globalStyles,
+      Map<String, TtmlRegion> regionMap,
+      Map<String, String> imageMap) {
+    Map<TtmlNode, TtmlNode> nodeCopies = new HashMap<>();
+    TtmlNode rootNodeCopy = copyWithoutChildren(rootNode, /* parent= */ null);
+    nodeCopies.put(rootNode, rootNodeCopy);
+    for (int i = 0; i < cueNodes.size(); i++) {
+      TtmlNode cueNode = cueNodes.get(i);
+      getNodeCopy(Assertions.checkNotNull(cueNode.parent), nodeCopies).addChild(cueNode);
+    }
+    return new TtmlSubtitle(rootNodeCopy, globalStyles, regionMap, imageMap);
+  }
+
+  private static TtmlNode getNodeCopy(TtmlNode node, Map<TtmlNode, TtmlNode> nodeCopies) {
+    @Nullable TtmlNode nodeCopy = nodeCopies.get(node);
+    if (nodeCopy == null) {
+      TtmlNode parentCopy = getNodeCopy(Assertions.checkNotNull(node.parent), nodeCopies);
+      nodeCopy = copyWithoutChildren(node, parentCopy);
+      parentCopy.addChild(nodeCopy);
+      nodeCopies.put(node, nodeCopy);
+    }
+    return nodeCopy;
+  }
+
+  private static TtmlNode copyWithoutChildren(TtmlNode node, @Nullable TtmlNode parent) {
+    return TtmlNode.buildNode(
+        node.tag,
+        node.startTimeUs,
+        node.endTimeUs,
+        node.style,
+        node.getStyleIds(),
+        node.resolvedStyle,
+        node.regionId,
+        node.imageId,
+        parent);
+  }
+
   private static FrameAndTickRate parseFrameAndTickRates(XmlPullParser xmlParser)
       throws SubtitleDecoderException {
     int frameRate = DEFAULT_FRAME_RATE;
@@ -625,6 +759,8 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
       XmlPullParser parser,
       @Nullable TtmlNode parent,
       Map<String, TtmlRegion> regionMap,
+      Map<String, TtmlStyle> globalStyles,
+      Map<String, TtmlStyle> chainedStyles,
       FrameAndTickRate frameAndTickRate)
       throws SubtitleDecoderException {
     long duration = C.TIME_UNSET;
@@ -693,7 +829,46 @@ public final class TtmlDecoder extends SimpleSubtitleDecoder {
     }
 
     return TtmlNode.buildNode(
-        parser.getName(), startTime, endTime, style, styleIds, regionId, imageId, parent);
+        parser.getName(),
+        startTime,
+        endTime,
+        style,
+        styleIds,
+        resolveStyle(style, styleIds, globalStyles, chainedStyles),
+        regionId,
+        imageId,
+        parent);
+  }
+
+  /**
+   * Resolves the style of a node once, when it's parsed, so that it's not resolved each time cues
+   * are output. Chains of referential styles are resolved once per document, and shared by the
+   * nodes that reference them.
+   *
+   * @param style The inline style of the node, if any. Referential styles are chained into it.
+   * @param styleIds The IDs of the referential styles of the node, if any.
+   * @param globalStyles The global styles, by ID.
+   * @param chainedStyles The resolved chains of referential styles, by chain of IDs.
+   * @return The resolved style, or null if the node has no style.
+   */
+  @Nullable
+  private static TtmlStyle resolveStyle(
+      @Nullable TtmlStyle style,
+      @Nullable String[] styleIds,
+      Map<String, TtmlStyle> globalStyles,
+      Map<String, TtmlStyle> chainedStyles) {
+    if (styleIds == null || styleIds.length < 2) {
+      return TtmlRenderUtil.resolveStyle(style, styleIds, globalStyles);
+    }
+    String styleIdChain = TextUtils.join(" ", styleIds);
+    @Nullable TtmlStyle chainedStyle = chainedStyles.get(styleIdChain);
+    if (chainedStyle == null) {
+      chainedStyle =
+          Assertions.checkNotNull(
+              TtmlRenderUtil.resolveStyle(/* style= */ null, styleIds, globalStyles));
+      chainedStyles.put(styleIdChain, chainedStyle);
+    }
+    return style == null ? chainedStyle : style.chain(chainedStyle);
   }
 
   private static boolean isSupportedTag(String tag) {
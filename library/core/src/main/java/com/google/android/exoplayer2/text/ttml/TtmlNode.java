@@ -24,12 +24,13 @@ import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.LongArray;
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
 import java.util.TreeMap;
-import java.util.TreeSet;
 import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
 
 /**
@@ -113,6 +114,8 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   public final long endTimeUs;
   @Nullable public final TtmlStyle style;
   @Nullable private final String[] styleIds;
+  /** The style of the node, with its referential styles resolved, or null if it has no style. */
+  @Nullable public final TtmlStyle resolvedStyle;
   public final String regionId;
   @Nullable public final String imageId;
   @Nullable public final TtmlNode parent;
@@ -130,6 +133,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         /* endTimeUs= */ C.TIME_UNSET,
         /* style= */ null,
         /* styleIds= */ null,
+        /* resolvedStyle= */ null,
         ANONYMOUS_REGION_ID,
         /* imageId= */ null,
         /* parent= */ null);
@@ -141,11 +145,21 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       long endTimeUs,
       @Nullable TtmlStyle style,
       @Nullable String[] styleIds,
+      @Nullable TtmlStyle resolvedStyle,
       String regionId,
       @Nullable String imageId,
       @Nullable TtmlNode parent) {
     return new TtmlNode(
-        tag, /* text= */ null, startTimeUs, endTimeUs, style, styleIds, regionId, imageId, parent);
+        tag,
+        /* text= */ null,
+        startTimeUs,
+        endTimeUs,
+        style,
+        styleIds,
+        resolvedStyle,
+        regionId,
+        imageId,
+        parent);
   }
 
   private TtmlNode(
@@ -155,6 +169,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       long endTimeUs,
       @Nullable TtmlStyle style,
       @Nullable String[] styleIds,
+      @Nullable TtmlStyle resolvedStyle,
       String regionId,
       @Nullable String imageId,
       @Nullable TtmlNode parent) {
@@ -163,6 +178,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     this.imageId = imageId;
     this.style = style;
     this.styleIds = styleIds;
+    this.resolvedStyle = resolvedStyle;
     this.isTextNode = text != null;
     this.startTimeUs = startTimeUs;
     this.endTimeUs = endTimeUs;
@@ -198,17 +214,23 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   }
 
   public long[] getEventTimesUs() {
-    TreeSet<Long> eventTimeSet = new TreeSet<>();
-    getEventTimes(eventTimeSet, false);
-    long[] eventTimes = new long[eventTimeSet.size()];
-    int i = 0;
-    for (long eventTimeUs : eventTimeSet) {
-      eventTimes[i++] = eventTimeUs;
+    LongArray eventTimes = new LongArray();
+    getEventTimes(eventTimes, false);
+    long[] sortedEventTimes = eventTimes.toArray();
+    Arrays.sort(sortedEventTimes);
+    // Remove duplicates.
+    int eventTimeCount = 0;
+    for (long eventTimeUs : sortedEventTimes) {
+      if (eventTimeCount == 0 || sortedEventTimes[eventTimeCount - 1] != eventTimeUs) {
+        sortedEventTimes[eventTimeCount++] = eventTimeUs;
+      }
     }
-    return eventTimes;
+    return eventTimeCount == sortedEventTimes.length
+        ? sortedEventTimes
+        : Arrays.copyOf(sortedEventTimes, eventTimeCount);
   }
 
-  private void getEventTimes(TreeSet<Long> out, boolean descendsPNode) {
+  private void getEventTimes(LongArray out, boolean descendsPNode) {
     boolean isPNode = TAG_P.equals(tag);
     boolean isDivNode = TAG_DIV.equals(tag);
     if (descendsPNode || isPNode || (isDivNode && imageId != null)) {
@@ -233,17 +255,14 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
   }
 
   public List<Cue> getCues(
-      long timeUs,
-      Map<String, TtmlStyle> globalStyles,
-      Map<String, TtmlRegion> regionMap,
-      Map<String, String> imageMap) {
+      long timeUs, Map<String, TtmlRegion> regionMap, Map<String, String> imageMap) {
 
     List<Pair<String, String>> regionImageOutputs = new ArrayList<>();
     traverseForImage(timeUs, regionId, regionImageOutputs);
 
     TreeMap<String, Cue.Builder> regionTextOutputs = new TreeMap<>();
     traverseForText(timeUs, false, regionId, regionTextOutputs);
-    traverseForStyle(timeUs, globalStyles, regionTextOutputs);
+    traverseForStyle(timeUs, regionTextOutputs);
 
     List<Cue> cues = new ArrayList<>();
 
@@ -353,8 +372,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
         Assertions.checkNotNull(regionOutputs.get(resolvedRegionId).getText());
   }
 
-  private void traverseForStyle(
-      long timeUs, Map<String, TtmlStyle> globalStyles, Map<String, Cue.Builder> regionOutputs) {
+  private void traverseForStyle(long timeUs, Map<String, Cue.Builder> regionOutputs) {
     if (!isActive(timeUs)) {
       return;
     }
@@ -364,24 +382,22 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       int end = entry.getValue();
       if (start != end) {
         Cue.Builder regionOutput = Assertions.checkNotNull(regionOutputs.get(regionId));
-        applyStyleToOutput(globalStyles, regionOutput, start, end);
+        applyStyleToOutput(regionOutput, start, end);
       }
     }
     for (int i = 0; i < getChildCount(); ++i) {
-      getChild(i).traverseForStyle(timeUs, globalStyles, regionOutputs);
+      getChild(i).traverseForStyle(timeUs, regionOutputs);
     }
   }
 
-  private void applyStyleToOutput(
-      Map<String, TtmlStyle> globalStyles, Cue.Builder regionOutput, int start, int end) {
-    @Nullable TtmlStyle resolvedStyle = TtmlRenderUtil.resolveStyle(style, styleIds, globalStyles);
+  private void applyStyleToOutput(Cue.Builder regionOutput, int start, int end) {
     @Nullable SpannableStringBuilder text = (SpannableStringBuilder) regionOutput.getText();
     if (text == null) {
       text = new SpannableStringBuilder();
       regionOutput.setText(text);
     }
     if (resolvedStyle != null) {
-      TtmlRenderUtil.applyStylesToSpan(text, start, end, resolvedStyle, parent, globalStyles);
+      TtmlRenderUtil.applyStylesToSpan(text, start, end, resolvedStyle, parent);
       regionOutput.setTextAlignment(resolvedStyle.getTextAlign());
     }
   }
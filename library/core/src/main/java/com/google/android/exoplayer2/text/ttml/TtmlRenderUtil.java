@@ -82,8 +82,7 @@ import java.util.Map;
       int start,
       int end,
       TtmlStyle style,
-      @Nullable TtmlNode parent,
-      Map<String, TtmlStyle> globalStyles) {
+      @Nullable TtmlNode parent) {
 
     if (style.getStyle() != TtmlStyle.UNSPECIFIED) {
       builder.setSpan(new StyleSpan(style.getStyle()), start, end,
@@ -122,12 +121,12 @@ import java.util.Map;
     switch (style.getRubyType()) {
       case TtmlStyle.RUBY_TYPE_BASE:
         // look for the sibling RUBY_TEXT and add it as span between start & end.
-        @Nullable TtmlNode containerNode = findRubyContainerNode(parent, globalStyles);
+        @Nullable TtmlNode containerNode = findRubyContainerNode(parent);
         if (containerNode == null) {
           // No matching container node
           break;
         }
-        @Nullable TtmlNode textNode = findRubyTextNode(containerNode, globalStyles);
+        @Nullable TtmlNode textNode = findRubyTextNode(containerNode);
         if (textNode == null) {
           // no matching text node
           break;
@@ -205,14 +204,12 @@ import java.util.Map;
   }
 
   @Nullable
-  private static TtmlNode findRubyTextNode(
-      TtmlNode rubyContainerNode, Map<String, TtmlStyle> globalStyles) {
+  private static TtmlNode findRubyTextNode(TtmlNode rubyContainerNode) {
     Deque<TtmlNode> childNodesStack = new ArrayDeque<>();
     childNodesStack.push(rubyContainerNode);
     while (!childNodesStack.isEmpty()) {
       TtmlNode childNode = childNodesStack.pop();
-      @Nullable
-      TtmlStyle style = resolveStyle(childNode.style, childNode.getStyleIds(), globalStyles);
+      @Nullable TtmlStyle style = childNode.resolvedStyle;
       if (style != null && style.getRubyType() == TtmlStyle.RUBY_TYPE_TEXT) {
         return childNode;
       }
@@ -225,10 +222,9 @@ import java.util.Map;
   }
 
   @Nullable
-  private static TtmlNode findRubyContainerNode(
-      @Nullable TtmlNode node, Map<String, TtmlStyle> globalStyles) {
+  private static TtmlNode findRubyContainerNode(@Nullable TtmlNode node) {
     while (node != null) {
-      @Nullable TtmlStyle style = resolveStyle(node.style, node.getStyleIds(), globalStyles);
+      @Nullable TtmlStyle style = node.resolvedStyle;
       if (style != null && style.getRubyType() == TtmlStyle.RUBY_TYPE_CONTAINER) {
         return node;
       }
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.text.ttml;
 import androidx.annotation.VisibleForTesting;
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueSegmentIndex;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Util;
 import java.util.Collections;
@@ -34,6 +35,7 @@ import java.util.Map;
   private final Map<String, TtmlStyle> globalStyles;
   private final Map<String, TtmlRegion> regionMap;
   private final Map<String, String> imageMap;
+  private final CueSegmentIndex cueSegmentIndex;
 
   public TtmlSubtitle(
       TtmlNode root,
@@ -46,6 +48,10 @@ import java.util.Map;
     this.globalStyles =
         globalStyles != null ? Collections.unmodifiableMap(globalStyles) : Collections.emptyMap();
     this.eventTimesUs = root.getEventTimesUs();
+    // Building the cues of a segment walks the whole tree, so it's only done once per segment.
+    cueSegmentIndex =
+        new CueSegmentIndex(
+            eventTimesUs, timeUs -> root.getCues(timeUs, regionMap, imageMap));
   }
 
   @Override
@@ -71,7 +77,7 @@ import java.util.Map;
 
   @Override
   public List<Cue> getCues(long timeUs) {
-    return root.getCues(timeUs, globalStyles, regionMap, imageMap);
+    return cueSegmentIndex.getCues(timeUs);
   }
 
   @VisibleForTesting
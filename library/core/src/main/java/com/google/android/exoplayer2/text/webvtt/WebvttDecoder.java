@@ -17,6 +17,7 @@ package com.google.android.exoplayer2.text.webvtt;
 
 import android.text.TextUtils;
 import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.ParserException;
 import com.google.android.exoplayer2.text.SimpleSubtitleDecoder;
 import com.google.android.exoplayer2.text.Subtitle;
@@ -41,11 +42,26 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
   private static final String COMMENT_START = "NOTE";
   private static final String STYLE_START = "STYLE";
 
+  private final long chunkDurationUs;
   private final ParsableByteArray parsableWebvttData;
   private final CssParser cssParser;
 
   public WebvttDecoder() {
+    this(/* chunkDurationUs= */ C.TIME_UNSET);
+  }
+
+  /**
+   * Creates an instance that can output the subtitle in chunks, so that the first cues of a large
+   * file can be displayed before the whole file is decoded. A chunk is output when a cue starts at
+   * least {@code chunkDurationUs} after the start of the current chunk. Cues are assumed to be in
+   * order of start time, as required by the WebVTT specification.
+   *
+   * @param chunkDurationUs The minimum duration of each chunk, in microseconds, or {@link
+   *     C#TIME_UNSET} to output the subtitle once the whole file is decoded.
+   */
+  public WebvttDecoder(long chunkDurationUs) {
     super("WebvttDecoder");
+    this.chunkDurationUs = chunkDurationUs;
     parsableWebvttData = new ParsableByteArray();
     cssParser = new CssParser();
   }
@@ -66,11 +82,13 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
 
     int event;
     List<WebvttCueInfo> cueInfos = new ArrayList<>();
+    boolean hasCues = false;
+    long chunkStartTimeUs = C.TIME_UNSET;
     while ((event = getNextEvent(parsableWebvttData)) != EVENT_END_OF_FILE) {
       if (event == EVENT_COMMENT) {
         skipComment(parsableWebvttData);
       } else if (event == EVENT_STYLE_BLOCK) {
-        if (!cueInfos.isEmpty()) {
+        if (hasCues) {
           throw new SubtitleDecoderException("A style block was found after the first cue.");
         }
         parsableWebvttData.readLine(); // Consume the "STYLE" header.
@@ -78,9 +96,27 @@ public final class WebvttDecoder extends SimpleSubtitleDecoder {
       } else if (event == EVENT_CUE) {
         @Nullable
         WebvttCueInfo cueInfo = WebvttCueParser.parseCue(parsableWebvttData, definedStyles);
-        if (cueInfo != null) {
-          cueInfos.add(cueInfo);
+        if (cueInfo == null) {
+          continue;
+        }
+        if (chunkDurationUs != C.TIME_UNSET && !hasCues) {
+          chunkStartTimeUs = cueInfo.startTimeUs;
+        } else if (chunkDurationUs != C.TIME_UNSET
+            && cueInfo.startTimeUs >= chunkStartTimeUs + chunkDurationUs) {
+          long chunkEndTimeUs = cueInfo.startTimeUs;
+          if (!outputChunk(new WebvttSubtitle(cueInfos), chunkEndTimeUs)) {
+            break;
+          }
+          // Cues that are still displayed at the end of the chunk are carried over to the next one.
+          for (int i = cueInfos.size() - 1; i >= 0; i--) {
+            if (cueInfos.get(i).endTimeUs <= chunkEndTimeUs) {
+              cueInfos.remove(i);
+            }
+          }
+          chunkStartTimeUs = chunkEndTimeUs;
         }
+        hasCues = true;
+        cueInfos.add(cueInfo);
       }
     }
     return new WebvttSubtitle(cueInfos);
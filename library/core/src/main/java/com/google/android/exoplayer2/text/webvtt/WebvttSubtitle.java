@@ -15,8 +15,11 @@
  */
 package com.google.android.exoplayer2.text.webvtt;
 
+import static java.lang.Math.max;
+
 import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.CueSegmentIndex;
 import com.google.android.exoplayer2.text.Subtitle;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -31,21 +34,58 @@ import java.util.List;
 /* package */ final class WebvttSubtitle implements Subtitle {
 
   private final List<WebvttCueInfo> cueInfos;
-  private final long[] cueTimesUs;
   private final long[] sortedCueTimesUs;
+  private final int[] cueIndicesByStartTime;
+  private final long[] startTimesUsByStartTime;
+  /**
+   * A max segment tree over the end times of the cues ordered by start time. The leaves start at
+   * index {@code maxEndTimesUsTree.length / 2}, and each inner node holds the latest end time of
+   * its subtree.
+   */
+  private final long[] maxEndTimesUsTree;
+  private final CueSegmentIndex cueSegmentIndex;
 
   /** Constructs a new WebvttSubtitle from a list of {@link WebvttCueInfo}s. */
   public WebvttSubtitle(List<WebvttCueInfo> cueInfos) {
     this.cueInfos = Collections.unmodifiableList(new ArrayList<>(cueInfos));
-    cueTimesUs = new long[2 * cueInfos.size()];
-    for (int cueIndex = 0; cueIndex < cueInfos.size(); cueIndex++) {
+    int cueCount = cueInfos.size();
+    sortedCueTimesUs = new long[2 * cueCount];
+    for (int cueIndex = 0; cueIndex < cueCount; cueIndex++) {
       WebvttCueInfo cueInfo = cueInfos.get(cueIndex);
       int arrayIndex = cueIndex * 2;
-      cueTimesUs[arrayIndex] = cueInfo.startTimeUs;
-      cueTimesUs[arrayIndex + 1] = cueInfo.endTimeUs;
+      sortedCueTimesUs[arrayIndex] = cueInfo.startTimeUs;
+      sortedCueTimesUs[arrayIndex + 1] = cueInfo.endTimeUs;
     }
-    sortedCueTimesUs = Arrays.copyOf(cueTimesUs, cueTimesUs.length);
     Arrays.sort(sortedCueTimesUs);
+
+    // Index the cues by start time, with a tree of their end times so that a lookup only visits the
+    // subtrees that contain active cues.
+    List<Integer> cueIndices = new ArrayList<>(cueCount);
+    for (int cueIndex = 0; cueIndex < cueCount; cueIndex++) {
+      cueIndices.add(cueIndex);
+    }
+    Collections.sort(
+        cueIndices,
+        (i1, i2) -> Long.compare(cueInfos.get(i1).startTimeUs, cueInfos.get(i2).startTimeUs));
+    cueIndicesByStartTime = new int[cueCount];
+    startTimesUsByStartTime = new long[cueCount];
+    int leafCount = 1;
+    while (leafCount < cueCount) {
+      leafCount *= 2;
+    }
+    maxEndTimesUsTree = new long[2 * leafCount];
+    Arrays.fill(maxEndTimesUsTree, Long.MIN_VALUE);
+    for (int i = 0; i < cueCount; i++) {
+      WebvttCueInfo cueInfo = cueInfos.get(cueIndices.get(i));
+      cueIndicesByStartTime[i] = cueIndices.get(i);
+      startTimesUsByStartTime[i] = cueInfo.startTimeUs;
+      maxEndTimesUsTree[leafCount + i] = cueInfo.endTimeUs;
+    }
+    for (int node = leafCount - 1; node > 0; node--) {
+      maxEndTimesUsTree[node] = max(maxEndTimesUsTree[2 * node], maxEndTimesUsTree[2 * node + 1]);
+    }
+
+    cueSegmentIndex = new CueSegmentIndex(getDistinctTimes(sortedCueTimesUs), this::resolveCues);
   }
 
   @Override
@@ -68,16 +108,35 @@ import java.util.List;
 
   @Override
   public List<Cue> getCues(long timeUs) {
+    return cueSegmentIndex.getCues(timeUs);
+  }
+
+  private List<Cue> resolveCues(long timeUs) {
+    // Find the cues that start at or before timeUs and end after it.
+    List<Integer> activeCueIndices = new ArrayList<>();
+    int lastStartedIndex =
+        Util.binarySearchCeil(
+                startTimesUsByStartTime, timeUs, /* inclusive= */ false, /* stayInBounds= */ false)
+            - 1;
+    if (lastStartedIndex >= 0) {
+      addActiveCueIndices(
+          /* node= */ 1,
+          /* nodeFirstIndex= */ 0,
+          /* nodeLastIndex= */ maxEndTimesUsTree.length / 2 - 1,
+          lastStartedIndex,
+          timeUs,
+          activeCueIndices);
+    }
+    Collections.sort(activeCueIndices);
+
     List<Cue> currentCues = new ArrayList<>();
     List<WebvttCueInfo> cuesWithUnsetLine = new ArrayList<>();
-    for (int i = 0; i < cueInfos.size(); i++) {
-      if ((cueTimesUs[i * 2] <= timeUs) && (timeUs < cueTimesUs[i * 2 + 1])) {
-        WebvttCueInfo cueInfo = cueInfos.get(i);
-        if (cueInfo.cue.line == Cue.DIMEN_UNSET) {
-          cuesWithUnsetLine.add(cueInfo);
-        } else {
-          currentCues.add(cueInfo.cue);
-        }
+    for (int i = 0; i < activeCueIndices.size(); i++) {
+      WebvttCueInfo cueInfo = cueInfos.get(activeCueIndices.get(i));
+      if (cueInfo.cue.line == Cue.DIMEN_UNSET) {
+        cuesWithUnsetLine.add(cueInfo);
+      } else {
+        currentCues.add(cueInfo.cue);
       }
     }
     // Steps 4 - 10 of https://www.w3.org/TR/webvtt1/#cue-computed-line
@@ -89,4 +148,42 @@ import java.util.List;
     }
     return currentCues;
   }
+
+  /**
+   * Adds the indices of the cues in the subtree of {@code node} that start no later than the cue
+   * at {@code lastStartedIndex} (in start time order) and end after {@code timeUs}. Subtrees whose
+   * cues all end at or before {@code timeUs} are skipped, so this takes O((k + 1) log n) time for k
+   * active cues.
+   */
+  private void addActiveCueIndices(
+      int node,
+      int nodeFirstIndex,
+      int nodeLastIndex,
+      int lastStartedIndex,
+      long timeUs,
+      List<Integer> activeCueIndices) {
+    if (nodeFirstIndex > lastStartedIndex || maxEndTimesUsTree[node] <= timeUs) {
+      return;
+    }
+    if (nodeFirstIndex == nodeLastIndex) {
+      activeCueIndices.add(cueIndicesByStartTime[nodeFirstIndex]);
+      return;
+    }
+    int middleIndex = (nodeFirstIndex + nodeLastIndex) / 2;
+    addActiveCueIndices(
+        2 * node, nodeFirstIndex, middleIndex, lastStartedIndex, timeUs, activeCueIndices);
+    addActiveCueIndices(
+        2 * node + 1, middleIndex + 1, nodeLastIndex, lastStartedIndex, timeUs, activeCueIndices);
+  }
+
+  private static long[] getDistinctTimes(long[] sortedTimesUs) {
+    int distinctCount = 0;
+    long[] distinctTimesUs = new long[sortedTimesUs.length];
+    for (int i = 0; i < sortedTimesUs.length; i++) {
+      if (i == 0 || sortedTimesUs[i] != sortedTimesUs[i - 1]) {
+        distinctTimesUs[distinctCount++] = sortedTimesUs[i];
+      }
+    }
+    return Arrays.copyOf(distinctTimesUs, distinctCount);
+  }
 }
@@ -0,0 +1,443 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.ConditionVariable;
+import java.io.InterruptedIOException;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * An {@link HttpDataSource} that coalesces identical requests that are in flight at the same time.
+ *
+ * <p>If a request is opened whilst a request for the same URI, range and headers is being loaded
+ * by another {@link CoalescingHttpDataSource} created by the same {@link Factory}, it waits for
+ * that request to complete and reads the response from memory rather than making a request of its
+ * own. This avoids fetching the same byte ranges, such as initialization segments, more than once
+ * when they're requested concurrently, for example by playback and a download.
+ *
+ * <p>Only {@code GET} requests with a {@link DataSpec#length} no larger than {@link
+ * Factory#getMaxCoalescedResponseBytes()} are coalesced. The first request for a resource reads
+ * the whole response when it's opened, so that it can be shared. Other requests, including
+ * requests of unknown length such as progressive and live streams, are passed to the upstream
+ * {@link HttpDataSource} unchanged, so that their data is returned as soon as it arrives.
+ * Responses aren't kept once the request that loaded them has completed.
+ */
+public final class CoalescingHttpDataSource implements HttpDataSource {
+
+  /** {@link HttpDataSource.Factory} for {@link CoalescingHttpDataSource} instances. */
+  public static final class Factory implements HttpDataSource.Factory {
+
+    /** The default maximum size of a response that can be coalesced, in bytes. */
+    public static final int DEFAULT_MAX_COALESCED_RESPONSE_BYTES = 512 * 1024;
+
+    private final HttpDataSource.Factory upstreamFactory;
+    private final int maxCoalescedResponseBytes;
+    private final Map<RequestKey, InFlightRequest> inFlightRequests;
+    private final AtomicLong coalescedRequestCount;
+    private final AtomicLong coalescedBytes;
+
+    /**
+     * Creates an instance that coalesces responses of up to {@link
+     * #DEFAULT_MAX_COALESCED_RESPONSE_BYTES}.
+     *
+     * @param upstreamFactory The {@link HttpDataSource.Factory} that creates the {@link
+     *     HttpDataSource HttpDataSources} that make the requests.
+     */
+    public Factory(HttpDataSource.Factory upstreamFactory) {
+      this(upstreamFactory, DEFAULT_MAX_COALESCED_RESPONSE_BYTES);
+    }
+
+    /**
+     * @param upstreamFactory The {@link HttpDataSource.Factory} that creates the {@link
+     *     HttpDataSource HttpDataSources} that make the requests.
+     * @param maxCoalescedResponseBytes The maximum size of a response that can be coalesced, in
+     *     bytes.
+     */
+    public Factory(HttpDataSource.Factory upstreamFactory, int maxCoalescedResponseBytes) {
+      checkArgument(maxCoalescedResponseBytes > 0);
+      this.upstreamFactory = upstreamFactory;
+      this.maxCoalescedResponseBytes = maxCoalescedResponseBytes;
+      inFlightRequests = new HashMap<>();
+      coalescedRequestCount = new AtomicLong();
+      coalescedBytes = new AtomicLong();
+    }
+
+    /** Returns the maximum size of a response that can be coalesced, in bytes. */
+    public int getMaxCoalescedResponseBytes() {
+      return maxCoalescedResponseBytes;
+    }
+
+    /**
+     * Returns the number of requests that have been served from the response of another request
+     * rather than being made.
+     */
+    public long getCoalescedRequestCount() {
+      return coalescedRequestCount.get();
+    }
+
+    /**
+     * Returns the number of bytes that have been served from the response of another request
+     * rather than being fetched.
+     */
+    public long getCoalescedBytes() {
+      return coalescedBytes.get();
+    }
+
+    @Override
+    public CoalescingHttpDataSource createDataSource() {
+      return new CoalescingHttpDataSource(upstreamFactory.createDataSource(), this);
+    }
+
+    @Override
+    public RequestProperties getDefaultRequestProperties() {
+      return upstreamFactory.getDefaultRequestProperties();
+    }
+
+    /** @deprecated Use {@link #getDefaultRequestProperties} instead. */
+    @SuppressWarnings("deprecation")
+    @Deprecated
+    @Override
+    public void setDefaultRequestProperty(String name, String value) {
+      upstreamFactory.setDefaultRequestProperty(name, value);
+    }
+
+    /** @deprecated Use {@link #getDefaultRequestProperties} instead. */
+    @SuppressWarnings("deprecation")
+    @Deprecated
+    @Override
+    public void clearDefaultRequestProperty(String name) {
+      upstreamFactory.clearDefaultRequestProperty(name);
+    }
+
+    /** @deprecated Use {@link #getDefaultRequestProperties} instead. */
+    @SuppressWarnings("deprecation")
+    @Deprecated
+    @Override
+    public void clearAllDefaultRequestProperties() {
+      upstreamFactory.clearAllDefaultRequestProperties();
+    }
+
+    /**
+     * Returns the in flight request for the given key, or registers a new one and returns null if
+     * there is none.
+     */
+    @Nullable
+    private InFlightRequest getOrRegisterInFlightRequest(RequestKey key, InFlightRequest request) {
+      synchronized (inFlightRequests) {
+        @Nullable InFlightRequest inFlightRequest = inFlightRequests.get(key);
+        if (inFlightRequest == null) {
+          inFlightRequests.put(key, request);
+        }
+        return inFlightRequest;
+      }
+    }
+
+    private void unregisterInFlightRequest(RequestKey key, InFlightRequest request) {
+      synchronized (inFlightRequests) {
+        if (inFlightRequests.get(key) == request) {
+          inFlightRequests.remove(key);
+        }
+      }
+    }
+
+    private void onRequestCoalesced(int responseBytes) {
+      coalescedRequestCount.incrementAndGet();
+      coalescedBytes.addAndGet(responseBytes);
+    }
+  }
+
+  private static final int INITIAL_BUFFER_SIZE = 16 * 1024;
+
+  private final HttpDataSource upstream;
+  private final Factory factory;
+  private final RequestProperties requestProperties;
+
+  private boolean upstreamOpened;
+  private boolean upstreamEnded;
+  @Nullable private Response sharedResponse;
+  @Nullable private byte[] bufferedData;
+  private int bufferedLength;
+  private int readPosition;
+
+  private CoalescingHttpDataSource(HttpDataSource upstream, Factory factory) {
+    this.upstream = upstream;
+    this.factory = factory;
+    requestProperties = new RequestProperties();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws HttpDataSourceException {
+    if (!isCoalescable(dataSpec)) {
+      return openUpstream(dataSpec);
+    }
+    RequestKey key = new RequestKey(dataSpec, requestProperties.getSnapshot());
+    InFlightRequest request = new InFlightRequest();
+    @Nullable
+    InFlightRequest inFlightRequest = factory.getOrRegisterInFlightRequest(key, request);
+    if (inFlightRequest == null) {
+      return openAndShareResponse(dataSpec, key, request);
+    }
+
+    @Nullable Response response;
+    try {
+      response = inFlightRequest.awaitResponse();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new HttpDataSourceException(
+          new InterruptedIOException(), dataSpec, HttpDataSourceException.TYPE_OPEN);
+    }
+    if (response == null) {
+      // The other request failed or its response was too large to share.
+      return openUpstream(dataSpec);
+    }
+    factory.onRequestCoalesced(response.data.length);
+    sharedResponse = response;
+    bufferedData = response.data;
+    bufferedLength = response.data.length;
+    return bufferedLength;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws HttpDataSourceException {
+    if (readLength == 0) {
+      return 0;
+    }
+    if (bufferedData != null && readPosition < bufferedLength) {
+      int bytesToRead = min(readLength, bufferedLength - readPosition);
+      System.arraycopy(bufferedData, readPosition, buffer, offset, bytesToRead);
+      readPosition += bytesToRead;
+      return bytesToRead;
+    }
+    if (!upstreamOpened || upstreamEnded) {
+      return C.RESULT_END_OF_INPUT;
+    }
+    return upstream.read(buffer, offset, readLength);
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return sharedResponse != null ? sharedResponse.uri : upstream.getUri();
+  }
+
+  @Override
+  public int getResponseCode() {
+    return sharedResponse != null ? sharedResponse.responseCode : upstream.getResponseCode();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return sharedResponse != null ? sharedResponse.responseHeaders : upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws HttpDataSourceException {
+    sharedResponse = null;
+    bufferedData = null;
+    bufferedLength = 0;
+    readPosition = 0;
+    upstreamEnded = false;
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  @Override
+  public void setRequestProperty(String name, String value) {
+    requestProperties.set(name, value);
+    upstream.setRequestProperty(name, value);
+  }
+
+  @Override
+  public void clearRequestProperty(String name) {
+    requestProperties.remove(name);
+    upstream.clearRequestProperty(name);
+  }
+
+  @Override
+  public void clearAllRequestProperties() {
+    requestProperties.clear();
+    upstream.clearAllRequestProperties();
+  }
+
+  private long openUpstream(DataSpec dataSpec) throws HttpDataSourceException {
+    // Set before opening, so that the upstream is closed by close() if opening fails.
+    upstreamOpened = true;
+    return upstream.open(dataSpec);
+  }
+
+  /**
+   * Opens the upstream and reads the response into memory, so that it can be shared with other
+   * requests for the same resource. If the response turns out to be too large, the part that has
+   * been read is returned first and the rest is read from the upstream.
+   */
+  private long openAndShareResponse(DataSpec dataSpec, RequestKey key, InFlightRequest request)
+      throws HttpDataSourceException {
+    @Nullable Response response = null;
+    try {
+      long length = openUpstream(dataSpec);
+      int maxResponseBytes = factory.maxCoalescedResponseBytes;
+      if (length != C.LENGTH_UNSET && length > maxResponseBytes) {
+        return length;
+      }
+      int initialBufferSize =
+          length != C.LENGTH_UNSET ? (int) length : min(INITIAL_BUFFER_SIZE, maxResponseBytes);
+      byte[] data = new byte[initialBufferSize];
+      int dataLength = 0;
+      while (true) {
+        if (dataLength == data.length) {
+          if (length != C.LENGTH_UNSET) {
+            upstreamEnded = true;
+            break;
+          } else if (dataLength == maxResponseBytes) {
+            break;
+          }
+          data = Arrays.copyOf(data, min(data.length * 2, maxResponseBytes));
+        }
+        int bytesRead = upstream.read(data, dataLength, data.length - dataLength);
+        if (bytesRead == C.RESULT_END_OF_INPUT) {
+          upstreamEnded = true;
+          break;
+        }
+        dataLength += bytesRead;
+      }
+      bufferedData = data;
+      bufferedLength = dataLength;
+      if (!upstreamEnded) {
+        // The response is too large to share. Continue reading it from the upstream.
+        return length;
+      }
+      response =
+          new Response(
+              dataLength == data.length ? data : Arrays.copyOf(data, dataLength),
+              upstream.getUri(),
+              upstream.getResponseCode(),
+              upstream.getResponseHeaders());
+      return dataLength;
+    } finally {
+      factory.unregisterInFlightRequest(key, request);
+      request.setResponse(response);
+    }
+  }
+
+  private boolean isCoalescable(DataSpec dataSpec) {
+    return dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET
+        && dataSpec.httpBody == null
+        && dataSpec.length != C.LENGTH_UNSET
+        && dataSpec.length <= factory.maxCoalescedResponseBytes;
+  }
+
+  private static final class RequestKey {
+
+    private final Uri uri;
+    private final long position;
+    private final long length;
+    @DataSpec.Flags private final int flags;
+    private final Map<String, String> requestHeaders;
+
+    public RequestKey(DataSpec dataSpec, Map<String, String> requestProperties) {
+      uri = dataSpec.uri;
+      position = dataSpec.position;
+      length = dataSpec.length;
+      flags = dataSpec.flags;
+      requestHeaders = new HashMap<>(requestProperties);
+      requestHeaders.putAll(dataSpec.httpRequestHeaders);
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      RequestKey other = (RequestKey) obj;
+      return position == other.position
+          && length == other.length
+          && flags == other.flags
+          && uri.equals(other.uri)
+          && requestHeaders.equals(other.requestHeaders);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = uri.hashCode();
+      result = 31 * result + (int) position;
+      result = 31 * result + (int) length;
+      result = 31 * result + flags;
+      result = 31 * result + requestHeaders.hashCode();
+      return result;
+    }
+  }
+
+  private static final class InFlightRequest {
+
+    private final ConditionVariable completed;
+    @Nullable private volatile Response response;
+
+    public InFlightRequest() {
+      completed = new ConditionVariable();
+    }
+
+    public void setResponse(@Nullable Response response) {
+      this.response = response;
+      completed.open();
+    }
+
+    /** Blocks until the request has completed, and returns its response or null if it failed. */
+    @Nullable
+    public Response awaitResponse() throws InterruptedException {
+      completed.block();
+      return response;
+    }
+  }
+
+  private static final class Response {
+
+    public final byte[] data;
+    @Nullable public final Uri uri;
+    public final int responseCode;
+    public final Map<String, List<String>> responseHeaders;
+
+    public Response(
+        byte[] data,
+        @Nullable Uri uri,
+        int responseCode,
+        Map<String, List<String>> responseHeaders) {
+      this.data = data;
+      this.uri = uri;
+      this.responseCode = responseCode;
+      this.responseHeaders = responseHeaders;
+    }
+  }
+}
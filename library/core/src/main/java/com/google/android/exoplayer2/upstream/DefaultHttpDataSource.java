@@ -320,6 +320,27 @@ public class DefaultHttpDataSource extends BaseDataSource implements HttpDataSou
           "Unable to connect", e, dataSpec, HttpDataSourceException.TYPE_OPEN);
     }
 
+    if (responseCode == 200
+        && dataSpec.position != 0
+        && dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        && isCompressed(connection)) {
+      // The server ignored the requested range, as servers commonly do for compressed responses.
+      // Rather than downloading and decompressing all of the data before the requested position,
+      // request the range again without allowing gzip.
+      closeConnectionQuietly();
+      DataSpec uncompressedDataSpec =
+          dataSpec.buildUpon().setFlags(dataSpec.flags & ~DataSpec.FLAG_ALLOW_GZIP).build();
+      try {
+        connection = makeConnection(uncompressedDataSpec);
+        responseCode = connection.getResponseCode();
+        responseMessage = connection.getResponseMessage();
+      } catch (IOException e) {
+        closeConnectionQuietly();
+        throw new HttpDataSourceException(
+            "Unable to connect", e, dataSpec, HttpDataSourceException.TYPE_OPEN);
+      }
+    }
+
     // Check for a valid response code.
     if (responseCode < 200 || responseCode > 299) {
       Map<String, List<String>> headers = connection.getHeaderFields();
@@ -25,8 +25,11 @@ import android.os.SystemClock;
 import androidx.annotation.IntDef;
 import androidx.annotation.Nullable;
 import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider.LoaderExecutor;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
+import com.google.android.exoplayer2.util.MetricsRegistry;
+import com.google.android.exoplayer2.util.TraceRecorder;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
@@ -168,6 +171,13 @@ public final class Loader implements LoaderErrorThrower {
   private static final int ACTION_TYPE_DONT_RETRY = 2;
   private static final int ACTION_TYPE_DONT_RETRY_FATAL = 3;
 
+  private static final MetricsRegistry.Histogram LOAD_WAIT_TIME_MS =
+      MetricsRegistry.DEFAULT.getHistogram("loader.waitTimeMs");
+  private static final MetricsRegistry.Histogram LOAD_DURATION_MS =
+      MetricsRegistry.DEFAULT.getHistogram("loader.loadDurationMs");
+  private static final MetricsRegistry.Counter LOAD_ERROR_COUNT =
+      MetricsRegistry.DEFAULT.getCounter("loader.errorCount");
+
   /** Retries the load using the default delay. */
   public static final LoadErrorAction RETRY =
       createRetryAction(/* resetErrorCount= */ false, C.TIME_UNSET);
@@ -204,16 +214,63 @@ public final class Loader implements LoaderErrorThrower {
     }
   }
 
-  private final ExecutorService downloadExecutorService;
+  /** A {@link LoaderExecutorProvider} that creates a new thread for each {@link Loader}. */
+  public static final LoaderExecutorProvider THREAD_PER_LOADER_EXECUTOR_PROVIDER =
+      (threadName, priority) -> new SingleThreadLoaderExecutor(threadName);
+
+  private static volatile LoaderExecutorProvider defaultExecutorProvider =
+      THREAD_PER_LOADER_EXECUTOR_PROVIDER;
+
+  private final LoaderExecutor downloadExecutor;
 
   @Nullable private LoadTask<? extends Loadable> currentTask;
   @Nullable private IOException fatalError;
 
   /**
+   * Creates an instance whose loads have {@link LoaderExecutorProvider#PRIORITY_MEDIA} priority.
+   *
    * @param threadName A name for the loader's thread.
    */
   public Loader(String threadName) {
-    this.downloadExecutorService = Util.newSingleThreadExecutor(threadName);
+    this(threadName, LoaderExecutorProvider.PRIORITY_MEDIA);
+  }
+
+  /**
+   * Creates an instance that runs its loads on an executor created by the {@link
+   * #setDefaultExecutorProvider(LoaderExecutorProvider) default LoaderExecutorProvider}.
+   *
+   * @param threadName A name for the loader's thread.
+   * @param priority The {@link LoaderExecutorProvider.Priority} of the loader's loads.
+   */
+  public Loader(String threadName, @LoaderExecutorProvider.Priority int priority) {
+    this(threadName, priority, defaultExecutorProvider);
+  }
+
+  /**
+   * @param threadName A name for the loader's thread.
+   * @param priority The {@link LoaderExecutorProvider.Priority} of the loader's loads.
+   * @param executorProvider The {@link LoaderExecutorProvider} that creates the executor on which
+   *     loads are run.
+   */
+  public Loader(
+      String threadName,
+      @LoaderExecutorProvider.Priority int priority,
+      LoaderExecutorProvider executorProvider) {
+    this.downloadExecutor = executorProvider.createLoaderExecutor(threadName, priority);
+  }
+
+  /**
+   * Sets the {@link LoaderExecutorProvider} used by {@link Loader Loaders} that are created without
+   * one. The default is {@link #THREAD_PER_LOADER_EXECUTOR_PROVIDER}. Setting a {@link
+   * SharedLoaderExecutorProvider} makes the loaders of all media sources and players in the process
+   * share a bounded pool of threads.
+   *
+   * <p>Only affects {@link Loader Loaders} created after this method is called.
+   *
+   * @param executorProvider The default {@link LoaderExecutorProvider}.
+   */
+  public static void setDefaultExecutorProvider(LoaderExecutorProvider executorProvider) {
+    defaultExecutorProvider = executorProvider;
   }
 
   /**
@@ -295,9 +352,9 @@ public final class Loader implements LoaderErrorThrower {
       currentTask.cancel(true);
     }
     if (callback != null) {
-      downloadExecutorService.execute(new ReleaseTask(callback));
+      downloadExecutor.execute(new ReleaseTask(callback));
     }
-    downloadExecutorService.shutdown();
+    downloadExecutor.release();
   }
 
   // LoaderErrorThrower implementation.
@@ -339,6 +396,7 @@ public final class Loader implements LoaderErrorThrower {
     private int errorCount;
 
     @Nullable private Thread executorThread;
+    private long executeTimeMs;
     private boolean canceled;
     private volatile boolean released;
 
@@ -410,11 +468,26 @@ public final class Loader implements LoaderErrorThrower {
           executorThread = Thread.currentThread();
         }
         if (shouldLoad) {
+          boolean recordMetrics = MetricsRegistry.DEFAULT.isEnabled();
+          long loadStartTimeMs = recordMetrics ? SystemClock.elapsedRealtime() : 0;
+          if (recordMetrics && executeTimeMs != 0) {
+            LOAD_WAIT_TIME_MS.record(loadStartTimeMs - executeTimeMs);
+          }
+          boolean recordTrace = TraceRecorder.DEFAULT.isEnabled();
+          long loadStartTimeNs = recordTrace ? System.nanoTime() : 0;
           TraceUtil.beginSection("load:" + loadable.getClass().getSimpleName());
           try {
             loadable.load();
           } finally {
             TraceUtil.endSection();
+            if (recordTrace) {
+              TraceRecorder.DEFAULT.recordSpan(
+                  "loader", loadable.getClass().getSimpleName(), loadStartTimeNs);
+            }
+            // Also record the duration of loads that fail or are canceled.
+            if (recordMetrics) {
+              LOAD_DURATION_MS.record(SystemClock.elapsedRealtime() - loadStartTimeMs);
+            }
           }
         }
         synchronized (this) {
@@ -426,6 +499,9 @@ public final class Loader implements LoaderErrorThrower {
           sendEmptyMessage(MSG_FINISH);
         }
       } catch (IOException e) {
+        if (MetricsRegistry.DEFAULT.isEnabled()) {
+          LOAD_ERROR_COUNT.increment();
+        }
         if (!released) {
           obtainMessage(MSG_IO_EXCEPTION, e).sendToTarget();
         }
@@ -510,7 +586,8 @@ public final class Loader implements LoaderErrorThrower {
 
     private void execute() {
       currentError = null;
-      downloadExecutorService.execute(Assertions.checkNotNull(currentTask));
+      executeTimeMs = MetricsRegistry.DEFAULT.isEnabled() ? SystemClock.elapsedRealtime() : 0;
+      downloadExecutor.execute(Assertions.checkNotNull(currentTask));
     }
 
     private void finish() {
@@ -523,6 +600,25 @@ public final class Loader implements LoaderErrorThrower {
 
   }
 
+  private static final class SingleThreadLoaderExecutor implements LoaderExecutor {
+
+    private final ExecutorService executorService;
+
+    public SingleThreadLoaderExecutor(String threadName) {
+      executorService = Util.newSingleThreadExecutor(threadName);
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      executorService.execute(task);
+    }
+
+    @Override
+    public void release() {
+      executorService.shutdown();
+    }
+  }
+
   private static final class ReleaseTask implements Runnable {
 
     private final ReleaseCallback callback;
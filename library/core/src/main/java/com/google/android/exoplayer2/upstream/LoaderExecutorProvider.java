@@ -0,0 +1,68 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import androidx.annotation.IntDef;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+
+/** Provides the executors on which {@link Loader Loaders} run their loads. */
+public interface LoaderExecutorProvider {
+
+  /**
+   * Priority of the loads of a {@link Loader}. One of {@link #PRIORITY_MEDIA}, {@link
+   * #PRIORITY_MANIFEST} or {@link #PRIORITY_BACKGROUND}. Lower values have higher priority.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({PRIORITY_MEDIA, PRIORITY_MANIFEST, PRIORITY_BACKGROUND})
+  @interface Priority {}
+  /** Priority of media loads, such as chunk and progressive stream loads. */
+  int PRIORITY_MEDIA = 0;
+  /** Priority of manifest and playlist loads. */
+  int PRIORITY_MANIFEST = 1;
+  /** Priority of loads that playback doesn't directly depend on, such as time synchronization. */
+  int PRIORITY_BACKGROUND = 2;
+
+  /**
+   * An {@link Executor} that runs the tasks of a single {@link Loader}.
+   *
+   * <p>Tasks passed to {@link #execute(Runnable)} must be run one at a time, in the order in which
+   * they were passed.
+   */
+  interface LoaderExecutor extends Executor {
+
+    /**
+     * Releases the executor. Tasks that have already been passed to {@link #execute(Runnable)} are
+     * still run. Subsequent calls to {@link #execute(Runnable)} throw a {@link
+     * RejectedExecutionException}.
+     */
+    void release();
+  }
+
+  /**
+   * Creates a {@link LoaderExecutor} for a {@link Loader}.
+   *
+   * @param threadName The name of the {@link Loader Loader's} thread. Implementations that don't
+   *     create a dedicated thread may use it to name the thread whilst a task is being run.
+   * @param priority The {@link Priority} of the loads of the {@link Loader}.
+   * @return The {@link LoaderExecutor}.
+   */
+  LoaderExecutor createLoaderExecutor(String threadName, @Priority int priority);
+}
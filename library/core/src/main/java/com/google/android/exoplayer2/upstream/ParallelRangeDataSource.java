@@ -0,0 +1,545 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+/**
+ * A {@link DataSource} that reads large HTTP resources using several range requests in parallel.
+ *
+ * <p>The first chunk of the requested data is read directly from an upstream {@link
+ * HttpDataSource}. Whilst it's being read, the following chunks are requested in parallel by
+ * further upstream {@link HttpDataSource HttpDataSources}, each on its own connection, and
+ * buffered in memory until they're read. This allows a stream to be loaded faster than a single
+ * connection allows on links with a high bandwidth-delay product, such as satellite and long-haul
+ * links. Data is returned in order, so the source can be used by {@link
+ * com.google.android.exoplayer2.source.ProgressiveMediaSource} like any other {@link DataSource}.
+ *
+ * <p>The size of the chunks is derived from the {@link BandwidthMeter} estimate if a bandwidth
+ * meter is set, so that each request takes roughly the same time regardless of the available
+ * bandwidth. At most {@link Factory#setConnectionCount(int) connectionCount} chunks are loaded or
+ * buffered at a time, which bounds the memory used to {@code connectionCount} times the maximum
+ * chunk size.
+ *
+ * <p>Requests are read through a single connection if the upstream isn't an {@link
+ * HttpDataSource}, if they aren't {@code GET} requests, if they allow gzip, or if the server
+ * doesn't support range requests or doesn't report the length of the resource. If a chunk's
+ * request isn't answered with a partial content response for exactly the requested range, the
+ * chunk is discarded and the rest of the data is read through a single connection.
+ */
+public final class ParallelRangeDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link ParallelRangeDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+
+    @Nullable private BandwidthMeter bandwidthMeter;
+    @Nullable private ExecutorService executorService;
+    private int connectionCount;
+    private int minChunkSize;
+    private int maxChunkSize;
+
+    /**
+     * @param upstreamFactory A {@link DataSource.Factory} that creates the upstream {@link
+     *     DataSource DataSources}. Requests are only split if it creates {@link HttpDataSource
+     *     HttpDataSources}.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this.upstreamFactory = upstreamFactory;
+      connectionCount = DEFAULT_CONNECTION_COUNT;
+      minChunkSize = DEFAULT_MIN_CHUNK_SIZE;
+      maxChunkSize = DEFAULT_MAX_CHUNK_SIZE;
+    }
+
+    /**
+     * Sets the {@link BandwidthMeter} whose estimate is used to size chunks. If not set, chunks of
+     * {@link #DEFAULT_CHUNK_SIZE}, constrained to the {@link #setChunkSizeRange(int, int) chunk
+     * size range}, are requested.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter}.
+     * @return This factory.
+     */
+    public Factory setBandwidthMeter(@Nullable BandwidthMeter bandwidthMeter) {
+      this.bandwidthMeter = bandwidthMeter;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of connections used in parallel by each data source. The default is
+     * {@link #DEFAULT_CONNECTION_COUNT}.
+     *
+     * @param connectionCount The maximum number of connections.
+     * @return This factory.
+     */
+    public Factory setConnectionCount(int connectionCount) {
+      checkArgument(connectionCount > 0);
+      this.connectionCount = connectionCount;
+      return this;
+    }
+
+    /**
+     * Sets the range of the sizes of the chunks requested by each connection. The defaults are
+     * {@link #DEFAULT_MIN_CHUNK_SIZE} and {@link #DEFAULT_MAX_CHUNK_SIZE}.
+     *
+     * @param minChunkSize The minimum chunk size, in bytes.
+     * @param maxChunkSize The maximum chunk size, in bytes.
+     * @return This factory.
+     */
+    public Factory setChunkSizeRange(int minChunkSize, int maxChunkSize) {
+      checkArgument(0 < minChunkSize && minChunkSize <= maxChunkSize);
+      this.minChunkSize = minChunkSize;
+      this.maxChunkSize = maxChunkSize;
+      return this;
+    }
+
+    /**
+     * Sets the {@link ExecutorService} on which chunks are loaded. It must be able to run {@code
+     * connectionCount - 1} tasks in parallel for each open data source. If not set, a shared pool
+     * of threads that are terminated when idle is used.
+     *
+     * @param executorService The {@link ExecutorService}.
+     * @return This factory.
+     */
+    public Factory setExecutorService(@Nullable ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    @Override
+    public ParallelRangeDataSource createDataSource() {
+      return new ParallelRangeDataSource(
+          upstreamFactory,
+          bandwidthMeter,
+          executorService != null ? executorService : getDefaultExecutorService(),
+          connectionCount,
+          minChunkSize,
+          maxChunkSize);
+    }
+  }
+
+  /** The default maximum number of connections used in parallel. */
+  public static final int DEFAULT_CONNECTION_COUNT = 4;
+  /** The default minimum chunk size, in bytes. */
+  public static final int DEFAULT_MIN_CHUNK_SIZE = 256 * 1024;
+  /** The default maximum chunk size, in bytes. */
+  public static final int DEFAULT_MAX_CHUNK_SIZE = 2 * 1024 * 1024;
+  /** The chunk size used if no {@link BandwidthMeter} is set, in bytes. */
+  public static final int DEFAULT_CHUNK_SIZE = 1024 * 1024;
+
+  /** The time it should take a single connection to load a chunk, in milliseconds. */
+  private static final int TARGET_CHUNK_LOAD_TIME_MS = 2000;
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:ParallelRangeDataSource:";
+  private static final Pattern CONTENT_RANGE_HEADER =
+      Pattern.compile("^bytes (\\d+)-(\\d+)/(\\d+)$");
+
+  @Nullable private static ExecutorService defaultExecutorService;
+
+  private final DataSource.Factory upstreamFactory;
+  @Nullable private final BandwidthMeter bandwidthMeter;
+  private final ExecutorService executorService;
+  private final int connectionCount;
+  private final int minChunkSize;
+  private final int maxChunkSize;
+  private final List<TransferListener> transferListeners;
+  private final ArrayDeque<Chunk> pendingChunks;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private DataSource primaryUpstream;
+  private boolean splitting;
+  private long primaryBytesRemaining;
+  private long nextChunkPosition;
+  private long endPosition;
+  @Nullable private Chunk currentChunk;
+  private int currentChunkReadPosition;
+
+  private ParallelRangeDataSource(
+      DataSource.Factory upstreamFactory,
+      @Nullable BandwidthMeter bandwidthMeter,
+      ExecutorService executorService,
+      int connectionCount,
+      int minChunkSize,
+      int maxChunkSize) {
+    this.upstreamFactory = upstreamFactory;
+    this.bandwidthMeter = bandwidthMeter;
+    this.executorService = executorService;
+    this.connectionCount = connectionCount;
+    this.minChunkSize = minChunkSize;
+    this.maxChunkSize = maxChunkSize;
+    transferListeners = new ArrayList<>();
+    pendingChunks = new ArrayDeque<>();
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    transferListeners.add(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    DataSource primaryUpstream = createUpstream();
+    this.primaryUpstream = primaryUpstream;
+    if (!(primaryUpstream instanceof HttpDataSource)
+        || connectionCount == 1
+        || dataSpec.httpMethod != DataSpec.HTTP_METHOD_GET
+        || dataSpec.httpBody != null
+        || dataSpec.isFlagSet(DataSpec.FLAG_ALLOW_GZIP)
+        || (dataSpec.length != C.LENGTH_UNSET && dataSpec.length < 2L * minChunkSize)) {
+      return primaryUpstream.open(dataSpec);
+    }
+
+    long firstChunkLength = getChunkSize();
+    if (dataSpec.length != C.LENGTH_UNSET) {
+      firstChunkLength = min(firstChunkLength, dataSpec.length);
+    }
+    DataSpec firstChunkDataSpec = dataSpec.subrange(/* offset= */ 0, firstChunkLength);
+    primaryUpstream.open(firstChunkDataSpec);
+    HttpDataSource httpUpstream = (HttpDataSource) primaryUpstream;
+    long resourceLength = getResourceLength(httpUpstream);
+    if (!isResponseForRange(httpUpstream, firstChunkDataSpec)
+        || (dataSpec.length == C.LENGTH_UNSET
+            && (resourceLength == C.LENGTH_UNSET
+                || resourceLength - dataSpec.position <= firstChunkLength))) {
+      // The server doesn't support range requests, the end of the data isn't known, or the data
+      // ends within the first chunk.
+      primaryUpstream.close();
+      return primaryUpstream.open(dataSpec);
+    }
+
+    splitting = true;
+    primaryBytesRemaining = firstChunkLength;
+    nextChunkPosition = dataSpec.position + firstChunkLength;
+    endPosition =
+        dataSpec.length != C.LENGTH_UNSET ? dataSpec.position + dataSpec.length : resourceLength;
+    maybeScheduleChunks();
+    return endPosition - dataSpec.position;
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    DataSource primaryUpstream = checkNotNull(this.primaryUpstream);
+    if (!splitting) {
+      return primaryUpstream.read(buffer, offset, readLength);
+    }
+    if (primaryBytesRemaining > 0) {
+      int bytesRead =
+          primaryUpstream.read(buffer, offset, (int) min(readLength, primaryBytesRemaining));
+      if (bytesRead == C.RESULT_END_OF_INPUT) {
+        throw new EOFException();
+      }
+      primaryBytesRemaining -= bytesRead;
+      return bytesRead;
+    }
+    while (true) {
+      if (currentChunk == null) {
+        currentChunk = pendingChunks.poll();
+        if (currentChunk == null) {
+          return C.RESULT_END_OF_INPUT;
+        }
+        currentChunkReadPosition = 0;
+        maybeScheduleChunks();
+      }
+      int bytesRead;
+      try {
+        bytesRead = currentChunk.read(buffer, offset, readLength, currentChunkReadPosition);
+      } catch (UnexpectedRangeResponseException e) {
+        openSequentialUpstream(currentChunk.dataSpec.position + currentChunkReadPosition);
+        return primaryUpstream.read(buffer, offset, readLength);
+      }
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        currentChunkReadPosition += bytesRead;
+        return bytesRead;
+      }
+      currentChunk = null;
+    }
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return primaryUpstream != null ? primaryUpstream.getUri() : null;
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return primaryUpstream != null ? primaryUpstream.getResponseHeaders() : Collections.emptyMap();
+  }
+
+  @Override
+  public void close() throws IOException {
+    cancelChunks();
+    splitting = false;
+    primaryBytesRemaining = 0;
+    dataSpec = null;
+    @Nullable DataSource primaryUpstream = this.primaryUpstream;
+    if (primaryUpstream != null) {
+      this.primaryUpstream = null;
+      primaryUpstream.close();
+    }
+  }
+
+  private DataSource createUpstream() {
+    DataSource upstream = upstreamFactory.createDataSource();
+    for (int i = 0; i < transferListeners.size(); i++) {
+      upstream.addTransferListener(transferListeners.get(i));
+    }
+    return upstream;
+  }
+
+  private void cancelChunks() {
+    if (currentChunk != null) {
+      currentChunk.cancel();
+      currentChunk = null;
+    }
+    for (Chunk chunk : pendingChunks) {
+      chunk.cancel();
+    }
+    pendingChunks.clear();
+  }
+
+  /**
+   * Stops splitting the request, and reopens the primary upstream to read the data from {@code
+   * position} to the end through a single connection.
+   */
+  private void openSequentialUpstream(long position) throws IOException {
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    DataSource primaryUpstream = checkNotNull(this.primaryUpstream);
+    cancelChunks();
+    splitting = false;
+    primaryUpstream.close();
+    primaryUpstream.open(dataSpec.subrange(position - dataSpec.position, endPosition - position));
+  }
+
+  /**
+   * Requests chunks until {@code connectionCount} chunks, including the one being read, are being
+   * loaded or buffered.
+   */
+  private void maybeScheduleChunks() {
+    DataSpec dataSpec = checkNotNull(this.dataSpec);
+    while (pendingChunks.size() + 1 < connectionCount && nextChunkPosition < endPosition) {
+      int chunkLength = (int) min(getChunkSize(), endPosition - nextChunkPosition);
+      Chunk chunk =
+          new Chunk(dataSpec.subrange(nextChunkPosition - dataSpec.position, chunkLength));
+      chunk.future = executorService.submit(chunk);
+      pendingChunks.add(chunk);
+      nextChunkPosition += chunkLength;
+    }
+  }
+
+  private int getChunkSize() {
+    long chunkSize = DEFAULT_CHUNK_SIZE;
+    if (bandwidthMeter != null) {
+      // Aim for each of the parallel connections to take roughly the same time to load a chunk.
+      long bitrateEstimate = bandwidthMeter.getBitrateEstimate();
+      chunkSize = bitrateEstimate / connectionCount * TARGET_CHUNK_LOAD_TIME_MS / (8 * 1000);
+    }
+    return (int) max(minChunkSize, min(chunkSize, maxChunkSize));
+  }
+
+  /**
+   * Returns whether {@code dataSource} received a partial content response whose {@code
+   * Content-Range} header matches the range of {@code dataSpec}, which must have a set length.
+   */
+  private static boolean isResponseForRange(HttpDataSource dataSource, DataSpec dataSpec) {
+    if (dataSource.getResponseCode() != 206) {
+      return false;
+    }
+    @Nullable Matcher contentRange = getContentRange(dataSource);
+    return contentRange != null
+        && parseLong(contentRange.group(1)) == dataSpec.position
+        && parseLong(contentRange.group(2)) == dataSpec.position + dataSpec.length - 1;
+  }
+
+  /**
+   * Returns the length of the whole resource from the {@code Content-Range} response header, or
+   * {@link C#LENGTH_UNSET} if it's unknown.
+   */
+  private static long getResourceLength(HttpDataSource dataSource) {
+    @Nullable Matcher contentRange = getContentRange(dataSource);
+    return contentRange != null ? parseLong(contentRange.group(3)) : C.LENGTH_UNSET;
+  }
+
+  /**
+   * Returns a matcher of {@link #CONTENT_RANGE_HEADER} for the {@code Content-Range} response
+   * header, or null if there's no such header or it can't be parsed.
+   */
+  @Nullable
+  private static Matcher getContentRange(HttpDataSource dataSource) {
+    for (Map.Entry<String, List<String>> header : dataSource.getResponseHeaders().entrySet()) {
+      if (!"Content-Range".equalsIgnoreCase(header.getKey()) || header.getValue().isEmpty()) {
+        continue;
+      }
+      Matcher matcher = CONTENT_RANGE_HEADER.matcher(header.getValue().get(0));
+      if (matcher.find()) {
+        return matcher;
+      }
+    }
+    return null;
+  }
+
+  /** Parses a non-negative long, returning {@link C#LENGTH_UNSET} if it can't be parsed. */
+  private static long parseLong(@Nullable String value) {
+    try {
+      return Long.parseLong(checkNotNull(value));
+    } catch (NumberFormatException e) {
+      return C.LENGTH_UNSET;
+    }
+  }
+
+  private static synchronized ExecutorService getDefaultExecutorService() {
+    if (defaultExecutorService == null) {
+      AtomicInteger threadCount = new AtomicInteger();
+      defaultExecutorService =
+          Executors.newCachedThreadPool(
+              runnable ->
+                  new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet()));
+    }
+    return defaultExecutorService;
+  }
+
+  /** Thrown when a chunk's range request isn't answered with the requested range. */
+  private static final class UnexpectedRangeResponseException extends IOException {
+
+    public UnexpectedRangeResponseException(DataSpec dataSpec) {
+      super("Unexpected response to range request: " + dataSpec);
+    }
+  }
+
+  /** A range of the data that's loaded by its own upstream and buffered until it's read. */
+  private final class Chunk implements Runnable {
+
+    private final DataSpec dataSpec;
+    private final byte[] data;
+
+    @Nullable private Future<?> future;
+    private volatile boolean canceled;
+
+    @GuardedBy("this")
+    private int bytesLoaded;
+
+    @GuardedBy("this")
+    private boolean finished;
+
+    @GuardedBy("this")
+    @Nullable
+    private IOException error;
+
+    public Chunk(DataSpec dataSpec) {
+      this.dataSpec = dataSpec;
+      data = new byte[(int) dataSpec.length];
+    }
+
+    public void cancel() {
+      canceled = true;
+      if (future != null) {
+        future.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+
+    /**
+     * Reads up to {@code readLength} bytes from {@code position}, blocking until they've been
+     * loaded.
+     *
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if the whole chunk has
+     *     been read.
+     * @throws IOException If loading the chunk failed before {@code position}.
+     */
+    public synchronized int read(byte[] buffer, int offset, int readLength, int position)
+        throws IOException {
+      if (position == data.length) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      while (bytesLoaded == position && !finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (bytesLoaded == position) {
+        throw error != null ? error : new EOFException();
+      }
+      int bytesToRead = min(readLength, bytesLoaded - position);
+      System.arraycopy(data, position, buffer, offset, bytesToRead);
+      return bytesToRead;
+    }
+
+    @Override
+    public void run() {
+      DataSource upstream = createUpstream();
+      @Nullable IOException error = null;
+      try {
+        upstream.open(dataSpec);
+        if (!(upstream instanceof HttpDataSource)
+            || !isResponseForRange((HttpDataSource) upstream, dataSpec)) {
+          // The server didn't serve exactly the requested range, so the chunk can't be used.
+          throw new UnexpectedRangeResponseException(dataSpec);
+        }
+        int loaded = 0;
+        while (loaded < data.length && !canceled) {
+          int bytesRead = upstream.read(data, loaded, data.length - loaded);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            throw new EOFException();
+          }
+          loaded += bytesRead;
+          synchronized (this) {
+            bytesLoaded = loaded;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        error = e;
+      } finally {
+        Util.closeQuietly(upstream);
+        synchronized (this) {
+          this.error = error;
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+  }
+}
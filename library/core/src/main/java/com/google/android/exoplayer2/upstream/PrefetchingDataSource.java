@@ -0,0 +1,570 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static com.google.android.exoplayer2.util.Assertions.checkNotNull;
+import static java.lang.Math.min;
+
+import android.net.Uri;
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link DataSource} that can start loading requests before they're opened.
+ *
+ * <p>{@link #prefetch(DataSpec)} starts loading a request into memory on a background thread. When
+ * a {@link PrefetchingDataSource} created by the same {@link Factory} is later opened with an
+ * identical {@link DataSpec}, it reads the prefetched response rather than making a request of its
+ * own, even if the prefetch is still loading. This hides the request latency of consecutive loads,
+ * and allows them to share a multiplexed connection when the upstream uses HTTP/2 or QUIC, such as
+ * the OkHttp and Cronet data sources.
+ *
+ * <p>{@link com.google.android.exoplayer2.source.chunk.ChunkSource ChunkSources} that load media
+ * through a {@link PrefetchingDataSource} prefetch the {@link Factory#setPrefetchCount(int)
+ * prefetchCount} segments following each chunk they return.
+ *
+ * <p>At most {@link Factory#setMaxPrefetchBytes(int) maxPrefetchBytes} of each response are
+ * prefetched. The rest of a larger response is requested from the upstream when it's read. At most
+ * {@link #MAX_PENDING_PREFETCH_COUNT} prefetched responses are kept; older ones are discarded.
+ * Prefetches that are no longer needed, for example after a seek, can be canceled with {@link
+ * #cancelPrefetches()} or {@link Factory#clear()}.
+ */
+public final class PrefetchingDataSource implements DataSource {
+
+  /** {@link DataSource.Factory} for {@link PrefetchingDataSource} instances. */
+  public static final class Factory implements DataSource.Factory {
+
+    private final DataSource.Factory upstreamFactory;
+    private final LinkedHashMap<RequestKey, Prefetch> pendingPrefetches;
+    private final AtomicLong prefetchHitCount;
+
+    @Nullable private ExecutorService executorService;
+    private int prefetchCount;
+    private int maxPrefetchBytes;
+
+    /**
+     * @param upstreamFactory A {@link DataSource.Factory} that creates the upstream {@link
+     *     DataSource DataSources}, which load both prefetched and other requests.
+     */
+    public Factory(DataSource.Factory upstreamFactory) {
+      this.upstreamFactory = upstreamFactory;
+      pendingPrefetches = new LinkedHashMap<>();
+      prefetchHitCount = new AtomicLong();
+      prefetchCount = DEFAULT_PREFETCH_COUNT;
+      maxPrefetchBytes = DEFAULT_MAX_PREFETCH_BYTES;
+    }
+
+    /**
+     * Sets the number of segments that chunk sources prefetch following each chunk they return.
+     * The default is {@link #DEFAULT_PREFETCH_COUNT}.
+     *
+     * @param prefetchCount The number of segments to prefetch.
+     * @return This factory.
+     */
+    public Factory setPrefetchCount(int prefetchCount) {
+      checkArgument(prefetchCount >= 0);
+      this.prefetchCount = prefetchCount;
+      return this;
+    }
+
+    /**
+     * Sets the maximum number of bytes of each response that are prefetched. The default is {@link
+     * #DEFAULT_MAX_PREFETCH_BYTES}.
+     *
+     * @param maxPrefetchBytes The maximum number of bytes to prefetch per response.
+     * @return This factory.
+     */
+    public Factory setMaxPrefetchBytes(int maxPrefetchBytes) {
+      checkArgument(maxPrefetchBytes > 0);
+      this.maxPrefetchBytes = maxPrefetchBytes;
+      return this;
+    }
+
+    /**
+     * Sets the {@link ExecutorService} on which requests are prefetched. If not set, a shared pool
+     * of threads that are terminated when idle is used.
+     *
+     * @param executorService The {@link ExecutorService}.
+     * @return This factory.
+     */
+    public Factory setExecutorService(@Nullable ExecutorService executorService) {
+      this.executorService = executorService;
+      return this;
+    }
+
+    /** Returns the number of requests that have been read from a prefetched response. */
+    public long getPrefetchHitCount() {
+      return prefetchHitCount.get();
+    }
+
+    /**
+     * Cancels all prefetches that haven't been opened by a {@link PrefetchingDataSource} yet and
+     * discards their data.
+     */
+    public void clear() {
+      synchronized (pendingPrefetches) {
+        for (Prefetch prefetch : pendingPrefetches.values()) {
+          prefetch.cancel();
+        }
+        pendingPrefetches.clear();
+      }
+    }
+
+    @Override
+    public PrefetchingDataSource createDataSource() {
+      return new PrefetchingDataSource(upstreamFactory.createDataSource(), this);
+    }
+
+    private void startPrefetch(
+        PrefetchingDataSource owner, DataSpec dataSpec, List<TransferListener> transferListeners) {
+      RequestKey key = new RequestKey(dataSpec);
+      Prefetch prefetch;
+      synchronized (pendingPrefetches) {
+        if (pendingPrefetches.containsKey(key)) {
+          return;
+        }
+        prefetch =
+            new Prefetch(owner, createUpstream(transferListeners), dataSpec, maxPrefetchBytes);
+        pendingPrefetches.put(key, prefetch);
+        Iterator<Prefetch> iterator = pendingPrefetches.values().iterator();
+        while (pendingPrefetches.size() > MAX_PENDING_PREFETCH_COUNT) {
+          // Discard the oldest prefetch, which is the least likely to be read.
+          iterator.next().cancel();
+          iterator.remove();
+        }
+        ExecutorService executorService =
+            this.executorService != null ? this.executorService : getDefaultExecutorService();
+        // Submit under the lock, so that a concurrent cancellation always sees the future.
+        prefetch.future = executorService.submit(prefetch);
+      }
+    }
+
+    private void cancelPrefetches(PrefetchingDataSource owner) {
+      synchronized (pendingPrefetches) {
+        Iterator<Prefetch> iterator = pendingPrefetches.values().iterator();
+        while (iterator.hasNext()) {
+          Prefetch prefetch = iterator.next();
+          if (prefetch.owner == owner) {
+            prefetch.cancel();
+            iterator.remove();
+          }
+        }
+      }
+    }
+
+    @Nullable
+    private Prefetch takePrefetch(DataSpec dataSpec) {
+      synchronized (pendingPrefetches) {
+        return pendingPrefetches.remove(new RequestKey(dataSpec));
+      }
+    }
+
+    private DataSource createUpstream(List<TransferListener> transferListeners) {
+      DataSource upstream = upstreamFactory.createDataSource();
+      for (int i = 0; i < transferListeners.size(); i++) {
+        upstream.addTransferListener(transferListeners.get(i));
+      }
+      return upstream;
+    }
+  }
+
+  /** The default number of segments that chunk sources prefetch. */
+  public static final int DEFAULT_PREFETCH_COUNT = 1;
+  /** The default maximum number of bytes of each response that are prefetched. */
+  public static final int DEFAULT_MAX_PREFETCH_BYTES = 4 * 1024 * 1024;
+  /** The maximum number of prefetched responses that are kept until they're read. */
+  public static final int MAX_PENDING_PREFETCH_COUNT = 4;
+
+  private static final int INITIAL_BUFFER_SIZE = 32 * 1024;
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:PrefetchingDataSource:";
+
+  @Nullable private static ExecutorService defaultExecutorService;
+
+  private final DataSource upstream;
+  private final Factory factory;
+  private final List<TransferListener> transferListeners;
+
+  @Nullable private DataSpec dataSpec;
+  @Nullable private Prefetch prefetch;
+  private int prefetchReadPosition;
+  private boolean upstreamOpened;
+
+  private PrefetchingDataSource(DataSource upstream, Factory factory) {
+    this.upstream = upstream;
+    this.factory = factory;
+    transferListeners = new ArrayList<>();
+  }
+
+  /**
+   * Returns the number of segments that chunk sources should prefetch following each chunk they
+   * return.
+   */
+  public int getPrefetchCount() {
+    return factory.prefetchCount;
+  }
+
+  /**
+   * Starts loading {@code dataSpec} in the background, if it isn't already being prefetched. The
+   * response is read by the first {@link PrefetchingDataSource} created by the same {@link Factory}
+   * that's opened with an identical {@link DataSpec}.
+   *
+   * <p>Only {@code GET} requests are prefetched. Other requests are ignored.
+   *
+   * @param dataSpec The {@link DataSpec} to prefetch.
+   */
+  public void prefetch(DataSpec dataSpec) {
+    if (isPrefetchable(dataSpec)) {
+      factory.startPrefetch(/* owner= */ this, dataSpec, new ArrayList<>(transferListeners));
+    }
+  }
+
+  /**
+   * Cancels the prefetches started by this data source that haven't been opened yet, and discards
+   * their data. Should be called when the prefetched requests are no longer expected to be read,
+   * for example after a seek or when the data source is no longer used.
+   */
+  public void cancelPrefetches() {
+    factory.cancelPrefetches(/* owner= */ this);
+  }
+
+  @Override
+  public void addTransferListener(TransferListener transferListener) {
+    checkNotNull(transferListener);
+    // Data read from a prefetched response isn't reported, since it was reported when it was
+    // loaded by the prefetch.
+    transferListeners.add(transferListener);
+    upstream.addTransferListener(transferListener);
+  }
+
+  @Override
+  public long open(DataSpec dataSpec) throws IOException {
+    this.dataSpec = dataSpec;
+    @Nullable Prefetch prefetch = isPrefetchable(dataSpec) ? factory.takePrefetch(dataSpec) : null;
+    if (prefetch != null) {
+      if (prefetch.awaitOpened()) {
+        factory.prefetchHitCount.incrementAndGet();
+        this.prefetch = prefetch;
+        return prefetch.getLength();
+      }
+      // The prefetch failed to open. Make the request again, so that its error is surfaced.
+      prefetch.cancel();
+    }
+    return openUpstream(dataSpec);
+  }
+
+  @Override
+  public int read(byte[] buffer, int offset, int readLength) throws IOException {
+    if (readLength == 0) {
+      return 0;
+    }
+    @Nullable Prefetch prefetch = this.prefetch;
+    if (prefetch != null) {
+      int bytesRead = prefetch.read(buffer, offset, readLength, prefetchReadPosition);
+      if (bytesRead != C.RESULT_END_OF_INPUT) {
+        prefetchReadPosition += bytesRead;
+        return bytesRead;
+      } else if (prefetch.isComplete()) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      // The prefetch failed or reached maxPrefetchBytes. Request the rest of the data.
+      this.prefetch = null;
+      openUpstream(checkNotNull(dataSpec).subrange(prefetchReadPosition));
+    }
+    return upstreamOpened ? upstream.read(buffer, offset, readLength) : C.RESULT_END_OF_INPUT;
+  }
+
+  @Override
+  @Nullable
+  public Uri getUri() {
+    return prefetch != null ? prefetch.getUri() : upstream.getUri();
+  }
+
+  @Override
+  public Map<String, List<String>> getResponseHeaders() {
+    return prefetch != null ? prefetch.getResponseHeaders() : upstream.getResponseHeaders();
+  }
+
+  @Override
+  public void close() throws IOException {
+    dataSpec = null;
+    prefetchReadPosition = 0;
+    if (prefetch != null) {
+      prefetch.cancel();
+      prefetch = null;
+    }
+    if (upstreamOpened) {
+      upstreamOpened = false;
+      upstream.close();
+    }
+  }
+
+  private long openUpstream(DataSpec dataSpec) throws IOException {
+    // Set before opening, so that the upstream is closed by close() if opening fails.
+    upstreamOpened = true;
+    return upstream.open(dataSpec);
+  }
+
+  private static boolean isPrefetchable(DataSpec dataSpec) {
+    return dataSpec.httpMethod == DataSpec.HTTP_METHOD_GET && dataSpec.httpBody == null;
+  }
+
+  private static synchronized ExecutorService getDefaultExecutorService() {
+    if (defaultExecutorService == null) {
+      AtomicInteger threadCount = new AtomicInteger();
+      defaultExecutorService =
+          Executors.newCachedThreadPool(
+              runnable ->
+                  new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet()));
+    }
+    return defaultExecutorService;
+  }
+
+  private static final class RequestKey {
+
+    private final Uri uri;
+    private final long position;
+    private final long length;
+    @DataSpec.Flags private final int flags;
+    private final Map<String, String> httpRequestHeaders;
+
+    public RequestKey(DataSpec dataSpec) {
+      uri = dataSpec.uri;
+      position = dataSpec.position;
+      length = dataSpec.length;
+      flags = dataSpec.flags;
+      httpRequestHeaders = dataSpec.httpRequestHeaders;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      RequestKey other = (RequestKey) obj;
+      return position == other.position
+          && length == other.length
+          && flags == other.flags
+          && uri.equals(other.uri)
+          && httpRequestHeaders.equals(other.httpRequestHeaders);
+    }
+
+    @Override
+    public int hashCode() {
+      int result = uri.hashCode();
+      result = 31 * result + (int) position;
+      result = 31 * result + (int) length;
+      result = 31 * result + flags;
+      result = 31 * result + httpRequestHeaders.hashCode();
+      return result;
+    }
+  }
+
+  /** A request that's loaded into memory by its own upstream until it's read. */
+  private static final class Prefetch implements Runnable {
+
+    public final PrefetchingDataSource owner;
+
+    private final DataSource upstream;
+    private final DataSpec dataSpec;
+    private final int maxBytes;
+
+    @Nullable private volatile Future<?> future;
+    private volatile boolean canceled;
+
+    @GuardedBy("this")
+    private boolean opened;
+
+    @GuardedBy("this")
+    private long length;
+
+    @GuardedBy("this")
+    @Nullable
+    private Uri uri;
+
+    @GuardedBy("this")
+    private Map<String, List<String>> responseHeaders;
+
+    @GuardedBy("this")
+    private byte[] data;
+
+    @GuardedBy("this")
+    private int bytesLoaded;
+
+    @GuardedBy("this")
+    private boolean finished;
+
+    @GuardedBy("this")
+    private boolean complete;
+
+    public Prefetch(
+        PrefetchingDataSource owner, DataSource upstream, DataSpec dataSpec, int maxBytes) {
+      this.owner = owner;
+      this.upstream = upstream;
+      this.dataSpec = dataSpec;
+      this.maxBytes = maxBytes;
+      length = C.LENGTH_UNSET;
+      responseHeaders = Collections.emptyMap();
+      data = Util.EMPTY_BYTE_ARRAY;
+    }
+
+    public void cancel() {
+      canceled = true;
+      @Nullable Future<?> future = this.future;
+      if (future != null) {
+        future.cancel(/* mayInterruptIfRunning= */ true);
+      }
+    }
+
+    /**
+     * Blocks until the request has been opened or has failed to open.
+     *
+     * @return Whether the request was opened.
+     * @throws InterruptedIOException If the thread was interrupted.
+     */
+    public synchronized boolean awaitOpened() throws InterruptedIOException {
+      while (!opened && !finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      return opened;
+    }
+
+    public synchronized long getLength() {
+      return length;
+    }
+
+    @Nullable
+    public synchronized Uri getUri() {
+      return uri;
+    }
+
+    public synchronized Map<String, List<String>> getResponseHeaders() {
+      return responseHeaders;
+    }
+
+    /** Returns whether the whole response was loaded. */
+    public synchronized boolean isComplete() {
+      return complete;
+    }
+
+    /**
+     * Reads up to {@code readLength} bytes from {@code position}, blocking until they've been
+     * loaded.
+     *
+     * @return The number of bytes read, or {@link C#RESULT_END_OF_INPUT} if all the bytes that
+     *     were loaded have been read. {@link #isComplete()} indicates whether they're the whole
+     *     response.
+     * @throws InterruptedIOException If the thread was interrupted.
+     */
+    public synchronized int read(byte[] buffer, int offset, int readLength, int position)
+        throws InterruptedIOException {
+      while (bytesLoaded == position && !finished) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          throw new InterruptedIOException();
+        }
+      }
+      if (bytesLoaded == position) {
+        return C.RESULT_END_OF_INPUT;
+      }
+      int bytesToRead = min(readLength, bytesLoaded - position);
+      System.arraycopy(data, position, buffer, offset, bytesToRead);
+      return bytesToRead;
+    }
+
+    @Override
+    public void run() {
+      boolean complete = false;
+      try {
+        if (canceled) {
+          return;
+        }
+        long responseLength = upstream.open(dataSpec);
+        byte[] data =
+            new byte
+                [responseLength != C.LENGTH_UNSET
+                    ? (int) min(responseLength, maxBytes)
+                    : min(INITIAL_BUFFER_SIZE, maxBytes)];
+        synchronized (this) {
+          length = responseLength;
+          uri = upstream.getUri();
+          responseHeaders = upstream.getResponseHeaders();
+          this.data = data;
+          opened = true;
+          notifyAll();
+        }
+        int loaded = 0;
+        while (!canceled) {
+          if (loaded == data.length) {
+            if (loaded == responseLength) {
+              complete = true;
+              break;
+            } else if (loaded == maxBytes) {
+              break;
+            }
+            data = Arrays.copyOf(data, min(data.length * 2, maxBytes));
+          }
+          int bytesRead = upstream.read(data, loaded, data.length - loaded);
+          if (bytesRead == C.RESULT_END_OF_INPUT) {
+            complete = responseLength == C.LENGTH_UNSET;
+            break;
+          }
+          loaded += bytesRead;
+          synchronized (this) {
+            this.data = data;
+            bytesLoaded = loaded;
+            notifyAll();
+          }
+        }
+      } catch (IOException e) {
+        // Ignore. The data that wasn't loaded is requested again when it's read.
+      } finally {
+        Util.closeQuietly(upstream);
+        synchronized (this) {
+          this.complete = complete;
+          finished = true;
+          notifyAll();
+        }
+      }
+    }
+  }
+}
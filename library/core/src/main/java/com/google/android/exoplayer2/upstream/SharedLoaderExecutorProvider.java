@@ -0,0 +1,177 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+
+import androidx.annotation.GuardedBy;
+import androidx.annotation.Nullable;
+import java.util.ArrayDeque;
+import java.util.concurrent.PriorityBlockingQueue;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * A {@link LoaderExecutorProvider} that runs the loads of all {@link Loader Loaders} on a shared,
+ * bounded pool of threads.
+ *
+ * <p>The tasks of each {@link Loader} are still run one at a time and in order. When more {@link
+ * Loader Loaders} have pending tasks than there are idle threads, tasks of {@link Loader Loaders}
+ * with a higher {@link LoaderExecutorProvider.Priority} are run first, and tasks of the same
+ * priority are run in the order in which they became ready.
+ *
+ * <p>Some loads, such as those of progressive streams, block their thread whilst the player isn't
+ * loading. The maximum number of threads should therefore be larger than the number of such loads
+ * that may be in progress at the same time, else other loads may be delayed until one of them is
+ * canceled.
+ */
+public final class SharedLoaderExecutorProvider implements LoaderExecutorProvider {
+
+  /** The default time after which idle threads are terminated, in milliseconds. */
+  public static final long DEFAULT_KEEP_ALIVE_TIME_MS = 10_000;
+
+  private static final String THREAD_NAME_PREFIX = "ExoPlayer:Loader:";
+
+  private final ThreadPoolExecutor threadPool;
+  private final AtomicLong nextSequenceNumber;
+
+  /**
+   * Creates an instance that terminates idle threads after {@link #DEFAULT_KEEP_ALIVE_TIME_MS}.
+   *
+   * @param maxThreadCount The maximum number of threads on which loads are run.
+   */
+  public SharedLoaderExecutorProvider(int maxThreadCount) {
+    this(maxThreadCount, DEFAULT_KEEP_ALIVE_TIME_MS);
+  }
+
+  /**
+   * @param maxThreadCount The maximum number of threads on which loads are run.
+   * @param keepAliveTimeMs The time after which idle threads are terminated, in milliseconds.
+   */
+  public SharedLoaderExecutorProvider(int maxThreadCount, long keepAliveTimeMs) {
+    checkArgument(maxThreadCount > 0);
+    AtomicInteger threadCount = new AtomicInteger();
+    threadPool =
+        new ThreadPoolExecutor(
+            maxThreadCount,
+            maxThreadCount,
+            keepAliveTimeMs,
+            TimeUnit.MILLISECONDS,
+            new PriorityBlockingQueue<>(),
+            runnable -> new Thread(runnable, THREAD_NAME_PREFIX + threadCount.incrementAndGet()));
+    threadPool.allowCoreThreadTimeOut(true);
+    nextSequenceNumber = new AtomicLong();
+  }
+
+  @Override
+  public LoaderExecutor createLoaderExecutor(String threadName, @Priority int priority) {
+    return new SerialLoaderExecutor(threadName, priority);
+  }
+
+  private final class SerialLoaderExecutor implements LoaderExecutor {
+
+    private final String threadName;
+    private final @Priority int priority;
+
+    @GuardedBy("this")
+    private final ArrayDeque<Runnable> pendingTasks;
+
+    @GuardedBy("this")
+    private boolean scheduled;
+
+    @GuardedBy("this")
+    private boolean released;
+
+    public SerialLoaderExecutor(String threadName, @Priority int priority) {
+      this.threadName = threadName;
+      this.priority = priority;
+      pendingTasks = new ArrayDeque<>();
+    }
+
+    @Override
+    public synchronized void execute(Runnable task) {
+      if (released) {
+        throw new RejectedExecutionException("Loader executor released: " + threadName);
+      }
+      pendingTasks.add(task);
+      maybeScheduleNextTask();
+    }
+
+    @Override
+    public synchronized void release() {
+      released = true;
+    }
+
+    @GuardedBy("this")
+    private void maybeScheduleNextTask() {
+      if (!scheduled && !pendingTasks.isEmpty()) {
+        scheduled = true;
+        threadPool.execute(new PoolTask(this, nextSequenceNumber.getAndIncrement()));
+      }
+    }
+
+    private void runNextTask() {
+      @Nullable Runnable task;
+      synchronized (this) {
+        task = pendingTasks.poll();
+      }
+      Thread thread = Thread.currentThread();
+      String poolThreadName = thread.getName();
+      thread.setName(threadName);
+      try {
+        if (task != null) {
+          task.run();
+        }
+      } finally {
+        thread.setName(poolThreadName);
+        // Only one task of this executor is run at a time, so the next task is handed to the pool
+        // once this one has finished. Handing over a single task at a time means tasks of other
+        // executors with a higher priority can run in between.
+        synchronized (this) {
+          scheduled = false;
+          maybeScheduleNextTask();
+        }
+      }
+    }
+  }
+
+  private static final class PoolTask implements Runnable, Comparable<PoolTask> {
+
+    private final SerialLoaderExecutor executor;
+    private final long sequenceNumber;
+
+    public PoolTask(SerialLoaderExecutor executor, long sequenceNumber) {
+      this.executor = executor;
+      this.sequenceNumber = sequenceNumber;
+    }
+
+    @Override
+    public void run() {
+      executor.runNextTask();
+    }
+
+    @Override
+    public int compareTo(PoolTask other) {
+      if (executor.priority != other.executor.priority) {
+        return executor.priority < other.executor.priority ? -1 : 1;
+      }
+      return Long.compare(sequenceNumber, other.sequenceNumber);
+    }
+  }
+}
@@ -0,0 +1,395 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A registry of named counters and histograms that the library updates from its hot paths, for
+ * example the duration of each playback loop iteration, the time loads wait for a loader thread or
+ * the number of buffers queued to a codec.
+ *
+ * <p>Metrics are only recorded while the registry is {@link #setEnabled(boolean) enabled}. Call
+ * sites check {@link #isEnabled()} before measuring anything, so a disabled registry costs a single
+ * branch per call site. Counters and histograms are lock-free and can be updated from any thread.
+ *
+ * <p>The recorded values can be read with an {@link Exporter}, or dumped with {@link #dumpText()}
+ * and {@link #dumpJson()}.
+ */
+public final class MetricsRegistry {
+
+  /** Receives the values of a registry's metrics. */
+  public interface Exporter {
+
+    /**
+     * Called for each counter of the registry, in order of name.
+     *
+     * @param name The name of the counter.
+     * @param value The value of the counter.
+     */
+    void exportCounter(String name, long value);
+
+    /**
+     * Called for each histogram of the registry, in order of name.
+     *
+     * @param name The name of the histogram.
+     * @param histogram The {@link Histogram}.
+     */
+    void exportHistogram(String name, Histogram histogram);
+  }
+
+  /** A counter that can be incremented from any thread. */
+  public static final class Counter {
+
+    private final AtomicLong value;
+
+    private Counter() {
+      value = new AtomicLong();
+    }
+
+    /** Increments the counter by one. */
+    public void increment() {
+      value.incrementAndGet();
+    }
+
+    /** Adds {@code delta} to the counter. */
+    public void add(long delta) {
+      value.addAndGet(delta);
+    }
+
+    /** Returns the value of the counter. */
+    public long get() {
+      return value.get();
+    }
+
+    private void reset() {
+      value.set(0);
+    }
+  }
+
+  /**
+   * A histogram of non-negative values that can be updated from any thread.
+   *
+   * <p>Values are counted in buckets whose width grows with the magnitude of the values, like in
+   * an HDR histogram. Values below {@code 8} are recorded exactly, and larger values with a
+   * relative error of less than 12.5%, using less than 4 KB of memory for the full {@code long}
+   * range.
+   */
+  public static final class Histogram {
+
+    private static final int SUB_BUCKET_BITS = 3;
+    private static final int SUB_BUCKET_COUNT = 1 << SUB_BUCKET_BITS;
+    private static final int SUB_BUCKET_MASK = SUB_BUCKET_COUNT - 1;
+    private static final int BUCKET_COUNT = getBucketIndex(Long.MAX_VALUE) + 1;
+
+    private final AtomicLongArray bucketCounts;
+    private final AtomicLong count;
+    private final AtomicLong sum;
+    private final AtomicLong min;
+    private final AtomicLong max;
+
+    private Histogram() {
+      bucketCounts = new AtomicLongArray(BUCKET_COUNT);
+      count = new AtomicLong();
+      sum = new AtomicLong();
+      min = new AtomicLong(Long.MAX_VALUE);
+      max = new AtomicLong(Long.MIN_VALUE);
+    }
+
+    /**
+     * Records a value.
+     *
+     * @param value The value to record. Negative values are recorded as 0.
+     */
+    public void record(long value) {
+      value = max(0, value);
+      bucketCounts.incrementAndGet(getBucketIndex(value));
+      count.incrementAndGet();
+      sum.addAndGet(value);
+      long currentMin;
+      do {
+        currentMin = min.get();
+      } while (value < currentMin && !min.compareAndSet(currentMin, value));
+      long currentMax;
+      do {
+        currentMax = max.get();
+      } while (value > currentMax && !max.compareAndSet(currentMax, value));
+    }
+
+    /** Returns the number of recorded values. */
+    public long getCount() {
+      return count.get();
+    }
+
+    /** Returns the sum of the recorded values. */
+    public long getSum() {
+      return sum.get();
+    }
+
+    /** Returns the smallest recorded value, or 0 if no values have been recorded. */
+    public long getMin() {
+      long min = this.min.get();
+      return min == Long.MAX_VALUE ? 0 : min;
+    }
+
+    /** Returns the largest recorded value, or 0 if no values have been recorded. */
+    public long getMax() {
+      long max = this.max.get();
+      return max == Long.MIN_VALUE ? 0 : max;
+    }
+
+    /** Returns the mean of the recorded values, or 0 if no values have been recorded. */
+    public double getMean() {
+      long count = getCount();
+      return count == 0 ? 0 : (double) getSum() / count;
+    }
+
+    /**
+     * Returns an upper bound of the value at a given percentile, or 0 if no values have been
+     * recorded. The bound is within the resolution of the histogram.
+     *
+     * @param percentile The percentile, between 0 and 100.
+     */
+    public long getValueAtPercentile(double percentile) {
+      Assertions.checkArgument(percentile >= 0 && percentile <= 100);
+      long[] counts = new long[BUCKET_COUNT];
+      long totalCount = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        counts[i] = bucketCounts.get(i);
+        totalCount += counts[i];
+      }
+      if (totalCount == 0) {
+        return 0;
+      }
+      long targetCount = max(1, (long) Math.ceil(percentile / 100 * totalCount));
+      long cumulativeCount = 0;
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        cumulativeCount += counts[i];
+        if (cumulativeCount >= targetCount) {
+          return min(getBucketHighestValue(i), getMax());
+        }
+      }
+      return getMax();
+    }
+
+    private void reset() {
+      for (int i = 0; i < BUCKET_COUNT; i++) {
+        bucketCounts.set(i, 0);
+      }
+      count.set(0);
+      sum.set(0);
+      min.set(Long.MAX_VALUE);
+      max.set(Long.MIN_VALUE);
+    }
+
+    private static int getBucketIndex(long value) {
+      if (value < SUB_BUCKET_COUNT) {
+        return (int) value;
+      }
+      int magnitude = 63 - Long.numberOfLeadingZeros(value);
+      int shift = magnitude - SUB_BUCKET_BITS;
+      return ((shift + 1) << SUB_BUCKET_BITS) + (int) ((value >>> shift) & SUB_BUCKET_MASK);
+    }
+
+    private static long getBucketHighestValue(int index) {
+      if (index < SUB_BUCKET_COUNT) {
+        return index;
+      }
+      int shift = (index >>> SUB_BUCKET_BITS) - 1;
+      long lowestValue = (long) (SUB_BUCKET_COUNT + (index & SUB_BUCKET_MASK)) << shift;
+      return lowestValue + (1L << shift) - 1;
+    }
+  }
+
+  /** The registry that the library records its metrics to. */
+  public static final MetricsRegistry DEFAULT = new MetricsRegistry();
+
+  private final Map<String, Counter> counters;
+  private final Map<String, Histogram> histograms;
+
+  private volatile boolean enabled;
+
+  /** Creates a disabled registry without metrics. */
+  public MetricsRegistry() {
+    counters = new TreeMap<>();
+    histograms = new TreeMap<>();
+  }
+
+  /** Sets whether metrics are recorded. Metrics are not recorded by default. */
+  public void setEnabled(boolean enabled) {
+    this.enabled = enabled;
+  }
+
+  /** Returns whether metrics are recorded. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /**
+   * Returns the counter with the given name, creating it if necessary.
+   *
+   * <p>Call sites should look up their counters once and keep a reference to them, rather than
+   * looking them up each time they are updated.
+   */
+  public synchronized Counter getCounter(String name) {
+    Counter counter = counters.get(name);
+    if (counter == null) {
+      counter = new Counter();
+      counters.put(name, counter);
+    }
+    return counter;
+  }
+
+  /**
+   * Returns the histogram with the given name, creating it if necessary.
+   *
+   * <p>Call sites should look up their histograms once and keep a reference to them, rather than
+   * looking them up each time they are updated.
+   */
+  public synchronized Histogram getHistogram(String name) {
+    Histogram histogram = histograms.get(name);
+    if (histogram == null) {
+      histogram = new Histogram();
+      histograms.put(name, histogram);
+    }
+    return histogram;
+  }
+
+  /** Resets all counters and histograms. */
+  public synchronized void reset() {
+    for (Counter counter : counters.values()) {
+      counter.reset();
+    }
+    for (Histogram histogram : histograms.values()) {
+      histogram.reset();
+    }
+  }
+
+  /**
+   * Passes the current values of all metrics to an {@link Exporter}, counters first, each in order
+   * of name. Values that are recorded concurrently may or may not be included.
+   */
+  public void export(Exporter exporter) {
+    List<Map.Entry<String, Counter>> counterEntries;
+    List<Map.Entry<String, Histogram>> histogramEntries;
+    synchronized (this) {
+      counterEntries = new ArrayList<>(counters.entrySet());
+      histogramEntries = new ArrayList<>(histograms.entrySet());
+    }
+    for (Map.Entry<String, Counter> entry : counterEntries) {
+      exporter.exportCounter(entry.getKey(), entry.getValue().get());
+    }
+    for (Map.Entry<String, Histogram> entry : histogramEntries) {
+      exporter.exportHistogram(entry.getKey(), entry.getValue());
+    }
+  }
+
+  /** Returns the current values of all metrics as human-readable text, one metric per line. */
+  public String dumpText() {
+    StringBuilder builder = new StringBuilder();
+    export(
+        new Exporter() {
+          @Override
+          public void exportCounter(String name, long value) {
+            builder.append(name).append(' ').append(value).append('\n');
+          }
+
+          @Override
+          public void exportHistogram(String name, Histogram histogram) {
+            builder
+                .append(name)
+                .append(
+                    Util.formatInvariant(
+                        " count=%d min=%d p50=%d p90=%d p99=%d max=%d mean=%.2f\n",
+                        histogram.getCount(),
+                        histogram.getMin(),
+                        histogram.getValueAtPercentile(50),
+                        histogram.getValueAtPercentile(90),
+                        histogram.getValueAtPercentile(99),
+                        histogram.getMax(),
+                        histogram.getMean()));
+          }
+        });
+    return builder.toString();
+  }
+
+  /**
+   * Returns the current values of all metrics as a JSON object with a {@code counters} object
+   * mapping counter names to values, and a {@code histograms} object mapping histogram names to
+   * objects with their count, sum, min, p50, p90, p99 and max values.
+   */
+  public String dumpJson() {
+    StringBuilder counterBuilder = new StringBuilder();
+    StringBuilder histogramBuilder = new StringBuilder();
+    export(
+        new Exporter() {
+          @Override
+          public void exportCounter(String name, long value) {
+            if (counterBuilder.length() > 0) {
+              counterBuilder.append(',');
+            }
+            appendJsonString(counterBuilder, name).append(':').append(value);
+          }
+
+          @Override
+          public void exportHistogram(String name, Histogram histogram) {
+            if (histogramBuilder.length() > 0) {
+              histogramBuilder.append(',');
+            }
+            appendJsonString(histogramBuilder, name)
+                .append(":{\"count\":")
+                .append(histogram.getCount())
+                .append(",\"sum\":")
+                .append(histogram.getSum())
+                .append(",\"min\":")
+                .append(histogram.getMin())
+                .append(",\"p50\":")
+                .append(histogram.getValueAtPercentile(50))
+                .append(",\"p90\":")
+                .append(histogram.getValueAtPercentile(90))
+                .append(",\"p99\":")
+                .append(histogram.getValueAtPercentile(99))
+                .append(",\"max\":")
+                .append(histogram.getMax())
+                .append('}');
+          }
+        });
+    return "{\"counters\":{" + counterBuilder + "},\"histograms\":{" + histogramBuilder + "}}";
+  }
+
+  private static StringBuilder appendJsonString(StringBuilder builder, String value) {
+    builder.append('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        builder.append('\\').append(c);
+      } else if (c < 0x20) {
+        builder.append(Util.formatInvariant("\\u%04x", (int) c));
+      } else {
+        builder.append(c);
+      }
+    }
+    return builder.append('"');
+  }
+}
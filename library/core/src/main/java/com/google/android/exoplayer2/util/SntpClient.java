@@ -22,6 +22,7 @@ import com.google.android.exoplayer2.C;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
 import com.google.android.exoplayer2.upstream.Loader.Loadable;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider;
 import java.io.IOException;
 import java.net.DatagramPacket;
 import java.net.DatagramSocket;
@@ -122,7 +123,7 @@ public final class SntpClient {
       return;
     }
     if (loader == null) {
-      loader = new Loader("SntpClient");
+      loader = new Loader("SntpClient", LoaderExecutorProvider.PRIORITY_BACKGROUND);
     }
     loader.startLoading(
         new NtpTimeLoadable(), new NtpTimeCallback(callback), /* defaultMinRetryCount= */ 1);
@@ -0,0 +1,301 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.android.exoplayer2.util.Util.castNonNull;
+import static java.lang.Math.min;
+
+import androidx.annotation.Nullable;
+import java.io.IOException;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import org.checkerframework.checker.nullness.compatqual.NullableType;
+
+/**
+ * Records timed spans and instant events of the playback pipeline into a preallocated ring buffer,
+ * so that they can be exported in the Chrome trace event format and viewed in {@code
+ * chrome://tracing} or Perfetto.
+ *
+ * <p>Unlike {@link TraceUtil}, which writes to the Android systrace, the recorder keeps the events
+ * in process, so they can be captured in the field and in JVM tests. The library records to {@link
+ * #DEFAULT} the playback loop and {@link com.google.android.exoplayer2.Renderer#render(long, long)
+ * render} calls, loads, sample queue writes and codec buffer queueing and releases.
+ *
+ * <p>The recorder is stopped by default. Call sites check {@link #isEnabled()} before measuring
+ * anything, so a stopped recorder costs a single branch per call site. Once the ring buffer is
+ * full, the oldest events are overwritten.
+ */
+public final class TraceRecorder {
+
+  /** The default number of events kept by a started recorder. */
+  public static final int DEFAULT_CAPACITY = 16_384;
+
+  /** The recorder that the library records its events to. */
+  public static final TraceRecorder DEFAULT = new TraceRecorder();
+
+  private static final byte TYPE_SPAN = 0;
+  private static final byte TYPE_INSTANT = 1;
+  private static final byte TYPE_SPAN_WITH_VALUE = 2;
+  private static final byte TYPE_INSTANT_WITH_VALUE = 3;
+
+  private volatile boolean enabled;
+
+  @Nullable private EventBuffer eventBuffer;
+  private int nextIndex;
+  private int eventCount;
+
+  /**
+   * Starts recording into a ring buffer of {@link #DEFAULT_CAPACITY} events, discarding any
+   * previously recorded events.
+   */
+  public void start() {
+    start(DEFAULT_CAPACITY);
+  }
+
+  /**
+   * Starts recording into a ring buffer of {@code capacity} events, discarding any previously
+   * recorded events.
+   *
+   * @param capacity The maximum number of events to keep.
+   */
+  public synchronized void start(int capacity) {
+    Assertions.checkArgument(capacity > 0);
+    if (eventBuffer == null || eventBuffer.capacity != capacity) {
+      eventBuffer = new EventBuffer(capacity);
+    }
+    nextIndex = 0;
+    eventCount = 0;
+    enabled = true;
+  }
+
+  /** Stops recording. The recorded events are kept until the recorder is started again. */
+  public void stop() {
+    enabled = false;
+  }
+
+  /** Returns whether events are being recorded. */
+  public boolean isEnabled() {
+    return enabled;
+  }
+
+  /** Returns the number of recorded events that are kept in the ring buffer. */
+  public synchronized int getEventCount() {
+    return eventCount;
+  }
+
+  /**
+   * Records a span that started at {@code startTimeNs} and ends now.
+   *
+   * @param category The category of the span.
+   * @param name The name of the span.
+   * @param startTimeNs The start time of the span, as returned by {@link System#nanoTime()}.
+   */
+  public void recordSpan(String category, String name, long startTimeNs) {
+    record(TYPE_SPAN, category, name, startTimeNs, System.nanoTime(), /* value= */ 0);
+  }
+
+  /**
+   * Records a span with a value that started at {@code startTimeNs} and ends now.
+   *
+   * @param category The category of the span.
+   * @param name The name of the span.
+   * @param startTimeNs The start time of the span, as returned by {@link System#nanoTime()}.
+   * @param value A value associated with the span, for example a number of bytes.
+   */
+  public void recordSpan(String category, String name, long startTimeNs, long value) {
+    record(TYPE_SPAN_WITH_VALUE, category, name, startTimeNs, System.nanoTime(), value);
+  }
+
+  /**
+   * Records an instant event that happens now.
+   *
+   * @param category The category of the event.
+   * @param name The name of the event.
+   */
+  public void recordInstant(String category, String name) {
+    long timeNs = System.nanoTime();
+    record(TYPE_INSTANT, category, name, timeNs, timeNs, /* value= */ 0);
+  }
+
+  /**
+   * Records an instant event with a value that happens now.
+   *
+   * @param category The category of the event.
+   * @param name The name of the event.
+   * @param value A value associated with the event, for example a presentation time.
+   */
+  public void recordInstant(String category, String name, long value) {
+    long timeNs = System.nanoTime();
+    record(TYPE_INSTANT_WITH_VALUE, category, name, timeNs, timeNs, value);
+  }
+
+  /** Returns the recorded events as a JSON object in the Chrome trace event format. */
+  public String getChromeTraceJson() {
+    StringWriter writer = new StringWriter();
+    try {
+      writeChromeTraceJson(writer);
+    } catch (IOException e) {
+      // Never happens.
+      throw new IllegalStateException(e);
+    }
+    return writer.toString();
+  }
+
+  /**
+   * Writes the recorded events as a JSON object in the Chrome trace event format.
+   *
+   * <p>The events are copied before they're written, so recording isn't blocked while writing.
+   *
+   * @param writer The {@link Writer} to write to.
+   * @throws IOException If an error occurs writing to the writer.
+   */
+  public void writeChromeTraceJson(Writer writer) throws IOException {
+    @Nullable EventBuffer eventBuffer = copyEvents();
+    writer.write("{\"traceEvents\":[");
+    if (eventBuffer != null) {
+      Map<Long, String> threadNamesById = new LinkedHashMap<>();
+      for (int index = 0; index < eventBuffer.capacity; index++) {
+        byte type = eventBuffer.types[index];
+        boolean isSpan = type == TYPE_SPAN || type == TYPE_SPAN_WITH_VALUE;
+        if (index > 0) {
+          writer.write(',');
+        }
+        writer.write("{\"name\":");
+        writeJsonString(writer, castNonNull(eventBuffer.names[index]));
+        writer.write(",\"cat\":");
+        writeJsonString(writer, castNonNull(eventBuffer.categories[index]));
+        writer.write(isSpan ? ",\"ph\":\"X\"" : ",\"ph\":\"i\",\"s\":\"t\"");
+        writer.write(",\"ts\":" + eventBuffer.timestampsUs[index]);
+        if (isSpan) {
+          writer.write(",\"dur\":" + eventBuffer.durationsUs[index]);
+        }
+        writer.write(",\"pid\":0,\"tid\":" + eventBuffer.threadIds[index]);
+        if (type == TYPE_SPAN_WITH_VALUE || type == TYPE_INSTANT_WITH_VALUE) {
+          writer.write(",\"args\":{\"value\":" + eventBuffer.values[index] + "}");
+        }
+        writer.write('}');
+        threadNamesById.put(
+            eventBuffer.threadIds[index], castNonNull(eventBuffer.threadNames[index]));
+      }
+      for (Map.Entry<Long, String> entry : threadNamesById.entrySet()) {
+        writer.write(',');
+        writer.write("{\"name\":\"thread_name\",\"ph\":\"M\",\"pid\":0,\"tid\":" + entry.getKey());
+        writer.write(",\"args\":{\"name\":");
+        writeJsonString(writer, entry.getValue());
+        writer.write("}}");
+      }
+    }
+    writer.write("],\"displayTimeUnit\":\"ms\"}");
+  }
+
+  /** Returns a copy of the recorded events ordered from oldest to newest, or null if none. */
+  @Nullable
+  private synchronized EventBuffer copyEvents() {
+    @Nullable EventBuffer eventBuffer = this.eventBuffer;
+    if (eventBuffer == null) {
+      return null;
+    }
+    EventBuffer copy = new EventBuffer(eventCount);
+    int capacity = eventBuffer.capacity;
+    int firstIndex = nextIndex - eventCount + (nextIndex < eventCount ? capacity : 0);
+    // Copy the events up to the end of the ring buffer, then the ones wrapped to its start.
+    int firstPartLength = min(eventCount, capacity - firstIndex);
+    copy.copyFrom(eventBuffer, firstIndex, /* toIndex= */ 0, firstPartLength);
+    copy.copyFrom(
+        eventBuffer,
+        /* fromIndex= */ 0,
+        /* toIndex= */ firstPartLength,
+        /* length= */ eventCount - firstPartLength);
+    return copy;
+  }
+
+  private synchronized void record(
+      byte type, String category, String name, long startTimeNs, long endTimeNs, long value) {
+    @Nullable EventBuffer eventBuffer = this.eventBuffer;
+    if (!enabled || eventBuffer == null) {
+      return;
+    }
+    Thread thread = Thread.currentThread();
+    int index = nextIndex;
+    eventBuffer.types[index] = type;
+    eventBuffer.categories[index] = category;
+    eventBuffer.names[index] = name;
+    eventBuffer.timestampsUs[index] = startTimeNs / 1000;
+    eventBuffer.durationsUs[index] = (endTimeNs - startTimeNs) / 1000;
+    eventBuffer.values[index] = value;
+    eventBuffer.threadIds[index] = thread.getId();
+    eventBuffer.threadNames[index] = thread.getName();
+    nextIndex = (index + 1) % eventBuffer.capacity;
+    if (eventCount < eventBuffer.capacity) {
+      eventCount++;
+    }
+  }
+
+  private static void writeJsonString(Writer writer, String value) throws IOException {
+    writer.write('"');
+    for (int i = 0; i < value.length(); i++) {
+      char c = value.charAt(i);
+      if (c == '"' || c == '\\') {
+        writer.write('\\');
+        writer.write(c);
+      } else if (c < 0x20) {
+        writer.write(Util.formatInvariant("\\u%04x", (int) c));
+      } else {
+        writer.write(c);
+      }
+    }
+    writer.write('"');
+  }
+
+  private static final class EventBuffer {
+
+    public final int capacity;
+    public final byte[] types;
+    public final @NullableType String[] categories;
+    public final @NullableType String[] names;
+    public final long[] timestampsUs;
+    public final long[] durationsUs;
+    public final long[] values;
+    public final long[] threadIds;
+    public final @NullableType String[] threadNames;
+
+    public EventBuffer(int capacity) {
+      this.capacity = capacity;
+      types = new byte[capacity];
+      categories = new String[capacity];
+      names = new String[capacity];
+      timestampsUs = new long[capacity];
+      durationsUs = new long[capacity];
+      values = new long[capacity];
+      threadIds = new long[capacity];
+      threadNames = new String[capacity];
+    }
+
+    /** Copies {@code length} events from {@code fromIndex} in {@code other} to {@code toIndex}. */
+    public void copyFrom(EventBuffer other, int fromIndex, int toIndex, int length) {
+      System.arraycopy(other.types, fromIndex, types, toIndex, length);
+      System.arraycopy(other.categories, fromIndex, categories, toIndex, length);
+      System.arraycopy(other.names, fromIndex, names, toIndex, length);
+      System.arraycopy(other.timestampsUs, fromIndex, timestampsUs, toIndex, length);
+      System.arraycopy(other.durationsUs, fromIndex, durationsUs, toIndex, length);
+      System.arraycopy(other.values, fromIndex, values, toIndex, length);
+      System.arraycopy(other.threadIds, fromIndex, threadIds, toIndex, length);
+      System.arraycopy(other.threadNames, fromIndex, threadNames, toIndex, length);
+    }
+  }
+}
@@ -57,6 +57,7 @@ import com.google.android.exoplayer2.mediacodec.MediaFormatUtil;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Log;
 import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.TraceRecorder;
 import com.google.android.exoplayer2.util.TraceUtil;
 import com.google.android.exoplayer2.util.Util;
 import com.google.android.exoplayer2.video.VideoRendererEventListener.EventDispatcher;
@@ -961,6 +962,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     TraceUtil.beginSection("skipVideoBuffer");
     codec.releaseOutputBuffer(index, false);
     TraceUtil.endSection();
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("codec", "skipVideoBuffer", presentationTimeUs);
+    }
     decoderCounters.skippedOutputBufferCount++;
   }
 
@@ -975,6 +979,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     TraceUtil.beginSection("dropVideoBuffer");
     codec.releaseOutputBuffer(index, false);
     TraceUtil.endSection();
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("codec", "dropVideoBuffer", presentationTimeUs);
+    }
     updateDroppedBufferCounters(1);
   }
 
@@ -1057,6 +1064,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     TraceUtil.beginSection("releaseOutputBuffer");
     codec.releaseOutputBuffer(index, true);
     TraceUtil.endSection();
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("codec", "releaseOutputBuffer", presentationTimeUs);
+    }
     lastRenderTimeUs = SystemClock.elapsedRealtime() * 1000;
     decoderCounters.renderedOutputBufferCount++;
     consecutiveDroppedFrameCount = 0;
@@ -1079,6 +1089,9 @@ public class MediaCodecVideoRenderer extends MediaCodecRenderer {
     TraceUtil.beginSection("releaseOutputBuffer");
     codec.releaseOutputBuffer(index, releaseTimeNs);
     TraceUtil.endSection();
+    if (TraceRecorder.DEFAULT.isEnabled()) {
+      TraceRecorder.DEFAULT.recordInstant("codec", "releaseOutputBuffer", presentationTimeUs);
+    }
     lastRenderTimeUs = SystemClock.elapsedRealtime() * 1000;
     decoderCounters.renderedOutputBufferCount++;
     consecutiveDroppedFrameCount = 0;
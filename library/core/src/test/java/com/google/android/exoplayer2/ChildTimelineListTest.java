@@ -0,0 +1,171 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.lang.Math.min;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.util.Util;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Random;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ChildTimelineList}. */
+@RunWith(AndroidJUnit4.class)
+public final class ChildTimelineListTest {
+
+  @Test
+  public void emptyList_hasNoChildren() {
+    ChildTimelineList list = ChildTimelineList.EMPTY;
+
+    assertThat(list.isEmpty()).isTrue();
+    assertThat(list.size()).isEqualTo(0);
+    assertThat(list.getWindowCount()).isEqualTo(0);
+    assertThat(list.getPeriodCount()).isEqualTo(0);
+    assertThat(list.getIndexOfUid(new Object())).isEqualTo(C.INDEX_UNSET);
+  }
+
+  @Test
+  public void add_translatesIndicesIncludingEmptyChildren() {
+    Object uid1 = new Object();
+    Object uid2 = new Object();
+    Object uid3 = new Object();
+    Timeline timeline1 = createTimeline(/* windowCount= */ 2, /* periodsPerWindow= */ 1);
+    Timeline timeline2 = Timeline.EMPTY;
+    Timeline timeline3 = createTimeline(/* windowCount= */ 1, /* periodsPerWindow= */ 3);
+
+    ChildTimelineList list =
+        ChildTimelineList.EMPTY
+            .add(uid3, timeline3)
+            .add(/* index= */ 0, uid1, timeline1)
+            .add(/* index= */ 1, uid2, timeline2);
+
+    assertThat(list.size()).isEqualTo(3);
+    assertThat(list.getWindowCount()).isEqualTo(3);
+    assertThat(list.getPeriodCount()).isEqualTo(5);
+    assertThat(list.getUid(1)).isSameInstanceAs(uid2);
+    assertThat(list.getTimeline(2)).isSameInstanceAs(timeline3);
+    assertThat(list.getIndexOfUid(uid3)).isEqualTo(2);
+    assertThat(list.getFirstWindowIndex(2)).isEqualTo(2);
+    assertThat(list.getFirstPeriodIndex(2)).isEqualTo(2);
+    assertThat(list.getIndexOfWindow(1)).isEqualTo(0);
+    assertThat(list.getIndexOfWindow(2)).isEqualTo(2);
+    assertThat(list.getIndexOfPeriod(4)).isEqualTo(2);
+  }
+
+  @Test
+  public void modifications_doNotChangeOriginalList() {
+    Object uid1 = new Object();
+    Object uid2 = new Object();
+    Timeline timeline = createTimeline(/* windowCount= */ 1, /* periodsPerWindow= */ 1);
+    ChildTimelineList list = ChildTimelineList.EMPTY.add(uid1, timeline).add(uid2, timeline);
+
+    ChildTimelineList removedList = list.remove(0);
+    ChildTimelineList movedList = list.move(/* fromIndex= */ 1, /* toIndex= */ 2, 0);
+    ChildTimelineList updatedList =
+        list.set(1, createTimeline(/* windowCount= */ 3, /* periodsPerWindow= */ 1));
+
+    assertThat(list.size()).isEqualTo(2);
+    assertThat(list.getIndexOfUid(uid1)).isEqualTo(0);
+    assertThat(list.getWindowCount()).isEqualTo(2);
+    assertThat(removedList.getIndexOfUid(uid1)).isEqualTo(C.INDEX_UNSET);
+    assertThat(removedList.getIndexOfUid(uid2)).isEqualTo(0);
+    assertThat(movedList.getIndexOfUid(uid1)).isEqualTo(1);
+    assertThat(movedList.getIndexOfUid(uid2)).isEqualTo(0);
+    assertThat(updatedList.getWindowCount()).isEqualTo(4);
+  }
+
+  @Test
+  public void randomModifications_matchReferenceList() {
+    Random random = new Random(/* seed= */ 0);
+    ChildTimelineList list = ChildTimelineList.EMPTY;
+    List<Object> uids = new ArrayList<>();
+    List<Timeline> timelines = new ArrayList<>();
+    for (int i = 0; i < 2000; i++) {
+      int size = uids.size();
+      int operation = size == 0 ? 0 : random.nextInt(4);
+      if (operation == 0) {
+        // Insert at the same position repeatedly to exhaust the space between order labels.
+        int index = i % 3 == 0 ? min(size, 1) : random.nextInt(size + 1);
+        Object uid = new Object();
+        Timeline timeline = createTimeline(random.nextInt(3), /* periodsPerWindow= */ 2);
+        list = list.add(index, uid, timeline);
+        uids.add(index, uid);
+        timelines.add(index, timeline);
+      } else if (operation == 1) {
+        int index = random.nextInt(size);
+        list = list.remove(index);
+        uids.remove(index);
+        timelines.remove(index);
+      } else if (operation == 2) {
+        int fromIndex = random.nextInt(size);
+        int toIndex = fromIndex + random.nextInt(size - fromIndex + 1);
+        int newFromIndex = random.nextInt(size - (toIndex - fromIndex) + 1);
+        list = list.move(fromIndex, toIndex, newFromIndex);
+        Util.moveItems(uids, fromIndex, toIndex, newFromIndex);
+        Util.moveItems(timelines, fromIndex, toIndex, newFromIndex);
+      } else {
+        int index = random.nextInt(size);
+        Timeline timeline = createTimeline(random.nextInt(3), /* periodsPerWindow= */ 1);
+        list = list.set(index, timeline);
+        timelines.set(index, timeline);
+      }
+    }
+
+    assertListEquals(list, uids, timelines);
+  }
+
+  private static void assertListEquals(
+      ChildTimelineList list, List<Object> uids, List<Timeline> timelines) {
+    assertThat(list.size()).isEqualTo(uids.size());
+    int firstWindowIndex = 0;
+    int firstPeriodIndex = 0;
+    for (int i = 0; i < uids.size(); i++) {
+      Timeline timeline = timelines.get(i);
+      assertThat(list.getUid(i)).isSameInstanceAs(uids.get(i));
+      assertThat(list.getTimeline(i)).isSameInstanceAs(timeline);
+      assertThat(list.getIndexOfUid(uids.get(i))).isEqualTo(i);
+      assertThat(list.getFirstWindowIndex(i)).isEqualTo(firstWindowIndex);
+      assertThat(list.getFirstPeriodIndex(i)).isEqualTo(firstPeriodIndex);
+      for (int j = 0; j < timeline.getWindowCount(); j++) {
+        assertThat(list.getIndexOfWindow(firstWindowIndex + j)).isEqualTo(i);
+      }
+      for (int j = 0; j < timeline.getPeriodCount(); j++) {
+        assertThat(list.getIndexOfPeriod(firstPeriodIndex + j)).isEqualTo(i);
+      }
+      firstWindowIndex += timeline.getWindowCount();
+      firstPeriodIndex += timeline.getPeriodCount();
+    }
+    assertThat(list.getWindowCount()).isEqualTo(firstWindowIndex);
+    assertThat(list.getPeriodCount()).isEqualTo(firstPeriodIndex);
+  }
+
+  private static Timeline createTimeline(int windowCount, int periodsPerWindow) {
+    if (windowCount == 0) {
+      return Timeline.EMPTY;
+    }
+    TimelineWindowDefinition[] windowDefinitions = new TimelineWindowDefinition[windowCount];
+    for (int i = 0; i < windowCount; i++) {
+      windowDefinitions[i] = new TimelineWindowDefinition(periodsPerWindow, /* id= */ i);
+    }
+    return new FakeTimeline(windowDefinitions);
+  }
+}
@@ -203,6 +203,35 @@ public class DefaultLoadControlTest {
         .isTrue();
   }
 
+  @Test
+  public void shouldContinueLoading_withSharedLoadBudget_stopsAtShareOfBudget() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(2 * TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant participant = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    SharedLoadBudget.Participant otherParticipant =
+        sharedLoadBudget.createParticipant(/* weight= */ 1);
+    otherParticipant.setActive(true);
+    loadControl =
+        builder
+            .setAllocator(allocator)
+            .setTargetBufferBytes(4 * TARGET_BUFFER_BYTES)
+            .setSharedLoadBudgetParticipant(participant)
+            .build();
+    loadControl.onPrepared();
+    loadControl.onTracksSelected(new Renderer[0], null, null);
+
+    makeSureTargetBufferBytesReached();
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 0, SPEED))
+        .isFalse();
+
+    otherParticipant.setActive(false);
+    assertThat(
+            loadControl.shouldContinueLoading(
+                /* playbackPositionUs= */ 0, /* bufferedDurationUs= */ 0, SPEED))
+        .isTrue();
+  }
+
   private void build() {
     builder.setAllocator(allocator).setTargetBufferBytes(TARGET_BUFFER_BYTES);
     loadControl = builder.build();
@@ -35,6 +35,7 @@ import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 import static org.robolectric.Shadows.shadowOf;
 
 import android.content.Context;
@@ -51,6 +52,7 @@ import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.Player.DiscontinuityReason;
 import com.google.android.exoplayer2.Player.EventListener;
 import com.google.android.exoplayer2.Timeline.Window;
+import com.google.android.exoplayer2.analytics.AnalyticsCollector;
 import com.google.android.exoplayer2.analytics.AnalyticsListener;
 import com.google.android.exoplayer2.audio.AudioAttributes;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
@@ -64,6 +66,7 @@ import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource;
 import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
 import com.google.android.exoplayer2.source.MediaSourceEventListener;
+import com.google.android.exoplayer2.source.MediaSourceFactory;
 import com.google.android.exoplayer2.source.SampleStream;
 import com.google.android.exoplayer2.source.SilenceMediaSource;
 import com.google.android.exoplayer2.source.TrackGroup;
@@ -8318,6 +8321,45 @@ public final class ExoPlayerTest {
     runUntilPlaybackState(player, Player.STATE_ENDED);
   }
 
+  @Test
+  public void playlistPreparationRange_createsMediaSourcesOnApplicationThreadWhenNeeded()
+      throws Exception {
+    List<Thread> mediaSourceCreationThreads = new ArrayList<>();
+    MediaSourceFactory mediaSourceFactory = mock(MediaSourceFactory.class);
+    when(mediaSourceFactory.createMediaSource(any()))
+        .thenAnswer(
+            invocation -> {
+              mediaSourceCreationThreads.add(Thread.currentThread());
+              return new FakeMediaSource(
+                  new FakeTimeline(/* windowCount= */ 1), ExoPlayerTestRunner.VIDEO_FORMAT);
+            });
+    Clock clock = new AutoAdvancingFakeClock();
+    SimpleExoPlayer player =
+        new SimpleExoPlayer.Builder(
+                context,
+                (handler, videoListener, audioListener, textOutput, metadataOutput) ->
+                    new Renderer[] {new FakeRenderer(C.TRACK_TYPE_VIDEO)})
+            .setMediaSourceFactory(mediaSourceFactory)
+            .setAnalyticsCollector(new AnalyticsCollector(clock))
+            .setClock(clock)
+            .experimentalSetPlaylistPreparationRange(/* preparationRange= */ 0)
+            .build();
+
+    player.setMediaItems(
+        ImmutableList.of(
+            MediaItem.fromUri("http://test.test/1"),
+            MediaItem.fromUri("http://test.test/2"),
+            MediaItem.fromUri("http://test.test/3")));
+    assertThat(mediaSourceCreationThreads).isEmpty();
+    player.prepare();
+    player.play();
+    runUntilPlaybackState(player, Player.STATE_ENDED);
+    player.release();
+
+    assertThat(mediaSourceCreationThreads)
+        .containsExactly(Thread.currentThread(), Thread.currentThread(), Thread.currentThread());
+  }
+
   // Internal methods.
 
   private static ActionSchedule.Builder addSurfaceSwitch(ActionSchedule.Builder builder) {
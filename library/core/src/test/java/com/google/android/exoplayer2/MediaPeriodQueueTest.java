@@ -416,7 +416,7 @@ public final class MediaPeriodQueueTest {
         new MediaSourceList.MediaSourceHolder(fakeMediaSource, /* useLazyPreparation= */ false);
     mediaSourceList.setMediaSources(
         ImmutableList.of(mediaSourceHolder), new FakeShuffleOrder(/* length= */ 1));
-    mediaSourceHolder.mediaSource.prepareSourceInternal(/* mediaTransferListener */ null);
+    mediaSourceHolder.getMediaSource().prepareSourceInternal(/* mediaTransferListener */ null);
 
     Timeline playlistTimeline = mediaSourceList.createTimeline();
     firstPeriodUid = playlistTimeline.getUidOfPeriod(/* periodIndex= */ 0);
@@ -21,16 +21,20 @@ import static org.junit.Assert.assertSame;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.isNull;
 import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
 import static org.mockito.Mockito.times;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.source.MediaPeriod;
 import com.google.android.exoplayer2.source.MediaSource;
+import com.google.android.exoplayer2.source.MediaSourceFactory;
 import com.google.android.exoplayer2.source.ShuffleOrder;
 import com.google.android.exoplayer2.testutil.FakeMediaSource;
 import com.google.android.exoplayer2.testutil.FakeShuffleOrder;
 import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.upstream.Allocator;
 import com.google.android.exoplayer2.util.Util;
 import java.util.ArrayList;
 import java.util.Collections;
@@ -139,7 +143,7 @@ public class MediaSourceListTest {
     for (int i = 0; i < mediaSources.size(); i++) {
       MediaSourceList.MediaSourceHolder mediaSourceHolder = mediaSources.get(i);
       assertThat(mediaSourceHolder.isRemoved).isFalse();
-      assertThat(mediaSourceHolder.firstWindowIndexInChild).isEqualTo(i);
+      assertThat(mediaSourceList.getFirstWindowIndexInChild(mediaSourceHolder)).isEqualTo(i);
     }
 
     // Set media items again. The second holder is re-used.
@@ -155,7 +159,7 @@ public class MediaSourceListTest {
     for (int i = 0; i < moreMediaSources.size(); i++) {
       MediaSourceList.MediaSourceHolder mediaSourceHolder = moreMediaSources.get(i);
       assertThat(mediaSourceHolder.isRemoved).isFalse();
-      assertThat(mediaSourceHolder.firstWindowIndexInChild).isEqualTo(i);
+      assertThat(mediaSourceList.getFirstWindowIndexInChild(mediaSourceHolder)).isEqualTo(i);
     }
     // Expect removed holders and sources to be removed without releasing.
     verify(mockMediaSource1, times(0)).releaseSource(any(MediaSource.MediaSourceCaller.class));
@@ -229,7 +233,7 @@ public class MediaSourceListTest {
             any(MediaSource.MediaSourceCaller.class), /* mediaTransferListener= */ isNull());
 
     for (int i = 0; i < mediaSources.size(); i++) {
-      assertThat(mediaSources.get(i).firstWindowIndexInChild).isEqualTo(i);
+      assertThat(mediaSourceList.getFirstWindowIndexInChild(mediaSources.get(i))).isEqualTo(i);
       assertThat(mediaSources.get(i).isRemoved).isFalse();
     }
 
@@ -238,10 +242,10 @@ public class MediaSourceListTest {
     mediaSourceList.addMediaSources(
         /* index= */ 1, moreMediaSources, new ShuffleOrder.DefaultShuffleOrder(/* length= */ 3));
 
-    assertThat(mediaSources.get(0).firstWindowIndexInChild).isEqualTo(0);
-    assertThat(moreMediaSources.get(0).firstWindowIndexInChild).isEqualTo(1);
-    assertThat(moreMediaSources.get(3).firstWindowIndexInChild).isEqualTo(4);
-    assertThat(mediaSources.get(1).firstWindowIndexInChild).isEqualTo(5);
+    assertThat(mediaSourceList.getFirstWindowIndexInChild(mediaSources.get(0))).isEqualTo(0);
+    assertThat(mediaSourceList.getFirstWindowIndexInChild(moreMediaSources.get(0))).isEqualTo(1);
+    assertThat(mediaSourceList.getFirstWindowIndexInChild(moreMediaSources.get(3))).isEqualTo(4);
+    assertThat(mediaSourceList.getFirstWindowIndexInChild(mediaSources.get(1))).isEqualTo(5);
   }
 
   @Test
@@ -435,6 +439,78 @@ public class MediaSourceListTest {
     verify(mockMediaSource2, times(1)).releaseSource(any());
   }
 
+  @Test
+  public void setPlayingPeriodUid_withPreparationRange_createsAndPreparesOnlySourcesInRange() {
+    List<MediaSourceList.MediaSourceHolder> requestedHolders = new ArrayList<>();
+    mediaSourceList =
+        new MediaSourceList(
+            new MediaSourceList.MediaSourceListInfoRefreshListener() {
+              @Override
+              public void onPlaylistUpdateRequested() {}
+
+              @Override
+              public void onMediaSourceRequested(MediaSourceList.MediaSourceHolder holder) {
+                requestedHolders.add(holder);
+              }
+            },
+            /* analyticsCollector= */ null,
+            Util.createHandlerForCurrentOrMainLooper());
+    MediaSourceFactory mediaSourceFactory = mock(MediaSourceFactory.class);
+    MediaSource[] mockMediaSources = new MediaSource[5];
+    List<MediaSourceList.MediaSourceHolder> holders = new ArrayList<>();
+    for (int i = 0; i < mockMediaSources.length; i++) {
+      MediaItem mediaItem = new MediaItem.Builder().setMediaId(String.valueOf(i)).build();
+      mockMediaSources[i] = mock(MediaSource.class);
+      when(mockMediaSources[i].getMediaItem()).thenReturn(mediaItem);
+      when(mediaSourceFactory.createMediaSource(mediaItem)).thenReturn(mockMediaSources[i]);
+      holders.add(
+          new MediaSourceList.MediaSourceHolder(
+              mediaItem, mediaSourceFactory, /* useLazyPreparation= */ false));
+    }
+    mediaSourceList.setPreparationRange(/* preparationRange= */ 1);
+    Timeline timeline =
+        mediaSourceList.setMediaSources(
+            holders, new ShuffleOrder.DefaultShuffleOrder(/* length= */ holders.size()));
+    mediaSourceList.prepare(/* mediaTransferListener= */ null);
+
+    assertThat(timeline.getWindowCount()).isEqualTo(5);
+    assertThat(requestedHolders).isEmpty();
+
+    Object periodUid1 = timeline.getUidOfPeriod(/* periodIndex= */ 1);
+    assertThat(mediaSourceList.canCreatePeriod(periodUid1)).isFalse();
+    createRequestedMediaSources(requestedHolders);
+    assertThat(mediaSourceList.canCreatePeriod(periodUid1)).isTrue();
+    MediaPeriod mediaPeriod =
+        mediaSourceList.createPeriod(
+            new MediaSource.MediaPeriodId(periodUid1),
+            mock(Allocator.class),
+            /* startPositionUs= */ 0);
+    mediaSourceList.setPlayingPeriodUid(periodUid1);
+    createRequestedMediaSources(requestedHolders);
+
+    for (int i = 0; i < 3; i++) {
+      verify(mockMediaSources[i]).prepareSource(any(), /* mediaTransferListener= */ isNull());
+    }
+    verify(mockMediaSources[3], never()).prepareSource(any(), any());
+    verify(mediaSourceFactory, times(3)).createMediaSource(any());
+
+    Object periodUid3 = timeline.getUidOfPeriod(/* periodIndex= */ 3);
+    assertThat(mediaSourceList.canCreatePeriod(periodUid3)).isFalse();
+    createRequestedMediaSources(requestedHolders);
+    mediaSourceList.createPeriod(
+        new MediaSource.MediaPeriodId(periodUid3), mock(Allocator.class), /* startPositionUs= */ 0);
+    mediaSourceList.releasePeriod(mediaPeriod);
+    mediaSourceList.setPlayingPeriodUid(periodUid3);
+    createRequestedMediaSources(requestedHolders);
+
+    verify(mockMediaSources[0]).releaseSource(any());
+    verify(mockMediaSources[1]).releaseSource(any());
+    verify(mockMediaSources[2], never()).releaseSource(any());
+    verify(mockMediaSources[3]).prepareSource(any(), /* mediaTransferListener= */ isNull());
+    verify(mockMediaSources[4]).prepareSource(any(), /* mediaTransferListener= */ isNull());
+    verify(mediaSourceFactory, times(5)).createMediaSource(any());
+  }
+
   @Test
   public void setMediaSources_expectTimelineUsesCustomShuffleOrder() {
     Timeline timeline =
@@ -510,7 +586,7 @@ public class MediaSourceListTest {
         .isEqualTo(-1);
   }
 
-  private static void assertDefaultFirstWindowInChildIndexOrder(
+  private void assertDefaultFirstWindowInChildIndexOrder(
       List<MediaSourceList.MediaSourceHolder> holders) {
     int[] indices = new int[holders.size()];
     for (int i = 0; i < indices.length; i++) {
@@ -519,11 +595,21 @@ public class MediaSourceListTest {
     assertFirstWindowInChildIndices(holders, indices);
   }
 
-  private static void assertFirstWindowInChildIndices(
+  private void assertFirstWindowInChildIndices(
       List<MediaSourceList.MediaSourceHolder> holders, int... firstWindowInChildIndices) {
     assertThat(holders).hasSize(firstWindowInChildIndices.length);
     for (int i = 0; i < holders.size(); i++) {
-      assertThat(holders.get(i).firstWindowIndexInChild).isEqualTo(firstWindowInChildIndices[i]);
+      assertThat(mediaSourceList.getFirstWindowIndexInChild(holders.get(i)))
+          .isEqualTo(firstWindowInChildIndices[i]);
+    }
+  }
+
+  private void createRequestedMediaSources(
+      List<MediaSourceList.MediaSourceHolder> requestedHolders) {
+    // Setting a media source may request the media sources of other holders.
+    while (!requestedHolders.isEmpty()) {
+      MediaSourceList.MediaSourceHolder holder = requestedHolders.remove(0);
+      mediaSourceList.setMediaSource(holder, holder.createMediaSource());
     }
   }
 
@@ -0,0 +1,105 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedLoadBudget}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedLoadBudgetTest {
+
+  private static final int TOTAL_TARGET_BUFFER_BYTES = 1000;
+
+  @Test
+  public void activeParticipants_shareBudgetInProportionToWeights() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(TOTAL_TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant focused = sharedLoadBudget.createParticipant(/* weight= */ 3);
+    SharedLoadBudget.Participant other = sharedLoadBudget.createParticipant(/* weight= */ 1);
+
+    focused.setActive(true);
+    other.setActive(true);
+
+    assertThat(focused.getTargetBufferBytes()).isEqualTo(750);
+    assertThat(focused.getBandwidthFraction()).isEqualTo(0.75f);
+    assertThat(other.getTargetBufferBytes()).isEqualTo(250);
+    assertThat(other.getBandwidthFraction()).isEqualTo(0.25f);
+  }
+
+  @Test
+  public void inactiveParticipant_doesNotTakeShareOfBudget() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(TOTAL_TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant active = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    SharedLoadBudget.Participant inactive = sharedLoadBudget.createParticipant(/* weight= */ 1);
+
+    active.setActive(true);
+
+    assertThat(active.getTargetBufferBytes()).isEqualTo(TOTAL_TARGET_BUFFER_BYTES);
+    assertThat(inactive.getTargetBufferBytes()).isEqualTo(500);
+  }
+
+  @Test
+  public void setWeight_updatesShares() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(TOTAL_TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant first = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    SharedLoadBudget.Participant second = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    first.setActive(true);
+    second.setActive(true);
+
+    second.setWeight(4);
+
+    assertThat(first.getTargetBufferBytes()).isEqualTo(200);
+    assertThat(second.getTargetBufferBytes()).isEqualTo(800);
+  }
+
+  @Test
+  public void removeParticipant_givesShareToRemainingParticipants() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(TOTAL_TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant first = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    SharedLoadBudget.Participant second = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    first.setActive(true);
+    second.setActive(true);
+
+    sharedLoadBudget.removeParticipant(second);
+
+    assertThat(first.getTargetBufferBytes()).isEqualTo(TOTAL_TARGET_BUFFER_BYTES);
+  }
+
+  @Test
+  public void createBandwidthMeter_scalesEstimateByBandwidthFraction() {
+    SharedLoadBudget sharedLoadBudget = new SharedLoadBudget(TOTAL_TARGET_BUFFER_BYTES);
+    SharedLoadBudget.Participant first = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    SharedLoadBudget.Participant second = sharedLoadBudget.createParticipant(/* weight= */ 1);
+    first.setActive(true);
+    second.setActive(true);
+    DefaultBandwidthMeter sharedBandwidthMeter =
+        new DefaultBandwidthMeter.Builder(ApplicationProvider.getApplicationContext())
+            .setInitialBitrateEstimate(1_000_000)
+            .build();
+
+    BandwidthMeter bandwidthMeter = first.createBandwidthMeter(sharedBandwidthMeter);
+
+    assertThat(bandwidthMeter.getBitrateEstimate()).isEqualTo(500_000);
+    assertThat(bandwidthMeter.getTransferListener())
+        .isSameInstanceAs(sharedBandwidthMeter.getTransferListener());
+  }
+}
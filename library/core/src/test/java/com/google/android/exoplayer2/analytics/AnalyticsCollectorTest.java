@@ -18,6 +18,11 @@ package com.google.android.exoplayer2.analytics;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.END_OF_STREAM_ITEM;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.oneByteSample;
 import static com.google.common.truth.Truth.assertThat;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
 
 import android.view.Surface;
 import androidx.annotation.Nullable;
@@ -60,6 +65,7 @@ import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinit
 import com.google.android.exoplayer2.testutil.FakeVideoRenderer;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.trackselection.TrackSelectionArray;
+import com.google.android.exoplayer2.util.Clock;
 import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.ImmutableList;
 import java.io.IOException;
@@ -1604,6 +1610,43 @@ public final class AnalyticsCollectorTest {
     assertThat(listener.getEvents(EVENT_PLAYER_ERROR)).containsExactly(period1);
   }
 
+  @Test
+  public void frequentCallbacks_notOverriddenByAnyListener_doNotGenerateEventTimes() {
+    AnalyticsCollector analyticsCollector = new AnalyticsCollector(Clock.DEFAULT);
+    analyticsCollector.addListener(new AnalyticsListener() {});
+
+    // No player is set, so generating an event time would throw.
+    analyticsCollector.onBandwidthSample(/* elapsedMs= */ 10, /* bytes= */ 1000, /* bitrate= */ 8);
+    analyticsCollector.onAudioPositionAdvancing(/* playoutStartSystemTimeMs= */ 0);
+    analyticsCollector.onDroppedFrames(/* count= */ 1, /* elapsedMs= */ 10);
+    analyticsCollector.onVideoFrameProcessingOffset(
+        /* totalProcessingOffsetUs= */ 100, /* frameCount= */ 1);
+  }
+
+  @Test
+  public void frequentCallback_overriddenByListener_isForwardedToAllListeners() {
+    Player player = mock(Player.class);
+    when(player.getCurrentTimeline()).thenReturn(Timeline.EMPTY);
+    AnalyticsCollector analyticsCollector = new AnalyticsCollector(Clock.DEFAULT);
+    analyticsCollector.setPlayer(player);
+    AnalyticsListener listener = mock(AnalyticsListener.class);
+    List<Long> bitrateEstimates = new ArrayList<>();
+    analyticsCollector.addListener(listener);
+    analyticsCollector.addListener(
+        new AnalyticsListener() {
+          @Override
+          public void onBandwidthEstimate(
+              EventTime eventTime, int totalLoadTimeMs, long totalBytesLoaded, long bitrate) {
+            bitrateEstimates.add(bitrate);
+          }
+        });
+
+    analyticsCollector.onBandwidthSample(/* elapsedMs= */ 10, /* bytes= */ 1000, /* bitrate= */ 8);
+
+    verify(listener).onBandwidthEstimate(any(), eq(10), eq(1000L), eq(8L));
+    assertThat(bitrateEstimates).containsExactly(8L);
+  }
+
   private void populateEventIds(Timeline timeline) {
     period0 =
         new EventWindowAndPeriodId(
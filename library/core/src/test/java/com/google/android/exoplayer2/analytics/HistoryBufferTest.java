@@ -0,0 +1,101 @@
+/*
+ * Copyright 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link HistoryBuffer}. */
+@RunWith(AndroidJUnit4.class)
+public final class HistoryBufferTest {
+
+  @Test
+  public void add_belowMaxSize_keepsAllEntriesInOrder() {
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(/* maxSize= */ 3);
+
+    historyBuffer.add(1);
+    historyBuffer.add(2);
+
+    assertThat(historyBuffer.size()).isEqualTo(2);
+    assertThat(historyBuffer.toList()).containsExactly(1, 2).inOrder();
+  }
+
+  @Test
+  public void add_atMaxSize_dropsOldestEntries() {
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(/* maxSize= */ 3);
+
+    for (int i = 0; i < 7; i++) {
+      historyBuffer.add(i);
+    }
+
+    assertThat(historyBuffer.size()).isEqualTo(3);
+    assertThat(historyBuffer.toList()).containsExactly(4, 5, 6).inOrder();
+  }
+
+  @Test
+  public void add_withMaxSizeOne_keepsLatestEntry() {
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(/* maxSize= */ 1);
+
+    historyBuffer.add(1);
+    historyBuffer.add(2);
+
+    assertThat(historyBuffer.toList()).containsExactly(2);
+  }
+
+  @Test
+  public void add_afterWrappingAround_growsCapacityInOrder() {
+    // The initial capacity is 8, so the buffer grows before it wraps around at its maximum size.
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(/* maxSize= */ 12);
+
+    for (int i = 0; i < 20; i++) {
+      historyBuffer.add(i);
+    }
+
+    assertThat(historyBuffer.toList())
+        .containsExactly(8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19)
+        .inOrder();
+  }
+
+  @Test
+  public void add_unbounded_keepsAllEntries() {
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(C.LENGTH_UNSET);
+
+    for (int i = 0; i < 100; i++) {
+      historyBuffer.add(i);
+    }
+
+    assertThat(historyBuffer.size()).isEqualTo(100);
+    assertThat(historyBuffer.toList().get(0)).isEqualTo(0);
+    assertThat(historyBuffer.toList().get(99)).isEqualTo(99);
+  }
+
+  @Test
+  public void toList_isNotAffectedByLaterEntries() {
+    HistoryBuffer<Integer> historyBuffer = new HistoryBuffer<>(/* maxSize= */ 2);
+    historyBuffer.add(1);
+
+    List<Integer> list = historyBuffer.toList();
+    historyBuffer.add(2);
+    historyBuffer.add(3);
+
+    assertThat(list).containsExactly(1);
+  }
+}
@@ -0,0 +1,146 @@
+/*
+ * Copyright 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.analytics;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import java.util.ArrayList;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MediaTimeHistory}. */
+@RunWith(AndroidJUnit4.class)
+public final class MediaTimeHistoryTest {
+
+  @Test
+  public void add_belowMaxSize_keepsAllEntries() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 4);
+
+    history.add(/* realtimeMs= */ 0, /* mediaTimeMs= */ 10);
+    history.add(/* realtimeMs= */ 1, /* mediaTimeMs= */ 11);
+
+    assertThat(getRealtimesMs(history)).containsExactly(0L, 1L).inOrder();
+    assertThat(getMediaTimesMs(history)).containsExactly(10L, 11L).inOrder();
+    assertThat(history.getLastRealtimeMs()).isEqualTo(1);
+    assertThat(history.getLastMediaTimeMs()).isEqualTo(11);
+  }
+
+  @Test
+  public void add_atOddMaxSize_dropsEverySecondEntryKeepingFirstAndLast() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 5);
+
+    for (int i = 0; i < 6; i++) {
+      history.add(/* realtimeMs= */ i, /* mediaTimeMs= */ 10 * i);
+    }
+
+    // Entries 0 to 4 are downsampled to 0, 2 and 4 before entry 5 is added.
+    assertThat(getRealtimesMs(history)).containsExactly(0L, 2L, 4L, 5L).inOrder();
+    assertThat(getMediaTimesMs(history)).containsExactly(0L, 20L, 40L, 50L).inOrder();
+  }
+
+  @Test
+  public void add_atEvenMaxSize_dropsEverySecondEntryKeepingFirstAndLast() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 4);
+
+    for (int i = 0; i < 5; i++) {
+      history.add(/* realtimeMs= */ i, /* mediaTimeMs= */ 10 * i);
+    }
+
+    // Entries 0 to 3 are downsampled to 0, 2 and 3 before entry 4 is added.
+    assertThat(getRealtimesMs(history)).containsExactly(0L, 2L, 3L, 4L).inOrder();
+    assertThat(getMediaTimesMs(history)).containsExactly(0L, 20L, 30L, 40L).inOrder();
+  }
+
+  @Test
+  public void add_withMaxSizeTwo_keepsLatestEntries() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 2);
+
+    for (int i = 0; i < 5; i++) {
+      history.add(/* realtimeMs= */ i, /* mediaTimeMs= */ 10 * i);
+    }
+
+    assertThat(getRealtimesMs(history)).containsExactly(3L, 4L).inOrder();
+    assertThat(getMediaTimesMs(history)).containsExactly(30L, 40L).inOrder();
+  }
+
+  @Test
+  public void add_withMaxSizeOne_keepsLatestEntry() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 1);
+
+    history.add(/* realtimeMs= */ 0, /* mediaTimeMs= */ 0);
+    history.add(/* realtimeMs= */ 1, /* mediaTimeMs= */ 10);
+
+    assertThat(getRealtimesMs(history)).containsExactly(1L);
+    assertThat(getMediaTimesMs(history)).containsExactly(10L);
+  }
+
+  @Test
+  public void add_manyEntries_staysWithinMaxSizeAndKeepsFirstAndLastEntry() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 10);
+
+    for (int i = 0; i < 1000; i++) {
+      history.add(/* realtimeMs= */ i, /* mediaTimeMs= */ i);
+      assertThat(history.toList().size()).isAtMost(10);
+    }
+
+    List<Long> realtimesMs = getRealtimesMs(history);
+    assertThat(realtimesMs.get(0)).isEqualTo(0);
+    assertThat(realtimesMs.get(realtimesMs.size() - 1)).isEqualTo(999);
+    assertThat(realtimesMs).isInStrictOrder();
+  }
+
+  @Test
+  public void add_unbounded_keepsAllEntries() {
+    MediaTimeHistory history = new MediaTimeHistory(C.LENGTH_UNSET);
+
+    for (int i = 0; i < 100; i++) {
+      history.add(/* realtimeMs= */ i, /* mediaTimeMs= */ i);
+    }
+
+    assertThat(history.toList()).hasSize(100);
+  }
+
+  @Test
+  public void copy_isNotAffectedByLaterEntries() {
+    MediaTimeHistory history = new MediaTimeHistory(/* maxSize= */ 2);
+    history.add(/* realtimeMs= */ 0, /* mediaTimeMs= */ 0);
+
+    MediaTimeHistory copy = history.copy();
+    history.add(/* realtimeMs= */ 1, /* mediaTimeMs= */ 10);
+    history.add(/* realtimeMs= */ 2, /* mediaTimeMs= */ 20);
+
+    assertThat(getRealtimesMs(copy)).containsExactly(0L);
+  }
+
+  private static List<Long> getRealtimesMs(MediaTimeHistory history) {
+    List<Long> realtimesMs = new ArrayList<>();
+    for (long[] entry : history.toList()) {
+      realtimesMs.add(entry[0]);
+    }
+    return realtimesMs;
+  }
+
+  private static List<Long> getMediaTimesMs(MediaTimeHistory history) {
+    List<Long> mediaTimesMs = new ArrayList<>();
+    for (long[] entry : history.toList()) {
+      mediaTimesMs.add(entry[1]);
+    }
+    return mediaTimesMs;
+  }
+}
@@ -57,17 +57,7 @@ public final class PlaybackStatsListenerTest {
               .uid,
           /* windowSequenceNumber= */ 42);
   private static final AnalyticsListener.EventTime TEST_EVENT_TIME =
-      new AnalyticsListener.EventTime(
-          /* realtimeMs= */ 500,
-          TEST_TIMELINE,
-          /* windowIndex= */ 0,
-          TEST_MEDIA_PERIOD_ID,
-          /* eventPlaybackPositionMs= */ 123,
-          TEST_TIMELINE,
-          /* currentWindowIndex= */ 0,
-          TEST_MEDIA_PERIOD_ID,
-          /* currentPlaybackPositionMs= */ 123,
-          /* totalBufferedDurationMs= */ 456);
+      createTestEventTime(/* realtimeMs= */ 500, /* playbackPositionMs= */ 123);
 
   @Test
   public void events_duringInitialIdleState_dontCreateNewPlaybackStats() {
@@ -135,6 +125,53 @@ public final class PlaybackStatsListenerTest {
     assertThat(playbackStats.endedCount).isEqualTo(1);
   }
 
+  @Test
+  public void playback_withMaxHistorySize_keepsLatestHistoryEntries() {
+    PlaybackStatsListener playbackStatsListener =
+        new PlaybackStatsListener(/* maxHistorySize= */ 2, /* callback= */ null);
+
+    playbackStatsListener.onPlayWhenReadyChanged(
+        TEST_EVENT_TIME,
+        /* playWhenReady= */ true,
+        Player.PLAY_WHEN_READY_CHANGE_REASON_USER_REQUEST);
+    for (int i = 0; i < 10; i++) {
+      playbackStatsListener.onPlaybackStateChanged(
+          createTestEventTime(/* realtimeMs= */ 1000 * (i + 1), /* playbackPositionMs= */ 1000 * i),
+          Player.STATE_BUFFERING);
+      playbackStatsListener.onPlaybackStateChanged(
+          createTestEventTime(
+              /* realtimeMs= */ 1000 * (i + 1) + 500, /* playbackPositionMs= */ 1000 * i),
+          Player.STATE_READY);
+    }
+    playbackStatsListener.onPlaybackStateChanged(
+        createTestEventTime(/* realtimeMs= */ 11_000, /* playbackPositionMs= */ 9500),
+        Player.STATE_ENDED);
+
+    @Nullable PlaybackStats playbackStats = playbackStatsListener.getPlaybackStats();
+    assertThat(playbackStats).isNotNull();
+    assertThat(playbackStats.endedCount).isEqualTo(1);
+    assertThat(playbackStats.playbackStateHistory).hasSize(2);
+    assertThat(playbackStats.playbackStateHistory.get(1).playbackState)
+        .isEqualTo(PlaybackStats.PLAYBACK_STATE_ENDED);
+    assertThat(playbackStats.mediaTimeHistory).hasSize(2);
+    assertThat(playbackStats.mediaTimeHistory.get(1)).isEqualTo(new long[] {11_000, 9500});
+  }
+
+  @Test
+  public void playback_withoutKeepHistory_keepsNoHistory() {
+    PlaybackStatsListener playbackStatsListener =
+        new PlaybackStatsListener(/* keepHistory= */ false, /* callback= */ null);
+
+    playbackStatsListener.onPlaybackStateChanged(TEST_EVENT_TIME, Player.STATE_BUFFERING);
+    playbackStatsListener.onPlaybackStateChanged(TEST_EVENT_TIME, Player.STATE_READY);
+    playbackStatsListener.onPlaybackStateChanged(TEST_EVENT_TIME, Player.STATE_ENDED);
+
+    @Nullable PlaybackStats playbackStats = playbackStatsListener.getPlaybackStats();
+    assertThat(playbackStats).isNotNull();
+    assertThat(playbackStats.playbackStateHistory).isEmpty();
+    assertThat(playbackStats.mediaTimeHistory).isEmpty();
+  }
+
   @Test
   public void finishedSession_callsCallback() {
     PlaybackStatsListener.Callback callback = mock(PlaybackStatsListener.Callback.class);
@@ -204,4 +241,19 @@ public final class PlaybackStatsListenerTest {
 
     verify(callback).onPlaybackStatsReady(any(), any());
   }
+
+  private static AnalyticsListener.EventTime createTestEventTime(
+      long realtimeMs, long playbackPositionMs) {
+    return new AnalyticsListener.EventTime(
+        realtimeMs,
+        TEST_TIMELINE,
+        /* windowIndex= */ 0,
+        TEST_MEDIA_PERIOD_ID,
+        /* eventPlaybackPositionMs= */ playbackPositionMs,
+        TEST_TIMELINE,
+        /* currentWindowIndex= */ 0,
+        TEST_MEDIA_PERIOD_ID,
+        /* currentPlaybackPositionMs= */ playbackPositionMs,
+        /* totalBufferedDurationMs= */ 456);
+  }
 }
@@ -18,6 +18,7 @@ package com.google.android.exoplayer2.audio;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.END_OF_STREAM_ITEM;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.format;
 import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.oneByteSample;
+import static com.google.common.truth.Truth.assertThat;
 import static org.junit.Assert.assertThrows;
 import static org.mockito.ArgumentMatchers.any;
 import static org.mockito.ArgumentMatchers.anyInt;
@@ -25,6 +26,7 @@ import static org.mockito.ArgumentMatchers.anyLong;
 import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
+import android.media.MediaCodec;
 import android.media.MediaFormat;
 import android.os.SystemClock;
 import androidx.annotation.Nullable;
@@ -37,11 +39,14 @@ import com.google.android.exoplayer2.RendererConfiguration;
 import com.google.android.exoplayer2.drm.DrmSessionEventListener;
 import com.google.android.exoplayer2.drm.DrmSessionManager;
 import com.google.android.exoplayer2.mediacodec.MediaCodecInfo;
+import com.google.android.exoplayer2.mediacodec.MediaCodecPool;
 import com.google.android.exoplayer2.mediacodec.MediaCodecSelector;
 import com.google.android.exoplayer2.testutil.FakeSampleStream;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
 import java.util.Collections;
+import java.util.List;
 import org.junit.Before;
 import org.junit.Rule;
 import org.junit.Test;
@@ -279,6 +284,73 @@ public class MediaCodecAudioRendererTest {
     exceptionThrowingRenderer.render(/* positionUs= */ 750, SystemClock.elapsedRealtime() * 1000);
   }
 
+  @Test
+  public void render_withMediaCodecPool_reusesPooledCodecAfterCodecReinitialization()
+      throws Exception {
+    MediaCodecPool codecPool = new MediaCodecPool();
+    List<MediaCodec> initializedCodecs = new ArrayList<>();
+    MediaCodecAudioRenderer codecRecordingRenderer =
+        new MediaCodecAudioRenderer(
+            ApplicationProvider.getApplicationContext(),
+            mediaCodecSelector,
+            /* enableDecoderFallback= */ false,
+            /* eventHandler= */ null,
+            /* eventListener= */ null,
+            audioSink) {
+          @Override
+          protected void onCodecInitialized(
+              String name, long initializedTimestampMs, long initializationDurationMs) {
+            super.onCodecInitialized(name, initializedTimestampMs, initializationDurationMs);
+            initializedCodecs.add(getCodec());
+          }
+        };
+    codecRecordingRenderer.experimentalSetMediaCodecPool(codecPool);
+    // The codec can't be flushed and reused for a different sample rate, so it's reinitialized.
+    Format changedFormat = AUDIO_AAC.buildUpon().setSampleRate(48_000).build();
+    FakeSampleStream fakeSampleStream =
+        new FakeSampleStream(
+            /* mediaSourceEventDispatcher= */ null,
+            DrmSessionManager.DUMMY,
+            new DrmSessionEventListener.EventDispatcher(),
+            /* initialFormat= */ AUDIO_AAC,
+            ImmutableList.of(
+                oneByteSample(/* timeUs= */ 0, C.BUFFER_FLAG_KEY_FRAME),
+                oneByteSample(/* timeUs= */ 50, C.BUFFER_FLAG_KEY_FRAME),
+                format(changedFormat),
+                oneByteSample(/* timeUs= */ 100, C.BUFFER_FLAG_KEY_FRAME),
+                oneByteSample(/* timeUs= */ 150, C.BUFFER_FLAG_KEY_FRAME),
+                END_OF_STREAM_ITEM));
+
+    codecRecordingRenderer.enable(
+        RendererConfiguration.DEFAULT,
+        new Format[] {AUDIO_AAC, changedFormat},
+        fakeSampleStream,
+        /* positionUs= */ 0,
+        /* joining= */ false,
+        /* mayRenderStartOfStream= */ false,
+        /* startPositionUs= */ 0,
+        /* offsetUs */ 0);
+    codecRecordingRenderer.start();
+    codecRecordingRenderer.setCurrentStreamFinal();
+    int positionUs = 0;
+    do {
+      codecRecordingRenderer.render(positionUs, SystemClock.elapsedRealtime() * 1000);
+      positionUs += 250;
+    } while (!codecRecordingRenderer.isEnded());
+    codecRecordingRenderer.stop();
+    codecRecordingRenderer.disable();
+
+    assertThat(initializedCodecs).hasSize(2);
+    assertThat(initializedCodecs.get(1)).isSameInstanceAs(initializedCodecs.get(0));
+
+    // The codec is parked when the renderer is reset, and released with the last pool user.
+    codecPool.registerUser();
+    codecRecordingRenderer.reset();
+    assertThat(codecPool.getParkedCodecCount()).isEqualTo(1);
+    codecPool.unregisterUser();
+    assertThat(codecPool.getParkedCodecCount()).isEqualTo(0);
+  }
+
   private static Format getAudioSinkFormat(Format inputFormat) {
     return new Format.Builder()
         .setSampleMimeType(MimeTypes.AUDIO_RAW)
@@ -217,6 +217,41 @@ public final class BatchBufferTest {
     assertThat(batchBuffer.isFull()).isTrue();
   }
 
+  @Test
+  public void setMaxDurationUs_whenAccessUnitsSpanLessThanDuration_isNotFull() {
+    batchBuffer.setMaxDurationUs(100);
+
+    commitAccessUnitWithTimeUs(batchBuffer, /* timeUs= */ 0);
+    commitAccessUnitWithTimeUs(batchBuffer, /* timeUs= */ 99);
+
+    assertThat(batchBuffer.isFull()).isFalse();
+  }
+
+  @Test
+  public void setMaxDurationUs_whenAccessUnitsSpanDuration_isFull() {
+    batchBuffer.setMaxDurationUs(100);
+
+    commitAccessUnitWithTimeUs(batchBuffer, /* timeUs= */ 0);
+    commitAccessUnitWithTimeUs(batchBuffer, /* timeUs= */ 100);
+
+    assertThat(batchBuffer.getAccessUnitCount()).isEqualTo(2);
+    assertThat(batchBuffer.isFull()).isTrue();
+  }
+
+  @Test
+  public void setMaxDurationUs_whenSetToNegative_throws() {
+    assertThrows(IllegalArgumentException.class, () -> batchBuffer.setMaxDurationUs(-1));
+  }
+
+  @Test
+  public void clear_afterSetMaxDurationUs_removesDurationLimit() {
+    batchBuffer.setMaxDurationUs(100);
+
+    batchBuffer.clear();
+
+    assertThat(batchBuffer.getMaxDurationUs()).isEqualTo(C.TIME_UNSET);
+  }
+
   @Test
   public void batchWasConsumed_whenAccessUnitIsPending_pendingAccessUnitIsInTheBatch() {
     batchBuffer.commitNextAccessUnit();
@@ -233,6 +268,11 @@ public final class BatchBufferTest {
     assertThat(batchBuffer.data).isEqualTo(ByteBuffer.wrap(TEST_ACCESS_UNIT));
   }
 
+  private static void commitAccessUnitWithTimeUs(BatchBuffer batchBuffer, long timeUs) {
+    batchBuffer.getNextAccessUnitBuffer().timeUs = timeUs;
+    batchBuffer.commitNextAccessUnit();
+  }
+
   private static void fillBatchBuffer(BatchBuffer batchBuffer) {
     int maxAccessUnit = batchBuffer.getMaxAccessUnitCount();
     while (!batchBuffer.isFull()) {
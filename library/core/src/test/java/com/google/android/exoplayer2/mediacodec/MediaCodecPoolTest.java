@@ -0,0 +1,154 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.mediacodec;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.media.MediaCodec;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.FakeClock;
+import com.google.android.exoplayer2.util.MimeTypes;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link MediaCodecPool}. */
+@RunWith(AndroidJUnit4.class)
+public final class MediaCodecPoolTest {
+
+  private static final long KEEP_ALIVE_MS = 1000;
+
+  private FakeClock clock;
+  private MediaCodecPool mediaCodecPool;
+
+  @Before
+  public void setUp() {
+    clock = new FakeClock(/* initialTimeMs= */ 0);
+    mediaCodecPool = new MediaCodecPool(/* maxParkedCodecCount= */ 2, KEEP_ALIVE_MS, clock);
+  }
+
+  @After
+  public void tearDown() {
+    mediaCodecPool.evictAll();
+  }
+
+  @Test
+  public void acquire_afterPark_returnsParkedCodec() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    MediaCodec codec = mediaCodecPool.acquire(codecInfo);
+    mediaCodecPool.park(codecInfo, codec);
+
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(1);
+    assertThat(mediaCodecPool.acquire(codecInfo)).isSameInstanceAs(codec);
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(0);
+    codec.release();
+  }
+
+  @Test
+  public void acquire_withDifferentSecureFlag_createsNewCodec() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    MediaCodec codec = mediaCodecPool.acquire(codecInfo);
+    mediaCodecPool.park(codecInfo, codec);
+
+    MediaCodec secureCodec = mediaCodecPool.acquire(createCodecInfo(/* secure= */ true));
+
+    assertThat(secureCodec).isNotSameInstanceAs(codec);
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(1);
+    secureCodec.release();
+  }
+
+  @Test
+  public void acquire_afterKeepAliveTime_createsNewCodec() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    MediaCodec codec = mediaCodecPool.acquire(codecInfo);
+    mediaCodecPool.park(codecInfo, codec);
+
+    clock.advanceTime(KEEP_ALIVE_MS + 1);
+    MediaCodec newCodec = mediaCodecPool.acquire(codecInfo);
+
+    assertThat(newCodec).isNotSameInstanceAs(codec);
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(0);
+    newCodec.release();
+  }
+
+  @Test
+  public void park_withMaxParkedCodecs_releasesOldestCodec() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    MediaCodec codec1 = mediaCodecPool.acquire(codecInfo);
+    MediaCodec codec2 = mediaCodecPool.acquire(codecInfo);
+    MediaCodec codec3 = mediaCodecPool.acquire(codecInfo);
+
+    mediaCodecPool.park(codecInfo, codec1);
+    mediaCodecPool.park(codecInfo, codec2);
+    mediaCodecPool.park(codecInfo, codec3);
+
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(2);
+    assertThat(mediaCodecPool.acquire(codecInfo)).isSameInstanceAs(codec3);
+    assertThat(mediaCodecPool.acquire(codecInfo)).isSameInstanceAs(codec2);
+    codec2.release();
+    codec3.release();
+  }
+
+  @Test
+  public void evictAll_releasesParkedCodecs() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    mediaCodecPool.park(codecInfo, mediaCodecPool.acquire(codecInfo));
+
+    mediaCodecPool.evictAll();
+
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void unregisterUser_lastUser_releasesParkedCodecs() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    mediaCodecPool.registerUser();
+    mediaCodecPool.registerUser();
+    mediaCodecPool.park(codecInfo, mediaCodecPool.acquire(codecInfo));
+
+    mediaCodecPool.unregisterUser();
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(1);
+    mediaCodecPool.unregisterUser();
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void unregisterUser_withRemainingUsers_releasesExpiredCodecs() throws Exception {
+    MediaCodecInfo codecInfo = createCodecInfo(/* secure= */ false);
+    mediaCodecPool.registerUser();
+    mediaCodecPool.registerUser();
+    mediaCodecPool.park(codecInfo, mediaCodecPool.acquire(codecInfo));
+
+    clock.advanceTime(KEEP_ALIVE_MS + 1);
+    mediaCodecPool.unregisterUser();
+
+    assertThat(mediaCodecPool.getParkedCodecCount()).isEqualTo(0);
+  }
+
+  private static MediaCodecInfo createCodecInfo(boolean secure) {
+    return MediaCodecInfo.newInstance(
+        /* name= */ "h264",
+        /* mimeType= */ MimeTypes.VIDEO_H264,
+        /* codecMimeType= */ MimeTypes.VIDEO_H264,
+        /* capabilities= */ null,
+        /* hardwareAccelerated= */ true,
+        /* softwareOnly= */ false,
+        /* vendor= */ true,
+        /* forceDisableAdaptive= */ false,
+        /* forceSecure= */ secure);
+  }
+}
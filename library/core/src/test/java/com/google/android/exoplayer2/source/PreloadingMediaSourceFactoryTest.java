@@ -0,0 +1,276 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source;
+
+import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.END_OF_STREAM_ITEM;
+import static com.google.android.exoplayer2.testutil.FakeSampleStream.FakeSampleStreamItem.oneByteSample;
+import static com.google.common.truth.Truth.assertThat;
+import static org.robolectric.Shadows.shadowOf;
+
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.MediaItem;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.Timeline;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.source.MediaSource.MediaPeriodId;
+import com.google.android.exoplayer2.testutil.ExoPlayerTestRunner;
+import com.google.android.exoplayer2.testutil.FakeMediaSource;
+import com.google.android.exoplayer2.testutil.FakeRenderer;
+import com.google.android.exoplayer2.testutil.FakeTimeline;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.testutil.TestExoPlayer;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.upstream.HttpDataSource;
+import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
+import com.google.common.collect.ImmutableList;
+import java.util.Collections;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PreloadingMediaSourceFactory}. */
+@RunWith(AndroidJUnit4.class)
+public final class PreloadingMediaSourceFactoryTest {
+
+  private static final MediaItem MEDIA_ITEM = MediaItem.fromUri("https://test.test/item1");
+
+  private FakeMediaSource fakeMediaSource;
+  private PreloadingMediaSourceFactory preloadingMediaSourceFactory;
+
+  @Before
+  public void setUp() {
+    fakeMediaSource =
+        new FakeMediaSource(
+            new FakeTimeline(/* windowCount= */ 1), ExoPlayerTestRunner.VIDEO_FORMAT);
+    preloadingMediaSourceFactory =
+        new PreloadingMediaSourceFactory(
+            new FakeMediaSourceFactory(fakeMediaSource),
+            Looper.getMainLooper(),
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            /* transferListener= */ null);
+  }
+
+  @Test
+  public void preload_preparesSourceAndCreatesPeriod() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSource.isPrepared()).isTrue();
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+  }
+
+  @Test
+  public void createMediaSource_atDefaultPosition_handsOverPreloadedPeriod() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSource mediaSource = preloadingMediaSourceFactory.createMediaSource(MEDIA_ITEM);
+    Timeline timeline = prepareSource(mediaSource);
+    MediaPeriod mediaPeriod =
+        mediaSource.createPeriod(
+            new MediaPeriodId(timeline.getUidOfPeriod(/* periodIndex= */ 0)),
+            new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+            getDefaultStartPositionUs(timeline));
+    AtomicBoolean prepared = new AtomicBoolean();
+    mediaPeriod.prepare(
+        new MediaPeriod.Callback() {
+          @Override
+          public void onPrepared(MediaPeriod mediaPeriod) {
+            prepared.set(true);
+          }
+
+          @Override
+          public void onContinueLoadingRequested(MediaPeriod source) {}
+        },
+        getDefaultStartPositionUs(timeline));
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(prepared.get()).isTrue();
+  }
+
+  @Test
+  public void createMediaSource_atOtherPosition_createsNewPeriod() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSource mediaSource = preloadingMediaSourceFactory.createMediaSource(MEDIA_ITEM);
+    Timeline timeline = prepareSource(mediaSource);
+    mediaSource.createPeriod(
+        new MediaPeriodId(timeline.getUidOfPeriod(/* periodIndex= */ 0)),
+        new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE),
+        getDefaultStartPositionUs(timeline) + C.MICROS_PER_SECOND);
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(2);
+  }
+
+  @Test
+  public void playPreloadedItem_consumesPreloadedSamples() throws Exception {
+    AtomicInteger createdSampleStreamCount = new AtomicInteger();
+    FakeMediaSource fakeMediaSource =
+        new FakeMediaSource(
+            new FakeTimeline(/* windowCount= */ 1),
+            DrmSessionManager.DUMMY,
+            (unusedFormat, unusedMediaPeriodId) -> {
+              createdSampleStreamCount.incrementAndGet();
+              return ImmutableList.of(
+                  oneByteSample(TimelineWindowDefinition.DEFAULT_WINDOW_OFFSET_IN_FIRST_PERIOD_US),
+                  END_OF_STREAM_ITEM);
+            },
+            ExoPlayerTestRunner.VIDEO_FORMAT);
+    DefaultLoadControl loadControl = new DefaultLoadControl();
+    FakeRenderer renderer = new FakeRenderer(C.TRACK_TYPE_VIDEO);
+    SimpleExoPlayer player =
+        new TestExoPlayer.Builder(ApplicationProvider.getApplicationContext())
+            .setRenderers(renderer)
+            .setLoadControl(loadControl)
+            .build();
+    PreloadingMediaSourceFactory preloadingMediaSourceFactory =
+        new PreloadingMediaSourceFactory(
+            new FakeMediaSourceFactory(fakeMediaSource),
+            player.getPlaybackLooper(),
+            loadControl.getAllocator(),
+            /* transferListener= */ null);
+
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    TestUtil.runMainLooperUntil(() -> createdSampleStreamCount.get() == 1);
+    player.setMediaSource(preloadingMediaSourceFactory.createMediaSource(MEDIA_ITEM));
+    player.prepare();
+    player.play();
+    TestExoPlayer.runUntilPlaybackState(player, Player.STATE_ENDED);
+    player.release();
+    preloadingMediaSourceFactory.release();
+
+    assertThat(fakeMediaSource.getCreatedMediaPeriods()).hasSize(1);
+    assertThat(createdSampleStreamCount.get()).isEqualTo(1);
+    assertThat(renderer.sampleBufferReadCount).isEqualTo(1);
+  }
+
+  @Test
+  public void createMediaSource_forItemThatIsNotPreloaded_returnsSourceOfWrappedFactory() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+
+    MediaSource mediaSource =
+        preloadingMediaSourceFactory.createMediaSource(
+            MediaItem.fromUri("https://test.test/item2"));
+
+    assertThat(mediaSource).isSameInstanceAs(fakeMediaSource);
+  }
+
+  @Test
+  public void preload_withoutPreloadedItem_releasesPreloadedSource() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+
+    preloadingMediaSourceFactory.preload(Collections.emptyList());
+    shadowOf(Looper.getMainLooper()).idle();
+
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void release_withHandedOutSourceThatIsNotPrepared_releasesPreloadedSource() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+    preloadingMediaSourceFactory.createMediaSource(MEDIA_ITEM);
+    shadowOf(Looper.getMainLooper()).idle();
+
+    preloadingMediaSourceFactory.release();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    fakeMediaSource.assertReleased();
+  }
+
+  @Test
+  public void release_withHandedOutSourceThatIsPrepared_keepsSourcePrepared() {
+    preloadingMediaSourceFactory.preload(Collections.singletonList(MEDIA_ITEM));
+    shadowOf(Looper.getMainLooper()).idle();
+    MediaSource mediaSource = preloadingMediaSourceFactory.createMediaSource(MEDIA_ITEM);
+    prepareSource(mediaSource);
+
+    preloadingMediaSourceFactory.release();
+    shadowOf(Looper.getMainLooper()).idle();
+
+    assertThat(fakeMediaSource.isPrepared()).isTrue();
+  }
+
+  private static Timeline prepareSource(MediaSource mediaSource) {
+    AtomicReference<Timeline> timeline = new AtomicReference<>();
+    mediaSource.prepareSource(
+        (source, newTimeline) -> timeline.set(newTimeline), /* mediaTransferListener= */ null);
+    shadowOf(Looper.getMainLooper()).idle();
+    return timeline.get();
+  }
+
+  private static long getDefaultStartPositionUs(Timeline timeline) {
+    Timeline.Window window = timeline.getWindow(/* windowIndex= */ 0, new Timeline.Window());
+    return timeline
+        .getPeriodPosition(
+            window, new Timeline.Period(), /* windowIndex= */ 0, window.getDefaultPositionUs())
+        .second;
+  }
+
+  private static final class FakeMediaSourceFactory implements MediaSourceFactory {
+
+    private final MediaSource mediaSource;
+
+    public FakeMediaSourceFactory(MediaSource mediaSource) {
+      this.mediaSource = mediaSource;
+    }
+
+    @Override
+    public MediaSourceFactory setDrmSessionManager(@Nullable DrmSessionManager drmSessionManager) {
+      return this;
+    }
+
+    @Override
+    public MediaSourceFactory setDrmHttpDataSourceFactory(
+        @Nullable HttpDataSource.Factory drmHttpDataSourceFactory) {
+      return this;
+    }
+
+    @Override
+    public MediaSourceFactory setDrmUserAgent(@Nullable String userAgent) {
+      return this;
+    }
+
+    @Override
+    public MediaSourceFactory setLoadErrorHandlingPolicy(
+        @Nullable LoadErrorHandlingPolicy loadErrorHandlingPolicy) {
+      return this;
+    }
+
+    @Override
+    public int[] getSupportedTypes() {
+      return new int[] {C.TYPE_OTHER};
+    }
+
+    @Override
+    public MediaSource createMediaSource(MediaItem mediaItem) {
+      return mediaSource;
+    }
+  }
+}
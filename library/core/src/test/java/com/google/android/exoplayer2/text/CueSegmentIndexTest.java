@@ -0,0 +1,95 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.text;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.common.collect.ImmutableList;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link CueSegmentIndex}. */
+@RunWith(AndroidJUnit4.class)
+public final class CueSegmentIndexTest {
+
+  private static final Cue FIRST_CUE = new Cue.Builder().setText("first").build();
+  private static final Cue SECOND_CUE = new Cue.Builder().setText("second").build();
+
+  @Test
+  public void getCues_withCueLists_returnsCuesOfSegment() {
+    CueSegmentIndex cueSegmentIndex =
+        new CueSegmentIndex(
+            new long[] {1_000, 2_000, 3_000},
+            ImmutableList.of(
+                ImmutableList.of(FIRST_CUE),
+                ImmutableList.of(FIRST_CUE, SECOND_CUE),
+                ImmutableList.of()));
+
+    assertThat(cueSegmentIndex.getCues(0)).isEmpty();
+    assertThat(cueSegmentIndex.getCues(999)).isEmpty();
+    assertThat(cueSegmentIndex.getCues(1_000)).containsExactly(FIRST_CUE);
+    assertThat(cueSegmentIndex.getCues(1_999)).containsExactly(FIRST_CUE);
+    assertThat(cueSegmentIndex.getCues(2_000)).containsExactly(FIRST_CUE, SECOND_CUE).inOrder();
+    assertThat(cueSegmentIndex.getCues(3_000)).isEmpty();
+    assertThat(cueSegmentIndex.getCues(Long.MAX_VALUE)).isEmpty();
+  }
+
+  @Test
+  public void getCues_withResolver_resolvesEachSegmentOnce() {
+    List<Long> resolvedTimesUs = new ArrayList<>();
+    CueSegmentIndex cueSegmentIndex =
+        new CueSegmentIndex(
+            new long[] {1_000, 2_000},
+            timeUs -> {
+              resolvedTimesUs.add(timeUs);
+              return timeUs >= 1_000 && timeUs < 2_000
+                  ? Collections.singletonList(FIRST_CUE)
+                  : Collections.emptyList();
+            });
+
+    List<Cue> cues = cueSegmentIndex.getCues(1_500);
+    assertThat(cues).containsExactly(FIRST_CUE);
+    assertThat(cueSegmentIndex.getCues(1_000)).isSameInstanceAs(cues);
+    assertThat(cueSegmentIndex.getCues(1_999)).isSameInstanceAs(cues);
+    assertThat(cueSegmentIndex.getCues(500)).isEmpty();
+    assertThat(cueSegmentIndex.getCues(0)).isEmpty();
+    assertThat(cueSegmentIndex.getCues(2_000)).isEmpty();
+    assertThat(resolvedTimesUs).containsExactly(1_500L, 500L, 2_000L).inOrder();
+  }
+
+  @Test
+  public void getCues_returnsUnmodifiableList() {
+    CueSegmentIndex cueSegmentIndex =
+        new CueSegmentIndex(
+            new long[] {0}, timeUs -> new ArrayList<>(Collections.singletonList(FIRST_CUE)));
+
+    List<Cue> cues = cueSegmentIndex.getCues(0);
+
+    assertThrows(UnsupportedOperationException.class, () -> cues.add(SECOND_CUE));
+  }
+
+  @Test
+  public void constructor_withUnsortedEventTimes_throws() {
+    assertThrows(
+        IllegalArgumentException.class,
+        () -> new CueSegmentIndex(new long[] {2_000, 1_000}, timeUs -> Collections.emptyList()));
+  }
+}
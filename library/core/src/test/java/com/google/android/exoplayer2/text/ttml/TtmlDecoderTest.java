@@ -23,6 +23,7 @@ import android.text.Layout;
 import android.text.Spanned;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.SubtitleDecoderTestUtil;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.text.Subtitle;
@@ -30,6 +31,7 @@ import com.google.android.exoplayer2.text.SubtitleDecoderException;
 import com.google.android.exoplayer2.text.span.RubySpan;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ColorParser;
+import com.google.android.exoplayer2.util.Util;
 import java.io.IOException;
 import java.util.List;
 import java.util.Map;
@@ -674,6 +676,80 @@ public final class TtmlDecoderTest {
     assertThat(sixthCue).hasNoRubySpanBetween(0, sixthCue.length());
   }
 
+  @Test
+  public void styleIdChains_areResolvedOnceAndShared() throws Exception {
+    String document =
+        "<tt xmlns=\"http://www.w3.org/ns/ttml\""
+            + " xmlns:tts=\"http://www.w3.org/ns/ttml#styling\">"
+            + "<head><styling>"
+            + "<style id=\"s0\" tts:fontWeight=\"bold\"/>"
+            + "<style id=\"s1\" tts:fontStyle=\"italic\"/>"
+            + "</styling></head>"
+            + "<body><div>"
+            + "<p begin=\"0s\" end=\"1s\" style=\"s0 s1\">First</p>"
+            + "<p begin=\"1s\" end=\"2s\" style=\"s0 s1\">Second</p>"
+            + "<p begin=\"1s\" end=\"3s\" style=\"s0 s1\" tts:color=\"red\">Third</p>"
+            + "</div></body></tt>";
+    byte[] bytes = Util.getUtf8Bytes(document);
+
+    TtmlSubtitle subtitle =
+        (TtmlSubtitle) new TtmlDecoder().decode(bytes, bytes.length, /* reset= */ false);
+
+    // The duplicate event time is only included once.
+    assertThat(subtitle.getEventTimeCount()).isEqualTo(4);
+    TtmlNode body = queryChildrenForTag(subtitle.getRoot(), TtmlNode.TAG_BODY, 0);
+    TtmlNode div = queryChildrenForTag(body, TtmlNode.TAG_DIV, 0);
+    TtmlNode firstParagraph = queryChildrenForTag(div, TtmlNode.TAG_P, 0);
+    TtmlNode secondParagraph = queryChildrenForTag(div, TtmlNode.TAG_P, 1);
+    TtmlNode thirdParagraph = queryChildrenForTag(div, TtmlNode.TAG_P, 2);
+    assertThat(firstParagraph.resolvedStyle).isSameInstanceAs(secondParagraph.resolvedStyle);
+    assertThat(firstParagraph.resolvedStyle.getStyle()).isEqualTo(TtmlStyle.STYLE_BOLD_ITALIC);
+    assertThat(thirdParagraph.resolvedStyle).isSameInstanceAs(thirdParagraph.style);
+    assertThat(thirdParagraph.resolvedStyle.getStyle()).isEqualTo(TtmlStyle.STYLE_BOLD_ITALIC);
+    assertThat(thirdParagraph.resolvedStyle.getFontColor()).isEqualTo(0xFFFF0000);
+  }
+
+  @Test
+  public void decodeWithChunkDuration_outputsChunksWithInheritedStyles() throws Exception {
+    StringBuilder document =
+        new StringBuilder(
+            "<tt xmlns=\"http://www.w3.org/ns/ttml\""
+                + " xmlns:tts=\"http://www.w3.org/ns/ttml#styling\">"
+                + "<head><styling><style id=\"s0\" tts:fontWeight=\"bold\"/></styling></head>"
+                + "<body><div style=\"s0\">");
+    for (int i = 0; i < 10; i++) {
+      document.append(
+          Util.formatInvariant("<p begin=\"%ds\" end=\"%d.999s\">Cue %d</p>", i, i, i));
+      if (i == 2) {
+        document.append("<p begin=\"2.5s\" end=\"7.5s\">Long cue</p>");
+      }
+    }
+    document.append("</div></body></tt>");
+    TtmlDecoder decoder = new TtmlDecoder(/* chunkDurationUs= */ 3_000_000);
+
+    Map<Long, List<Cue>> cuesByChunkTimeUs =
+        SubtitleDecoderTestUtil.decodeInChunks(
+            decoder, Util.getUtf8Bytes(document.toString()), /* displayOffsetUs= */ 500_000);
+
+    assertThat(cuesByChunkTimeUs.keySet())
+        .containsExactly(0L, 3_000_000L, 6_000_000L, 9_000_000L)
+        .inOrder();
+    assertThat(getOnlyCueText(cuesByChunkTimeUs.get(0L)).toString()).isEqualTo("Cue 0");
+    // The long cue is carried over to the next chunks.
+    assertThat(getOnlyCueText(cuesByChunkTimeUs.get(3_000_000L)).toString())
+        .isEqualTo("Long cue\nCue 3");
+    assertThat(getOnlyCueText(cuesByChunkTimeUs.get(6_000_000L)).toString())
+        .isEqualTo("Long cue\nCue 6");
+    Spanned lastCueText = getOnlyCueText(cuesByChunkTimeUs.get(9_000_000L));
+    assertThat(lastCueText.toString()).isEqualTo("Cue 9");
+    assertThat(lastCueText).hasBoldSpanBetween(0, lastCueText.length());
+  }
+
+  private static Spanned getOnlyCueText(List<Cue> cues) {
+    assertThat(cues).hasSize(1);
+    return (Spanned) Assertions.checkNotNull(cues.get(0).text);
+  }
+
   private static Spanned getOnlyCueTextAtTimeUs(Subtitle subtitle, long timeUs) {
     Cue cue = getOnlyCueAtTimeUs(subtitle, timeUs);
     assertThat(cue.text).isInstanceOf(Spanned.class);
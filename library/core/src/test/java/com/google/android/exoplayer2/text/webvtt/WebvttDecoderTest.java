@@ -23,16 +23,21 @@ import android.text.Layout.Alignment;
 import android.text.Spanned;
 import androidx.test.core.app.ApplicationProvider;
 import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.SubtitleDecoderTestUtil;
 import com.google.android.exoplayer2.testutil.TestUtil;
 import com.google.android.exoplayer2.text.Cue;
 import com.google.android.exoplayer2.text.SubtitleDecoderException;
 import com.google.android.exoplayer2.text.span.RubySpan;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.ColorParser;
+import com.google.android.exoplayer2.util.Util;
 import com.google.common.collect.Iterables;
 import com.google.common.truth.Expect;
 import java.io.IOException;
+import java.util.ArrayList;
+import java.util.LinkedHashMap;
 import java.util.List;
+import java.util.Map;
 import org.junit.Rule;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -485,6 +490,67 @@ public class WebvttDecoderTest {
             "Combine ".length(), "Combine 0004".length());
   }
 
+  @Test
+  public void decodeWithChunkDuration_outputsChunksWithCarriedOverCues() throws Exception {
+    WebvttDecoder decoder = new WebvttDecoder(/* chunkDurationUs= */ 3_000_000);
+
+    Map<Long, List<String>> cueTextsByChunkTimeUs =
+        decodeCueTextsInChunks(decoder, createFileWithLongCue(), /* displayOffsetUs= */ 500_000);
+
+    assertThat(cueTextsByChunkTimeUs.keySet())
+        .containsExactly(0L, 3_000_000L, 6_000_000L, 9_000_000L)
+        .inOrder();
+    assertThat(cueTextsByChunkTimeUs.get(0L)).containsExactly("Cue 0");
+    assertThat(cueTextsByChunkTimeUs.get(3_000_000L)).containsExactly("Cue 3", "Long cue");
+    assertThat(cueTextsByChunkTimeUs.get(6_000_000L)).containsExactly("Cue 6", "Long cue");
+    assertThat(cueTextsByChunkTimeUs.get(9_000_000L)).containsExactly("Cue 9");
+  }
+
+  @Test
+  public void decodeWithChunkDuration_skipsChunksBeforePosition() throws Exception {
+    WebvttDecoder decoder = new WebvttDecoder(/* chunkDurationUs= */ 3_000_000);
+    decoder.setPositionUs(7_000_000);
+
+    Map<Long, List<String>> cueTextsByChunkTimeUs =
+        decodeCueTextsInChunks(decoder, createFileWithLongCue(), /* displayOffsetUs= */ 1_000_000);
+
+    assertThat(cueTextsByChunkTimeUs.keySet()).containsExactly(6_000_000L, 9_000_000L).inOrder();
+    assertThat(cueTextsByChunkTimeUs.get(6_000_000L)).containsExactly("Cue 7", "Long cue");
+  }
+
+  /**
+   * Returns a file with a one second cue starting every second from 0 to 9 seconds, and a cue from
+   * 2.5 to 7.5 seconds.
+   */
+  private static byte[] createFileWithLongCue() {
+    StringBuilder file = new StringBuilder("WEBVTT\n\n");
+    for (int i = 0; i < 10; i++) {
+      file.append(Util.formatInvariant("00:00:0%d.000 --> 00:00:0%d.999\nCue %d\n\n", i, i, i));
+      if (i == 2) {
+        file.append("00:00:02.500 --> 00:00:07.500\nLong cue\n\n");
+      }
+    }
+    return Util.getUtf8Bytes(file.toString());
+  }
+
+  /**
+   * Decodes {@code bytes} in chunks, and returns the texts of the cues of each output chunk
+   * displayed {@code displayOffsetUs} after the start of the chunk, by chunk start time.
+   */
+  private static Map<Long, List<String>> decodeCueTextsInChunks(
+      WebvttDecoder decoder, byte[] bytes, long displayOffsetUs) throws Exception {
+    Map<Long, List<String>> cueTextsByChunkTimeUs = new LinkedHashMap<>();
+    for (Map.Entry<Long, List<Cue>> chunk :
+        SubtitleDecoderTestUtil.decodeInChunks(decoder, bytes, displayOffsetUs).entrySet()) {
+      List<String> cueTexts = new ArrayList<>();
+      for (Cue cue : chunk.getValue()) {
+        cueTexts.add(String.valueOf(cue.text));
+      }
+      cueTextsByChunkTimeUs.put(chunk.getKey(), cueTexts);
+    }
+    return cueTextsByChunkTimeUs;
+  }
+
   private WebvttSubtitle getSubtitleForTestAsset(String asset)
       throws IOException, SubtitleDecoderException {
     WebvttDecoder decoder = new WebvttDecoder();
@@ -297,6 +297,35 @@ public class WebvttSubtitleTest {
     assertThat(nestedSubtitle.getCues(Long.MAX_VALUE)).isEmpty();
   }
 
+  @Test
+  public void longCueSpanningManyShortCues_getCuesReturnsActiveCuesInOrder() {
+    List<WebvttCueInfo> cueInfos = new ArrayList<>();
+    cueInfos.add(
+        new WebvttCueInfo(
+            WebvttCueParser.newCueForText(FIRST_SUBTITLE_STRING),
+            /* startTimeUs= */ 0,
+            /* endTimeUs= */ 100_000_000));
+    for (int i = 0; i < 100; i++) {
+      cueInfos.add(
+          new WebvttCueInfo(
+              WebvttCueParser.newCueForText("Cue " + i),
+              /* startTimeUs= */ i * 1_000_000,
+              /* endTimeUs= */ i * 1_000_000 + 500_000));
+    }
+    WebvttSubtitle subtitle = new WebvttSubtitle(cueInfos);
+
+    assertThat(getCueTexts(subtitle.getCues(50_250_000)))
+        .containsExactly(FIRST_SUBTITLE_STRING, "Cue 50")
+        .inOrder();
+    assertThat(getCueTexts(subtitle.getCues(50_750_000))).containsExactly(FIRST_SUBTITLE_STRING);
+    assertThat(getCueTexts(subtitle.getCues(99_250_000)))
+        .containsExactly(FIRST_SUBTITLE_STRING, "Cue 99")
+        .inOrder();
+    assertThat(subtitle.getCues(100_000_000)).isEmpty();
+    // Cues are resolved once for each segment between event times.
+    assertThat(subtitle.getCues(50_100_000)).isSameInstanceAs(subtitle.getCues(50_400_000));
+  }
+
   private static List<String> getCueTexts(List<Cue> cues) {
     List<String> cueTexts = new ArrayList<>();
     for (int i = 0; i < cues.size(); i++) {
@@ -0,0 +1,160 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.MILLISECONDS;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okio.Buffer;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link CoalescingHttpDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class CoalescingHttpDataSourceTest {
+
+  @Test
+  public void open_concurrentIdenticalRequests_makesSingleRequest() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(
+        new MockResponse().setBody(new Buffer().write(data)).setBodyDelay(500, MILLISECONDS));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    CoalescingHttpDataSource.Factory factory =
+        new CoalescingHttpDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/init.mp4").toString())
+            .setLength(data.length)
+            .build();
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    Future<byte[]> firstReadData =
+        executorService.submit(
+            () -> {
+              CoalescingHttpDataSource dataSource = factory.createDataSource();
+              dataSource.open(dataSpec);
+              byte[] readData = TestUtil.readToEnd(dataSource);
+              dataSource.close();
+              return readData;
+            });
+    // Wait for the first request to be in flight before opening the second.
+    mockWebServer.takeRequest(10, SECONDS);
+    CoalescingHttpDataSource dataSource = factory.createDataSource();
+    dataSource.open(dataSpec);
+    byte[] secondReadData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+    executorService.shutdown();
+
+    assertThat(firstReadData.get(10, SECONDS)).isEqualTo(data);
+    assertThat(secondReadData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    assertThat(factory.getCoalescedRequestCount()).isEqualTo(1);
+    assertThat(factory.getCoalescedBytes()).isEqualTo(data.length);
+  }
+
+  @Test
+  public void open_sequentialIdenticalRequests_makesSeparateRequests() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    CoalescingHttpDataSource.Factory factory =
+        new CoalescingHttpDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/init.mp4").toString())
+            .setLength(data.length)
+            .build();
+
+    CoalescingHttpDataSource dataSource = factory.createDataSource();
+    dataSource.open(dataSpec);
+    byte[] firstReadData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+    dataSource.open(dataSpec);
+    byte[] secondReadData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(firstReadData).isEqualTo(data);
+    assertThat(secondReadData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    assertThat(factory.getCoalescedRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void open_concurrentUnboundedRequests_makesSeparateRequests() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(
+        new MockResponse().setBody(new Buffer().write(data)).setBodyDelay(500, MILLISECONDS));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    CoalescingHttpDataSource.Factory factory =
+        new CoalescingHttpDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+    ExecutorService executorService = Executors.newSingleThreadExecutor();
+
+    Future<byte[]> firstReadData =
+        executorService.submit(
+            () -> {
+              CoalescingHttpDataSource dataSource = factory.createDataSource();
+              dataSource.open(dataSpec);
+              byte[] readData = TestUtil.readToEnd(dataSource);
+              dataSource.close();
+              return readData;
+            });
+    mockWebServer.takeRequest(10, SECONDS);
+    CoalescingHttpDataSource dataSource = factory.createDataSource();
+    dataSource.open(dataSpec);
+    byte[] secondReadData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+    executorService.shutdown();
+
+    assertThat(firstReadData.get(10, SECONDS)).isEqualTo(data);
+    assertThat(secondReadData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    assertThat(factory.getCoalescedRequestCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void read_unknownLengthResponseLargerThanMaxCoalescedSize_readsWholeResponse()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(
+        new MockResponse().setChunkedBody(new Buffer().write(data), /* maxChunkSize= */ 64));
+    CoalescingHttpDataSource.Factory factory =
+        new CoalescingHttpDataSource.Factory(
+            new DefaultHttpDataSourceFactory(), /* maxCoalescedResponseBytes= */ 100);
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+
+    CoalescingHttpDataSource dataSource = factory.createDataSource();
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+  }
+}
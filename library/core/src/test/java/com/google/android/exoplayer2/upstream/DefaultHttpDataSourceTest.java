@@ -22,8 +22,12 @@ import static org.junit.Assert.assertThrows;
 
 import androidx.test.ext.junit.runners.AndroidJUnit4;
 import com.google.android.exoplayer2.testutil.TestUtil;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.Arrays;
 import java.util.HashMap;
 import java.util.Map;
+import java.util.zip.GZIPOutputStream;
 import okhttp3.Headers;
 import okhttp3.mockwebserver.MockResponse;
 import okhttp3.mockwebserver.MockWebServer;
@@ -128,4 +132,53 @@ public class DefaultHttpDataSourceTest {
     assertThat(exception.responseCode).isEqualTo(404);
     assertThat(exception.responseBody).isEqualTo(TestUtil.createByteArray(1, 2, 3));
   }
+
+  @Test
+  public void open_compressedResponseIgnoringRange_requestsRangeAgainWithoutGzip()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 20);
+    MockWebServer mockWebServer = new MockWebServer();
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setResponseCode(200)
+            .setHeader("Content-Encoding", "gzip")
+            .setBody(new Buffer().write(gzip(data))));
+    mockWebServer.enqueue(
+        new MockResponse()
+            .setResponseCode(206)
+            .setHeader("Content-Range", "bytes 5-19/20")
+            .setBody(new Buffer().write(Arrays.copyOfRange(data, 5, 20))));
+    DefaultHttpDataSource dataSource =
+        new DefaultHttpDataSource(
+            /* userAgent= */ "testAgent",
+            /* connectTimeoutMillis= */ 1000,
+            /* readTimeoutMillis= */ 1000,
+            /* allowCrossProtocolRedirects= */ false,
+            /* defaultRequestProperties= */ null);
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/test-path").toString())
+            .setPosition(5)
+            .setFlags(DataSpec.FLAG_ALLOW_GZIP)
+            .build();
+
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 5, 20));
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getHeader("Accept-Encoding"))
+        .isEqualTo("gzip");
+    assertThat(mockWebServer.takeRequest(10, SECONDS).getHeader("Accept-Encoding"))
+        .isEqualTo("identity");
+  }
+
+  private static byte[] gzip(byte[] data) throws IOException {
+    ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
+    try (GZIPOutputStream gzipOutputStream = new GZIPOutputStream(outputStream)) {
+      gzipOutputStream.write(data);
+    }
+    return outputStream.toByteArray();
+  }
 }
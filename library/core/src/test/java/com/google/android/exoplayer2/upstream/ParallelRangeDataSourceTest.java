@@ -0,0 +1,206 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+import okhttp3.mockwebserver.Dispatcher;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link ParallelRangeDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class ParallelRangeDataSourceTest {
+
+  private static final int CHUNK_SIZE = 100;
+
+  private MockWebServer mockWebServer;
+
+  @Before
+  public void setUp() {
+    mockWebServer = new MockWebServer();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void read_openEndedRequest_readsDataUsingParallelRangeRequests() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1050);
+    mockWebServer.setDispatcher(
+        new RangeDispatcher(data, /* maxRangeResponseCount= */ Integer.MAX_VALUE));
+    ParallelRangeDataSource dataSource = createDataSourceFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+
+    long length = dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(length).isEqualTo(data.length);
+    assertThat(readData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(11);
+  }
+
+  @Test
+  public void read_boundedRequestFromPosition_readsRequestedRange() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1050);
+    mockWebServer.setDispatcher(
+        new RangeDispatcher(data, /* maxRangeResponseCount= */ Integer.MAX_VALUE));
+    ParallelRangeDataSource dataSource = createDataSourceFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder()
+            .setUri(mockWebServer.url("/video.mp4").toString())
+            .setPosition(120)
+            .setLength(500)
+            .build();
+
+    long length = dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(length).isEqualTo(500);
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 120, 620));
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(5);
+  }
+
+  @Test
+  public void read_serverWithoutRangeSupport_readsDataThroughSingleConnection() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1050);
+    mockWebServer.setDispatcher(new RangeDispatcher(data, /* maxRangeResponseCount= */ 0));
+    ParallelRangeDataSource dataSource = createDataSourceFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+
+    long length = dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(length).isEqualTo(data.length);
+    assertThat(readData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+  }
+
+  @Test
+  public void read_chunkRequestAnsweredWithFullResource_readsRestOfDataThroughSingleConnection()
+      throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1050);
+    // Only the first chunk's range request is answered with partial content.
+    RangeDispatcher dispatcher = new RangeDispatcher(data, /* maxRangeResponseCount= */ 1);
+    mockWebServer.setDispatcher(dispatcher);
+    ParallelRangeDataSource dataSource = createDataSourceFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+
+    long length = dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(length).isEqualTo(data.length);
+    assertThat(readData).isEqualTo(data);
+    assertThat(dispatcher.getRangeHeaders()).contains("bytes=100-1049");
+  }
+
+  @Test
+  public void close_beforeReadingAllData_allowsReopening() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1050);
+    mockWebServer.setDispatcher(
+        new RangeDispatcher(data, /* maxRangeResponseCount= */ Integer.MAX_VALUE));
+    ParallelRangeDataSource dataSource = createDataSourceFactory().createDataSource();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/video.mp4").toString()).build();
+
+    dataSource.open(dataSpec);
+    TestUtil.readExactly(dataSource, /* length= */ 250);
+    dataSource.close();
+    dataSource.open(dataSpec.subrange(/* offset= */ 700));
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(Arrays.copyOfRange(data, 700, data.length));
+  }
+
+  private static ParallelRangeDataSource.Factory createDataSourceFactory() {
+    return new ParallelRangeDataSource.Factory(new DefaultHttpDataSourceFactory())
+        .setConnectionCount(3)
+        .setChunkSizeRange(CHUNK_SIZE, CHUNK_SIZE);
+  }
+
+  /**
+   * Serves a resource, responding to the first {@code maxRangeResponseCount} range requests with
+   * partial content and to any other request with the whole resource.
+   */
+  private static final class RangeDispatcher extends Dispatcher {
+
+    private static final Pattern RANGE_HEADER = Pattern.compile("^bytes=(\\d+)-(\\d*)$");
+
+    private final byte[] data;
+    private final List<String> rangeHeaders;
+
+    private int remainingRangeResponseCount;
+
+    public RangeDispatcher(byte[] data, int maxRangeResponseCount) {
+      this.data = data;
+      rangeHeaders = new ArrayList<>();
+      remainingRangeResponseCount = maxRangeResponseCount;
+    }
+
+    /** Returns the {@code Range} headers of the requests received so far. */
+    public synchronized List<String> getRangeHeaders() {
+      return new ArrayList<>(rangeHeaders);
+    }
+
+    @Override
+    public synchronized MockResponse dispatch(RecordedRequest request) {
+      String rangeHeader = request.getHeader("Range");
+      if (rangeHeader != null) {
+        rangeHeaders.add(rangeHeader);
+      }
+      if (remainingRangeResponseCount == 0 || rangeHeader == null) {
+        return new MockResponse().setBody(new Buffer().write(data));
+      }
+      remainingRangeResponseCount--;
+      Matcher matcher = RANGE_HEADER.matcher(rangeHeader);
+      if (!matcher.find()) {
+        return new MockResponse().setResponseCode(400);
+      }
+      int start = Integer.parseInt(matcher.group(1));
+      int end =
+          matcher.group(2).isEmpty()
+              ? data.length - 1
+              : Math.min(Integer.parseInt(matcher.group(2)), data.length - 1);
+      return new MockResponse()
+          .setResponseCode(206)
+          .setHeader("Content-Range", "bytes " + start + "-" + end + "/" + data.length)
+          .setBody(new Buffer().write(Arrays.copyOfRange(data, start, end + 1)));
+    }
+  }
+}
@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static java.util.concurrent.TimeUnit.SECONDS;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import okhttp3.mockwebserver.MockResponse;
+import okhttp3.mockwebserver.MockWebServer;
+import okhttp3.mockwebserver.RecordedRequest;
+import okio.Buffer;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link PrefetchingDataSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class PrefetchingDataSourceTest {
+
+  private MockWebServer mockWebServer;
+
+  @Before
+  public void setUp() {
+    mockWebServer = new MockWebServer();
+  }
+
+  @After
+  public void tearDown() throws Exception {
+    mockWebServer.shutdown();
+  }
+
+  @Test
+  public void open_afterPrefetch_readsPrefetchedResponse() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    PrefetchingDataSource.Factory factory =
+        new PrefetchingDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment1.m4s").toString()).build();
+
+    PrefetchingDataSource dataSource = factory.createDataSource();
+    dataSource.prefetch(dataSpec);
+    long length = dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(length).isEqualTo(data.length);
+    assertThat(readData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(1);
+    assertThat(factory.getPrefetchHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void open_withoutPrefetch_readsFromUpstream() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    PrefetchingDataSource.Factory factory =
+        new PrefetchingDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec prefetchedDataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment1.m4s").toString()).build();
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment2.m4s").toString()).build();
+
+    PrefetchingDataSource dataSource = factory.createDataSource();
+    dataSource.prefetch(prefetchedDataSpec);
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(factory.getPrefetchHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void open_afterCancelPrefetches_readsFromUpstream() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    PrefetchingDataSource.Factory factory =
+        new PrefetchingDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment1.m4s").toString()).build();
+
+    PrefetchingDataSource dataSource = factory.createDataSource();
+    dataSource.prefetch(dataSpec);
+    dataSource.cancelPrefetches();
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(factory.getPrefetchHitCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void cancelPrefetches_keepsPrefetchesOfOtherDataSources() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    PrefetchingDataSource.Factory factory =
+        new PrefetchingDataSource.Factory(new DefaultHttpDataSourceFactory());
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment1.m4s").toString()).build();
+
+    PrefetchingDataSource dataSource = factory.createDataSource();
+    dataSource.prefetch(dataSpec);
+    factory.createDataSource().cancelPrefetches();
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(factory.getPrefetchHitCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void read_responseLargerThanMaxPrefetchBytes_requestsRemainingData() throws Exception {
+    byte[] data = TestUtil.buildTestData(/* length= */ 1000);
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    mockWebServer.enqueue(new MockResponse().setBody(new Buffer().write(data)));
+    PrefetchingDataSource.Factory factory =
+        new PrefetchingDataSource.Factory(new DefaultHttpDataSourceFactory())
+            .setMaxPrefetchBytes(300);
+    DataSpec dataSpec =
+        new DataSpec.Builder().setUri(mockWebServer.url("/segment1.m4s").toString()).build();
+
+    PrefetchingDataSource dataSource = factory.createDataSource();
+    dataSource.prefetch(dataSpec);
+    dataSource.open(dataSpec);
+    byte[] readData = TestUtil.readToEnd(dataSource);
+    dataSource.close();
+
+    assertThat(readData).isEqualTo(data);
+    assertThat(mockWebServer.getRequestCount()).isEqualTo(2);
+    mockWebServer.takeRequest(10, SECONDS);
+    RecordedRequest secondRequest = mockWebServer.takeRequest(10, SECONDS);
+    assertThat(secondRequest.getHeader("Range")).isEqualTo("bytes=300-");
+  }
+}
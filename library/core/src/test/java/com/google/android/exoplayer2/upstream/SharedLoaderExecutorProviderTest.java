@@ -0,0 +1,162 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.upstream;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assert.assertThrows;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider.LoaderExecutor;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link SharedLoaderExecutorProvider}. */
+@RunWith(AndroidJUnit4.class)
+public final class SharedLoaderExecutorProviderTest {
+
+  private static final long TIMEOUT_MS = 10_000;
+
+  @Test
+  public void execute_runsTasksOfSameExecutorSeriallyAndInOrder() throws Exception {
+    SharedLoaderExecutorProvider provider =
+        new SharedLoaderExecutorProvider(/* maxThreadCount= */ 4);
+    LoaderExecutor executor =
+        provider.createLoaderExecutor("test", LoaderExecutorProvider.PRIORITY_MEDIA);
+    List<Integer> executedTasks = Collections.synchronizedList(new ArrayList<>());
+    AtomicInteger runningTaskCount = new AtomicInteger();
+    AtomicBoolean ranConcurrently = new AtomicBoolean();
+    int taskCount = 100;
+    CountDownLatch finishedLatch = new CountDownLatch(taskCount);
+
+    for (int i = 0; i < taskCount; i++) {
+      int taskIndex = i;
+      executor.execute(
+          () -> {
+            if (runningTaskCount.incrementAndGet() > 1) {
+              ranConcurrently.set(true);
+            }
+            executedTasks.add(taskIndex);
+            runningTaskCount.decrementAndGet();
+            finishedLatch.countDown();
+          });
+    }
+
+    assertThat(finishedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(ranConcurrently.get()).isFalse();
+    assertThat(executedTasks).isInOrder();
+    assertThat(executedTasks).hasSize(taskCount);
+  }
+
+  @Test
+  public void execute_runsTasksOfDifferentExecutorsInParallel() throws Exception {
+    SharedLoaderExecutorProvider provider =
+        new SharedLoaderExecutorProvider(/* maxThreadCount= */ 2);
+    LoaderExecutor executor1 =
+        provider.createLoaderExecutor("test1", LoaderExecutorProvider.PRIORITY_MEDIA);
+    LoaderExecutor executor2 =
+        provider.createLoaderExecutor("test2", LoaderExecutorProvider.PRIORITY_MEDIA);
+    CountDownLatch bothRunningLatch = new CountDownLatch(2);
+    CountDownLatch finishedLatch = new CountDownLatch(2);
+    Runnable task =
+        () -> {
+          bothRunningLatch.countDown();
+          try {
+            if (bothRunningLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+              finishedLatch.countDown();
+            }
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        };
+
+    executor1.execute(task);
+    executor2.execute(task);
+
+    assertThat(finishedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+  }
+
+  @Test
+  public void execute_withAllThreadsBusy_runsHigherPriorityTasksFirst() throws Exception {
+    SharedLoaderExecutorProvider provider =
+        new SharedLoaderExecutorProvider(/* maxThreadCount= */ 1);
+    LoaderExecutor blockingExecutor =
+        provider.createLoaderExecutor("blocking", LoaderExecutorProvider.PRIORITY_MEDIA);
+    LoaderExecutor backgroundExecutor =
+        provider.createLoaderExecutor("background", LoaderExecutorProvider.PRIORITY_BACKGROUND);
+    LoaderExecutor manifestExecutor =
+        provider.createLoaderExecutor("manifest", LoaderExecutorProvider.PRIORITY_MANIFEST);
+    LoaderExecutor mediaExecutor =
+        provider.createLoaderExecutor("media", LoaderExecutorProvider.PRIORITY_MEDIA);
+    CountDownLatch blockingTaskStartedLatch = new CountDownLatch(1);
+    CountDownLatch unblockLatch = new CountDownLatch(1);
+    CountDownLatch finishedLatch = new CountDownLatch(3);
+    List<String> executedTasks = Collections.synchronizedList(new ArrayList<>());
+    blockingExecutor.execute(
+        () -> {
+          blockingTaskStartedLatch.countDown();
+          try {
+            unblockLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS);
+          } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+          }
+        });
+    assertThat(blockingTaskStartedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+
+    backgroundExecutor.execute(
+        () -> {
+          executedTasks.add("background");
+          finishedLatch.countDown();
+        });
+    manifestExecutor.execute(
+        () -> {
+          executedTasks.add("manifest");
+          finishedLatch.countDown();
+        });
+    mediaExecutor.execute(
+        () -> {
+          executedTasks.add("media");
+          finishedLatch.countDown();
+        });
+    unblockLatch.countDown();
+
+    assertThat(finishedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThat(executedTasks).containsExactly("media", "manifest", "background").inOrder();
+  }
+
+  @Test
+  public void release_runsPendingTasksAndRejectsNewTasks() throws Exception {
+    SharedLoaderExecutorProvider provider =
+        new SharedLoaderExecutorProvider(/* maxThreadCount= */ 1);
+    LoaderExecutor executor =
+        provider.createLoaderExecutor("test", LoaderExecutorProvider.PRIORITY_MEDIA);
+    CountDownLatch finishedLatch = new CountDownLatch(2);
+
+    executor.execute(finishedLatch::countDown);
+    executor.execute(finishedLatch::countDown);
+    executor.release();
+
+    assertThat(finishedLatch.await(TIMEOUT_MS, TimeUnit.MILLISECONDS)).isTrue();
+    assertThrows(RejectedExecutionException.class, () -> executor.execute(() -> {}));
+  }
+}
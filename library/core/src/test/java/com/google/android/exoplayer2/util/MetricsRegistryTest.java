@@ -0,0 +1,107 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link MetricsRegistry}. */
+@RunWith(AndroidJUnit4.class)
+public final class MetricsRegistryTest {
+
+  @Test
+  public void getCounter_withSameName_returnsSameCounter() {
+    MetricsRegistry registry = new MetricsRegistry();
+
+    MetricsRegistry.Counter counter = registry.getCounter("counter");
+    counter.increment();
+    counter.add(2);
+
+    assertThat(registry.getCounter("counter")).isSameInstanceAs(counter);
+    assertThat(counter.get()).isEqualTo(3);
+  }
+
+  @Test
+  public void histogram_returnsStatisticsWithinResolution() {
+    MetricsRegistry.Histogram histogram = new MetricsRegistry().getHistogram("histogram");
+
+    for (int i = 1; i <= 1000; i++) {
+      histogram.record(i);
+    }
+
+    assertThat(histogram.getCount()).isEqualTo(1000);
+    assertThat(histogram.getSum()).isEqualTo(500_500);
+    assertThat(histogram.getMin()).isEqualTo(1);
+    assertThat(histogram.getMax()).isEqualTo(1000);
+    assertThat(histogram.getMean()).isEqualTo(500.5);
+    assertThat(histogram.getValueAtPercentile(50)).isAtLeast(500);
+    assertThat(histogram.getValueAtPercentile(50)).isAtMost(500 * 9 / 8);
+    assertThat(histogram.getValueAtPercentile(99)).isAtLeast(990);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(1000);
+  }
+
+  @Test
+  public void histogram_recordsSmallValuesExactly() {
+    MetricsRegistry.Histogram histogram = new MetricsRegistry().getHistogram("histogram");
+
+    histogram.record(-1);
+    histogram.record(3);
+    histogram.record(5);
+
+    assertThat(histogram.getMin()).isEqualTo(0);
+    assertThat(histogram.getValueAtPercentile(50)).isEqualTo(3);
+    assertThat(histogram.getValueAtPercentile(100)).isEqualTo(5);
+  }
+
+  @Test
+  public void reset_clearsValues() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.getCounter("counter").increment();
+    registry.getHistogram("histogram").record(10);
+
+    registry.reset();
+
+    assertThat(registry.getCounter("counter").get()).isEqualTo(0);
+    assertThat(registry.getHistogram("histogram").getCount()).isEqualTo(0);
+    assertThat(registry.getHistogram("histogram").getMax()).isEqualTo(0);
+  }
+
+  @Test
+  public void dumpText_listsMetricsInOrderOfName() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.getCounter("b").add(2);
+    registry.getCounter("a").increment();
+    registry.getHistogram("c").record(4);
+
+    assertThat(registry.dumpText())
+        .isEqualTo("a 1\nb 2\nc count=1 min=4 p50=4 p90=4 p99=4 max=4 mean=4.00\n");
+  }
+
+  @Test
+  public void dumpJson_returnsJsonObject() {
+    MetricsRegistry registry = new MetricsRegistry();
+    registry.getCounter("a\"b").increment();
+    registry.getHistogram("c").record(4);
+
+    assertThat(registry.dumpJson())
+        .isEqualTo(
+            "{\"counters\":{\"a\\\"b\":1},\"histograms\":{\"c\":{\"count\":1,\"sum\":4,\"min\":4,"
+                + "\"p50\":4,\"p90\":4,\"p99\":4,\"max\":4}}}");
+  }
+}
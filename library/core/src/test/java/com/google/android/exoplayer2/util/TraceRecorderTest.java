@@ -0,0 +1,97 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.util;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link TraceRecorder}. */
+@RunWith(AndroidJUnit4.class)
+public final class TraceRecorderTest {
+
+  @Test
+  public void record_beforeStart_recordsNothing() {
+    TraceRecorder traceRecorder = new TraceRecorder();
+
+    traceRecorder.recordInstant("category", "name");
+
+    assertThat(traceRecorder.isEnabled()).isFalse();
+    assertThat(traceRecorder.getEventCount()).isEqualTo(0);
+  }
+
+  @Test
+  public void record_afterStop_recordsNothing() {
+    TraceRecorder traceRecorder = new TraceRecorder();
+    traceRecorder.start();
+    traceRecorder.recordInstant("category", "name");
+
+    traceRecorder.stop();
+    traceRecorder.recordInstant("category", "name");
+
+    assertThat(traceRecorder.getEventCount()).isEqualTo(1);
+  }
+
+  @Test
+  public void record_withFullBuffer_overwritesOldestEvents() throws Exception {
+    TraceRecorder traceRecorder = new TraceRecorder();
+    traceRecorder.start(/* capacity= */ 2);
+
+    traceRecorder.recordInstant("category", "first");
+    traceRecorder.recordInstant("category", "second");
+    traceRecorder.recordInstant("category", "third");
+
+    JSONArray events =
+        new JSONObject(traceRecorder.getChromeTraceJson()).getJSONArray("traceEvents");
+    assertThat(traceRecorder.getEventCount()).isEqualTo(2);
+    assertThat(events.getJSONObject(0).getString("name")).isEqualTo("second");
+    assertThat(events.getJSONObject(1).getString("name")).isEqualTo("third");
+  }
+
+  @Test
+  public void getChromeTraceJson_returnsSpansInstantsAndThreadNames() throws Exception {
+    TraceRecorder traceRecorder = new TraceRecorder();
+    traceRecorder.start();
+
+    long startTimeNs = System.nanoTime() - 2_000_000;
+    traceRecorder.recordSpan("loader", "load", startTimeNs, /* value= */ 42);
+    traceRecorder.recordInstant("codec", "queueInputBuffer");
+
+    JSONArray events =
+        new JSONObject(traceRecorder.getChromeTraceJson()).getJSONArray("traceEvents");
+    assertThat(events.length()).isEqualTo(3);
+    JSONObject span = events.getJSONObject(0);
+    assertThat(span.getString("name")).isEqualTo("load");
+    assertThat(span.getString("cat")).isEqualTo("loader");
+    assertThat(span.getString("ph")).isEqualTo("X");
+    assertThat(span.getLong("ts")).isEqualTo(startTimeNs / 1000);
+    assertThat(span.getLong("dur")).isAtLeast(2000);
+    assertThat(span.getJSONObject("args").getLong("value")).isEqualTo(42);
+    assertThat(span.getLong("tid")).isEqualTo(Thread.currentThread().getId());
+    JSONObject instant = events.getJSONObject(1);
+    assertThat(instant.getString("ph")).isEqualTo("i");
+    assertThat(instant.has("dur")).isFalse();
+    assertThat(instant.has("args")).isFalse();
+    JSONObject threadName = events.getJSONObject(2);
+    assertThat(threadName.getString("ph")).isEqualTo("M");
+    assertThat(threadName.getJSONObject("args").getString("name"))
+        .isEqualTo(Thread.currentThread().getName());
+  }
+}
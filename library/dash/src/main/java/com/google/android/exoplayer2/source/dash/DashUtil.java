@@ -212,7 +212,10 @@ public final class DashUtil {
         mimeType != null
             && (mimeType.startsWith(MimeTypes.VIDEO_WEBM)
                 || mimeType.startsWith(MimeTypes.AUDIO_WEBM));
-    Extractor extractor = isWebm ? new MatroskaExtractor() : new FragmentedMp4Extractor();
+    Extractor extractor =
+        isWebm
+            ? new MatroskaExtractor(MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES)
+            : new FragmentedMp4Extractor();
     return new BundledChunkExtractor(extractor, trackType, format);
   }
 
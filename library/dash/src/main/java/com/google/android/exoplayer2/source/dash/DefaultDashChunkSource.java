@@ -52,6 +52,7 @@ import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
 import com.google.android.exoplayer2.upstream.HttpDataSource.InvalidResponseCodeException;
 import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.MimeTypes;
 import com.google.android.exoplayer2.util.Util;
@@ -68,14 +69,30 @@ public class DefaultDashChunkSource implements DashChunkSource {
 
     private final DataSource.Factory dataSourceFactory;
     private final int maxSegmentsPerLoad;
+    private final long maxBytesPerLoad;
 
     public Factory(DataSource.Factory dataSourceFactory) {
       this(dataSourceFactory, /* maxSegmentsPerLoad= */ 1);
     }
 
     public Factory(DataSource.Factory dataSourceFactory, int maxSegmentsPerLoad) {
+      this(dataSourceFactory, maxSegmentsPerLoad, /* maxBytesPerLoad= */ C.LENGTH_UNSET);
+    }
+
+    /**
+     * @param dataSourceFactory A {@link DataSource.Factory} for the data sources that load the
+     *     media data.
+     * @param maxSegmentsPerLoad The maximum number of segments to combine into a single request.
+     * @param maxBytesPerLoad The maximum number of bytes to combine into a single request, or
+     *     {@link C#LENGTH_UNSET} for no limit. Allows a large {@code maxSegmentsPerLoad} to be
+     *     used to load short segments, such as audio sub-segments of a single file
+     *     representation, without making requests for long segments excessively large.
+     */
+    public Factory(
+        DataSource.Factory dataSourceFactory, int maxSegmentsPerLoad, long maxBytesPerLoad) {
       this.dataSourceFactory = dataSourceFactory;
       this.maxSegmentsPerLoad = maxSegmentsPerLoad;
+      this.maxBytesPerLoad = maxBytesPerLoad;
     }
 
     @Override
@@ -105,6 +122,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
           dataSource,
           elapsedRealtimeOffsetMs,
           maxSegmentsPerLoad,
+          maxBytesPerLoad,
           enableEventMessageTrack,
           closedCaptionFormats,
           playerEmsgHandler);
@@ -118,6 +136,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
   private final DataSource dataSource;
   private final long elapsedRealtimeOffsetMs;
   private final int maxSegmentsPerLoad;
+  private final long maxBytesPerLoad;
   @Nullable private final PlayerTrackEmsgHandler playerTrackEmsgHandler;
 
   protected final RepresentationHolder[] representationHolders;
@@ -161,6 +180,58 @@ public class DefaultDashChunkSource implements DashChunkSource {
       boolean enableEventMessageTrack,
       List<Format> closedCaptionFormats,
       @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler) {
+    this(
+        manifestLoaderErrorThrower,
+        manifest,
+        periodIndex,
+        adaptationSetIndices,
+        trackSelection,
+        trackType,
+        dataSource,
+        elapsedRealtimeOffsetMs,
+        maxSegmentsPerLoad,
+        /* maxBytesPerLoad= */ C.LENGTH_UNSET,
+        enableEventMessageTrack,
+        closedCaptionFormats,
+        playerTrackEmsgHandler);
+  }
+
+  /**
+   * @param manifestLoaderErrorThrower Throws errors affecting loading of manifests.
+   * @param manifest The initial manifest.
+   * @param periodIndex The index of the period in the manifest.
+   * @param adaptationSetIndices The indices of the adaptation sets in the period.
+   * @param trackSelection The track selection.
+   * @param trackType The type of the tracks in the selection.
+   * @param dataSource A {@link DataSource} suitable for loading the media data.
+   * @param elapsedRealtimeOffsetMs If known, an estimate of the instantaneous difference between
+   *     server-side unix time and {@link SystemClock#elapsedRealtime()} in milliseconds, specified
+   *     as the server's unix time minus the local elapsed time. Or {@link C#TIME_UNSET} if unknown.
+   * @param maxSegmentsPerLoad The maximum number of segments to combine into a single request. Note
+   *     that segments will only be combined if their {@link Uri}s are the same and if their data
+   *     ranges are adjacent.
+   * @param maxBytesPerLoad The maximum number of bytes to combine into a single request, or {@link
+   *     C#LENGTH_UNSET} for no limit. Segments will only be combined if the length of the combined
+   *     request is known and doesn't exceed this limit.
+   * @param enableEventMessageTrack Whether to output an event message track.
+   * @param closedCaptionFormats The {@link Format Formats} of closed caption tracks to be output.
+   * @param playerTrackEmsgHandler The {@link PlayerTrackEmsgHandler} instance to handle emsg
+   *     messages targeting the player. Maybe null if this is not necessary.
+   */
+  public DefaultDashChunkSource(
+      LoaderErrorThrower manifestLoaderErrorThrower,
+      DashManifest manifest,
+      int periodIndex,
+      int[] adaptationSetIndices,
+      TrackSelection trackSelection,
+      int trackType,
+      DataSource dataSource,
+      long elapsedRealtimeOffsetMs,
+      int maxSegmentsPerLoad,
+      long maxBytesPerLoad,
+      boolean enableEventMessageTrack,
+      List<Format> closedCaptionFormats,
+      @Nullable PlayerTrackEmsgHandler playerTrackEmsgHandler) {
     this.manifestLoaderErrorThrower = manifestLoaderErrorThrower;
     this.manifest = manifest;
     this.adaptationSetIndices = adaptationSetIndices;
@@ -170,6 +241,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
     this.periodIndex = periodIndex;
     this.elapsedRealtimeOffsetMs = elapsedRealtimeOffsetMs;
     this.maxSegmentsPerLoad = maxSegmentsPerLoad;
+    this.maxBytesPerLoad = maxBytesPerLoad;
     this.playerTrackEmsgHandler = playerTrackEmsgHandler;
 
     long periodDurationUs = manifest.getPeriodDurationUs(periodIndex);
@@ -228,6 +300,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
   @Override
   public void updateTrackSelection(TrackSelection trackSelection) {
     this.trackSelection = trackSelection;
+    maybeCancelPrefetches();
   }
 
   @Override
@@ -281,6 +354,11 @@ public class DefaultDashChunkSource implements DashChunkSource {
 
     long nowUnixTimeUs = C.msToUs(Util.getNowUnixTimeMs(elapsedRealtimeOffsetMs));
     MediaChunk previous = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+    if (previous == null) {
+      // Loading restarts at a new position, for example after a seek, so segments prefetched for
+      // the previous position are unlikely to be read.
+      maybeCancelPrefetches();
+    }
     MediaChunkIterator[] chunkIterators = new MediaChunkIterator[trackSelection.length()];
     for (int i = 0; i < chunkIterators.length; i++) {
       RepresentationHolder representationHolder = representationHolders[i];
@@ -398,6 +476,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
             segmentNum,
             maxSegmentCount,
             seekTimeUs);
+    maybePrefetchSegments(representationHolder, segmentNum + 1, lastAvailableSegmentNum);
   }
 
   @Override
@@ -461,6 +540,7 @@ public class DefaultDashChunkSource implements DashChunkSource {
         chunkExtractor.release();
       }
     }
+    maybeCancelPrefetches();
   }
 
   // Internal methods.
@@ -494,6 +574,45 @@ public class DefaultDashChunkSource implements DashChunkSource {
         ? representationHolder.getSegmentEndTimeUs(lastAvailableSegmentNum) : C.TIME_UNSET;
   }
 
+  /**
+   * Prefetches the segments following a media chunk if the data source is a {@link
+   * PrefetchingDataSource}. Segments aren't prefetched if several segments may be merged into a
+   * single load, since the requests wouldn't match.
+   */
+  private void maybePrefetchSegments(
+      RepresentationHolder representationHolder,
+      long firstSegmentNum,
+      long lastAvailableSegmentNum) {
+    if (!(dataSource instanceof PrefetchingDataSource) || maxSegmentsPerLoad != 1) {
+      return;
+    }
+    PrefetchingDataSource prefetchingDataSource = (PrefetchingDataSource) dataSource;
+    if (missingLastSegment) {
+      lastAvailableSegmentNum--;
+    }
+    long lastSegmentNum =
+        min(
+            lastAvailableSegmentNum,
+            firstSegmentNum + prefetchingDataSource.getPrefetchCount() - 1);
+    long periodDurationUs = representationHolder.periodDurationUs;
+    for (long segmentNum = firstSegmentNum; segmentNum <= lastSegmentNum; segmentNum++) {
+      if (periodDurationUs != C.TIME_UNSET
+          && representationHolder.getSegmentStartTimeUs(segmentNum) >= periodDurationUs) {
+        break;
+      }
+      prefetchingDataSource.prefetch(
+          DashUtil.buildDataSpec(
+              representationHolder.representation, representationHolder.getSegmentUrl(segmentNum)));
+    }
+  }
+
+  /** Cancels the segment prefetches that haven't been read, if any. */
+  private void maybeCancelPrefetches() {
+    if (dataSource instanceof PrefetchingDataSource) {
+      ((PrefetchingDataSource) dataSource).cancelPrefetches();
+    }
+  }
+
   private long resolveTimeToLiveEdgeUs(long playbackPositionUs) {
     boolean resolveTimeToLiveEdgePossible = manifest.dynamic && liveEdgeTimeUs != C.TIME_UNSET;
     return resolveTimeToLiveEdgePossible ? liveEdgeTimeUs - playbackPositionUs : C.TIME_UNSET;
@@ -557,6 +676,12 @@ public class DefaultDashChunkSource implements DashChunkSource {
           // Unable to merge segment fetches because the URIs do not merge.
           break;
         }
+        if (maxBytesPerLoad != C.LENGTH_UNSET
+            && (mergedSegmentUri.length == C.LENGTH_UNSET
+                || mergedSegmentUri.length > maxBytesPerLoad)) {
+          // Merging the segment would make the request too large.
+          break;
+        }
         segmentUri = mergedSegmentUri;
         segmentCount++;
       }
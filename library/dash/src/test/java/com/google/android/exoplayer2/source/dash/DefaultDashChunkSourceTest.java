@@ -0,0 +1,155 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.source.dash;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.chunk.ChunkHolder;
+import com.google.android.exoplayer2.source.chunk.ContainerMediaChunk;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifest;
+import com.google.android.exoplayer2.source.dash.manifest.DashManifestParser;
+import com.google.android.exoplayer2.trackselection.FixedTrackSelection;
+import com.google.android.exoplayer2.upstream.DummyDataSource;
+import com.google.android.exoplayer2.upstream.LoaderErrorThrower;
+import com.google.android.exoplayer2.util.Util;
+import java.io.ByteArrayInputStream;
+import java.io.IOException;
+import java.util.Collections;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link DefaultDashChunkSource}. */
+@RunWith(AndroidJUnit4.class)
+public final class DefaultDashChunkSourceTest {
+
+  private static final int SEGMENT_COUNT = 10;
+  private static final int SEGMENT_SIZE = 1000;
+
+  @Test
+  public void getNextChunk_withMaxSegmentsPerLoad_mergesAdjacentSegments() throws Exception {
+    DefaultDashChunkSource chunkSource =
+        createChunkSource(/* maxSegmentsPerLoad= */ 5, /* maxBytesPerLoad= */ C.LENGTH_UNSET);
+    ChunkHolder output = new ChunkHolder();
+
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ Collections.emptyList(),
+        output);
+
+    ContainerMediaChunk chunk = (ContainerMediaChunk) output.chunk;
+    assertThat(chunk.dataSpec.position).isEqualTo(0);
+    assertThat(chunk.dataSpec.length).isEqualTo(5 * SEGMENT_SIZE);
+    assertThat(chunk.getNextChunkIndex()).isEqualTo(5);
+  }
+
+  @Test
+  public void getNextChunk_withMaxBytesPerLoad_limitsMergedSegments() throws Exception {
+    DefaultDashChunkSource chunkSource =
+        createChunkSource(/* maxSegmentsPerLoad= */ 5, /* maxBytesPerLoad= */ 3 * SEGMENT_SIZE);
+    ChunkHolder output = new ChunkHolder();
+
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ Collections.emptyList(),
+        output);
+
+    ContainerMediaChunk chunk = (ContainerMediaChunk) output.chunk;
+    assertThat(chunk.dataSpec.position).isEqualTo(0);
+    assertThat(chunk.dataSpec.length).isEqualTo(3 * SEGMENT_SIZE);
+    assertThat(chunk.getNextChunkIndex()).isEqualTo(3);
+  }
+
+  @Test
+  public void getNextChunk_withMaxBytesPerLoadSmallerThanSegment_loadsSingleSegment()
+      throws Exception {
+    DefaultDashChunkSource chunkSource =
+        createChunkSource(/* maxSegmentsPerLoad= */ 5, /* maxBytesPerLoad= */ SEGMENT_SIZE / 2);
+    ChunkHolder output = new ChunkHolder();
+
+    chunkSource.getNextChunk(
+        /* playbackPositionUs= */ 0,
+        /* loadPositionUs= */ 0,
+        /* queue= */ Collections.emptyList(),
+        output);
+
+    ContainerMediaChunk chunk = (ContainerMediaChunk) output.chunk;
+    assertThat(chunk.dataSpec.length).isEqualTo(SEGMENT_SIZE);
+    assertThat(chunk.getNextChunkIndex()).isEqualTo(1);
+  }
+
+  private static DefaultDashChunkSource createChunkSource(
+      int maxSegmentsPerLoad, long maxBytesPerLoad) throws IOException {
+    DashManifest manifest = createSingleFileManifest();
+    TrackGroup trackGroup =
+        new TrackGroup(
+            manifest.getPeriod(0).adaptationSets.get(0).representations.get(0).format);
+    return new DefaultDashChunkSource(
+        new LoaderErrorThrower.Dummy(),
+        manifest,
+        /* periodIndex= */ 0,
+        /* adaptationSetIndices= */ new int[] {0},
+        new FixedTrackSelection(trackGroup, /* track= */ 0),
+        C.TRACK_TYPE_AUDIO,
+        DummyDataSource.INSTANCE,
+        /* elapsedRealtimeOffsetMs= */ 0,
+        maxSegmentsPerLoad,
+        maxBytesPerLoad,
+        /* enableEventMessageTrack= */ false,
+        /* closedCaptionFormats= */ Collections.emptyList(),
+        /* playerTrackEmsgHandler= */ null);
+  }
+
+  /**
+   * Returns a manifest with a single audio representation, whose 1 second segments are adjacent
+   * byte ranges of the same file.
+   */
+  private static DashManifest createSingleFileManifest() throws IOException {
+    StringBuilder segmentUrls = new StringBuilder();
+    for (int i = 0; i < SEGMENT_COUNT; i++) {
+      segmentUrls
+          .append("<SegmentURL mediaRange=\"")
+          .append(i * SEGMENT_SIZE)
+          .append('-')
+          .append((i + 1) * SEGMENT_SIZE - 1)
+          .append("\"/>");
+    }
+    String manifest =
+        "<?xml version=\"1.0\" encoding=\"UTF-8\"?>"
+            + "<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" type=\"static\""
+            + " mediaPresentationDuration=\"PT10S\">"
+            + "<Period start=\"PT0S\" duration=\"PT10S\">"
+            + "<AdaptationSet mimeType=\"audio/mp4\">"
+            + "<Representation id=\"0\" codecs=\"mp4a.40.2\" bandwidth=\"64000\">"
+            + "<BaseURL>https://test.test/audio.mp4</BaseURL>"
+            + "<SegmentList timescale=\"1000\" duration=\"1000\">"
+            + segmentUrls
+            + "</SegmentList>"
+            + "</Representation>"
+            + "</AdaptationSet>"
+            + "</Period>"
+            + "</MPD>";
+    return new DashManifestParser()
+        .parse(
+            Uri.parse("https://test.test/manifest.mpd"),
+            new ByteArrayInputStream(Util.getUtf8Bytes(manifest)));
+  }
+}
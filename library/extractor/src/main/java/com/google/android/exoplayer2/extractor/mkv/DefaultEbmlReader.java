@@ -142,6 +142,10 @@ import org.checkerframework.checker.nullness.qual.RequiresNonNull;
           elementState = ELEMENT_STATE_READ_ID;
           return true;
         case EbmlProcessor.ELEMENT_TYPE_UNKNOWN:
+          if (processor.seekPastElement(elementId, elementContentSize, input)) {
+            elementState = ELEMENT_STATE_READ_ID;
+            return true;
+          }
           input.skipFully((int) elementContentSize);
           elementState = ELEMENT_STATE_READ_ID;
           break;
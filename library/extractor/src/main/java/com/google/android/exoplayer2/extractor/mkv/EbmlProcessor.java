@@ -144,4 +144,22 @@ public interface EbmlProcessor {
    * @throws IOException If an error occurs reading from the input.
    */
   void binaryElement(int id, int contentsSize, ExtractorInput input) throws IOException;
+
+  /**
+   * Called when an element of type {@link #ELEMENT_TYPE_UNKNOWN} is encountered, before it is
+   * skipped.
+   *
+   * <p>The element header will already have been read. Implementations may return true to indicate
+   * that they will reposition the input to the end of the element themselves, for example by
+   * seeking rather than reading through a large element. In this case the reader will not consume
+   * any of the element's content. The default implementation returns false.
+   *
+   * @param id The element ID.
+   * @param contentSize The element's content size.
+   * @param input The {@link ExtractorInput} from which data is being read.
+   * @return Whether the implementation will reposition the input to the end of the element.
+   */
+  default boolean seekPastElement(int id, long contentSize, ExtractorInput input) {
+    return false;
+  }
 }
@@ -89,7 +89,8 @@ public class MatroskaExtractor implements Extractor {
    * Normally (i.e. when this flag is not set) the extractor will seek to the cues element if its
    * position is specified in the seek head and if it's after the first cluster. Setting this flag
    * disables seeking to the cues element. If the cues element is after the first cluster then the
-   * media is treated as being unseekable.
+   * media is treated as being unseekable. Setting this flag also disables seeking past large
+   * unused elements, which are read through instead.
    */
   public static final int FLAG_DISABLE_SEEK_FOR_CUES = 1;
 
@@ -139,6 +140,12 @@ public class MatroskaExtractor implements Extractor {
   private static final int ENCRYPTION_IV_SIZE = 8;
   private static final int TRACK_TYPE_AUDIO = 2;
 
+  /**
+   * When skipping an element that is not needed, if its size is greater than or equal to this
+   * value, the source will be reloaded at the end of the element rather than reading through it.
+   */
+  private static final long RELOAD_MINIMUM_SEEK_DISTANCE = 256 * 1024;
+
   private static final int ID_EBML = 0x1A45DFA3;
   private static final int ID_EBML_READ_VERSION = 0x42F7;
   private static final int ID_DOC_TYPE = 0x4282;
@@ -390,6 +397,7 @@ public class MatroskaExtractor implements Extractor {
   private boolean seekForCues;
   private long cuesContentPosition = C.POSITION_UNSET;
   private long seekPositionAfterBuildingCues = C.POSITION_UNSET;
+  private long seekPositionAfterSkippedElement = C.POSITION_UNSET;
   private long clusterTimecodeUs = C.TIME_UNSET;
   @Nullable private LongArray cueTimesUs;
   @Nullable private LongArray cueClusterPositions;
@@ -466,6 +474,7 @@ public class MatroskaExtractor implements Extractor {
   @Override
   public void seek(long position, long timeUs) {
     clusterTimecodeUs = C.TIME_UNSET;
+    seekPositionAfterSkippedElement = C.POSITION_UNSET;
     blockState = BLOCK_STATE_START;
     reader.reset();
     varintReader.reset();
@@ -489,6 +498,11 @@ public class MatroskaExtractor implements Extractor {
       if (continueReading && maybeSeekForCues(seekPosition, input.getPosition())) {
         return Extractor.RESULT_SEEK;
       }
+      if (continueReading && seekPositionAfterSkippedElement != C.POSITION_UNSET) {
+        seekPosition.position = seekPositionAfterSkippedElement;
+        seekPositionAfterSkippedElement = C.POSITION_UNSET;
+        return Extractor.RESULT_SEEK;
+      }
     }
     if (!continueReading) {
       for (int i = 0; i < tracks.size(); i++) {
@@ -1709,6 +1723,31 @@ public class MatroskaExtractor implements Extractor {
     return new ChunkIndex(sizes, offsets, durationsUs, timesUs);
   }
 
+  /**
+   * Schedules a seek to the end of an element that is not needed (for example Attachments, Tags or
+   * Void elements) if it is large enough that reloading is preferable to reading through it. Like
+   * seeking for Cues, this is only done if {@link #FLAG_DISABLE_SEEK_FOR_CUES} isn't set, because
+   * callers that set the flag, such as DASH chunk extraction, can't handle {@link
+   * Extractor#RESULT_SEEK}.
+   *
+   * @param contentSize The element's content size.
+   * @param input The {@link ExtractorInput} positioned at the start of the element's content.
+   * @return Whether the seek was scheduled.
+   */
+  private boolean seekPastElement(long contentSize, ExtractorInput input) {
+    long inputLength = input.getLength();
+    long elementEndPosition = input.getPosition() + contentSize;
+    if (!seekForCuesEnabled
+        || contentSize < RELOAD_MINIMUM_SEEK_DISTANCE
+        || inputLength == C.LENGTH_UNSET
+        || elementEndPosition > inputLength) {
+      // Let the reader skip the element, which also handles malformed sizes.
+      return false;
+    }
+    seekPositionAfterSkippedElement = elementEndPosition;
+    return true;
+  }
+
   /**
    * Updates the position of the holder to Cues element's position if the extractor configuration
    * permits use of master seek entry. After building Cues sets the holder's position back to where
@@ -1834,6 +1873,11 @@ public class MatroskaExtractor implements Extractor {
     public void binaryElement(int id, int contentsSize, ExtractorInput input) throws IOException {
       MatroskaExtractor.this.binaryElement(id, contentsSize, input);
     }
+
+    @Override
+    public boolean seekPastElement(int id, long contentSize, ExtractorInput input) {
+      return MatroskaExtractor.this.seekPastElement(contentSize, input);
+    }
   }
 
   /**
@@ -382,6 +382,15 @@ import java.util.List;
   @SuppressWarnings("ConstantCaseForConstants")
   public static final int TYPE_twos = 0x74776f73;
 
+  @SuppressWarnings("ConstantCaseForConstants")
+  public static final int TYPE_mfra = 0x6d667261;
+
+  @SuppressWarnings("ConstantCaseForConstants")
+  public static final int TYPE_tfra = 0x74667261;
+
+  @SuppressWarnings("ConstantCaseForConstants")
+  public static final int TYPE_mfro = 0x6d66726f;
+
   public final int type;
 
   public Atom(int type) {
@@ -21,6 +21,7 @@ import static com.google.android.exoplayer2.util.Assertions.checkState;
 import static com.google.android.exoplayer2.util.Util.castNonNull;
 import static com.google.android.exoplayer2.util.Util.nullSafeArrayCopy;
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.util.Pair;
 import android.util.SparseArray;
@@ -74,8 +75,8 @@ public class FragmentedMp4Extractor implements Extractor {
   /**
    * Flags controlling the behavior of the extractor. Possible flag values are {@link
    * #FLAG_WORKAROUND_EVERY_VIDEO_FRAME_IS_SYNC_FRAME}, {@link #FLAG_WORKAROUND_IGNORE_TFDT_BOX},
-   * {@link #FLAG_ENABLE_EMSG_TRACK}, {@link #FLAG_SIDELOADED} and {@link
-   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS}.
+   * {@link #FLAG_ENABLE_EMSG_TRACK}, {@link #FLAG_SIDELOADED}, {@link
+   * #FLAG_WORKAROUND_IGNORE_EDIT_LISTS} and {@link #FLAG_ENABLE_MFRA_SEEKING}.
    */
   @Documented
   @Retention(RetentionPolicy.SOURCE)
@@ -86,7 +87,8 @@ public class FragmentedMp4Extractor implements Extractor {
         FLAG_WORKAROUND_IGNORE_TFDT_BOX,
         FLAG_ENABLE_EMSG_TRACK,
         FLAG_SIDELOADED,
-        FLAG_WORKAROUND_IGNORE_EDIT_LISTS
+        FLAG_WORKAROUND_IGNORE_EDIT_LISTS,
+        FLAG_ENABLE_MFRA_SEEKING
       })
   public @interface Flags {}
   /**
@@ -111,6 +113,15 @@ public class FragmentedMp4Extractor implements Extractor {
   private static final int FLAG_SIDELOADED = 1 << 3; // 8
   /** Flag to ignore any edit lists in the stream. */
   public static final int FLAG_WORKAROUND_IGNORE_EDIT_LISTS = 1 << 4; // 16
+  /**
+   * Flag to use the movie fragment random access box (mfra) at the end of the stream to build a
+   * seek map, if the stream does not start with a segment index box (sidx). Enabling this flag
+   * makes progressive fragmented MP4 streams seekable without scanning the fragments, at the cost
+   * of one additional seek to the end of the stream before the first fragment is read.
+   *
+   * <p>This flag has no effect if the length of the input is unknown.
+   */
+  public static final int FLAG_ENABLE_MFRA_SEEKING = 1 << 5; // 32
 
   private static final String TAG = "FragmentedMp4Extractor";
 
@@ -130,6 +141,14 @@ public class FragmentedMp4Extractor implements Extractor {
   private static final int STATE_READING_ENCRYPTION_DATA = 2;
   private static final int STATE_READING_SAMPLE_START = 3;
   private static final int STATE_READING_SAMPLE_CONTINUE = 4;
+  private static final int STATE_SEEKING_TO_MFRO = 5;
+  private static final int STATE_READING_MFRO = 6;
+  private static final int STATE_READING_MFRA = 7;
+
+  // Size of the movie fragment random access offset box (mfro), which ends the stream.
+  private static final int MFRO_ATOM_SIZE = 16;
+  // Upper bound on the size of a movie fragment random access box (mfra) that will be read.
+  private static final int MAX_MFRA_ATOM_SIZE = 8 * 1024 * 1024;
 
   // Workarounds.
   @Flags private final int flags;
@@ -184,6 +203,11 @@ public class FragmentedMp4Extractor implements Extractor {
   // Whether extractorOutput.seekMap has been called.
   private boolean haveOutputSeekMap;
 
+  // Movie fragment random access state.
+  private boolean haveReadMfra;
+  private long firstFragmentPosition;
+  private long mfraPosition;
+
   public FragmentedMp4Extractor() {
     this(0);
   }
@@ -311,6 +335,12 @@ public class FragmentedMp4Extractor implements Extractor {
 
   @Override
   public void seek(long position, long timeUs) {
+    if (parserState == STATE_SEEKING_TO_MFRO
+        || parserState == STATE_READING_MFRO
+        || parserState == STATE_READING_MFRA) {
+      // Allow the mfra to be read again when the first fragment is reached.
+      haveReadMfra = false;
+    }
     int trackCount = trackBundles.size();
     for (int i = 0; i < trackCount; i++) {
       trackBundles.valueAt(i).resetFragmentInfo();
@@ -342,6 +372,10 @@ public class FragmentedMp4Extractor implements Extractor {
         case STATE_READING_ENCRYPTION_DATA:
           readEncryptionData(input);
           break;
+        case STATE_SEEKING_TO_MFRO:
+        case STATE_READING_MFRO:
+        case STATE_READING_MFRA:
+          return readMfra(input, seekPosition);
         default:
           if (readSample(input)) {
             return RESULT_CONTINUE;
@@ -393,6 +427,15 @@ public class FragmentedMp4Extractor implements Extractor {
     if (atomType == Atom.TYPE_moof || atomType == Atom.TYPE_mdat) {
       if (!haveOutputSeekMap) {
         // This must be the first moof or mdat in the stream.
+        if ((flags & FLAG_ENABLE_MFRA_SEEKING) != 0
+            && !haveReadMfra
+            && input.getLength() != C.LENGTH_UNSET) {
+          // Read the mfra at the end of the stream before resuming from this atom.
+          haveReadMfra = true;
+          firstFragmentPosition = atomPosition;
+          parserState = STATE_SEEKING_TO_MFRO;
+          return true;
+        }
         extractorOutput.seekMap(new SeekMap.Unseekable(durationUs, atomPosition));
         haveOutputSeekMap = true;
       }
@@ -447,6 +490,51 @@ public class FragmentedMp4Extractor implements Extractor {
     return true;
   }
 
+  private int readMfra(ExtractorInput input, PositionHolder seekPosition) throws IOException {
+    long inputLength = input.getLength();
+    if (parserState == STATE_SEEKING_TO_MFRO) {
+      if (inputLength - firstFragmentPosition < MFRO_ATOM_SIZE) {
+        return resumeFromFirstFragment(seekPosition);
+      }
+      parserState = STATE_READING_MFRO;
+      seekPosition.position = inputLength - MFRO_ATOM_SIZE;
+      return RESULT_SEEK;
+    } else if (parserState == STATE_READING_MFRO) {
+      input.readFully(scratchBytes, 0, MFRO_ATOM_SIZE);
+      scratch.setPosition(0);
+      long mfroSize = scratch.readUnsignedInt();
+      int mfroType = scratch.readInt();
+      scratch.skipBytes(4); // version (1), flags (3)
+      long mfraSize = scratch.readUnsignedInt();
+      if (mfroSize != MFRO_ATOM_SIZE
+          || mfroType != Atom.TYPE_mfro
+          || mfraSize < Atom.HEADER_SIZE + MFRO_ATOM_SIZE
+          || mfraSize > MAX_MFRA_ATOM_SIZE
+          || mfraSize > inputLength - firstFragmentPosition) {
+        return resumeFromFirstFragment(seekPosition);
+      }
+      mfraPosition = inputLength - mfraSize;
+      parserState = STATE_READING_MFRA;
+      seekPosition.position = mfraPosition;
+      return RESULT_SEEK;
+    } else {
+      ParsableByteArray mfra = new ParsableByteArray((int) (inputLength - mfraPosition));
+      input.readFully(mfra.getData(), 0, mfra.limit());
+      @Nullable ChunkIndex chunkIndex = parseMfra(mfra, mfraPosition, trackBundles, durationUs);
+      if (chunkIndex != null) {
+        extractorOutput.seekMap(chunkIndex);
+        haveOutputSeekMap = true;
+      }
+      return resumeFromFirstFragment(seekPosition);
+    }
+  }
+
+  private int resumeFromFirstFragment(PositionHolder seekPosition) {
+    enterReadingAtomHeaderState();
+    seekPosition.position = firstFragmentPosition;
+    return RESULT_SEEK;
+  }
+
   private void readAtomPayload(ExtractorInput input) throws IOException {
     int atomPayloadSize = (int) atomSize - atomHeaderBytesRead;
     @Nullable ParsableByteArray atomData = this.atomData;
@@ -1242,6 +1330,122 @@ public class FragmentedMp4Extractor implements Extractor {
         new ChunkIndex(sizes, offsets, durationsUs, timesUs));
   }
 
+  /**
+   * Parses an mfra atom (defined in 14496-12) into a {@link ChunkIndex} of the movie fragments.
+   *
+   * <p>The index is built from the tfra atom of the first video track, or of the first track if
+   * there are no video tracks. Each chunk spans from one referenced moof atom to the next.
+   *
+   * @param atom The atom data.
+   * @param atomPosition The input position of the first byte of the atom.
+   * @param trackBundles The track bundles, keyed by track ID.
+   * @param durationUs The duration of the stream, in microseconds, or {@link C#TIME_UNSET} if
+   *     unknown.
+   * @return The parsed {@link ChunkIndex}, or null if the atom does not define a usable index.
+   */
+  @Nullable
+  private static ChunkIndex parseMfra(
+      ParsableByteArray atom,
+      long atomPosition,
+      SparseArray<TrackBundle> trackBundles,
+      long durationUs) {
+    if (durationUs == C.TIME_UNSET
+        || atom.readUnsignedInt() != atom.limit()
+        || atom.readInt() != Atom.TYPE_mfra) {
+      return null;
+    }
+    @Nullable ParsableByteArray selectedTfra = null;
+    @Nullable Track selectedTrack = null;
+    while (atom.bytesLeft() >= Atom.HEADER_SIZE) {
+      int childPosition = atom.getPosition();
+      int childSize = atom.readInt();
+      int childType = atom.readInt();
+      if (childSize < Atom.HEADER_SIZE || childSize > atom.limit() - childPosition) {
+        return null;
+      }
+      if (childType == Atom.TYPE_tfra) {
+        atom.skipBytes(4); // version (1), flags (3)
+        int trackId = atom.readInt();
+        @Nullable TrackBundle trackBundle = trackBundles.get(trackId);
+        if (trackBundle != null
+            && (selectedTrack == null
+                || (selectedTrack.type != C.TRACK_TYPE_VIDEO
+                    && trackBundle.moovSampleTable.track.type == C.TRACK_TYPE_VIDEO))) {
+          selectedTrack = trackBundle.moovSampleTable.track;
+          selectedTfra =
+              new ParsableByteArray(
+                  Arrays.copyOfRange(atom.getData(), childPosition, childPosition + childSize));
+        }
+      }
+      atom.setPosition(childPosition + childSize);
+    }
+    if (selectedTfra == null || selectedTrack == null) {
+      return null;
+    }
+
+    selectedTfra.setPosition(Atom.HEADER_SIZE);
+    int version = Atom.parseFullAtomVersion(selectedTfra.readInt());
+    selectedTfra.skipBytes(4); // track_ID
+    int lengthSizes = selectedTfra.readInt();
+    int trafNumberLength = ((lengthSizes >> 4) & 0x3) + 1;
+    int trunNumberLength = ((lengthSizes >> 2) & 0x3) + 1;
+    int sampleNumberLength = (lengthSizes & 0x3) + 1;
+    int entryNumberLength = trafNumberLength + trunNumberLength + sampleNumberLength;
+    long entryCount = selectedTfra.readUnsignedInt();
+    int entrySize = (version == 1 ? 16 : 8) + entryNumberLength;
+    if (entryCount == 0 || entryCount > selectedTfra.bytesLeft() / entrySize) {
+      return null;
+    }
+
+    long timescale = selectedTrack.timescale;
+    long[] timesUs = new long[(int) entryCount];
+    long[] offsets = new long[(int) entryCount];
+    int chunkCount = 0;
+    for (int i = 0; i < entryCount; i++) {
+      long time;
+      long moofOffset;
+      if (version == 1) {
+        time = selectedTfra.readUnsignedLongToLong();
+        moofOffset = selectedTfra.readUnsignedLongToLong();
+      } else {
+        time = selectedTfra.readUnsignedInt();
+        moofOffset = selectedTfra.readUnsignedInt();
+      }
+      selectedTfra.skipBytes(entryNumberLength);
+      if (chunkCount > 0 && moofOffset == offsets[chunkCount - 1]) {
+        // Several sync samples in the same fragment. Only the first one is needed.
+        continue;
+      }
+      long timeUs = Util.scaleLargeTimestamp(time, C.MICROS_PER_SECOND, timescale);
+      if (moofOffset >= atomPosition
+          || (chunkCount > 0
+              && (moofOffset < offsets[chunkCount - 1] || timeUs < timesUs[chunkCount - 1]))) {
+        // The index is not usable unless fragments are in increasing order.
+        return null;
+      }
+      timesUs[chunkCount] = timeUs;
+      offsets[chunkCount] = moofOffset;
+      chunkCount++;
+    }
+    if (timesUs[chunkCount - 1] >= durationUs) {
+      return null;
+    }
+
+    int[] sizes = new int[chunkCount];
+    long[] durationsUs = new long[chunkCount];
+    for (int i = 0; i < chunkCount; i++) {
+      long endOffset = i + 1 < chunkCount ? offsets[i + 1] : atomPosition;
+      long endTimeUs = i + 1 < chunkCount ? timesUs[i + 1] : durationUs;
+      sizes[i] = (int) min(endOffset - offsets[i], Integer.MAX_VALUE);
+      durationsUs[i] = endTimeUs - timesUs[i];
+    }
+    return new ChunkIndex(
+        sizes,
+        Arrays.copyOf(offsets, chunkCount),
+        durationsUs,
+        Arrays.copyOf(timesUs, chunkCount));
+  }
+
   private void readEncryptionData(ExtractorInput input) throws IOException {
     @Nullable TrackBundle nextTrackBundle = null;
     long nextDataOffset = Long.MAX_VALUE;
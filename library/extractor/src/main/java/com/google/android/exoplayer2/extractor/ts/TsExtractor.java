@@ -518,11 +518,16 @@ public final class TsExtractor implements Extractor {
     private final SparseIntArray trackIdToPidScratch;
     private final int pid;
 
+    private byte[] lastSectionData;
+    private int lastSectionLength;
+
     public PmtReader(int pid) {
       pmtScratch = new ParsableBitArray(new byte[5]);
       trackIdToReaderScratch = new SparseArray<>();
       trackIdToPidScratch = new SparseIntArray();
       this.pid = pid;
+      lastSectionData = Util.EMPTY_BYTE_ARRAY;
+      lastSectionLength = C.LENGTH_UNSET;
     }
 
     @Override
@@ -533,6 +538,11 @@ public final class TsExtractor implements Extractor {
 
     @Override
     public void consume(ParsableByteArray sectionData) {
+      if (!updateLastSection(sectionData)) {
+        // The PMT is retransmitted periodically and is normally unchanged, in which case parsing it
+        // again would only allocate new EsInfo instances for tracks that already exist.
+        return;
+      }
       int tableId = sectionData.readUnsignedByte();
       if (tableId != 0x02 /* TS_program_map_section */) {
         // See ISO/IEC 13818-1, section 2.4.4.4 for more information on table id assignment.
@@ -650,6 +660,35 @@ public final class TsExtractor implements Extractor {
       }
     }
 
+    /**
+     * Stores a copy of the section, unless it's identical to the last section consumed.
+     *
+     * @param sectionData The section, with its position set to the start of the section.
+     * @return Whether the section differs from the last section consumed.
+     */
+    private boolean updateLastSection(ParsableByteArray sectionData) {
+      byte[] data = sectionData.getData();
+      int length = sectionData.limit();
+      if (length == lastSectionLength) {
+        boolean isRepeat = true;
+        for (int i = 0; i < length; i++) {
+          if (data[i] != lastSectionData[i]) {
+            isRepeat = false;
+            break;
+          }
+        }
+        if (isRepeat) {
+          return false;
+        }
+      }
+      if (lastSectionData.length < length) {
+        lastSectionData = new byte[length];
+      }
+      System.arraycopy(data, /* srcPos= */ 0, lastSectionData, /* destPos= */ 0, length);
+      lastSectionLength = length;
+      return true;
+    }
+
     /**
      * Returns the stream info read from the available descriptors. Sets {@code data}'s position to
      * the end of the descriptors.
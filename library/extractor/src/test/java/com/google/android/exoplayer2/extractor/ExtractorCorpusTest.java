@@ -0,0 +1,50 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.testutil.ExtractorCorpusRunner;
+import com.google.common.collect.ImmutableList;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Runs the {@link DefaultExtractorsFactory} extractors over the checked-in media assets. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorCorpusTest {
+
+  @Test
+  public void run_overMediaAssets_hasNoFailures() throws Exception {
+    Context context = ApplicationProvider.getApplicationContext();
+    ImmutableList<String> assetPaths = ExtractorCorpusRunner.listAssets(context, "media");
+    ExtractorCorpusRunner runner =
+        new ExtractorCorpusRunner.Builder().setMutationsPerFile(0).build();
+
+    ExtractorCorpusRunner.Report report;
+    try {
+      report = runner.run(context, assetPaths);
+    } finally {
+      runner.release();
+    }
+
+    assertThat(assetPaths).isNotEmpty();
+    assertThat(report.results).isNotEmpty();
+    assertThat(report.getFailures()).isEmpty();
+  }
+}
@@ -132,6 +132,29 @@ public class DefaultEbmlReaderTest {
     assertEvents(input, expected.events);
   }
 
+  @Test
+  public void unknownElement_isSkipped() throws IOException {
+    ExtractorInput input =
+        createTestInput(0xEC, 0x84, 0x01, 0x02, 0x03, 0x04, 0x42, 0xF7, 0x81, 0x01);
+    TestProcessor expected = new TestProcessor();
+    expected.integerElement(TestProcessor.ID_EBML_READ_VERSION, 1);
+    assertEvents(input, expected.events);
+  }
+
+  @Test
+  public void unknownElement_withProcessorSeekingPastElement_isNotConsumed() throws IOException {
+    ExtractorInput input = createTestInput(0xEC, 0x84, 0x01, 0x02, 0x03, 0x04);
+    DefaultEbmlReader reader = new DefaultEbmlReader();
+    TestProcessor output = new TestProcessor();
+    output.seekPastUnknownElements = true;
+    reader.init(output);
+
+    assertThat(reader.read(input)).isTrue();
+
+    assertThat(input.getPosition()).isEqualTo(2);
+    assertThat(output.events).containsExactly("[ec] seekPast contentSize=4");
+  }
+
   private static void assertEvents(ExtractorInput input, List<String> expectedEvents)
       throws IOException {
     DefaultEbmlReader reader = new DefaultEbmlReader();
@@ -178,6 +201,8 @@ public class DefaultEbmlReaderTest {
 
     private final List<String> events = new ArrayList<>();
 
+    private boolean seekPastUnknownElements;
+
     @Override
     @EbmlProcessor.ElementType
     public int getElementType(int id) {
@@ -237,6 +262,14 @@ public class DefaultEbmlReaderTest {
       events.add(formatEvent(id, "bytes=" + Arrays.toString(bytes)));
     }
 
+    @Override
+    public boolean seekPastElement(int id, long contentSize, ExtractorInput input) {
+      if (seekPastUnknownElements) {
+        events.add(formatEvent(id, "seekPast contentSize=" + contentSize));
+      }
+      return seekPastUnknownElements;
+    }
+
     private static String formatEvent(int id, String event) {
       return "[" + Integer.toHexString(id) + "] " + event;
     }
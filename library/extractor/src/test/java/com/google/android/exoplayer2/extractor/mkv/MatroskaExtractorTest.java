@@ -15,7 +15,18 @@
  */
 package com.google.android.exoplayer2.extractor.mkv;
 
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.core.app.ApplicationProvider;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.PositionHolder;
 import com.google.android.exoplayer2.testutil.ExtractorAsserts;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.common.primitives.Bytes;
+import java.io.IOException;
+import java.util.ArrayList;
 import java.util.List;
 import org.junit.Test;
 import org.junit.runner.RunWith;
@@ -71,4 +82,64 @@ public final class MatroskaExtractorTest {
     ExtractorAsserts.assertBehavior(
         MatroskaExtractor::new, "media/mkv/subsample_encrypted_altref.webm", simulationConfig);
   }
+
+  @Test
+  public void mkvSample_withLargeVoidElement_seeksPastElement() throws Exception {
+    byte[] data = getSampleWithLargeVoidElement();
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+
+    List<Long> seekPositions = readToEnd(new MatroskaExtractor(), input);
+
+    assertThat(seekPositions).contains((long) data.length);
+  }
+
+  @Test
+  public void mkvSample_withLargeVoidElementAndSeekForCuesDisabled_readsThroughElement()
+      throws Exception {
+    byte[] data = getSampleWithLargeVoidElement();
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+
+    List<Long> seekPositions =
+        readToEnd(new MatroskaExtractor(MatroskaExtractor.FLAG_DISABLE_SEEK_FOR_CUES), input);
+
+    assertThat(seekPositions).isEmpty();
+    assertThat(input.getPosition()).isEqualTo(data.length);
+  }
+
+  /** Returns media/mkv/sample.mkv followed by a 300 KiB Void element. */
+  private static byte[] getSampleWithLargeVoidElement() throws IOException {
+    byte[] sample =
+        TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), "media/mkv/sample.mkv");
+    int voidContentSize = 300 * 1024;
+    byte[] voidHeader =
+        new byte[] {
+          (byte) 0xEC, // Void element ID.
+          0x01, // 8 byte element size.
+          0x00,
+          0x00,
+          0x00,
+          0x00,
+          (byte) (voidContentSize >> 16),
+          (byte) (voidContentSize >> 8),
+          (byte) voidContentSize
+        };
+    return Bytes.concat(sample, voidHeader, new byte[voidContentSize]);
+  }
+
+  /** Reads the input to the end, returning the positions of any seeks requested. */
+  private static List<Long> readToEnd(Extractor extractor, FakeExtractorInput input)
+      throws IOException {
+    extractor.init(new FakeExtractorOutput());
+    PositionHolder seekPosition = new PositionHolder();
+    List<Long> seekPositions = new ArrayList<>();
+    int result = Extractor.RESULT_CONTINUE;
+    while (result != Extractor.RESULT_END_OF_INPUT) {
+      result = extractor.read(input, seekPosition);
+      if (result == Extractor.RESULT_SEEK) {
+        seekPositions.add(seekPosition.position);
+        input.setPosition((int) seekPosition.position);
+      }
+    }
+    return seekPositions;
+  }
 }
@@ -0,0 +1,167 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.mp4;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.net.Uri;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.extractor.ChunkIndex;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.SeekPoint;
+import com.google.android.exoplayer2.testutil.FakeExtractorOutput;
+import com.google.android.exoplayer2.testutil.FakeTrackOutput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.upstream.DefaultDataSource;
+import com.google.android.exoplayer2.upstream.DefaultDataSourceFactory;
+import java.io.IOException;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit tests for {@link FragmentedMp4Extractor} seeking behaviour using the mfra atom. */
+@RunWith(AndroidJUnit4.class)
+public final class FragmentedMp4ExtractorSeekTest {
+
+  private static final String MFRA_FILE = "media/mp4/sample_fragmented_mfra.mp4";
+  private static final long MFRA_FILE_DURATION_US = 1_068_000;
+  private static final long MFRA_FILE_FIRST_MOOF_POSITION = 1244;
+  private static final String MULTI_FRAGMENT_MFRA_FILE =
+      "media/mp4/sample_opus_fragmented_mfra.mp4";
+  private static final long MULTI_FRAGMENT_MFRA_FILE_DURATION_US = 2_500_000;
+  private static final long[] MULTI_FRAGMENT_MFRA_FILE_MOOF_POSITIONS =
+      new long[] {580, 17572, 34564, 51881, 68859};
+  private static final long[] MULTI_FRAGMENT_MFRA_FILE_MOOF_TIMES_US =
+      new long[] {0, 500_000, 1_000_000, 1_500_000, 2_000_000};
+
+  private DefaultDataSource dataSource;
+
+  @Before
+  public void setUp() {
+    dataSource =
+        new DefaultDataSourceFactory(ApplicationProvider.getApplicationContext())
+            .createDataSource();
+  }
+
+  @Test
+  public void extractSeekMap_withMfraSeekingEnabled_returnsChunkIndex() throws IOException {
+    SeekMap seekMap =
+        TestUtil.extractSeekMap(
+            new FragmentedMp4Extractor(FragmentedMp4Extractor.FLAG_ENABLE_MFRA_SEEKING),
+            new FakeExtractorOutput(),
+            dataSource,
+            TestUtil.buildAssetUri(MFRA_FILE));
+
+    assertThat(seekMap).isInstanceOf(ChunkIndex.class);
+    assertThat(seekMap.isSeekable()).isTrue();
+    assertThat(seekMap.getDurationUs()).isEqualTo(MFRA_FILE_DURATION_US);
+    assertThat(seekMap.getSeekPoints(/* timeUs= */ 500_000).first.position)
+        .isEqualTo(MFRA_FILE_FIRST_MOOF_POSITION);
+  }
+
+  @Test
+  public void extractSeekMap_withMfraSeekingDisabled_returnsUnseekableSeekMap()
+      throws IOException {
+    SeekMap seekMap =
+        TestUtil.extractSeekMap(
+            new FragmentedMp4Extractor(),
+            new FakeExtractorOutput(),
+            dataSource,
+            TestUtil.buildAssetUri(MFRA_FILE));
+
+    assertThat(seekMap.isSeekable()).isFalse();
+    assertThat(seekMap.getDurationUs()).isEqualTo(MFRA_FILE_DURATION_US);
+  }
+
+  @Test
+  public void extractSeekMap_withMultipleFragments_returnsChunkIndexOfAllFragments()
+      throws IOException {
+    SeekMap seekMap =
+        TestUtil.extractSeekMap(
+            new FragmentedMp4Extractor(FragmentedMp4Extractor.FLAG_ENABLE_MFRA_SEEKING),
+            new FakeExtractorOutput(),
+            dataSource,
+            TestUtil.buildAssetUri(MULTI_FRAGMENT_MFRA_FILE));
+
+    assertThat(seekMap).isInstanceOf(ChunkIndex.class);
+    ChunkIndex chunkIndex = (ChunkIndex) seekMap;
+    assertThat(chunkIndex.getDurationUs()).isEqualTo(MULTI_FRAGMENT_MFRA_FILE_DURATION_US);
+    assertThat(chunkIndex.offsets).isEqualTo(MULTI_FRAGMENT_MFRA_FILE_MOOF_POSITIONS);
+    assertThat(chunkIndex.timesUs).isEqualTo(MULTI_FRAGMENT_MFRA_FILE_MOOF_TIMES_US);
+    SeekPoint seekPoint = seekMap.getSeekPoints(/* timeUs= */ 1_200_000).first;
+    assertThat(seekPoint.timeUs).isEqualTo(1_000_000);
+    assertThat(seekPoint.position).isEqualTo(34564);
+  }
+
+  @Test
+  public void seekToTimeUs_inLaterFragment_outputsFirstSampleOfFragment() throws IOException {
+    FragmentedMp4Extractor extractor =
+        new FragmentedMp4Extractor(FragmentedMp4Extractor.FLAG_ENABLE_MFRA_SEEKING);
+    FakeExtractorOutput extractorOutput = new FakeExtractorOutput();
+    Uri uri = TestUtil.buildAssetUri(MULTI_FRAGMENT_MFRA_FILE);
+    SeekMap seekMap = TestUtil.extractSeekMap(extractor, extractorOutput, dataSource, uri);
+    FakeTrackOutput trackOutput = extractorOutput.trackOutputs.valueAt(0);
+
+    int sampleIndex =
+        TestUtil.seekToTimeUs(
+            extractor, seekMap, /* seekTimeUs= */ 1_700_000, dataSource, trackOutput, uri);
+
+    assertThat(sampleIndex).isNotEqualTo(C.INDEX_UNSET);
+    assertThat(trackOutput.getSampleTimeUs(sampleIndex)).isEqualTo(1_500_000);
+  }
+
+  @Test
+  public void extractSeekMap_withMfraSeekingEnabledAndNoUsableMfra_returnsUnseekableSeekMap()
+      throws IOException {
+    // The file has an mfra, but no mehd and no track duration. The index can't be used because the
+    // duration of its last fragment is unknown.
+    SeekMap seekMap =
+        TestUtil.extractSeekMap(
+            new FragmentedMp4Extractor(FragmentedMp4Extractor.FLAG_ENABLE_MFRA_SEEKING),
+            new FakeExtractorOutput(),
+            dataSource,
+            TestUtil.buildAssetUri("media/mp4/sample_fragmented.mp4"));
+
+    assertThat(seekMap.isSeekable()).isFalse();
+    assertThat(seekMap.getDurationUs()).isEqualTo(C.TIME_UNSET);
+  }
+
+  @Test
+  public void extractAllSamples_withMfraSeekingEnabled_outputsSameSamples() throws IOException {
+    FakeExtractorOutput expectedOutput =
+        TestUtil.extractAllSamplesFromFile(
+            new FragmentedMp4Extractor(), ApplicationProvider.getApplicationContext(), MFRA_FILE);
+    FakeExtractorOutput actualOutput =
+        TestUtil.extractAllSamplesFromFile(
+            new FragmentedMp4Extractor(FragmentedMp4Extractor.FLAG_ENABLE_MFRA_SEEKING),
+            ApplicationProvider.getApplicationContext(),
+            MFRA_FILE);
+
+    assertThat(actualOutput.numberOfTracks).isEqualTo(expectedOutput.numberOfTracks);
+    for (int i = 0; i < expectedOutput.numberOfTracks; i++) {
+      FakeTrackOutput expectedTrackOutput = expectedOutput.trackOutputs.valueAt(i);
+      FakeTrackOutput actualTrackOutput = actualOutput.trackOutputs.valueAt(i);
+      assertThat(actualTrackOutput.getSampleCount())
+          .isEqualTo(expectedTrackOutput.getSampleCount());
+      for (int j = 0; j < expectedTrackOutput.getSampleCount(); j++) {
+        assertThat(actualTrackOutput.getSampleTimeUs(j))
+            .isEqualTo(expectedTrackOutput.getSampleTimeUs(j));
+      }
+    }
+  }
+}
@@ -0,0 +1,104 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.extractor.ts;
+
+import static com.google.common.truth.Truth.assertThat;
+import static org.junit.Assume.assumeTrue;
+
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.extractor.DummyTrackOutput;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.testutil.FakeExtractorInput;
+import com.google.android.exoplayer2.testutil.TestUtil;
+import com.google.android.exoplayer2.util.TimestampAdjuster;
+import java.lang.management.ManagementFactory;
+import java.lang.management.ThreadMXBean;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Tests that {@link TsExtractor} does not allocate once it has reached a steady state. */
+@RunWith(AndroidJUnit4.class)
+public final class TsExtractorAllocationTest {
+
+  /** A stream with audio and video tracks, and a PAT and PMT roughly every 40 packets. */
+  private static final String TEST_FILE = "media/ts/bbb_2500ms.ts";
+
+  /**
+   * Slack for allocations made by the measurement itself. Re-parsing each retransmitted PMT would
+   * allocate well over this amount over the course of the measured part of the stream.
+   */
+  private static final long MAX_STEADY_STATE_ALLOCATED_BYTES = 1024;
+
+  @Test
+  public void readHlsStream_afterWarmUp_doesNotAllocate() throws Exception {
+    ThreadMXBean threadMxBean = ManagementFactory.getThreadMXBean();
+    assumeTrue(threadMxBean instanceof com.sun.management.ThreadMXBean);
+    com.sun.management.ThreadMXBean allocationCounter =
+        (com.sun.management.ThreadMXBean) threadMxBean;
+    assumeTrue(allocationCounter.isThreadAllocatedMemorySupported());
+    allocationCounter.setThreadAllocatedMemoryEnabled(true);
+    long threadId = Thread.currentThread().getId();
+
+    byte[] data = TestUtil.getByteArray(ApplicationProvider.getApplicationContext(), TEST_FILE);
+    FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+    TsExtractor extractor =
+        new TsExtractor(
+            TsExtractor.MODE_HLS,
+            new TimestampAdjuster(/* firstSampleTimestampUs= */ 0),
+            new DefaultTsPayloadReaderFactory());
+    extractor.init(new DiscardingExtractorOutput());
+    PositionHolder positionHolder = new PositionHolder();
+
+    // Warm up using the first half of the stream, so that all readers and buffers are created.
+    int readResult = Extractor.RESULT_CONTINUE;
+    while (readResult == Extractor.RESULT_CONTINUE && input.getPosition() < data.length / 2) {
+      readResult = extractor.read(input, positionHolder);
+    }
+    assertThat(readResult).isEqualTo(Extractor.RESULT_CONTINUE);
+
+    long allocatedBytesBefore = allocationCounter.getThreadAllocatedBytes(threadId);
+    while (readResult == Extractor.RESULT_CONTINUE) {
+      readResult = extractor.read(input, positionHolder);
+    }
+    long allocatedBytes = allocationCounter.getThreadAllocatedBytes(threadId) - allocatedBytesBefore;
+
+    assertThat(readResult).isEqualTo(Extractor.RESULT_END_OF_INPUT);
+    assertThat(allocatedBytes).isLessThan(MAX_STEADY_STATE_ALLOCATED_BYTES);
+  }
+
+  private static final class DiscardingExtractorOutput implements ExtractorOutput {
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      return new DummyTrackOutput();
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+  }
+}
@@ -16,6 +16,7 @@
 package com.google.android.exoplayer2.source.hls;
 
 import static java.lang.Math.max;
+import static java.lang.Math.min;
 
 import android.net.Uri;
 import android.os.SystemClock;
@@ -36,6 +37,7 @@ import com.google.android.exoplayer2.trackselection.BaseTrackSelection;
 import com.google.android.exoplayer2.trackselection.TrackSelection;
 import com.google.android.exoplayer2.upstream.DataSource;
 import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.PrefetchingDataSource;
 import com.google.android.exoplayer2.upstream.TransferListener;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.TimestampAdjuster;
@@ -193,6 +195,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   public void setTrackSelection(TrackSelection trackSelection) {
     this.trackSelection = trackSelection;
+    maybeCancelPrefetches();
   }
 
   /** Returns the current {@link TrackSelection}. */
@@ -205,6 +208,12 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
    */
   public void reset() {
     fatalError = null;
+    maybeCancelPrefetches();
+  }
+
+  /** Releases the source. */
+  public void release() {
+    maybeCancelPrefetches();
   }
 
   /**
@@ -243,6 +252,11 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
       boolean allowEndOfStream,
       HlsChunkHolder out) {
     HlsMediaChunk previous = queue.isEmpty() ? null : queue.get(queue.size() - 1);
+    if (previous == null) {
+      // Loading restarts at a new position, for example after a seek, so segments prefetched for
+      // the previous position are unlikely to be read.
+      maybeCancelPrefetches();
+    }
     int oldTrackIndex = previous == null ? C.INDEX_UNSET : trackGroup.indexOf(previous.trackFormat);
     long bufferedDurationUs = loadPositionUs - playbackPositionUs;
     long timeToLiveEdgeUs = resolveTimeToLiveEdgeUs(playbackPositionUs);
@@ -361,6 +375,7 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
             previous,
             /* mediaSegmentKey= */ keyCache.get(mediaSegmentKeyUri),
             /* initSegmentKey= */ keyCache.get(initSegmentKeyUri));
+    maybePrefetchSegments(mediaPlaylist, segmentIndexInPlaylist + 1);
   }
 
   /**
@@ -534,6 +549,37 @@ import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
     return previous.isLoadCompleted() ? previous.getNextChunkIndex() : previous.chunkIndex;
   }
 
+  /**
+   * Prefetches the media segments of a playlist starting from {@code firstSegmentIndex}, if the
+   * media data source is a {@link PrefetchingDataSource}.
+   */
+  private void maybePrefetchSegments(HlsMediaPlaylist mediaPlaylist, int firstSegmentIndex) {
+    if (!(mediaDataSource instanceof PrefetchingDataSource)) {
+      return;
+    }
+    PrefetchingDataSource prefetchingDataSource = (PrefetchingDataSource) mediaDataSource;
+    int lastSegmentIndex =
+        min(
+            mediaPlaylist.segments.size() - 1,
+            firstSegmentIndex + prefetchingDataSource.getPrefetchCount() - 1);
+    for (int i = firstSegmentIndex; i <= lastSegmentIndex; i++) {
+      Segment segment = mediaPlaylist.segments.get(i);
+      // Matches the DataSpec of the HlsMediaChunk that will load the segment.
+      prefetchingDataSource.prefetch(
+          new DataSpec(
+              UriUtil.resolveToUri(mediaPlaylist.baseUri, segment.url),
+              segment.byteRangeOffset,
+              segment.byteRangeLength));
+    }
+  }
+
+  /** Cancels the segment prefetches that haven't been read, if any. */
+  private void maybeCancelPrefetches() {
+    if (mediaDataSource instanceof PrefetchingDataSource) {
+      ((PrefetchingDataSource) mediaDataSource).cancelPrefetches();
+    }
+  }
+
   private long resolveTimeToLiveEdgeUs(long playbackPositionUs) {
     final boolean resolveTimeToLiveEdgePossible = liveEdgeInPeriodTimeUs != C.TIME_UNSET;
     return resolveTimeToLiveEdgePossible
@@ -34,6 +34,7 @@ import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy;
 import com.google.android.exoplayer2.upstream.LoadErrorHandlingPolicy.LoadErrorInfo;
 import com.google.android.exoplayer2.upstream.Loader;
 import com.google.android.exoplayer2.upstream.Loader.LoadErrorAction;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider;
 import com.google.android.exoplayer2.upstream.ParsingLoadable;
 import com.google.android.exoplayer2.util.Assertions;
 import com.google.android.exoplayer2.util.Util;
@@ -133,7 +134,9 @@ public final class DefaultHlsPlaylistTracker
             C.DATA_TYPE_MANIFEST,
             playlistParserFactory.createPlaylistParser());
     Assertions.checkState(initialPlaylistLoader == null);
-    initialPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MasterPlaylist");
+    initialPlaylistLoader =
+        new Loader(
+            "DefaultHlsPlaylistTracker:MasterPlaylist", LoaderExecutorProvider.PRIORITY_MANIFEST);
     long elapsedRealtime =
         initialPlaylistLoader.startLoading(
             masterPlaylistLoadable,
@@ -476,7 +479,9 @@ public final class DefaultHlsPlaylistTracker
 
     public MediaPlaylistBundle(Uri playlistUrl) {
       this.playlistUrl = playlistUrl;
-      mediaPlaylistLoader = new Loader("DefaultHlsPlaylistTracker:MediaPlaylist");
+      mediaPlaylistLoader =
+          new Loader(
+              "DefaultHlsPlaylistTracker:MediaPlaylist", LoaderExecutorProvider.PRIORITY_MANIFEST);
       mediaPlaylistLoadable =
           new ParsingLoadable<>(
               dataSourceFactory.createDataSource(C.DATA_TYPE_MANIFEST),
@@ -0,0 +1,172 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.Arrays;
+
+/**
+ * A network throughput trace made of consecutive segments of constant bitrate, for example
+ * recorded from a real network. The trace repeats itself after its last segment.
+ */
+public final class BandwidthTrace {
+
+  /** Builder for {@link BandwidthTrace} instances. */
+  public static final class Builder {
+
+    private long[] durationsMs;
+    private long[] bitrates;
+    private int segmentCount;
+
+    /** Creates a builder without segments. */
+    public Builder() {
+      durationsMs = new long[16];
+      bitrates = new long[16];
+    }
+
+    /**
+     * Appends a segment of constant bitrate to the trace.
+     *
+     * @param durationMs The duration of the segment, in milliseconds.
+     * @param bitrate The bitrate during the segment, in bits per second. May be 0 to simulate an
+     *     outage.
+     * @return This builder.
+     */
+    public Builder addSegment(long durationMs, long bitrate) {
+      Assertions.checkArgument(durationMs > 0 && bitrate >= 0);
+      if (segmentCount == durationsMs.length) {
+        durationsMs = Arrays.copyOf(durationsMs, segmentCount * 2);
+        bitrates = Arrays.copyOf(bitrates, segmentCount * 2);
+      }
+      durationsMs[segmentCount] = durationMs;
+      bitrates[segmentCount] = bitrate;
+      segmentCount++;
+      return this;
+    }
+
+    /**
+     * Appends bitrate samples taken at a fixed interval, as commonly found in recorded throughput
+     * traces.
+     *
+     * @param sampleDurationMs The interval between two samples, in milliseconds.
+     * @param bitrates The sampled bitrates, in bits per second.
+     * @return This builder.
+     */
+    public Builder addSegments(long sampleDurationMs, long... bitrates) {
+      for (long bitrate : bitrates) {
+        addSegment(sampleDurationMs, bitrate);
+      }
+      return this;
+    }
+
+    /** Builds the trace. At least one segment must have a non-zero bitrate. */
+    public BandwidthTrace build() {
+      return new BandwidthTrace(
+          Arrays.copyOf(durationsMs, segmentCount), Arrays.copyOf(bitrates, segmentCount));
+    }
+  }
+
+  private final long[] startTimesMs;
+  private final long[] bitrates;
+  private final long durationMs;
+  private final long bitsPerLoop;
+
+  /**
+   * Returns a trace with a constant bitrate.
+   *
+   * @param bitrate The bitrate, in bits per second.
+   */
+  public static BandwidthTrace constant(long bitrate) {
+    return new Builder().addSegment(/* durationMs= */ 1000, bitrate).build();
+  }
+
+  private BandwidthTrace(long[] durationsMs, long[] bitrates) {
+    startTimesMs = new long[durationsMs.length];
+    long durationMs = 0;
+    long bitsPerLoop = 0;
+    for (int i = 0; i < durationsMs.length; i++) {
+      startTimesMs[i] = durationMs;
+      durationMs += durationsMs[i];
+      bitsPerLoop += bitrates[i] * durationsMs[i] / 1000;
+    }
+    Assertions.checkArgument(bitsPerLoop > 0);
+    this.bitrates = bitrates;
+    this.durationMs = durationMs;
+    this.bitsPerLoop = bitsPerLoop;
+  }
+
+  /** Returns the duration of the trace before it repeats itself, in milliseconds. */
+  public long getDurationMs() {
+    return durationMs;
+  }
+
+  /**
+   * Returns the bitrate at a given time, in bits per second.
+   *
+   * @param timeMs The time since the start of the trace, in milliseconds.
+   */
+  public long getBitrate(long timeMs) {
+    return bitrates[getSegmentIndex(timeMs % durationMs)];
+  }
+
+  /**
+   * Returns the time at which a transfer that starts at {@code startTimeMs} and has exclusive use
+   * of the network completes.
+   *
+   * @param startTimeMs The start time of the transfer since the start of the trace, in
+   *     milliseconds.
+   * @param byteCount The number of bytes to transfer.
+   * @return The end time of the transfer since the start of the trace, in milliseconds.
+   */
+  public long getTransferEndTimeMs(long startTimeMs, long byteCount) {
+    long remainingBits = byteCount * C.BITS_PER_BYTE;
+    long loopStartTimeMs = startTimeMs - startTimeMs % durationMs;
+    long timeMs = startTimeMs;
+    int segmentIndex = getSegmentIndex(timeMs - loopStartTimeMs);
+    // Skip whole loops of the trace without iterating through their segments.
+    if (remainingBits > 2 * bitsPerLoop) {
+      long skippedLoops = remainingBits / bitsPerLoop - 1;
+      remainingBits -= skippedLoops * bitsPerLoop;
+      timeMs += skippedLoops * durationMs;
+      loopStartTimeMs += skippedLoops * durationMs;
+    }
+    while (true) {
+      long bitrate = bitrates[segmentIndex];
+      long segmentEndTimeMs = loopStartTimeMs + getSegmentEndTimeInLoopMs(segmentIndex);
+      long segmentBits = bitrate * (segmentEndTimeMs - timeMs) / 1000;
+      if (bitrate > 0 && segmentBits >= remainingBits) {
+        return timeMs + (remainingBits * 1000 + bitrate - 1) / bitrate;
+      }
+      remainingBits -= segmentBits;
+      timeMs = segmentEndTimeMs;
+      segmentIndex++;
+      if (segmentIndex == startTimesMs.length) {
+        segmentIndex = 0;
+        loopStartTimeMs += durationMs;
+      }
+    }
+  }
+
+  private long getSegmentEndTimeInLoopMs(int segmentIndex) {
+    return segmentIndex + 1 < startTimesMs.length ? startTimesMs[segmentIndex + 1] : durationMs;
+  }
+
+  private int getSegmentIndex(long timeInLoopMs) {
+    int index = Arrays.binarySearch(startTimesMs, timeInLoopMs);
+    return index >= 0 ? index : -index - 2;
+  }
+}
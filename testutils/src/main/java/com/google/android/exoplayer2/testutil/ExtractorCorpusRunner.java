@@ -0,0 +1,739 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.android.exoplayer2.util.Assertions.checkArgument;
+import static java.lang.Math.max;
+
+import android.content.Context;
+import android.os.Looper;
+import android.util.SparseArray;
+import androidx.annotation.IntDef;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.drm.DrmSessionEventListener;
+import com.google.android.exoplayer2.drm.DrmSessionManager;
+import com.google.android.exoplayer2.extractor.DefaultExtractorsFactory;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.ExtractorsFactory;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.SeekMap;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.source.SampleQueue;
+import com.google.android.exoplayer2.upstream.DataReader;
+import com.google.android.exoplayer2.upstream.DefaultAllocator;
+import com.google.android.exoplayer2.util.ParsableByteArray;
+import com.google.common.collect.ImmutableList;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.lang.annotation.Documented;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ExecutionException;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+/**
+ * Runs every {@link Extractor} created by an {@link ExtractorsFactory} over a corpus of media
+ * files and randomly mutated variants of them, checking that extraction terminates with bounded
+ * resource usage rather than checking the extracted output.
+ *
+ * <p>For each input and extractor, the runner records the outcome, the extraction throughput and
+ * the peak memory allocated by the {@link SampleQueue SampleQueues} that receive the samples.
+ * Samples are discarded after every {@link Extractor#read} call, as if consumed by a renderer, so
+ * the peak reflects the memory a single read call and any partially written sample can pin.
+ *
+ * <p>A watchdog classifies extractions as {@link #OUTCOME_STALLED} if {@link Extractor#read}
+ * keeps returning without making progress, and as {@link #OUTCOME_TIMED_OUT} if an extraction
+ * exceeds its time limit, for example because a single {@link Extractor#read} call never returns.
+ */
+public final class ExtractorCorpusRunner {
+
+  /**
+   * The outcome of an extraction. One of {@link #OUTCOME_COMPLETED}, {@link
+   * #OUTCOME_NOT_SNIFFED}, {@link #OUTCOME_PARSER_ERROR}, {@link #OUTCOME_UNEXPECTED_ERROR}, {@link
+   * #OUTCOME_STALLED} or {@link #OUTCOME_TIMED_OUT}.
+   */
+  @Documented
+  @Retention(RetentionPolicy.SOURCE)
+  @IntDef({
+    OUTCOME_COMPLETED,
+    OUTCOME_NOT_SNIFFED,
+    OUTCOME_PARSER_ERROR,
+    OUTCOME_UNEXPECTED_ERROR,
+    OUTCOME_STALLED,
+    OUTCOME_TIMED_OUT
+  })
+  public @interface Outcome {}
+  /** The extractor read the input until the end. */
+  public static final int OUTCOME_COMPLETED = 0;
+  /** The extractor did not recognize the input when sniffing. */
+  public static final int OUTCOME_NOT_SNIFFED = 1;
+  /**
+   * The extractor rejected the input by throwing a {@link ParserException} or an {@link
+   * EOFException}. This is the expected way for an extractor to fail on malformed input.
+   */
+  public static final int OUTCOME_PARSER_ERROR = 2;
+  /** The extractor threw any other exception or error. */
+  public static final int OUTCOME_UNEXPECTED_ERROR = 3;
+  /** The extractor repeatedly returned from {@link Extractor#read} without making progress. */
+  public static final int OUTCOME_STALLED = 4;
+  /** The extraction did not finish within the time limit. */
+  public static final int OUTCOME_TIMED_OUT = 5;
+
+  /** Builder for {@link ExtractorCorpusRunner} instances. */
+  public static final class Builder {
+
+    private ExtractorsFactory extractorsFactory;
+    private int mutationsPerFile;
+    private long randomSeed;
+    private boolean sniffFirst;
+    private int maxReadsWithoutProgress;
+    private long timeoutMs;
+
+    /** Creates a builder with default values. */
+    public Builder() {
+      extractorsFactory = new DefaultExtractorsFactory();
+      mutationsPerFile = DEFAULT_MUTATIONS_PER_FILE;
+      sniffFirst = true;
+      maxReadsWithoutProgress = DEFAULT_MAX_READS_WITHOUT_PROGRESS;
+      timeoutMs = DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+     * Sets the factory of the extractors to run. The default is a {@link DefaultExtractorsFactory}.
+     *
+     * @param extractorsFactory The {@link ExtractorsFactory}.
+     * @return This builder.
+     */
+    public Builder setExtractorsFactory(ExtractorsFactory extractorsFactory) {
+      this.extractorsFactory = extractorsFactory;
+      return this;
+    }
+
+    /**
+     * Sets the number of mutated variants to run for each input file, in addition to the
+     * unmodified file. The default is {@link #DEFAULT_MUTATIONS_PER_FILE}.
+     *
+     * @param mutationsPerFile The number of mutated variants per file.
+     * @return This builder.
+     */
+    public Builder setMutationsPerFile(int mutationsPerFile) {
+      checkArgument(mutationsPerFile >= 0);
+      this.mutationsPerFile = mutationsPerFile;
+      return this;
+    }
+
+    /**
+     * Sets the seed used to generate mutated variants, so that runs are reproducible. The default
+     * is 0.
+     *
+     * @param randomSeed The random seed.
+     * @return This builder.
+     */
+    public Builder setRandomSeed(long randomSeed) {
+      this.randomSeed = randomSeed;
+      return this;
+    }
+
+    /**
+     * Sets whether each extractor should sniff the input before reading it. If false, every
+     * extractor reads every input. The default is true.
+     *
+     * @param sniffFirst Whether to sniff the input first.
+     * @return This builder.
+     */
+    public Builder setSniffFirst(boolean sniffFirst) {
+      this.sniffFirst = sniffFirst;
+      return this;
+    }
+
+    /**
+     * Sets the number of consecutive {@link Extractor#read} calls without progress after which an
+     * extraction is classified as {@link #OUTCOME_STALLED}. A call makes progress if it outputs
+     * sample data or reads input beyond the furthest position read so far. The default is {@link
+     * #DEFAULT_MAX_READS_WITHOUT_PROGRESS}.
+     *
+     * @param maxReadsWithoutProgress The maximum number of reads without progress.
+     * @return This builder.
+     */
+    public Builder setMaxReadsWithoutProgress(int maxReadsWithoutProgress) {
+      checkArgument(maxReadsWithoutProgress > 0);
+      this.maxReadsWithoutProgress = maxReadsWithoutProgress;
+      return this;
+    }
+
+    /**
+     * Sets the time limit for a single extraction, after which it is classified as {@link
+     * #OUTCOME_TIMED_OUT}. The default is {@link #DEFAULT_TIMEOUT_MS}.
+     *
+     * @param timeoutMs The time limit, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setTimeoutMs(long timeoutMs) {
+      checkArgument(timeoutMs > 0);
+      this.timeoutMs = timeoutMs;
+      return this;
+    }
+
+    /** Builds the {@link ExtractorCorpusRunner}. */
+    public ExtractorCorpusRunner build() {
+      return new ExtractorCorpusRunner(this);
+    }
+  }
+
+  /** The result of running one extractor over one input. */
+  public static final class Result {
+
+    /** The name of the input file. */
+    public final String fileName;
+    /** The index of the mutated variant of the file, or 0 for the unmodified file. */
+    public final int mutationIndex;
+    /** The simple class name of the extractor. */
+    public final String extractorName;
+    /** The {@link Outcome}. */
+    @Outcome public final int outcome;
+    /** A description of the exception that ended the extraction, or null. */
+    @Nullable public final String exception;
+    /** The number of input bytes read by the extractor. */
+    public final long bytesRead;
+    /** The number of {@link Extractor#read} calls. */
+    public final int readCalls;
+    /** The elapsed wall clock time, in nanoseconds. */
+    public final long elapsedNs;
+    /** The number of samples output. */
+    public final int sampleCount;
+    /** The peak number of bytes allocated by the sample queues. */
+    public final long peakAllocatedBytes;
+
+    private Result(
+        String fileName,
+        int mutationIndex,
+        String extractorName,
+        @Outcome int outcome,
+        @Nullable String exception,
+        long bytesRead,
+        int readCalls,
+        long elapsedNs,
+        int sampleCount,
+        long peakAllocatedBytes) {
+      this.fileName = fileName;
+      this.mutationIndex = mutationIndex;
+      this.extractorName = extractorName;
+      this.outcome = outcome;
+      this.exception = exception;
+      this.bytesRead = bytesRead;
+      this.readCalls = readCalls;
+      this.elapsedNs = elapsedNs;
+      this.sampleCount = sampleCount;
+      this.peakAllocatedBytes = peakAllocatedBytes;
+    }
+
+    /** Returns the throughput in bytes per second, or 0 if the elapsed time was too short. */
+    public long getThroughputBytesPerSecond() {
+      return elapsedNs == 0 ? 0 : bytesRead * 1_000_000_000L / elapsedNs;
+    }
+
+    /**
+     * Returns whether the outcome indicates a robustness problem, meaning the extractor threw an
+     * unexpected exception, stalled or timed out.
+     */
+    public boolean isFailure() {
+      return outcome == OUTCOME_UNEXPECTED_ERROR
+          || outcome == OUTCOME_STALLED
+          || outcome == OUTCOME_TIMED_OUT;
+    }
+
+    private JSONObject toJsonObject() throws JSONException {
+      JSONObject jsonObject =
+          new JSONObject()
+              .put("file", fileName)
+              .put("mutation", mutationIndex)
+              .put("extractor", extractorName)
+              .put("outcome", getOutcomeName(outcome))
+              .put("bytesRead", bytesRead)
+              .put("readCalls", readCalls)
+              .put("elapsedNs", elapsedNs)
+              .put("throughputBytesPerSecond", getThroughputBytesPerSecond())
+              .put("sampleCount", sampleCount)
+              .put("peakAllocatedBytes", peakAllocatedBytes);
+      if (exception != null) {
+        jsonObject.put("exception", exception);
+      }
+      return jsonObject;
+    }
+  }
+
+  /** The results of a run over a corpus. */
+  public static final class Report {
+
+    /** The results, in the order in which they were produced. */
+    public final ImmutableList<Result> results;
+
+    private Report(List<Result> results) {
+      this.results = ImmutableList.copyOf(results);
+    }
+
+    /** Returns the results that indicate a robustness problem. See {@link Result#isFailure()}. */
+    public ImmutableList<Result> getFailures() {
+      ImmutableList.Builder<Result> failures = new ImmutableList.Builder<>();
+      for (Result result : results) {
+        if (result.isFailure()) {
+          failures.add(result);
+        }
+      }
+      return failures.build();
+    }
+
+    /** Returns the report as a JSON string, with one object per result. */
+    public String toJson() {
+      try {
+        JSONArray jsonResults = new JSONArray();
+        for (Result result : results) {
+          jsonResults.put(result.toJsonObject());
+        }
+        return new JSONObject().put("results", jsonResults).toString(/* indentSpaces= */ 2);
+      } catch (JSONException e) {
+        throw new IllegalStateException(e);
+      }
+    }
+  }
+
+  /** The default number of mutated variants per file. */
+  public static final int DEFAULT_MUTATIONS_PER_FILE = 8;
+  /** The default number of consecutive reads without progress before an extraction stalls. */
+  public static final int DEFAULT_MAX_READS_WITHOUT_PROGRESS = 10_000;
+  /** The default time limit for a single extraction, in milliseconds. */
+  public static final long DEFAULT_TIMEOUT_MS = 10_000;
+
+  private static final int MUTATION_TYPE_COUNT = 3;
+
+  private final ExtractorsFactory extractorsFactory;
+  private final int mutationsPerFile;
+  private final long randomSeed;
+  private final boolean sniffFirst;
+  private final int maxReadsWithoutProgress;
+  private final long timeoutMs;
+
+  private ExecutorService executorService;
+
+  private ExtractorCorpusRunner(Builder builder) {
+    extractorsFactory = builder.extractorsFactory;
+    mutationsPerFile = builder.mutationsPerFile;
+    randomSeed = builder.randomSeed;
+    sniffFirst = builder.sniffFirst;
+    maxReadsWithoutProgress = builder.maxReadsWithoutProgress;
+    timeoutMs = builder.timeoutMs;
+    executorService = createExecutorService();
+  }
+
+  /**
+   * Returns the paths of all files in the given asset directory and its subdirectories.
+   *
+   * @param context A {@link Context}.
+   * @param directory The asset directory, for example {@code "media"}.
+   * @return The asset paths.
+   * @throws IOException If the assets could not be listed.
+   */
+  public static ImmutableList<String> listAssets(Context context, String directory)
+      throws IOException {
+    ImmutableList.Builder<String> assetPaths = new ImmutableList.Builder<>();
+    addAssets(context, directory, assetPaths);
+    return assetPaths.build();
+  }
+
+  /**
+   * Runs every extractor over every asset and its mutated variants.
+   *
+   * @param context A {@link Context}.
+   * @param assetPaths The paths of the assets to run over.
+   * @return The {@link Report}.
+   * @throws IOException If an asset could not be read.
+   */
+  public Report run(Context context, List<String> assetPaths) throws IOException {
+    Map<String, byte[]> inputs = new LinkedHashMap<>();
+    for (String assetPath : assetPaths) {
+      inputs.put(assetPath, TestUtil.getByteArray(context, assetPath));
+    }
+    return run(inputs);
+  }
+
+  /**
+   * Runs every extractor over every input and its mutated variants.
+   *
+   * @param inputs The input data, keyed by a name used for reporting, in iteration order.
+   * @return The {@link Report}.
+   */
+  public Report run(Map<String, byte[]> inputs) {
+    List<Result> results = new ArrayList<>();
+    Random random = new Random(randomSeed);
+    for (Map.Entry<String, byte[]> input : inputs.entrySet()) {
+      for (int i = 0; i <= mutationsPerFile; i++) {
+        byte[] data = i == 0 ? input.getValue() : mutate(input.getValue(), random);
+        for (Extractor extractor : extractorsFactory.createExtractors()) {
+          results.add(runExtractor(extractor, data, input.getKey(), /* mutationIndex= */ i));
+        }
+      }
+    }
+    return new Report(results);
+  }
+
+  /**
+   * Runs a single extractor over the given input.
+   *
+   * @param extractor The {@link Extractor}. It is released after the run.
+   * @param data The input data.
+   * @param fileName The name of the input, for reporting.
+   * @param mutationIndex The index of the mutated variant, for reporting.
+   * @return The {@link Result}.
+   */
+  public Result runExtractor(Extractor extractor, byte[] data, String fileName, int mutationIndex) {
+    Extraction extraction = new Extraction(extractor, data);
+    long startTimeNs = System.nanoTime();
+    Future<Integer> future = executorService.submit(extraction);
+    @Outcome int outcome;
+    @Nullable String exception = null;
+    try {
+      outcome = future.get(timeoutMs, TimeUnit.MILLISECONDS);
+    } catch (TimeoutException e) {
+      future.cancel(/* mayInterruptIfRunning= */ true);
+      // The extraction thread may never return, so stop using it.
+      executorService.shutdownNow();
+      executorService = createExecutorService();
+      outcome = OUTCOME_TIMED_OUT;
+    } catch (ExecutionException e) {
+      Throwable cause = e.getCause() != null ? e.getCause() : e;
+      outcome =
+          cause instanceof ParserException || cause instanceof EOFException
+              ? OUTCOME_PARSER_ERROR
+              : OUTCOME_UNEXPECTED_ERROR;
+      exception = cause.toString();
+    } catch (InterruptedException e) {
+      Thread.currentThread().interrupt();
+      throw new IllegalStateException(e);
+    }
+    long elapsedNs;
+    if (outcome == OUTCOME_TIMED_OUT) {
+      elapsedNs = System.nanoTime() - startTimeNs;
+    } else {
+      elapsedNs = extraction.elapsedNs;
+      extractor.release();
+    }
+    return new Result(
+        fileName,
+        mutationIndex,
+        extractor.getClass().getSimpleName(),
+        outcome,
+        exception,
+        extraction.bytesRead,
+        extraction.readCalls,
+        elapsedNs,
+        extraction.sampleCount,
+        extraction.peakAllocatedBytes);
+  }
+
+  /** Releases the resources held by the runner. */
+  public void release() {
+    executorService.shutdownNow();
+  }
+
+  /** Returns a human readable name for the given {@link Outcome}. */
+  public static String getOutcomeName(@Outcome int outcome) {
+    switch (outcome) {
+      case OUTCOME_COMPLETED:
+        return "completed";
+      case OUTCOME_NOT_SNIFFED:
+        return "not_sniffed";
+      case OUTCOME_PARSER_ERROR:
+        return "parser_error";
+      case OUTCOME_UNEXPECTED_ERROR:
+        return "unexpected_error";
+      case OUTCOME_STALLED:
+        return "stalled";
+      case OUTCOME_TIMED_OUT:
+        return "timed_out";
+      default:
+        throw new IllegalStateException();
+    }
+  }
+
+  private static ExecutorService createExecutorService() {
+    return Executors.newSingleThreadExecutor(
+        runnable -> {
+          Thread thread = new Thread(runnable, "ExoPlayer:ExtractorCorpusRunner");
+          thread.setDaemon(true);
+          return thread;
+        });
+  }
+
+  private static void addAssets(
+      Context context, String path, ImmutableList.Builder<String> assetPaths) throws IOException {
+    @Nullable String[] children = context.getResources().getAssets().list(path);
+    if (children == null || children.length == 0) {
+      assetPaths.add(path);
+      return;
+    }
+    Arrays.sort(children);
+    for (String child : children) {
+      addAssets(context, path + "/" + child, assetPaths);
+    }
+  }
+
+  /**
+   * Returns a mutated copy of the given data. Mutations flip random bytes, truncate the data, or
+   * overwrite a random 32-bit word with an extreme value, which tends to corrupt size fields.
+   */
+  private static byte[] mutate(byte[] data, Random random) {
+    if (data.length == 0) {
+      return data;
+    }
+    switch (random.nextInt(MUTATION_TYPE_COUNT)) {
+      case 0:
+        byte[] flipped = Arrays.copyOf(data, data.length);
+        int flipCount = 1 + random.nextInt(16);
+        for (int i = 0; i < flipCount; i++) {
+          flipped[random.nextInt(flipped.length)] = (byte) random.nextInt(256);
+        }
+        return flipped;
+      case 1:
+        return Arrays.copyOf(data, random.nextInt(data.length));
+      default:
+        byte[] overwritten = Arrays.copyOf(data, data.length);
+        int position = random.nextInt(max(1, overwritten.length - 3)) & ~0x3;
+        int value;
+        switch (random.nextInt(3)) {
+          case 0:
+            value = 0;
+            break;
+          case 1:
+            value = Integer.MAX_VALUE;
+            break;
+          default:
+            value = 0xFFFFFFFF;
+            break;
+        }
+        for (int i = 0; i < 4 && position + i < overwritten.length; i++) {
+          overwritten[position + i] = (byte) (value >>> (24 - 8 * i));
+        }
+        return overwritten;
+    }
+  }
+
+  private final class Extraction implements Callable<Integer> {
+
+    private final Extractor extractor;
+    private final byte[] data;
+    private final MeasuringExtractorOutput output;
+
+    // Written by the extraction thread, and read by the runner even if the extraction times out.
+    private volatile long bytesRead;
+    private volatile int readCalls;
+    private volatile long elapsedNs;
+    private volatile int sampleCount;
+    private volatile long peakAllocatedBytes;
+
+    public Extraction(Extractor extractor, byte[] data) {
+      this.extractor = extractor;
+      this.data = data;
+      output = new MeasuringExtractorOutput();
+    }
+
+    @Override
+    public Integer call() throws IOException {
+      long startTimeNs = System.nanoTime();
+      try {
+        return extract();
+      } finally {
+        elapsedNs = System.nanoTime() - startTimeNs;
+      }
+    }
+
+    @Outcome
+    private int extract() throws IOException {
+      FakeExtractorInput input = new FakeExtractorInput.Builder().setData(data).build();
+      if (sniffFirst) {
+        boolean sniffed;
+        try {
+          sniffed = extractor.sniff(input);
+        } catch (EOFException e) {
+          sniffed = false;
+        }
+        if (!sniffed) {
+          return OUTCOME_NOT_SNIFFED;
+        }
+        input.reset();
+      }
+      extractor.init(output);
+      PositionHolder positionHolder = new PositionHolder();
+      long totalBytesRead = 0;
+      int totalReadCalls = 0;
+      long maxPosition = 0;
+      long previousSampleBytesWritten = 0;
+      int readsWithoutProgress = 0;
+      while (true) {
+        long positionBeforeRead = input.getPosition();
+        @Extractor.ReadResult int result = extractor.read(input, positionHolder);
+        totalBytesRead += input.getPosition() - positionBeforeRead;
+        totalReadCalls++;
+        output.onReadCompleted();
+        bytesRead = totalBytesRead;
+        readCalls = totalReadCalls;
+        sampleCount = output.sampleCount;
+        peakAllocatedBytes = output.peakAllocatedBytes;
+        if (result == Extractor.RESULT_END_OF_INPUT) {
+          return OUTCOME_COMPLETED;
+        } else if (result == Extractor.RESULT_SEEK) {
+          long seekPosition = positionHolder.position;
+          if (seekPosition < 0 || seekPosition > data.length) {
+            throw new IllegalStateException("Invalid seek position: " + seekPosition);
+          }
+          input.setPosition((int) seekPosition);
+        }
+        if (input.getPosition() > maxPosition
+            || output.sampleBytesWritten > previousSampleBytesWritten) {
+          maxPosition = max(maxPosition, input.getPosition());
+          previousSampleBytesWritten = output.sampleBytesWritten;
+          readsWithoutProgress = 0;
+        } else if (++readsWithoutProgress >= maxReadsWithoutProgress) {
+          return OUTCOME_STALLED;
+        }
+        if (Thread.interrupted()) {
+          throw new InterruptedIOException();
+        }
+      }
+    }
+  }
+
+  /**
+   * An {@link ExtractorOutput} that writes samples into {@link SampleQueue SampleQueues} sharing an
+   * allocator, discards them after each read and tracks the peak allocation.
+   */
+  private static final class MeasuringExtractorOutput implements ExtractorOutput {
+
+    private final DefaultAllocator allocator;
+    private final SparseArray<CountingTrackOutput> trackOutputs;
+
+    public long peakAllocatedBytes;
+    public long sampleBytesWritten;
+    public int sampleCount;
+
+    public MeasuringExtractorOutput() {
+      allocator = new DefaultAllocator(/* trimOnReset= */ true, C.DEFAULT_BUFFER_SEGMENT_SIZE);
+      trackOutputs = new SparseArray<>();
+    }
+
+    @Override
+    public TrackOutput track(int id, int type) {
+      @Nullable CountingTrackOutput trackOutput = trackOutputs.get(id);
+      if (trackOutput == null) {
+        trackOutput =
+            new CountingTrackOutput(
+                new SampleQueue(
+                    allocator,
+                    /* playbackLooper= */ Looper.getMainLooper(),
+                    DrmSessionManager.getDummyDrmSessionManager(),
+                    new DrmSessionEventListener.EventDispatcher()));
+        trackOutputs.put(id, trackOutput);
+      }
+      return trackOutput;
+    }
+
+    @Override
+    public void endTracks() {
+      // Do nothing.
+    }
+
+    @Override
+    public void seekMap(SeekMap seekMap) {
+      // Do nothing.
+    }
+
+    /** Updates the statistics and discards all complete samples, as if they had been consumed. */
+    public void onReadCompleted() {
+      peakAllocatedBytes = max(peakAllocatedBytes, allocator.getTotalBytesAllocated());
+      sampleBytesWritten = 0;
+      sampleCount = 0;
+      for (int i = 0; i < trackOutputs.size(); i++) {
+        CountingTrackOutput trackOutput = trackOutputs.valueAt(i);
+        sampleBytesWritten += trackOutput.sampleBytesWritten;
+        sampleCount += trackOutput.sampleQueue.getWriteIndex();
+        trackOutput.sampleQueue.discardToEnd();
+      }
+    }
+  }
+
+  /** A {@link TrackOutput} that forwards to a {@link SampleQueue} and counts sample bytes. */
+  private static final class CountingTrackOutput implements TrackOutput {
+
+    public final SampleQueue sampleQueue;
+
+    public long sampleBytesWritten;
+
+    public CountingTrackOutput(SampleQueue sampleQueue) {
+      this.sampleQueue = sampleQueue;
+    }
+
+    @Override
+    public void format(Format format) {
+      sampleQueue.format(format);
+    }
+
+    @Override
+    public int sampleData(
+        DataReader input, int length, boolean allowEndOfInput, @SampleDataPart int sampleDataPart)
+        throws IOException {
+      int bytesAppended =
+          sampleQueue.sampleData(input, length, allowEndOfInput, sampleDataPart);
+      if (bytesAppended != C.RESULT_END_OF_INPUT) {
+        sampleBytesWritten += bytesAppended;
+      }
+      return bytesAppended;
+    }
+
+    @Override
+    public void sampleData(ParsableByteArray data, int length, @SampleDataPart int sampleDataPart) {
+      sampleQueue.sampleData(data, length, sampleDataPart);
+      sampleBytesWritten += length;
+    }
+
+    @Override
+    public void sampleMetadata(
+        long timeUs,
+        @C.BufferFlags int flags,
+        int size,
+        int offset,
+        @Nullable CryptoData encryptionData) {
+      sampleQueue.sampleMetadata(timeUs, flags, size, offset, encryptionData);
+    }
+  }
+}
@@ -0,0 +1,879 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static java.lang.Math.max;
+import static java.lang.Math.min;
+
+import android.content.Context;
+import android.os.Looper;
+import androidx.annotation.Nullable;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.DefaultLoadControl;
+import com.google.android.exoplayer2.ExoPlaybackException;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.LoadControl;
+import com.google.android.exoplayer2.Player;
+import com.google.android.exoplayer2.SimpleExoPlayer;
+import com.google.android.exoplayer2.source.TrackGroup;
+import com.google.android.exoplayer2.source.TrackGroupArray;
+import com.google.android.exoplayer2.source.ads.AdPlaybackState;
+import com.google.android.exoplayer2.testutil.FakeTimeline.TimelineWindowDefinition;
+import com.google.android.exoplayer2.trackselection.AdaptiveTrackSelection;
+import com.google.android.exoplayer2.trackselection.DefaultTrackSelector;
+import com.google.android.exoplayer2.upstream.BandwidthMeter;
+import com.google.android.exoplayer2.upstream.DataSource;
+import com.google.android.exoplayer2.upstream.DataSpec;
+import com.google.android.exoplayer2.upstream.DefaultBandwidthMeter;
+import com.google.android.exoplayer2.upstream.Loader;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider;
+import com.google.android.exoplayer2.upstream.LoaderExecutorProvider.LoaderExecutor;
+import com.google.android.exoplayer2.upstream.TransferListener;
+import com.google.android.exoplayer2.util.Assertions;
+import com.google.android.exoplayer2.util.Clock;
+import com.google.android.exoplayer2.util.HandlerWrapper;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.android.exoplayer2.util.Util;
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.TimeoutException;
+import org.checkerframework.checker.nullness.qual.MonotonicNonNull;
+
+/**
+ * Simulates the playback of an adaptive stream over a network whose throughput follows a {@link
+ * BandwidthTrace}, and reports quality of experience metrics such as the startup time, the
+ * rebuffer ratio and the number of bitrate switches.
+ *
+ * <p>The simulation runs a real {@link SimpleExoPlayer} end-to-end under virtual time, so that
+ * changes to {@link AdaptiveTrackSelection}, {@link DefaultLoadControl} or a {@link
+ * BandwidthMeter} can be evaluated against recorded network traces in seconds. Virtual time is only
+ * advanced once all loader tasks are either waiting for simulated network data or finished, which
+ * makes the reports of two simulations with the same configuration identical.
+ *
+ * <p>The memory of the simulated device can be modelled by a {@link LoadControl} with a target
+ * buffer size. The simulation doesn't model decoding costs: media is rendered as soon as it's
+ * buffered.
+ *
+ * <p>Simulations must be run on the main test thread. Whilst a simulation runs, it replaces the
+ * {@link Loader#setDefaultExecutorProvider(LoaderExecutorProvider) default LoaderExecutorProvider}
+ * to track the loader tasks, and resets it to {@link Loader#THREAD_PER_LOADER_EXECUTOR_PROVIDER}
+ * afterwards.
+ */
+public final class PlaybackSimulator {
+
+  /** Builder for {@link PlaybackSimulator} instances. */
+  public static final class Builder {
+
+    private final Context context;
+    private final SimulationClock clock;
+
+    private Format[] formats;
+    private long mediaDurationUs;
+    private long chunkDurationUs;
+    private BandwidthTrace bandwidthTrace;
+    private long requestLatencyMs;
+    private DefaultTrackSelector trackSelector;
+    private LoadControl loadControl;
+    private BandwidthMeter bandwidthMeter;
+    private long timeoutMs;
+
+    /**
+     * Creates a builder with default values.
+     *
+     * @param context A {@link Context}.
+     */
+    public Builder(Context context) {
+      this.context = context;
+      clock = new SimulationClock();
+      formats = DEFAULT_FORMATS;
+      mediaDurationUs = DEFAULT_MEDIA_DURATION_US;
+      chunkDurationUs = DEFAULT_CHUNK_DURATION_US;
+      bandwidthTrace = BandwidthTrace.constant(DEFAULT_BITRATE);
+      requestLatencyMs = DEFAULT_REQUEST_LATENCY_MS;
+      float bufferedFractionToLiveEdgeForQualityIncrease =
+          AdaptiveTrackSelection.DEFAULT_BUFFERED_FRACTION_TO_LIVE_EDGE_FOR_QUALITY_INCREASE;
+      trackSelector =
+          new DefaultTrackSelector(
+              DefaultTrackSelector.Parameters.DEFAULT_WITHOUT_CONTEXT,
+              new AdaptiveTrackSelection.Factory(
+                  AdaptiveTrackSelection.DEFAULT_MIN_DURATION_FOR_QUALITY_INCREASE_MS,
+                  AdaptiveTrackSelection.DEFAULT_MAX_DURATION_FOR_QUALITY_DECREASE_MS,
+                  AdaptiveTrackSelection.DEFAULT_MIN_DURATION_TO_RETAIN_AFTER_DISCARD_MS,
+                  AdaptiveTrackSelection.DEFAULT_BANDWIDTH_FRACTION,
+                  bufferedFractionToLiveEdgeForQualityIncrease,
+                  clock));
+      loadControl = new DefaultLoadControl();
+      bandwidthMeter =
+          new DefaultBandwidthMeter.Builder(context)
+              .setInitialBitrateEstimate(DefaultBandwidthMeter.DEFAULT_INITIAL_BITRATE_ESTIMATE)
+              .setResetOnNetworkTypeChange(false)
+              .setClock(clock)
+              .build();
+      timeoutMs = DEFAULT_TIMEOUT_MS;
+    }
+
+    /**
+     * Returns the virtual {@link Clock} of the simulation. Components that measure time, such as
+     * track selections and bandwidth meters, must use this clock.
+     */
+    public Clock getClock() {
+      return clock;
+    }
+
+    /**
+     * Sets the video {@link Format formats} the stream is available in. The default is a ladder
+     * from 240p at 400 kbps to 1080p at 4.5 Mbps.
+     *
+     * @param formats The {@link Format formats}, each with a bitrate.
+     * @return This builder.
+     */
+    public Builder setFormats(Format... formats) {
+      Assertions.checkArgument(formats.length > 0);
+      for (Format format : formats) {
+        Assertions.checkArgument(format.bitrate > 0);
+      }
+      this.formats = formats;
+      return this;
+    }
+
+    /**
+     * Sets the duration of the media. The default is 60 seconds.
+     *
+     * @param mediaDurationUs The duration of the media, in microseconds.
+     * @return This builder.
+     */
+    public Builder setMediaDurationUs(long mediaDurationUs) {
+      Assertions.checkArgument(mediaDurationUs > 0);
+      this.mediaDurationUs = mediaDurationUs;
+      return this;
+    }
+
+    /**
+     * Sets the duration of the media chunks. The default is 2 seconds.
+     *
+     * @param chunkDurationUs The duration of the media chunks, in microseconds.
+     * @return This builder.
+     */
+    public Builder setChunkDurationUs(long chunkDurationUs) {
+      Assertions.checkArgument(chunkDurationUs > 0);
+      this.chunkDurationUs = chunkDurationUs;
+      return this;
+    }
+
+    /**
+     * Sets the throughput of the simulated network. The default is a constant 2 Mbps.
+     *
+     * @param bandwidthTrace The {@link BandwidthTrace}.
+     * @return This builder.
+     */
+    public Builder setBandwidthTrace(BandwidthTrace bandwidthTrace) {
+      this.bandwidthTrace = bandwidthTrace;
+      return this;
+    }
+
+    /**
+     * Sets the time between requesting a chunk and receiving its first byte. The default is 50
+     * milliseconds.
+     *
+     * @param requestLatencyMs The request latency, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setRequestLatencyMs(long requestLatencyMs) {
+      Assertions.checkArgument(requestLatencyMs >= 0);
+      this.requestLatencyMs = requestLatencyMs;
+      return this;
+    }
+
+    /**
+     * Sets the {@link DefaultTrackSelector}. The default selects tracks adaptively with an {@link
+     * AdaptiveTrackSelection} using the {@link #getClock() simulation clock}, without viewport
+     * constraints.
+     *
+     * @param trackSelector The {@link DefaultTrackSelector}.
+     * @return This builder.
+     */
+    public Builder setTrackSelector(DefaultTrackSelector trackSelector) {
+      this.trackSelector = trackSelector;
+      return this;
+    }
+
+    /**
+     * Sets the {@link LoadControl}. The default is a {@link DefaultLoadControl}.
+     *
+     * @param loadControl The {@link LoadControl}.
+     * @return This builder.
+     */
+    public Builder setLoadControl(LoadControl loadControl) {
+      this.loadControl = loadControl;
+      return this;
+    }
+
+    /**
+     * Sets the {@link BandwidthMeter}. The default is a {@link DefaultBandwidthMeter} with an
+     * initial estimate of {@link DefaultBandwidthMeter#DEFAULT_INITIAL_BITRATE_ESTIMATE}, using the
+     * {@link #getClock() simulation clock}.
+     *
+     * @param bandwidthMeter The {@link BandwidthMeter}.
+     * @return This builder.
+     */
+    public Builder setBandwidthMeter(BandwidthMeter bandwidthMeter) {
+      this.bandwidthMeter = bandwidthMeter;
+      return this;
+    }
+
+    /**
+     * Sets the maximum real time a simulation may take. The default is 60 seconds.
+     *
+     * @param timeoutMs The timeout, in milliseconds.
+     * @return This builder.
+     */
+    public Builder setTimeoutMs(long timeoutMs) {
+      this.timeoutMs = timeoutMs;
+      return this;
+    }
+
+    /** Builds the {@link PlaybackSimulator}. Each builder can only build one simulator. */
+    public PlaybackSimulator build() {
+      return new PlaybackSimulator(this);
+    }
+  }
+
+  /** The quality of experience metrics of a simulated playback. */
+  public static final class Report {
+
+    /**
+     * The time from the start of the simulation until the playback started, in milliseconds, or
+     * {@link C#TIME_UNSET} if the playback never started.
+     */
+    public final long startupTimeMs;
+    /** The number of times the playback stalled because the buffer ran out. */
+    public final int rebufferCount;
+    /** The total time the playback was stalled after it started, in milliseconds. */
+    public final long totalRebufferTimeMs;
+    /** The total time the playback was playing, in milliseconds. */
+    public final long totalPlayTimeMs;
+    /**
+     * The mean bitrate of the played media, weighted by media duration, in bits per second, or
+     * {@link Format#NO_VALUE} if no media was played.
+     */
+    public final int meanBitrate;
+    /** The number of times the played format changed. */
+    public final int bitrateSwitchCount;
+    /** The number of bytes transferred over the simulated network. */
+    public final long bytesTransferred;
+
+    private Report(
+        long startupTimeMs,
+        int rebufferCount,
+        long totalRebufferTimeMs,
+        long totalPlayTimeMs,
+        int meanBitrate,
+        int bitrateSwitchCount,
+        long bytesTransferred) {
+      this.startupTimeMs = startupTimeMs;
+      this.rebufferCount = rebufferCount;
+      this.totalRebufferTimeMs = totalRebufferTimeMs;
+      this.totalPlayTimeMs = totalPlayTimeMs;
+      this.meanBitrate = meanBitrate;
+      this.bitrateSwitchCount = bitrateSwitchCount;
+      this.bytesTransferred = bytesTransferred;
+    }
+
+    /**
+     * Returns the ratio of the {@link #totalRebufferTimeMs rebuffer time} to the time spent
+     * playing or rebuffering, or 0 if the playback never started.
+     */
+    public float getRebufferRatio() {
+      long totalTimeMs = totalPlayTimeMs + totalRebufferTimeMs;
+      return totalTimeMs == 0 ? 0f : (float) totalRebufferTimeMs / totalTimeMs;
+    }
+
+    @Override
+    public boolean equals(@Nullable Object obj) {
+      if (this == obj) {
+        return true;
+      }
+      if (obj == null || getClass() != obj.getClass()) {
+        return false;
+      }
+      Report other = (Report) obj;
+      return startupTimeMs == other.startupTimeMs
+          && rebufferCount == other.rebufferCount
+          && totalRebufferTimeMs == other.totalRebufferTimeMs
+          && totalPlayTimeMs == other.totalPlayTimeMs
+          && meanBitrate == other.meanBitrate
+          && bitrateSwitchCount == other.bitrateSwitchCount
+          && bytesTransferred == other.bytesTransferred;
+    }
+
+    @Override
+    public int hashCode() {
+      int result = (int) startupTimeMs;
+      result = 31 * result + rebufferCount;
+      result = 31 * result + (int) totalRebufferTimeMs;
+      result = 31 * result + (int) totalPlayTimeMs;
+      result = 31 * result + meanBitrate;
+      result = 31 * result + bitrateSwitchCount;
+      result = 31 * result + (int) bytesTransferred;
+      return result;
+    }
+
+    @Override
+    public String toString() {
+      return Util.formatInvariant(
+          "Report(startupTimeMs=%d, rebufferCount=%d, totalRebufferTimeMs=%d, totalPlayTimeMs=%d,"
+              + " rebufferRatio=%.4f, meanBitrate=%d, bitrateSwitchCount=%d, bytesTransferred=%d)",
+          startupTimeMs,
+          rebufferCount,
+          totalRebufferTimeMs,
+          totalPlayTimeMs,
+          getRebufferRatio(),
+          meanBitrate,
+          bitrateSwitchCount,
+          bytesTransferred);
+    }
+  }
+
+  private static final String TAG = "PlaybackSimulator";
+
+  private static final Format[] DEFAULT_FORMATS =
+      new Format[] {
+        createVideoFormat(/* bitrate= */ 400_000, /* width= */ 426, /* height= */ 240),
+        createVideoFormat(/* bitrate= */ 800_000, /* width= */ 640, /* height= */ 360),
+        createVideoFormat(/* bitrate= */ 1_200_000, /* width= */ 854, /* height= */ 480),
+        createVideoFormat(/* bitrate= */ 2_500_000, /* width= */ 1280, /* height= */ 720),
+        createVideoFormat(/* bitrate= */ 4_500_000, /* width= */ 1920, /* height= */ 1080)
+      };
+  private static final long DEFAULT_MEDIA_DURATION_US = 60 * C.MICROS_PER_SECOND;
+  private static final long DEFAULT_CHUNK_DURATION_US = 2 * C.MICROS_PER_SECOND;
+  private static final long DEFAULT_BITRATE = 2_000_000;
+  private static final long DEFAULT_REQUEST_LATENCY_MS = 50;
+  private static final long DEFAULT_TIMEOUT_MS = 60_000;
+
+  private final Context context;
+  private final SimulationClock clock;
+  private final Format[] formats;
+  private final long mediaDurationUs;
+  private final long chunkDurationUs;
+  private final DefaultTrackSelector trackSelector;
+  private final LoadControl loadControl;
+  private final BandwidthMeter bandwidthMeter;
+  private final long timeoutMs;
+  private final SimulatedNetwork network;
+
+  private boolean hasRun;
+
+  private PlaybackSimulator(Builder builder) {
+    context = builder.context;
+    clock = builder.clock;
+    formats = builder.formats;
+    mediaDurationUs = builder.mediaDurationUs;
+    chunkDurationUs = builder.chunkDurationUs;
+    trackSelector = builder.trackSelector;
+    loadControl = builder.loadControl;
+    bandwidthMeter = builder.bandwidthMeter;
+    timeoutMs = builder.timeoutMs;
+    network = new SimulatedNetwork(clock, builder.bandwidthTrace, builder.requestLatencyMs);
+    clock.setNetwork(network);
+  }
+
+  /**
+   * Plays the stream from start to end and returns the {@link Report} of the playback. Must only be
+   * called once, on the main test thread.
+   *
+   * @return The {@link Report} of the playback.
+   * @throws ExoPlaybackException If the playback failed.
+   * @throws TimeoutException If the simulation took longer than the {@link
+   *     Builder#setTimeoutMs(long) timeout}.
+   */
+  public Report run() throws ExoPlaybackException, TimeoutException {
+    Assertions.checkState(!hasRun && Looper.myLooper() == Looper.getMainLooper());
+    hasRun = true;
+    SimulatedRenderer renderer = new SimulatedRenderer(clock, mediaDurationUs, chunkDurationUs);
+    SimpleExoPlayer player =
+        new TestExoPlayer.Builder(context)
+            .setClock(clock)
+            .setRenderers(renderer)
+            .setTrackSelector(trackSelector)
+            .setLoadControl(loadControl)
+            .setBandwidthMeter(bandwidthMeter)
+            .build();
+    FakeDataSource.Factory dataSourceFactory =
+        new FakeDataSource.Factory() {
+          @Override
+          public FakeDataSource createDataSource() {
+            return new SimulatedDataSource(Assertions.checkStateNotNull(fakeDataSet), network);
+          }
+        };
+    FakeAdaptiveMediaSource mediaSource =
+        new FakeAdaptiveMediaSource(
+            new FakeTimeline(
+                new TimelineWindowDefinition(
+                    /* periodCount= */ 1,
+                    /* id= */ 0,
+                    /* isSeekable= */ true,
+                    /* isDynamic= */ false,
+                    /* isLive= */ false,
+                    /* isPlaceholder= */ false,
+                    mediaDurationUs,
+                    /* defaultPositionUs= */ 0,
+                    /* windowOffsetInFirstPeriodUs= */ 0,
+                    AdPlaybackState.NONE)),
+            new TrackGroupArray(new TrackGroup(formats)),
+            new FakeChunkSource.Factory(
+                new FakeAdaptiveDataSet.Factory(chunkDurationUs, /* bitratePercentStdDev= */ 0),
+                dataSourceFactory));
+    try {
+      // Loaders are created by the media periods, which don't take a LoaderExecutorProvider.
+      Loader.setDefaultExecutorProvider(new SimulatedLoaderExecutorProvider(network));
+      player.setMediaSource(mediaSource);
+      player.prepare();
+      player.play();
+      TestUtil.runMainLooperUntil(
+          () -> player.getPlaybackState() == Player.STATE_ENDED || player.getPlayerError() != null,
+          timeoutMs,
+          Clock.DEFAULT);
+      @Nullable ExoPlaybackException playerError = player.getPlayerError();
+      if (playerError != null) {
+        throw playerError;
+      }
+    } finally {
+      network.release();
+      player.release();
+      Loader.setDefaultExecutorProvider(Loader.THREAD_PER_LOADER_EXECUTOR_PROVIDER);
+    }
+    return renderer.createReport(network.getBytesTransferred());
+  }
+
+  private static Format createVideoFormat(int bitrate, int width, int height) {
+    return new Format.Builder()
+        .setId(Integer.toString(bitrate))
+        .setSampleMimeType(MimeTypes.VIDEO_H264)
+        .setAverageBitrate(bitrate)
+        .setWidth(width)
+        .setHeight(height)
+        .build();
+  }
+
+  /**
+   * A {@link FakeClock} that advances time whenever the playback thread schedules its next
+   * iteration, like {@link AutoAdvancingFakeClock}, but lets the {@link SimulatedNetwork} decide
+   * when it's safe to do so.
+   */
+  private static final class SimulationClock extends FakeClock {
+
+    private @MonotonicNonNull SimulatedNetwork network;
+    @Nullable private HandlerWrapper autoAdvancingHandler;
+
+    public SimulationClock() {
+      super(/* initialTimeMs= */ 0);
+    }
+
+    public void setNetwork(SimulatedNetwork network) {
+      this.network = network;
+    }
+
+    // Not synchronized, as loader threads must be able to read the time while the playback thread
+    // waits for them.
+    @Override
+    protected boolean addHandlerMessageAtTime(HandlerWrapper handler, int message, long timeMs) {
+      boolean result = super.addHandlerMessageAtTime(handler, message, timeMs);
+      if (autoAdvancingHandler == null || autoAdvancingHandler == handler) {
+        autoAdvancingHandler = handler;
+        Assertions.checkStateNotNull(network).advanceTimeTo(timeMs);
+      }
+      return result;
+    }
+  }
+
+  /**
+   * Simulates a network link shared by all loads, whose throughput follows a {@link
+   * BandwidthTrace}.
+   *
+   * <p>Loader tasks block in {@link #transfer(int)} until the virtual time at which the data they
+   * read has arrived. The playback thread advances virtual time through {@link
+   * #advanceTimeTo(long)}, which steps from one data arrival to the next and only advances once
+   * every loader task that has been queued is blocked waiting for data or has finished. The {@link
+   * SimulatedLoaderExecutor SimulatedLoaderExecutors} report when each task is queued, started and
+   * finished.
+   */
+  private static final class SimulatedNetwork implements TransferListener {
+
+    private final FakeClock clock;
+    private final BandwidthTrace bandwidthTrace;
+    private final long requestLatencyMs;
+    private final Map<Thread, LoaderTaskState> runningTaskStates;
+
+    private int queuedTaskCount;
+    private long linkFreeTimeMs;
+    private long bytesTransferred;
+    private boolean released;
+
+    public SimulatedNetwork(FakeClock clock, BandwidthTrace bandwidthTrace, long requestLatencyMs) {
+      this.clock = clock;
+      this.bandwidthTrace = bandwidthTrace;
+      this.requestLatencyMs = requestLatencyMs;
+      runningTaskStates = new HashMap<>();
+    }
+
+    public synchronized long getBytesTransferred() {
+      return bytesTransferred;
+    }
+
+    /** Unblocks all loader tasks and stops synchronizing them with the clock. */
+    public synchronized void release() {
+      released = true;
+      notifyAll();
+    }
+
+    /** Called on the thread passing a loader task to its executor. */
+    public synchronized void onTaskQueued() {
+      queuedTaskCount++;
+    }
+
+    /** Called on the loader thread before it runs a task. */
+    public synchronized void onTaskStarted() {
+      queuedTaskCount--;
+      runningTaskStates.put(Thread.currentThread(), new LoaderTaskState());
+      notifyAll();
+    }
+
+    /** Called on the loader thread after it has run a task. */
+    public synchronized void onTaskFinished() {
+      runningTaskStates.remove(Thread.currentThread());
+      notifyAll();
+    }
+
+    /**
+     * Blocks the calling loader task until {@code byteCount} bytes have been transferred.
+     *
+     * @param byteCount The number of bytes to transfer.
+     * @throws InterruptedIOException If the thread is interrupted.
+     */
+    public synchronized void transfer(int byteCount) throws InterruptedIOException {
+      LoaderTaskState state = getCurrentTaskState();
+      long nowMs = clock.elapsedRealtime();
+      long requestTimeMs = state.awaitingResponse ? nowMs + requestLatencyMs : nowMs;
+      long startTimeMs = max(requestTimeMs, linkFreeTimeMs);
+      long endTimeMs = bandwidthTrace.getTransferEndTimeMs(startTimeMs, byteCount);
+      linkFreeTimeMs = endTimeMs;
+      bytesTransferred += byteCount;
+      state.awaitingResponse = false;
+      state.waitingForData = true;
+      state.dataArrivalTimeMs = endTimeMs;
+      notifyAll();
+      try {
+        while (!released && clock.elapsedRealtime() < endTimeMs) {
+          wait();
+        }
+      } catch (InterruptedException e) {
+        Thread.currentThread().interrupt();
+        throw new InterruptedIOException();
+      } finally {
+        state.waitingForData = false;
+      }
+    }
+
+    /**
+     * Advances the clock to {@code timeMs}, stepping through the arrival times of the data loader
+     * tasks wait for and letting the loader tasks settle after each step.
+     *
+     * @param timeMs The time to advance the clock to, in milliseconds.
+     */
+    public synchronized void advanceTimeTo(long timeMs) {
+      if (clock.elapsedRealtime() >= timeMs) {
+        return;
+      }
+      while (clock.elapsedRealtime() < timeMs) {
+        awaitLoaderTasksSettled();
+        long nowMs = clock.elapsedRealtime();
+        long nextTimeMs = timeMs;
+        for (LoaderTaskState state : runningTaskStates.values()) {
+          if (state.waitingForData) {
+            nextTimeMs = min(nextTimeMs, state.dataArrivalTimeMs);
+          }
+        }
+        clock.advanceTime(nextTimeMs - nowMs);
+        notifyAll();
+      }
+      awaitLoaderTasksSettled();
+    }
+
+    // TransferListener implementation.
+
+    @Override
+    public synchronized void onTransferInitializing(
+        DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      getCurrentTaskState().awaitingResponse = true;
+    }
+
+    @Override
+    public void onTransferStart(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onBytesTransferred(
+        DataSource source, DataSpec dataSpec, boolean isNetwork, int bytesTransferred) {
+      // Do nothing.
+    }
+
+    @Override
+    public void onTransferEnd(DataSource source, DataSpec dataSpec, boolean isNetwork) {
+      // Do nothing.
+    }
+
+    private LoaderTaskState getCurrentTaskState() {
+      // Data sources must only be read by loader tasks run by a SimulatedLoaderExecutor.
+      return Assertions.checkStateNotNull(runningTaskStates.get(Thread.currentThread()));
+    }
+
+    private void awaitLoaderTasksSettled() {
+      while (!released && !areLoaderTasksSettled()) {
+        try {
+          wait();
+        } catch (InterruptedException e) {
+          Thread.currentThread().interrupt();
+          return;
+        }
+      }
+    }
+
+    private boolean areLoaderTasksSettled() {
+      if (queuedTaskCount > 0) {
+        return false;
+      }
+      long nowMs = clock.elapsedRealtime();
+      for (LoaderTaskState state : runningTaskStates.values()) {
+        if (!state.waitingForData || state.dataArrivalTimeMs <= nowMs) {
+          return false;
+        }
+      }
+      return true;
+    }
+  }
+
+  /** The state of a loader task that is being run by a {@link SimulatedLoaderExecutor}. */
+  private static final class LoaderTaskState {
+
+    public boolean awaitingResponse;
+    public boolean waitingForData;
+    public long dataArrivalTimeMs;
+  }
+
+  /**
+   * A {@link LoaderExecutorProvider} whose executors report the tasks of all {@link Loader
+   * Loaders} to a {@link SimulatedNetwork}.
+   */
+  private static final class SimulatedLoaderExecutorProvider implements LoaderExecutorProvider {
+
+    private final SimulatedNetwork network;
+
+    public SimulatedLoaderExecutorProvider(SimulatedNetwork network) {
+      this.network = network;
+    }
+
+    @Override
+    public LoaderExecutor createLoaderExecutor(String threadName, @Priority int priority) {
+      return new SimulatedLoaderExecutor(
+          Loader.THREAD_PER_LOADER_EXECUTOR_PROVIDER.createLoaderExecutor(threadName, priority),
+          network);
+    }
+  }
+
+  /**
+   * A {@link LoaderExecutor} that reports when each of its tasks is queued, started and finished.
+   */
+  private static final class SimulatedLoaderExecutor implements LoaderExecutor {
+
+    private final LoaderExecutor executor;
+    private final SimulatedNetwork network;
+
+    public SimulatedLoaderExecutor(LoaderExecutor executor, SimulatedNetwork network) {
+      this.executor = executor;
+      this.network = network;
+    }
+
+    @Override
+    public void execute(Runnable task) {
+      network.onTaskQueued();
+      executor.execute(
+          () -> {
+            network.onTaskStarted();
+            try {
+              task.run();
+            } finally {
+              network.onTaskFinished();
+            }
+          });
+    }
+
+    @Override
+    public void release() {
+      executor.release();
+    }
+  }
+
+  /** A {@link FakeDataSource} that reads its data through a {@link SimulatedNetwork}. */
+  private static final class SimulatedDataSource extends FakeDataSource {
+
+    private final SimulatedNetwork network;
+
+    public SimulatedDataSource(FakeDataSet fakeDataSet, SimulatedNetwork network) {
+      super(fakeDataSet, /* isNetwork= */ true);
+      this.network = network;
+      // Added first, so that the network knows about the transfer before any other listener runs.
+      addTransferListener(network);
+    }
+
+    @Override
+    protected void onDataRead(int bytesRead) throws IOException {
+      network.transfer(bytesRead);
+    }
+  }
+
+  /**
+   * A video {@link FakeRenderer} that is ready for as long as the chunk of its last sample covers
+   * the playback position, and that collects the quality of experience metrics of the playback.
+   */
+  private static final class SimulatedRenderer extends FakeRenderer {
+
+    private final Clock clock;
+    private final long mediaDurationUs;
+    private final long chunkDurationUs;
+    private final long startTimeMs;
+
+    private long streamOffsetUs;
+    private long positionUs;
+    private long lastChunkEndTimeUs;
+    @Nullable private Format format;
+    private long startupTimeMs;
+    private int rebufferCount;
+    private long rebufferStartTimeMs;
+    private long totalRebufferTimeMs;
+    private long playStartTimeMs;
+    private long totalPlayTimeMs;
+    private long bitrateSumBitsPerSecondUs;
+    private long playedDurationUs;
+    private int bitrateSwitchCount;
+
+    public SimulatedRenderer(Clock clock, long mediaDurationUs, long chunkDurationUs) {
+      super(C.TRACK_TYPE_VIDEO);
+      this.clock = clock;
+      this.mediaDurationUs = mediaDurationUs;
+      this.chunkDurationUs = chunkDurationUs;
+      startTimeMs = clock.elapsedRealtime();
+      lastChunkEndTimeUs = C.TIME_UNSET;
+      startupTimeMs = C.TIME_UNSET;
+      rebufferStartTimeMs = C.TIME_UNSET;
+    }
+
+    @Override
+    public String getName() {
+      return TAG;
+    }
+
+    @Override
+    public void render(long positionUs, long elapsedRealtimeUs) throws ExoPlaybackException {
+      this.positionUs = positionUs;
+      super.render(positionUs, elapsedRealtimeUs);
+    }
+
+    @Override
+    public boolean isReady() {
+      return super.isReady()
+          || (lastChunkEndTimeUs != C.TIME_UNSET && positionUs < lastChunkEndTimeUs);
+    }
+
+    @Override
+    public boolean isEnded() {
+      return super.isEnded() && positionUs >= lastChunkEndTimeUs;
+    }
+
+    @Override
+    protected void onStreamChanged(Format[] formats, long startPositionUs, long offsetUs)
+        throws ExoPlaybackException {
+      streamOffsetUs = offsetUs;
+    }
+
+    @Override
+    protected void onPositionReset(long positionUs, boolean joining) throws ExoPlaybackException {
+      super.onPositionReset(positionUs, joining);
+      this.positionUs = positionUs;
+      lastChunkEndTimeUs = C.TIME_UNSET;
+    }
+
+    @Override
+    protected void onStarted() {
+      long nowMs = clock.elapsedRealtime();
+      if (startupTimeMs == C.TIME_UNSET) {
+        startupTimeMs = nowMs - startTimeMs;
+      }
+      if (rebufferStartTimeMs != C.TIME_UNSET) {
+        totalRebufferTimeMs += nowMs - rebufferStartTimeMs;
+        rebufferStartTimeMs = C.TIME_UNSET;
+      }
+      playStartTimeMs = nowMs;
+    }
+
+    @Override
+    protected void onStopped() {
+      long nowMs = clock.elapsedRealtime();
+      totalPlayTimeMs += nowMs - playStartTimeMs;
+      if (!isEnded()) {
+        rebufferCount++;
+        rebufferStartTimeMs = nowMs;
+      }
+    }
+
+    @Override
+    protected void onFormatChanged(Format format) {
+      if (this.format != null && this.format.bitrate != format.bitrate) {
+        bitrateSwitchCount++;
+      }
+      this.format = format;
+    }
+
+    @Override
+    protected boolean shouldProcessBuffer(long bufferTimeUs, long playbackPositionUs) {
+      if (!super.shouldProcessBuffer(bufferTimeUs, playbackPositionUs)) {
+        return false;
+      }
+      long chunkEndTimeUs = min(bufferTimeUs + chunkDurationUs, streamOffsetUs + mediaDurationUs);
+      long bufferDurationUs = chunkEndTimeUs - bufferTimeUs;
+      lastChunkEndTimeUs = chunkEndTimeUs;
+      bitrateSumBitsPerSecondUs +=
+          (long) Assertions.checkNotNull(format).bitrate * bufferDurationUs;
+      playedDurationUs += bufferDurationUs;
+      return true;
+    }
+
+    public Report createReport(long bytesTransferred) {
+      return new Report(
+          startupTimeMs,
+          rebufferCount,
+          totalRebufferTimeMs,
+          totalPlayTimeMs,
+          playedDurationUs == 0
+              ? Format.NO_VALUE
+              : (int) (bitrateSumBitsPerSecondUs / playedDurationUs),
+          bitrateSwitchCount,
+          bytesTransferred);
+    }
+  }
+}
@@ -454,4 +454,9 @@ public abstract class StubExoPlayer extends BasePlayer implements ExoPlayer {
   public void experimentalSetOffloadSchedulingEnabled(boolean offloadSchedulingEnabled) {
     throw new UnsupportedOperationException();
   }
+
+  @Override
+  public void experimentalSetPreloadMediaItems(List<MediaItem> mediaItems) {
+    throw new UnsupportedOperationException();
+  }
 }
@@ -0,0 +1,77 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.text.Cue;
+import com.google.android.exoplayer2.text.SimpleSubtitleDecoder;
+import com.google.android.exoplayer2.text.SubtitleInputBuffer;
+import com.google.android.exoplayer2.text.SubtitleOutputBuffer;
+import com.google.android.exoplayer2.util.Assertions;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/** Utility methods for testing {@link SimpleSubtitleDecoder} implementations. */
+public final class SubtitleDecoderTestUtil {
+
+  private SubtitleDecoderTestUtil() {}
+
+  /**
+   * Decodes {@code bytes} as a single sample followed by the end of stream, and returns the cues of
+   * each output chunk displayed {@code displayOffsetUs} after the start of the chunk, by chunk
+   * start time. The decoder is released before returning.
+   *
+   * <p>Outputs are dequeued by blocking on the decoder's decode thread, so the result does not
+   * depend on thread scheduling.
+   *
+   * @param decoder The decoder to use.
+   * @param bytes The subtitle data to decode.
+   * @param displayOffsetUs The offset from the start of each chunk at which to query its cues.
+   * @return The cues of each output chunk, keyed by chunk start time, in output order.
+   * @throws Exception If decoding fails or the thread is interrupted.
+   */
+  public static Map<Long, List<Cue>> decodeInChunks(
+      SimpleSubtitleDecoder decoder, byte[] bytes, long displayOffsetUs) throws Exception {
+    Map<Long, List<Cue>> cuesByChunkTimeUs = new LinkedHashMap<>();
+    try {
+      SubtitleInputBuffer inputBuffer = Assertions.checkNotNull(decoder.dequeueInputBuffer());
+      inputBuffer.ensureSpaceForWrite(bytes.length);
+      Assertions.checkNotNull(inputBuffer.data).put(bytes);
+      inputBuffer.timeUs = 0;
+      inputBuffer.subsampleOffsetUs = Format.OFFSET_SAMPLE_RELATIVE;
+      inputBuffer.flip();
+      decoder.queueInputBuffer(inputBuffer);
+      SubtitleInputBuffer endOfStreamBuffer = Assertions.checkNotNull(decoder.dequeueInputBuffer());
+      endOfStreamBuffer.setFlags(C.BUFFER_FLAG_END_OF_STREAM);
+      decoder.queueInputBuffer(endOfStreamBuffer);
+
+      while (true) {
+        SubtitleOutputBuffer outputBuffer = decoder.dequeueOutputBufferBlocking();
+        if (outputBuffer.isEndOfStream()) {
+          outputBuffer.release();
+          return cuesByChunkTimeUs;
+        }
+        cuesByChunkTimeUs.put(
+            outputBuffer.timeUs, outputBuffer.getCues(outputBuffer.timeUs + displayOffsetUs));
+        outputBuffer.release();
+      }
+    } finally {
+      decoder.release();
+    }
+  }
+}
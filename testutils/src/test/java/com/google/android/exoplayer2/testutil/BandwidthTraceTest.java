@@ -0,0 +1,67 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link BandwidthTrace}. */
+@RunWith(AndroidJUnit4.class)
+public final class BandwidthTraceTest {
+
+  @Test
+  public void getTransferEndTimeMs_withConstantBitrate_returnsTransferDuration() {
+    BandwidthTrace trace = BandwidthTrace.constant(/* bitrate= */ 8_000);
+
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 500, /* byteCount= */ 1_000))
+        .isEqualTo(1_500);
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 0, /* byteCount= */ 100_000))
+        .isEqualTo(100_000);
+  }
+
+  @Test
+  public void getTransferEndTimeMs_acrossSegments_addsUpSegmentThroughput() {
+    BandwidthTrace trace =
+        new BandwidthTrace.Builder()
+            .addSegment(/* durationMs= */ 1_000, /* bitrate= */ 8_000)
+            .addSegment(/* durationMs= */ 1_000, /* bitrate= */ 0)
+            .addSegment(/* durationMs= */ 1_000, /* bitrate= */ 16_000)
+            .build();
+
+    // 500 bytes in the first segment, nothing in the second, 500 bytes in the third.
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 500, /* byteCount= */ 1_000))
+        .isEqualTo(2_250);
+  }
+
+  @Test
+  public void getTransferEndTimeMs_afterEndOfTrace_repeatsTrace() {
+    BandwidthTrace trace =
+        new BandwidthTrace.Builder()
+            .addSegments(/* sampleDurationMs= */ 1_000, /* bitrates...= */ 8_000, 0)
+            .build();
+
+    assertThat(trace.getDurationMs()).isEqualTo(2_000);
+    assertThat(trace.getBitrate(/* timeMs= */ 4_500)).isEqualTo(8_000);
+    assertThat(trace.getBitrate(/* timeMs= */ 5_500)).isEqualTo(0);
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 4_000, /* byteCount= */ 1_500))
+        .isEqualTo(6_500);
+    assertThat(trace.getTransferEndTimeMs(/* startTimeMs= */ 0, /* byteCount= */ 10_000))
+        .isEqualTo(19_000);
+  }
+}
@@ -0,0 +1,251 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import com.google.android.exoplayer2.Format;
+import com.google.android.exoplayer2.ParserException;
+import com.google.android.exoplayer2.extractor.Extractor;
+import com.google.android.exoplayer2.extractor.ExtractorInput;
+import com.google.android.exoplayer2.extractor.ExtractorOutput;
+import com.google.android.exoplayer2.extractor.PositionHolder;
+import com.google.android.exoplayer2.extractor.TrackOutput;
+import com.google.android.exoplayer2.testutil.ExtractorCorpusRunner.Result;
+import com.google.android.exoplayer2.util.MimeTypes;
+import com.google.common.collect.ImmutableMap;
+import java.io.IOException;
+import org.json.JSONArray;
+import org.json.JSONObject;
+import org.junit.After;
+import org.junit.Before;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link ExtractorCorpusRunner}. */
+@RunWith(AndroidJUnit4.class)
+public final class ExtractorCorpusRunnerTest {
+
+  private static final byte[] DATA = TestUtil.buildTestData(/* length= */ 1000);
+
+  private ExtractorCorpusRunner runner;
+
+  @Before
+  public void setUp() {
+    runner =
+        new ExtractorCorpusRunner.Builder()
+            .setMaxReadsWithoutProgress(10)
+            .setTimeoutMs(500)
+            .build();
+  }
+
+  @After
+  public void tearDown() {
+    runner.release();
+  }
+
+  @Test
+  public void runExtractor_readingToEnd_completesAndCountsSamples() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_OUTPUT_SAMPLES),
+            DATA,
+            "file",
+            /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_COMPLETED);
+    assertThat(result.bytesRead).isEqualTo(DATA.length);
+    assertThat(result.sampleCount).isEqualTo(DATA.length / TestExtractor.SAMPLE_SIZE);
+    assertThat(result.peakAllocatedBytes).isGreaterThan(0);
+    assertThat(result.isFailure()).isFalse();
+  }
+
+  @Test
+  public void runExtractor_notSniffing_returnsNotSniffed() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_NOT_SNIFFING),
+            DATA,
+            "file",
+            /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_NOT_SNIFFED);
+    assertThat(result.readCalls).isEqualTo(0);
+  }
+
+  @Test
+  public void runExtractor_throwingParserException_returnsParserError() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_THROW_PARSER_EXCEPTION),
+            DATA,
+            "file",
+            /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_PARSER_ERROR);
+    assertThat(result.exception).contains("ParserException");
+    assertThat(result.isFailure()).isFalse();
+  }
+
+  @Test
+  public void runExtractor_throwingRuntimeException_returnsUnexpectedError() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_THROW_RUNTIME_EXCEPTION),
+            DATA,
+            "file",
+            /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_UNEXPECTED_ERROR);
+    assertThat(result.exception).contains("ArrayIndexOutOfBoundsException");
+    assertThat(result.isFailure()).isTrue();
+  }
+
+  @Test
+  public void runExtractor_notMakingProgress_returnsStalled() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_STALL), DATA, "file", /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_STALLED);
+    assertThat(result.readCalls).isEqualTo(10);
+    assertThat(result.isFailure()).isTrue();
+  }
+
+  @Test
+  public void runExtractor_neverReturningFromRead_returnsTimedOut() {
+    Result result =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_HANG), DATA, "file", /* mutationIndex= */ 0);
+
+    assertThat(result.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_TIMED_OUT);
+    assertThat(result.isFailure()).isTrue();
+
+    // The runner should still be usable after a timeout.
+    Result nextResult =
+        runner.runExtractor(
+            new TestExtractor(TestExtractor.BEHAVIOR_OUTPUT_SAMPLES),
+            DATA,
+            "file",
+            /* mutationIndex= */ 0);
+    assertThat(nextResult.outcome).isEqualTo(ExtractorCorpusRunner.OUTCOME_COMPLETED);
+  }
+
+  @Test
+  public void run_withMutations_reportsAllResultsAsJson() throws Exception {
+    ExtractorCorpusRunner mutatingRunner =
+        new ExtractorCorpusRunner.Builder()
+            .setExtractorsFactory(
+                () ->
+                    new Extractor[] {
+                      new TestExtractor(TestExtractor.BEHAVIOR_OUTPUT_SAMPLES),
+                      new TestExtractor(TestExtractor.BEHAVIOR_THROW_RUNTIME_EXCEPTION)
+                    })
+            .setMutationsPerFile(2)
+            .build();
+    ExtractorCorpusRunner.Report report;
+    try {
+      report = mutatingRunner.run(ImmutableMap.of("file1", DATA, "file2", DATA));
+    } finally {
+      mutatingRunner.release();
+    }
+
+    // 2 files * (1 original + 2 mutations) * 2 extractors.
+    assertThat(report.results).hasSize(12);
+    assertThat(report.getFailures()).hasSize(6);
+    JSONArray jsonResults = new JSONObject(report.toJson()).getJSONArray("results");
+    assertThat(jsonResults.length()).isEqualTo(12);
+    JSONObject firstResult = jsonResults.getJSONObject(0);
+    assertThat(firstResult.getString("file")).isEqualTo("file1");
+    assertThat(firstResult.getInt("mutation")).isEqualTo(0);
+    assertThat(firstResult.getString("outcome")).isEqualTo("completed");
+    assertThat(firstResult.getLong("bytesRead")).isEqualTo(DATA.length);
+  }
+
+  private static final class TestExtractor implements Extractor {
+
+    public static final int BEHAVIOR_OUTPUT_SAMPLES = 0;
+    public static final int BEHAVIOR_NOT_SNIFFING = 1;
+    public static final int BEHAVIOR_THROW_PARSER_EXCEPTION = 2;
+    public static final int BEHAVIOR_THROW_RUNTIME_EXCEPTION = 3;
+    public static final int BEHAVIOR_STALL = 4;
+    public static final int BEHAVIOR_HANG = 5;
+
+    public static final int SAMPLE_SIZE = 100;
+
+    private final int behavior;
+
+    private TrackOutput trackOutput;
+
+    public TestExtractor(int behavior) {
+      this.behavior = behavior;
+    }
+
+    @Override
+    public boolean sniff(ExtractorInput input) {
+      return behavior != BEHAVIOR_NOT_SNIFFING;
+    }
+
+    @Override
+    public void init(ExtractorOutput output) {
+      trackOutput = output.track(/* id= */ 0, C.TRACK_TYPE_AUDIO);
+      trackOutput.format(new Format.Builder().setSampleMimeType(MimeTypes.AUDIO_RAW).build());
+      output.endTracks();
+    }
+
+    @Override
+    public int read(ExtractorInput input, PositionHolder seekPosition) throws IOException {
+      switch (behavior) {
+        case BEHAVIOR_THROW_PARSER_EXCEPTION:
+          throw new ParserException();
+        case BEHAVIOR_THROW_RUNTIME_EXCEPTION:
+          throw new ArrayIndexOutOfBoundsException();
+        case BEHAVIOR_STALL:
+          return RESULT_CONTINUE;
+        case BEHAVIOR_HANG:
+          while (!Thread.currentThread().isInterrupted()) {
+            // Simulate an infinite loop.
+          }
+          return RESULT_CONTINUE;
+        default:
+          int bytesAppended =
+              trackOutput.sampleData(input, SAMPLE_SIZE, /* allowEndOfInput= */ true);
+          if (bytesAppended == C.RESULT_END_OF_INPUT) {
+            return RESULT_END_OF_INPUT;
+          }
+          trackOutput.sampleMetadata(
+              /* timeUs= */ input.getPosition(),
+              C.BUFFER_FLAG_KEY_FRAME,
+              bytesAppended,
+              /* offset= */ 0,
+              /* encryptionData= */ null);
+          return RESULT_CONTINUE;
+      }
+    }
+
+    @Override
+    public void seek(long position, long timeUs) {
+      // Do nothing.
+    }
+
+    @Override
+    public void release() {
+      // Do nothing.
+    }
+  }
+}
@@ -0,0 +1,89 @@
+/*
+ * Copyright (C) 2020 The Android Open Source Project
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *      http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+package com.google.android.exoplayer2.testutil;
+
+import static com.google.common.truth.Truth.assertThat;
+
+import android.content.Context;
+import androidx.test.core.app.ApplicationProvider;
+import androidx.test.ext.junit.runners.AndroidJUnit4;
+import com.google.android.exoplayer2.C;
+import org.junit.Test;
+import org.junit.runner.RunWith;
+
+/** Unit test for {@link PlaybackSimulator}. */
+@RunWith(AndroidJUnit4.class)
+public final class PlaybackSimulatorTest {
+
+  private static final long MEDIA_DURATION_US = 20 * C.MICROS_PER_SECOND;
+
+  @Test
+  public void run_withSameConfiguration_returnsSameReport() throws Exception {
+    BandwidthTrace trace =
+        new BandwidthTrace.Builder()
+            .addSegments(
+                /* sampleDurationMs= */ 1_000,
+                /* bitrates...= */ 3_000_000,
+                1_500_000,
+                600_000,
+                4_000_000,
+                2_000_000)
+            .build();
+
+    PlaybackSimulator.Report report = createSimulator(trace).run();
+    PlaybackSimulator.Report otherReport = createSimulator(trace).run();
+
+    assertThat(report).isEqualTo(otherReport);
+    assertThat(report.startupTimeMs).isGreaterThan(0);
+    assertThat(report.totalPlayTimeMs).isAtLeast(MEDIA_DURATION_US / 1000);
+    assertThat(report.bytesTransferred).isGreaterThan(0);
+  }
+
+  @Test
+  public void run_withHigherBandwidth_playsHigherBitrate() throws Exception {
+    PlaybackSimulator.Report lowBandwidthReport =
+        createSimulator(BandwidthTrace.constant(/* bitrate= */ 1_000_000)).run();
+    PlaybackSimulator.Report highBandwidthReport =
+        createSimulator(BandwidthTrace.constant(/* bitrate= */ 20_000_000)).run();
+
+    assertThat(highBandwidthReport.meanBitrate).isGreaterThan(lowBandwidthReport.meanBitrate);
+    assertThat(highBandwidthReport.startupTimeMs).isLessThan(lowBandwidthReport.startupTimeMs);
+  }
+
+  @Test
+  public void run_withNetworkOutage_rebuffers() throws Exception {
+    BandwidthTrace trace =
+        new BandwidthTrace.Builder()
+            .addSegment(/* durationMs= */ 3_000, /* bitrate= */ 2_000_000)
+            .addSegment(/* durationMs= */ 30_000, /* bitrate= */ 0)
+            .addSegment(/* durationMs= */ 30_000, /* bitrate= */ 2_000_000)
+            .build();
+
+    PlaybackSimulator.Report report = createSimulator(trace).run();
+
+    assertThat(report.rebufferCount).isAtLeast(1);
+    assertThat(report.totalRebufferTimeMs).isGreaterThan(0);
+    assertThat(report.getRebufferRatio()).isGreaterThan(0f);
+  }
+
+  private static PlaybackSimulator createSimulator(BandwidthTrace bandwidthTrace) {
+    Context context = ApplicationProvider.getApplicationContext();
+    return new PlaybackSimulator.Builder(context)
+        .setMediaDurationUs(MEDIA_DURATION_US)
+        .setBandwidthTrace(bandwidthTrace)
+        .build();
+  }
+}